@@ -0,0 +1,168 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nikm.webcrawler.SearchFactory;
+import org.nikm.webcrawler.WebCrawler;
+import org.nikm.webcrawler.search.Search;
+import org.nikm.webcrawler.search.TextSearch;
+import org.nikm.webcrawler.search.XMLTagSearch;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Crawls a site served by an in-process http server, each operation is a whole crawl.
+ * The server can add latency to each response so the workers spend their time waiting, as they would on a real site.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CrawlBenchmark {
+
+    @Param({"200"})
+    public int numPages;
+
+    @Param({"16384"})
+    public int pageSize;
+
+    @Param({"1", "4", "16"})
+    public int numWorkers;
+
+    /**
+     * The time the server waits before each response, in milliseconds
+     */
+    @Param({"0", "20"})
+    public int latency;
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private String rootUrl;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Pages {
+        public long pages;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            pages = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException {
+        Random random = new Random(42);
+        final HashMap<String, byte[]> pages = new HashMap<String, byte[]>();
+        for (int i = 0; i < numPages; i++) {
+            List<String> links = new ArrayList<String>();
+            // Every page links to the next, so the whole site is reachable
+            links.add("/page" + ((i + 1) % numPages) + ".html");
+            for (int j = 0; j < 8; j++) {
+                links.add("/page" + random.nextInt(numPages) + ".html");
+            }
+            pages.put("/page" + i + ".html", HtmlCorpus.page(random, pageSize, links).getBytes(StandardCharsets.UTF_8));
+        }
+        pages.put("/", pages.get("/page0.html"));
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    if (latency > 0) {
+                        Thread.sleep(latency);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                byte[] page = pages.get(exchange.getRequestURI().getPath());
+                if (page == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+                exchange.sendResponseHeaders(200, page.length);
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(page);
+                }
+            }
+        });
+        serverThreads = Executors.newFixedThreadPool(32);
+        server.setExecutor(serverThreads);
+        server.start();
+        rootUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    @Benchmark
+    public long crawl(Pages pages) {
+        final AtomicLong searchedPages = new AtomicLong();
+        WebCrawler crawler = new WebCrawler(rootUrl);
+        crawler.crawl(numPages, numWorkers, new SearchFactory() {
+            @Override
+            public Search[] createSearches() {
+                return new Search[] {
+                    new TextSearch("github") {
+                        @Override
+                        public void initialize(String pageUrl) {
+                            super.initialize(pageUrl);
+                            searchedPages.incrementAndGet();
+                        }
+
+                        @Override
+                        public void onFoundString(String matchedString, int characterIndex) {
+                        }
+                    },
+                    new XMLTagSearch("img") {
+                        @Override
+                        public void onFoundTag(HashMap<String, String> attributes, String tagContents) {
+                        }
+                    }
+                };
+            }
+        });
+        pages.pages += searchedPages.get();
+        return searchedPages.get();
+    }
+
+}
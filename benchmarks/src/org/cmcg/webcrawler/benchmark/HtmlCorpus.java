@@ -0,0 +1,129 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Pages searched by the benchmarks. Synthetic pages are generated from a fixed seed so every run searches the same text,
+ * real pages are read from a directory of saved .html files.
+ */
+public class HtmlCorpus {
+
+    private static final String[] WORDS = {
+        "crawler", "search", "github", "page", "image", "link", "the", "and", "of", "to", "in", "for",
+        "content", "server", "request", "response", "header", "body", "table", "script", "style"
+    };
+
+    private static final String[] TAGS = {"div", "span", "p", "li", "td", "h2", "em", "strong"};
+
+    private List<String> pages;
+    private long bytes;
+
+    private HtmlCorpus(List<String> pages) {
+        this.pages = pages;
+        for (String page : pages) {
+            bytes += page.length();
+        }
+    }
+
+    /**
+     * @param directory A directory of .html files, or an empty string for synthetic pages
+     * @param numPages The amount of synthetic pages
+     * @param pageSize The approximate size of each synthetic page in characters
+     */
+    public static HtmlCorpus load(String directory, int numPages, int pageSize) throws IOException {
+        if (directory.isEmpty()) {
+            return synthetic(numPages, pageSize, 42);
+        }
+        File[] files = new File(directory).listFiles();
+        if (files == null) {
+            throw new IOException("Not a directory: " + directory);
+        }
+        Arrays.sort(files);
+        ArrayList<String> pages = new ArrayList<String>();
+        for (File file : files) {
+            if (file.getName().toLowerCase().endsWith(".html")) {
+                pages.add(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            }
+        }
+        if (pages.isEmpty()) {
+            throw new IOException("No .html files in " + directory);
+        }
+        return new HtmlCorpus(pages);
+    }
+
+    /**
+     * @param numPages The amount of pages
+     * @param pageSize The approximate size of each page in characters
+     * @param seed The seed the pages are generated from
+     */
+    public static HtmlCorpus synthetic(int numPages, int pageSize, long seed) {
+        Random random = new Random(seed);
+        ArrayList<String> pages = new ArrayList<String>();
+        for (int i = 0; i < numPages; i++) {
+            pages.add(page(random, pageSize, null));
+        }
+        return new HtmlCorpus(pages);
+    }
+
+    /**
+     * Generates a page of nested tags, text, links and images
+     * @param random The source of the page's content
+     * @param pageSize The approximate size of the page in characters
+     * @param links The hrefs of the page's links, or null for random links
+     */
+    public static String page(Random random, int pageSize, List<String> links) {
+        StringBuilder page = new StringBuilder(pageSize + 256);
+        page.append("<!DOCTYPE html>\n<html><head><title>Benchmark page</title>");
+        page.append("<script>var x = \"<b>\" + 1 < 2;</script></head>\n<body>\n");
+        int link = 0;
+        while (page.length() < pageSize) {
+            String tag = TAGS[random.nextInt(TAGS.length)];
+            page.append('<').append(tag).append(" class=\"c").append(random.nextInt(10)).append("\">");
+            for (int i = random.nextInt(20); i >= 0; i--) {
+                page.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            int element = random.nextInt(8);
+            if (element == 0) {
+                String href = links == null ? "/page" + random.nextInt(1000) + ".html"
+                        : links.isEmpty() ? null : links.get(link++ % links.size());
+                if (href != null) {
+                    page.append("<a href=\"").append(href).append("\">link</a> ");
+                }
+            } else if (element == 1) {
+                page.append("<img src=\"/img").append(random.nextInt(100)).append(".png\" alt=\"image\"> ");
+            }
+            page.append("</").append(tag).append(">\n");
+        }
+        if (links != null) {
+            // Every link appears at least once
+            for (; link < links.size(); link++) {
+                page.append("<a href=\"").append(links.get(link)).append("\">link</a>\n");
+            }
+        }
+        page.append("</body></html>\n");
+        return page.toString();
+    }
+
+    public List<String> getPages() {
+        return pages;
+    }
+
+    /**
+     * @return The total size of the pages in characters
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+}
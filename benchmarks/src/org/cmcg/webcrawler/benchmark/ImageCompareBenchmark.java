@@ -0,0 +1,127 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.benchmark;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.nikm.webcrawler.image.HashIndex;
+import org.nikm.webcrawler.image.ImageHash;
+import org.nikm.webcrawler.image.ImagePixels;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The steps {@link org.nikm.webcrawler.search.HTMLImageSearch} takes to compare a site image with the reference images:
+ * hashing it, finding the references with similar hashes, reading its pixels and comparing them with each candidate's.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ImageCompareBenchmark {
+
+    @Param({"1000", "100000"})
+    public int numReferences;
+
+    @Param({"320"})
+    public int imageWidth;
+
+    @Param({"8"})
+    public int maxHashDistance;
+
+    private BufferedImage siteImage;
+    private long siteHash;
+    private int[] sitePixels;
+    private int[] referencePixels;
+    private int[] pixelBuffer;
+    private HashIndex index;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int imageHeight = imageWidth * 3 / 4;
+        siteImage = image(new Random(1), imageWidth, imageHeight);
+        siteHash = ImageHash.hash(ImageHash.PERCEPTUAL, siteImage);
+        sitePixels = ImagePixels.argb(siteImage, null).clone();
+        referencePixels = sitePixels.clone();
+        pixelBuffer = new int[imageWidth * imageHeight];
+
+        // Hashing real images is slow, the other references get random hashes
+        Random random = new Random(2);
+        index = new HashIndex();
+        index.add(siteHash, 0);
+        for (int i = 1; i < numReferences; i++) {
+            index.add(random.nextLong(), i);
+        }
+    }
+
+    private static BufferedImage image(Random random, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g = image.createGraphics();
+        for (int i = 0; i < 30; i++) {
+            g.setColor(new Color(random.nextInt()));
+            g.fillOval(random.nextInt(width), random.nextInt(height), random.nextInt(width), random.nextInt(height));
+        }
+        g.dispose();
+        return image;
+    }
+
+    @Benchmark
+    public long perceptualHash() {
+        return ImageHash.hash(ImageHash.PERCEPTUAL, siteImage);
+    }
+
+    @Benchmark
+    public int[] indexSearch() {
+        return index.search(siteHash, maxHashDistance);
+    }
+
+    @Benchmark
+    public int[] readPixels() {
+        return ImagePixels.argb(siteImage, pixelBuffer);
+    }
+
+    @Benchmark
+    public int[] scalePixels() {
+        return ImagePixels.scale(siteImage, imageWidth / 2, imageWidth * 3 / 8);
+    }
+
+    /**
+     * Comparing equal images reads every pixel, the most a comparison can cost
+     */
+    @Benchmark
+    public boolean comparePixels() {
+        return ImagePixels.equal(referencePixels, sitePixels, sitePixels.length);
+    }
+
+    @Benchmark
+    public int compareImage() {
+        int[] candidates = index.search(ImageHash.hash(ImageHash.PERCEPTUAL, siteImage), maxHashDistance);
+        int[] pixels = ImagePixels.argb(siteImage, pixelBuffer);
+        int matches = 0;
+        for (int candidate : candidates) {
+            if (candidate == 0 && ImagePixels.equal(referencePixels, pixels, pixels.length)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+}
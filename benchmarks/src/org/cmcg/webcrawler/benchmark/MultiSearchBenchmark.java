@@ -0,0 +1,104 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.nikm.webcrawler.search.MultiTextSearch;
+import org.nikm.webcrawler.search.Search;
+import org.nikm.webcrawler.search.SearchUtil;
+import org.nikm.webcrawler.search.TextSearch;
+import org.nikm.webcrawler.search.XMLTagSearch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The time to search a page as the amount of searches grows. Separate text searches each scan the page,
+ * while a single {@link MultiTextSearch} and grouped tag searches scan it once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MultiSearchBenchmark {
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int numSearches;
+
+    @Param({"65536"})
+    public int pageSize;
+
+    private String page;
+    private Search[] textSearches;
+    private Search multiTextSearch;
+    private Search[] tagSearches;
+
+    @Setup(Level.Trial)
+    public void setup(final Blackhole blackhole) {
+        this.page = HtmlCorpus.synthetic(1, pageSize, 42).getPages().get(0);
+
+        List<String> keywords = new ArrayList<String>();
+        textSearches = new Search[numSearches];
+        for (int i = 0; i < numSearches; i++) {
+            String keyword = "keyword" + i;
+            keywords.add(keyword);
+            textSearches[i] = new TextSearch(keyword) {
+                @Override
+                public void onFoundString(String matchedString, int characterIndex) {
+                    blackhole.consume(characterIndex);
+                }
+            };
+        }
+        multiTextSearch = new MultiTextSearch(keywords, true) {
+            @Override
+            public void onFoundString(String keyword, int characterIndex) {
+                blackhole.consume(characterIndex);
+            }
+        };
+
+        String[] tags = {"a", "img", "div", "span", "p", "li", "td", "h2"};
+        tagSearches = new Search[numSearches];
+        for (int i = 0; i < numSearches; i++) {
+            tagSearches[i] = new XMLTagSearch(tags[i % tags.length]) {
+                @Override
+                public void onFoundTag(HashMap<String, String> attributes, String tagContents) {
+                    blackhole.consume(attributes);
+                }
+            };
+        }
+    }
+
+    @Benchmark
+    public void textSearches() {
+        SearchUtil.executeSearch(page, textSearches);
+    }
+
+    @Benchmark
+    public void multiTextSearch() {
+        SearchUtil.executeSearch(page, multiTextSearch);
+    }
+
+    @Benchmark
+    public void tagSearches() {
+        SearchUtil.executeSearch(page, tagSearches);
+    }
+
+}
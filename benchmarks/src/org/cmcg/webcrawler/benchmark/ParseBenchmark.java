@@ -0,0 +1,156 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.benchmark;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.nikm.webcrawler.search.MultiTextSearch;
+import org.nikm.webcrawler.search.Search;
+import org.nikm.webcrawler.search.SearchUtil;
+import org.nikm.webcrawler.search.TextSearch;
+import org.nikm.webcrawler.search.XMLTagSearch;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of each kind of search over a corpus of pages. Each operation searches one page,
+ * the bytes counter gives the throughput in characters per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseBenchmark {
+
+    /**
+     * A directory of saved .html pages, or an empty string for synthetic pages
+     */
+    @Param({""})
+    public String corpusDir;
+
+    @Param({"65536"})
+    public int pageSize;
+
+    private List<String> pages;
+    private int page;
+    private Blackhole blackhole;
+
+    private Search textSearch;
+    private Search caseInsensitiveSearch;
+    private Search multiTextSearch;
+    private Search tagSearch;
+    private Search[] allSearches;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bytes {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            bytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup(Blackhole blackhole) throws IOException {
+        this.pages = HtmlCorpus.load(corpusDir, 16, pageSize).getPages();
+        this.blackhole = blackhole;
+        textSearch = newTextSearch("github", true);
+        caseInsensitiveSearch = newTextSearch("GitHub", false);
+        multiTextSearch = new MultiTextSearch("github", "gitlab", "bitbucket", "crawler", "server") {
+            @Override
+            public void onFoundString(String keyword, int characterIndex) {
+                ParseBenchmark.this.blackhole.consume(characterIndex);
+            }
+        };
+        tagSearch = newTagSearch("a");
+        allSearches = new Search[] {newTextSearch("github", true), newTagSearch("a"), newTagSearch("img")};
+    }
+
+    private Search newTextSearch(String text, boolean caseSensitive) {
+        return new TextSearch(text, caseSensitive) {
+            @Override
+            public void onFoundString(String matchedString, int characterIndex) {
+                blackhole.consume(characterIndex);
+            }
+        };
+    }
+
+    private Search newTagSearch(String tag) {
+        return new XMLTagSearch(tag) {
+            @Override
+            public void onFoundTag(HashMap<String, String> attributes, String tagContents) {
+                blackhole.consume(attributes);
+            }
+        };
+    }
+
+    private String nextPage(Bytes bytes) {
+        String text = pages.get(page);
+        page = (page + 1) % pages.size();
+        bytes.bytes += text.length();
+        return text;
+    }
+
+    @Benchmark
+    public void textSearch(Bytes bytes) {
+        SearchUtil.executeSearch(nextPage(bytes), textSearch);
+    }
+
+    @Benchmark
+    public void caseInsensitiveTextSearch(Bytes bytes) {
+        SearchUtil.executeSearch(nextPage(bytes), caseInsensitiveSearch);
+    }
+
+    @Benchmark
+    public void multiTextSearch(Bytes bytes) {
+        SearchUtil.executeSearch(nextPage(bytes), multiTextSearch);
+    }
+
+    @Benchmark
+    public void tagSearch(Bytes bytes) {
+        SearchUtil.executeSearch(nextPage(bytes), tagSearch);
+    }
+
+    /**
+     * Feeds the page one char at a time, as searches were fed before they processed chunks
+     */
+    @Benchmark
+    public void tagSearchPerChar(Bytes bytes) {
+        String text = nextPage(bytes);
+        tagSearch.initialize("");
+        for (int i = 0; i < text.length(); i++) {
+            tagSearch.processChar(text.charAt(i));
+        }
+        tagSearch.reset();
+    }
+
+    /**
+     * The searches run by a crawl worker on every page, a text search plus link and image tag searches
+     */
+    @Benchmark
+    public void crawlerSearches(Bytes bytes) {
+        SearchUtil.executeSearch(nextPage(bytes), allSearches);
+    }
+
+}
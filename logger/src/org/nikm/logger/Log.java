@@ -0,0 +1,27 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.logger;
+
+/**
+ * Writes the crawler's messages to the console. Errors go to standard error.
+ */
+public class Log {
+
+    private Log() {
+    }
+
+    public static void log(String message) {
+        System.out.println(message);
+    }
+
+    public static void debug(String message) {
+        System.out.println("[DEBUG] " + message);
+    }
+
+    public static void error(String message) {
+        System.err.println("[ERROR] " + message);
+    }
+
+}
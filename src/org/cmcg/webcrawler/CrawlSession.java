@@ -0,0 +1,368 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.nikm.logger.Log;
+import org.nikm.webcrawler.cluster.ClusterListener;
+import org.nikm.webcrawler.cluster.ClusterNode;
+import org.nikm.webcrawler.frontier.DiskFrontier;
+import org.nikm.webcrawler.frontier.Frontier;
+import org.nikm.webcrawler.frontier.FrontierEntry;
+import org.nikm.webcrawler.log.CrawlLog;
+import org.nikm.webcrawler.politeness.HostScheduler;
+import org.nikm.webcrawler.politeness.PolitenessPolicy;
+import org.nikm.webcrawler.url.UrlCanonicalizer;
+
+/**
+ * The state of a single crawl, shared between all of its workers
+ */
+class CrawlSession {
+
+    /**
+     * The most pages taken from the frontier while waiting for their hosts
+     */
+    private static final int MAX_SCHEDULED_PAGES = 1000;
+
+    /**
+     * The most pages of one host taken from the frontier while waiting for the host,
+     * so a host with a long request delay can't hold up the pages of other hosts
+     */
+    private static final int MAX_SCHEDULED_PAGES_PER_HOST = 100;
+
+    /**
+     * The longest time an idle worker waits before checking whether the cluster has finished
+     */
+    private static final long CLUSTER_WAIT = 100;
+
+    private int maxPages;
+
+    private Frontier frontier;
+    private PolitenessPolicy policy;
+    private HostScheduler scheduler;
+    // Keyed by url, entries may be recreated by a DiskFrontier checkpoint
+    private HashMap<String, Integer> retries;
+    private ArrayList<FrontierEntry> pagesInProgress;
+    private int checkpointInterval;
+    private ClusterNode cluster;
+
+    private int visitedPages;
+    private int reservedPages;
+    private int activeWorkers;
+    private boolean stopped;
+    // Every page in the frontier is for a host that has too many scheduled pages
+    private boolean frontierBlocked;
+
+    /**
+     * @param maxPages The maximum amount of pages to search, 0 for no limit
+     * @param frontier Holds the pages that still need to be visited
+     * @param checkpointInterval The amount of visited pages between checkpoints of a {@link DiskFrontier}
+     * @param policy The limits on requests to each host
+     */
+    CrawlSession(int maxPages, Frontier frontier, int checkpointInterval, PolitenessPolicy policy) {
+        this.maxPages = maxPages;
+        this.frontier = frontier;
+        this.checkpointInterval = checkpointInterval;
+        this.policy = policy;
+        this.scheduler = new HostScheduler(policy);
+        this.retries = new HashMap<String, Integer>();
+        this.pagesInProgress = new ArrayList<FrontierEntry>();
+    }
+
+    /**
+     * Splits the crawl with other nodes. Pages on hosts other nodes crawl are forwarded to them,
+     * and the crawl only ends once every node is out of pages.
+     * @param cluster This node of the cluster, started by this call
+     */
+    void setCluster(ClusterNode cluster) throws IOException {
+        this.cluster = cluster;
+        cluster.start(new ClusterListener() {
+            @Override
+            public void onPage(String url, int depth) {
+                addPage(url, depth);
+            }
+
+            @Override
+            public int getReservedPages() {
+                return getNumReservedPages();
+            }
+
+            @Override
+            public boolean isIdle() {
+                return isOutOfPages();
+            }
+
+            @Override
+            public void onClusterStatus() {
+                wakeWorkers();
+            }
+        });
+    }
+
+    /**
+     * Continues a crawl from the last checkpoint of a {@link DiskFrontier}
+     * @param visitedPages The amount of pages visited before the checkpoint
+     * @param pendingPages The pages that were being visited at the checkpoint
+     */
+    synchronized void resume(int visitedPages, List<FrontierEntry> pendingPages) {
+        this.visitedPages = visitedPages;
+        this.reservedPages = visitedPages;
+        long now = now();
+        for (FrontierEntry page : pendingPages) {
+            scheduler.add(page, now);
+        }
+    }
+
+    /**
+     * Saves the crawl's progress if it uses a {@link DiskFrontier}.
+     * Only taking the snapshot holds up the other workers, it is written to disk after.
+     */
+    void checkpoint() {
+        if (!(frontier instanceof DiskFrontier)) {
+            return;
+        }
+        DiskFrontier diskFrontier = (DiskFrontier) frontier;
+        try {
+            DiskFrontier.Checkpoint snapshot;
+            synchronized (this) {
+                ArrayList<FrontierEntry> pending = new ArrayList<FrontierEntry>(pagesInProgress);
+                pending.addAll(scheduler.getQueuedPages());
+                snapshot = diskFrontier.prepareCheckpoint(pending, visitedPages);
+            }
+            diskFrontier.writeCheckpoint(snapshot);
+        } catch (IOException e) {
+            Log.error("Could not save checkpoint" + Arrays.toString(e.getStackTrace()));
+        }
+    }
+
+    /**
+     * Queues a page to be visited, unless it has been queued before
+     * @param url The url of the page, made canonical by a {@link UrlCanonicalizer}
+     * @param depth The amount of links followed from the root page
+     */
+    synchronized void addPage(String url, int depth) {
+        addPage(url, depth, 0);
+    }
+
+    /**
+     * Queues a page to be visited, unless it has been queued before
+     * @param url The url of the page, made canonical by a {@link UrlCanonicalizer}
+     * @param depth The amount of links followed from the root page
+     * @param score The priority of the page, see {@link FrontierEntry#getScore()}
+     */
+    synchronized void addPage(String url, int depth, double score) {
+        String host = UrlCanonicalizer.getHost(url);
+        if (host == null) {
+            Log.error("Not a canonical URL: " + url);
+            return;
+        }
+        if (cluster != null && !cluster.isLocal(host)) {
+            cluster.forward(url, host, depth);
+            return;
+        }
+        if (frontier.offer(new FrontierEntry(url, url, host, depth, score))) {
+            frontierBlocked = false;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Takes the next page that needs to be searched and reserves a page slot for it.
+     * Blocks while the frontier is empty but other workers may still find links,
+     * and while every host with queued pages must wait before it is sent another request.
+     * @return The next page, or null if the crawl is finished
+     */
+    synchronized FrontierEntry nextPage() throws InterruptedException {
+        while (!stopped) {
+            if (maxPages != 0 && reservedPages + (cluster != null ? cluster.getRemoteReservedPages() : 0) >= maxPages) {
+                if (activeWorkers == 0) {
+                    break;
+                }
+                // A reserved page may still fail and free its slot
+                wait();
+                continue;
+            }
+
+            long now = now();
+            FrontierEntry page = scheduler.poll(now);
+            if (page == null && scheduler.size() < MAX_SCHEDULED_PAGES && !frontierBlocked) {
+                FrontierEntry next = pollFrontier();
+                if (next != null) {
+                    scheduler.add(next, now);
+                    continue;
+                }
+                frontierBlocked = true;
+            }
+
+            if (page == null) {
+                if (activeWorkers == 0 && scheduler.size() == 0) {
+                    if (cluster == null || cluster.isFinished()) {
+                        // Out of pages
+                        break;
+                    }
+                    // Other nodes may still forward pages
+                    wait(CLUSTER_WAIT);
+                    continue;
+                }
+                long readyTime = scheduler.getNextReadyTime();
+                if (readyTime == Long.MAX_VALUE) {
+                    wait();
+                } else {
+                    wait(Math.max(1, readyTime - now));
+                }
+                continue;
+            }
+
+            // The page's host may take another page
+            frontierBlocked = false;
+            pagesInProgress.add(page);
+            reservedPages++;
+            activeWorkers++;
+            return page;
+        }
+        stopped = true;
+        notifyAll();
+        return null;
+    }
+
+    /**
+     * Takes the next page of the frontier whose host has room for more scheduled pages.
+     * Pages of hosts without room are put back, after at most one pass through the frontier.
+     * @return The page, or null if there is none
+     */
+    private FrontierEntry pollFrontier() {
+        int remaining = frontier.size();
+        while (remaining-- > 0) {
+            FrontierEntry next = frontier.poll();
+            if (scheduler.size(next.getHost()) < MAX_SCHEDULED_PAGES_PER_HOST) {
+                return next;
+            }
+            frontier.requeue(next);
+        }
+        return null;
+    }
+
+    /**
+     * Called when a page was searched successfully
+     * @param page The page returned by {@link #nextPage()}
+     */
+    void pageVisited(FrontierEntry page) {
+        boolean checkpointDue;
+        synchronized (this) {
+            pagesInProgress.remove(page);
+            retries.remove(page.getUrl());
+            scheduler.release(page, now());
+            visitedPages++;
+            activeWorkers--;
+            checkpointDue = checkpointInterval > 0 && visitedPages % checkpointInterval == 0;
+            notifyAll();
+        }
+        if (checkpointDue) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Called when a page could not be searched and should not be tried again
+     * @param page The page returned by {@link #nextPage()}
+     */
+    synchronized void pageInvalid(FrontierEntry page) {
+        pagesInProgress.remove(page);
+        retries.remove(page.getUrl());
+        scheduler.release(page, now());
+        releasePage();
+    }
+
+    /**
+     * Called when a page could not be searched but may work later.
+     * The page is tried again after a delay that doubles with every attempt, until the policy's retries run out.
+     * @param page The page returned by {@link #nextPage()}
+     * @param retryAfter The delay asked for by the server in milliseconds, 0 if there was none
+     */
+    synchronized void pageRetry(FrontierEntry page, long retryAfter) {
+        pagesInProgress.remove(page);
+        long now = now();
+        scheduler.release(page, now);
+
+        Integer previous = retries.get(page.getUrl());
+        int attempt = previous == null ? 1 : previous + 1;
+        if (attempt > policy.getMaxRetries()) {
+            Log.error("Giving up on URL: " + page.getUrl() + " after " + (attempt - 1) + " retries");
+            retries.remove(page.getUrl());
+        } else {
+            long delay = Math.max(policy.getRetryDelay(attempt), retryAfter);
+            CrawlLog.info("Retrying URL: {} in {}ms", page.getUrl(), delay);
+            retries.put(page.getUrl(), attempt);
+            // Already deduplicated when first queued
+            scheduler.retry(page, delay, now);
+        }
+        releasePage();
+    }
+
+    /**
+     * Waits until a host may be sent a request that isn't one of the crawl's pages, such as an image,
+     * within the host's request delay
+     * @param host The lower case host
+     */
+    synchronized void acquireHost(String host) throws InterruptedException {
+        long readyTime;
+        while ((readyTime = scheduler.acquire(host, now())) != 0) {
+            wait(Math.max(1, readyTime - now()));
+        }
+    }
+
+    /**
+     * Sets the Crawl-delay a host asked for in its robots.txt
+     * @param host The lower case host
+     * @param crawlDelay The delay in milliseconds
+     */
+    synchronized void setCrawlDelay(String host, long crawlDelay) {
+        scheduler.setCrawlDelay(host, crawlDelay, now());
+    }
+
+    private void releasePage() {
+        reservedPages--;
+        activeWorkers--;
+        notifyAll();
+    }
+
+    /**
+     * Stops the crawl, workers finish their current page and exit
+     */
+    synchronized void stop() {
+        stopped = true;
+        notifyAll();
+    }
+
+    synchronized int getNumVisitedPages() {
+        return visitedPages;
+    }
+
+    private synchronized int getNumReservedPages() {
+        return reservedPages;
+    }
+
+    private synchronized boolean isOutOfPages() {
+        return activeWorkers == 0 && scheduler.size() == 0 && frontier.size() == 0;
+    }
+
+    private synchronized void wakeWorkers() {
+        notifyAll();
+    }
+
+    synchronized int getNumQueuedPages() {
+        return frontier.size() + scheduler.size();
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+}
@@ -0,0 +1,262 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.nikm.webcrawler.log.CrawlLog;
+
+/**
+ * Reads a page's bytes straight from the stream into a heap buffer and decodes them in bulk.
+ * A direct buffer would add a copy, since a stream can only be read into a byte array.
+ * Decoders are pooled with their buffers and charset decoders, so decoding a page allocates next to nothing.
+ * The charset is taken from the byte order mark, the Content-Type header or a meta tag, in that order.
+ */
+class PageDecoder {
+
+    /**
+     * Receives decoded characters
+     */
+    interface CharSink {
+        void onChars(char[] buf, int off, int len);
+    }
+
+    static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
+
+    private static final int BYTE_BUFFER_SIZE = 64 * 1024;
+    private static final int CHAR_BUFFER_SIZE = 16 * 1024;
+    // How many bytes are checked for a meta charset tag
+    private static final int SNIFF_SIZE = 1024;
+    private static final int MAX_POOLED = 64;
+
+    private static final ConcurrentLinkedQueue<PageDecoder> POOL = new ConcurrentLinkedQueue<PageDecoder>();
+    private static final AtomicInteger POOL_SIZE = new AtomicInteger();
+
+    private ByteBuffer bytes;
+    private CharBuffer chars;
+    private HashMap<Charset, CharsetDecoder> decoders;
+
+    private PageDecoder() {
+        this.bytes = ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+        this.chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+        this.decoders = new HashMap<Charset, CharsetDecoder>();
+    }
+
+    /**
+     * @return A decoder from the pool, or a new one if the pool is empty
+     */
+    static PageDecoder acquire() {
+        PageDecoder decoder = POOL.poll();
+        if (decoder == null) {
+            return new PageDecoder();
+        }
+        POOL_SIZE.decrementAndGet();
+        return decoder;
+    }
+
+    /**
+     * Returns a decoder to the pool
+     * @param decoder The decoder from {@link #acquire()}
+     */
+    static void release(PageDecoder decoder) {
+        if (POOL_SIZE.incrementAndGet() <= MAX_POOLED) {
+            POOL.offer(decoder);
+        } else {
+            POOL_SIZE.decrementAndGet();
+        }
+    }
+
+    /**
+     * Decodes a page
+     * @param in The page's content
+     * @param contentType The Content-Type header, may be null
+     * @param maxBytes The maximum amount of bytes to read, 0 for no limit
+     * @param sink Receives the decoded characters
+     * @return The amount of bytes read
+     */
+    long decode(InputStream in, String contentType, long maxBytes, CharSink sink) throws IOException {
+        bytes.clear();
+        chars.clear();
+
+        long totalBytes = 0;
+        boolean eof = false;
+
+        // Fill the start of the page to look for a charset
+        while (bytes.position() < SNIFF_SIZE && !eof) {
+            int n = read(in, maxBytes - totalBytes, maxBytes);
+            if (n == -1) {
+                eof = true;
+            } else {
+                totalBytes += n;
+                eof = maxBytes != 0 && totalBytes >= maxBytes;
+            }
+        }
+        bytes.flip();
+
+        CharsetDecoder decoder = decoderFor(detectCharset(contentType));
+
+        while (true) {
+            CoderResult result = decoder.decode(bytes, chars, eof);
+            if (result.isOverflow()) {
+                flushChars(sink);
+                continue;
+            }
+            // Underflow, need more bytes
+            if (eof) {
+                break;
+            }
+            bytes.compact();
+            int n = read(in, maxBytes - totalBytes, maxBytes);
+            if (n == -1) {
+                eof = true;
+            } else {
+                totalBytes += n;
+                if (maxBytes != 0 && totalBytes >= maxBytes) {
+                    CrawlLog.info("Page is larger than {} bytes, ignoring the rest", maxBytes);
+                    eof = true;
+                }
+            }
+            bytes.flip();
+        }
+
+        while (decoder.flush(chars).isOverflow()) {
+            flushChars(sink);
+        }
+        flushChars(sink);
+        return totalBytes;
+    }
+
+    private int read(InputStream in, long bytesLeft, long maxBytes) throws IOException {
+        int length = bytes.remaining();
+        if (maxBytes != 0 && length > bytesLeft) {
+            length = (int) bytesLeft;
+        }
+        int n = in.read(bytes.array(), bytes.arrayOffset() + bytes.position(), length);
+        if (n > 0) {
+            bytes.position(bytes.position() + n);
+        }
+        return n;
+    }
+
+    private void flushChars(CharSink sink) {
+        if (chars.position() > 0) {
+            sink.onChars(chars.array(), 0, chars.position());
+            chars.clear();
+        }
+    }
+
+    private CharsetDecoder decoderFor(Charset charset) {
+        CharsetDecoder decoder = decoders.get(charset);
+        if (decoder == null) {
+            decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            decoders.put(charset, decoder);
+        }
+        return decoder.reset();
+    }
+
+    /**
+     * Picks the page's charset, skipping a byte order mark if there is one
+     * @param contentType The Content-Type header, may be null
+     * @return The charset
+     */
+    private Charset detectCharset(String contentType) {
+        int start = bytes.position();
+        int available = bytes.remaining();
+
+        if (available >= 3 && (bytes.get(start) & 0xFF) == 0xEF && (bytes.get(start + 1) & 0xFF) == 0xBB
+                && (bytes.get(start + 2) & 0xFF) == 0xBF) {
+            bytes.position(start + 3);
+            return StandardCharsets.UTF_8;
+        }
+        if (available >= 2 && (bytes.get(start) & 0xFF) == 0xFE && (bytes.get(start + 1) & 0xFF) == 0xFF) {
+            bytes.position(start + 2);
+            return StandardCharsets.UTF_16BE;
+        }
+        if (available >= 2 && (bytes.get(start) & 0xFF) == 0xFF && (bytes.get(start + 1) & 0xFF) == 0xFE) {
+            bytes.position(start + 2);
+            return StandardCharsets.UTF_16LE;
+        }
+
+        Charset charset = contentType != null ? charsetFromParameter(contentType) : null;
+        if (charset == null) {
+            charset = charsetFromMeta();
+        }
+        return charset != null ? charset : DEFAULT_CHARSET;
+    }
+
+    /**
+     * Looks for the charset of a &lt;meta charset&gt; or &lt;meta http-equiv="Content-Type"&gt; tag
+     * at the start of the page
+     */
+    private Charset charsetFromMeta() {
+        int start = bytes.position();
+        int length = Math.min(bytes.remaining(), SNIFF_SIZE);
+        // Charset names and the markup around them are ASCII, so sniff the bytes as ISO-8859-1
+        char[] head = new char[length];
+        for (int i = 0; i < length; i++) {
+            char c = (char) (bytes.get(start + i) & 0xFF);
+            head[i] = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        String text = new String(head);
+
+        int meta = text.indexOf("<meta");
+        while (meta != -1) {
+            int end = text.indexOf('>', meta);
+            if (end == -1) {
+                end = text.length();
+            }
+            Charset charset = charsetFromParameter(text.substring(meta, end));
+            if (charset != null) {
+                return charset;
+            }
+            meta = text.indexOf("<meta", end);
+        }
+        return null;
+    }
+
+    /**
+     * Reads a <code>charset=</code> parameter, e.g. from <code>text/html; charset=utf-8</code>
+     * @return The charset, or null if there is none or it isn't supported
+     */
+    static Charset charsetFromParameter(String text) {
+        int index = text.toLowerCase(Locale.ROOT).indexOf("charset=");
+        if (index == -1) {
+            return null;
+        }
+        int start = index + 8;
+        while (start < text.length() && (text.charAt(start) == '"' || text.charAt(start) == '\''
+                || text.charAt(start) == ' ')) {
+            start++;
+        }
+        int end = start;
+        while (end < text.length()) {
+            char c = text.charAt(end);
+            if (c == '"' || c == '\'' || c == ';' || c == ' ' || c == '/' || c == '>') {
+                break;
+            }
+            end++;
+        }
+        try {
+            return Charset.forName(text.substring(start, end));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+}
@@ -4,74 +4,425 @@
 */
 package org.nikm.webcrawler;
 
-import java.io.BufferedReader;
+import java.io.CharArrayWriter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
-import org.nikm.logger.Log;
+import org.nikm.webcrawler.cache.PageCache;
+import org.nikm.webcrawler.cache.PageMetadata;
+import org.nikm.webcrawler.cache.SimHash;
+import org.nikm.webcrawler.fetch.FetchResponse;
+import org.nikm.webcrawler.fetch.HttpClientFetcher;
+import org.nikm.webcrawler.fetch.HttpStatusException;
+import org.nikm.webcrawler.fetch.PageFetcher;
+import org.nikm.webcrawler.log.CrawlLog;
+import org.nikm.webcrawler.metrics.CrawlMetrics;
+import org.nikm.webcrawler.search.HTMLTagTokenizer;
 import org.nikm.webcrawler.search.Search;
+import org.nikm.webcrawler.search.SearchUtil;
+import org.nikm.webcrawler.search.XMLTagSearch;
+import org.nikm.webcrawler.url.UrlCanonicalizer;
 
 public class PageReader {
     
+    /**
+     * The default maximum amount of bytes read from a page
+     */
+    public static final long DEFAULT_MAX_PAGE_SIZE = 10 * 1024 * 1024;
+    
+    /**
+     * Pages with fewer shingles than this are never treated as near duplicates
+     */
+    private static final int MIN_SIMHASH_FEATURES = 16;
+    
+    private static final UrlCanonicalizer CANONICALIZER = new UrlCanonicalizer();
+    
+    private static PageFetcher defaultFetcher;
+    
     private URL pageUrl;
     private String url;
+    private long maxPageSize;
+    private PageFetcher fetcher;
+    private PageCache pageCache;
+    private Search[] duplicateSearches;
+    private boolean unchanged;
+    private String duplicateOf;
+    private CrawlMetrics metrics;
+    private long fetchStart;
+    private long timeToFirstByte;
+    private long bytesRead;
+    private long searchTime;
 
     public PageReader(String pageUrl) throws MalformedURLException {
         this.pageUrl = new URL(pageUrl);
         this.url = pageUrl;
+        this.maxPageSize = DEFAULT_MAX_PAGE_SIZE;
     }
     
-    public void searchPage(Search... searches) throws IOException {
-        InputStream is;
-        try {
-            is = pageUrl.openStream();
-        } catch (FileNotFoundException e) {
-            Log.log("Skipping non-existent page: " + url);
-            return;
+    /**
+     * @return The fetcher used by pages that weren't given one, shared so connections are reused
+     */
+    public static synchronized PageFetcher getDefaultFetcher() {
+        if (defaultFetcher == null) {
+            defaultFetcher = new HttpClientFetcher();
+        }
+        return defaultFetcher;
+    }
+    
+    /**
+     * Sets the fetcher used to download the page
+     * @param fetcher The fetcher, or null for the default fetcher
+     */
+    public void setFetcher(PageFetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+    
+    /**
+     * Sets the maximum amount of bytes read from the page, the rest of the page is ignored
+     * @param maxPageSize The maximum page size in bytes, 0 for no limit
+     */
+    public void setMaxPageSize(long maxPageSize) {
+        this.maxPageSize = maxPageSize;
+    }
+    
+    /**
+     * Sets the cache used to send conditional requests and to skip pages that haven't changed
+     * or nearly duplicate another page. The cache is updated with the page.
+     * @param pageCache The cache, or null to always search the page
+     */
+    public void setPageCache(PageCache pageCache) {
+        this.pageCache = pageCache;
+    }
+    
+    /**
+     * Sets the searches that still run on a page that nearly duplicates another cached page,
+     * such as the crawler's link search, so the links of pages like the pages of a list are still followed
+     * @param duplicateSearches The searches, which must also be given to {@link #searchPage(Search...)}
+     */
+    public void setDuplicateSearches(Search... duplicateSearches) {
+        this.duplicateSearches = duplicateSearches;
+    }
+    
+    /**
+     * Sets the metrics the page's fetch and search times are recorded in
+     * @param metrics The metrics, or null to not record them
+     */
+    public void setMetrics(CrawlMetrics metrics) {
+        this.metrics = metrics;
+    }
+    
+    /**
+     * @return The key the page is stored under in the page cache, its canonical url
+     */
+    public String getCacheKey() {
+        String key = CANONICALIZER.canonicalize(url);
+        return key != null ? key : url;
+    }
+    
+    /**
+     * @return true if the last search skipped the page because it hasn't changed since it was cached
+     */
+    public boolean isUnchanged() {
+        return unchanged;
+    }
+    
+    /**
+     * @return The key of the cached page the last searched page nearly duplicates, or null if it doesn't
+     */
+    public String getDuplicateOf() {
+        return duplicateOf;
+    }
+    
+    /**
+     * @return The time from sending the last request to receiving the response headers, in nanoseconds
+     */
+    public long getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+    
+    /**
+     * @return The amount of bytes of the page read by the last search
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+    
+    /**
+     * @return The time the searches spent on the page during the last search, in nanoseconds
+     */
+    public long getSearchTime() {
+        return searchTime;
+    }
+    
+    /**
+     * Downloads the page and runs the searches on it
+     * @param searches The searches
+     * @return true if the searches were run, false if the page doesn't exist or was skipped by the page cache.
+     * The searches set by {@link #setDuplicateSearches(Search...)} are still run on a near duplicate page.
+     */
+    public boolean searchPage(Search... searches) throws IOException {
+        final Search[] pageSearches = SearchUtil.groupTagSearches(searches);
+        unchanged = false;
+        duplicateOf = null;
+        bytesRead = 0;
+        searchTime = 0;
+        if (pageCache != null) {
+            return searchCachedPage(pageSearches);
         }
         
-        for (Search search : searches) {
+        FetchResponse response = fetch(Collections.<String, String>emptyMap());
+        if (response == null) {
+            CrawlLog.info("Skipping non-existent page: {}", url);
+            return false;
+        }
+        
+        for (Search search : pageSearches) {
             search.initialize(this.url);
         }
         
-        BufferedReader br = new BufferedReader(new InputStreamReader(is));
-        char c;
-        int i;
-        while ((i = br.read()) != -1) {
-            c = (char) i;
-                for (Search search : searches) {
-                    search.processChar(c);
+        final long[] searchTimes = new long[pageSearches.length];
+        PageDecoder decoder = PageDecoder.acquire();
+        try {
+            bytesRead = decoder.decode(response.getBody(), response.getContentType(), maxPageSize, new PageDecoder.CharSink() {
+                @Override
+                public void onChars(char[] buf, int off, int len) {
+                    for (int i = 0; i < pageSearches.length; i++) {
+                        long start = System.nanoTime();
+                        pageSearches[i].processChars(buf, off, len);
+                        searchTimes[i] += System.nanoTime() - start;
+                    }
                 }
+            });
+        } finally {
+            PageDecoder.release(decoder);
+            response.close();
         }
         
-        for (Search search : searches) {
+        for (Search search : pageSearches) {
             search.reset();
+        }
+        recordSearchTimes(pageSearches, searchTimes);
+        recordFetch();
+        return true;
+    }
+    
+    /**
+     * Downloads the page with the validators of its cached copy, then hashes its text before searching it
+     * so unchanged pages and near duplicates can be skipped
+     */
+    private boolean searchCachedPage(Search[] pageSearches) throws IOException {
+        String key = getCacheKey();
+        PageMetadata cached = pageCache.get(key);
+        
+        HashMap<String, String> validators = new HashMap<String, String>();
+        if (cached != null) {
+            if (cached.getEtag() != null) {
+                validators.put("If-None-Match", cached.getEtag());
+            }
+            if (cached.getLastModified() != null) {
+                validators.put("If-Modified-Since", cached.getLastModified());
             }
+        }
+        
+        FetchResponse response = fetch(validators);
+        if (response == null) {
+            CrawlLog.info("Skipping non-existent page: {}", url);
+            return false;
+        }
+        if (response.getStatusCode() == 304) {
+            response.close();
+            recordFetch();
+            unchanged = true;
+            CrawlLog.info("Skipping unchanged page: {}", url);
+            return false;
+        }
         
-        is.close();
-        br.close();
+        final PageText text = new PageText();
+        final SimHash simHash = new SimHash();
+        PageDecoder decoder = PageDecoder.acquire();
+        try {
+            bytesRead = decoder.decode(response.getBody(), response.getContentType(), maxPageSize, new PageDecoder.CharSink() {
+                @Override
+                public void onChars(char[] buf, int off, int len) {
+                    text.write(buf, off, len);
+                    simHash.update(buf, off, len);
+                }
+            });
+        } finally {
+            PageDecoder.release(decoder);
+            response.close();
+        }
+        
+        recordFetch();
+        
+        long contentHash = text.hash();
+        String etag = response.getHeader("etag");
+        String lastModified = response.getHeader("last-modified");
+        if (cached != null && cached.getContentHash() == contentHash) {
+            // Keeps the simhash, which is only set if the page was searched
+            pageCache.put(new PageMetadata(key, etag, lastModified, contentHash, cached.getSimHash(), cached.getLinks()));
+            unchanged = true;
+            CrawlLog.info("Skipping unchanged page: {}", url);
+            return false;
+        }
+        
+        long pageSimHash = simHash.getNumFeatures() >= MIN_SIMHASH_FEATURES ? simHash.getValue() : 0;
+        duplicateOf = pageCache.putUnlessNearDuplicate(new PageMetadata(key, etag, lastModified, contentHash,
+                pageSimHash, cached != null ? cached.getLinks() : new String[0]));
+        if (duplicateOf != null) {
+            CrawlLog.info("Skipping near duplicate of {}: {}", duplicateOf, url);
+            if (duplicateSearches != null) {
+                searchText(SearchUtil.groupTagSearches(duplicateSearches), text);
+            }
+            return false;
+        }
+        
+        searchText(pageSearches, text);
+        return true;
+    }
+    
+    private void searchText(Search[] pageSearches, PageText text) {
+        for (Search search : pageSearches) {
+            search.initialize(this.url);
+        }
+        long[] searchTimes = new long[pageSearches.length];
+        for (int i = 0; i < pageSearches.length; i++) {
+            long start = System.nanoTime();
+            pageSearches[i].processChars(text.getBuffer(), 0, text.size());
+            searchTimes[i] = System.nanoTime() - start;
+        }
+        for (Search search : pageSearches) {
+            search.reset();
+        }
+        recordSearchTimes(pageSearches, searchTimes);
     }
     
     public String downloadPage() throws IOException {
-        InputStream is = pageUrl.openStream();
-        BufferedReader br = new BufferedReader(new InputStreamReader(is));
+        FetchResponse response = fetch(Collections.<String, String>emptyMap());
+        if (response == null) {
+            throw new FileNotFoundException(url);
+        }
         
-        StringBuilder page = new StringBuilder();
+        final StringBuilder page = new StringBuilder();
         
-        char c;
-        while ((c = (char) br.read()) != -1) {
-            page.append(c);
+        PageDecoder decoder = PageDecoder.acquire();
+        try {
+            decoder.decode(response.getBody(), response.getContentType(), maxPageSize, new PageDecoder.CharSink() {
+                @Override
+                public void onChars(char[] buf, int off, int len) {
+                    page.append(buf, off, len);
+                }
+            });
+        } finally {
+            PageDecoder.release(decoder);
+            response.close();
         }
-        
-        is.close();
-        br.close();
         return page.toString();
     }
     
+    /**
+     * Fetches the page
+     * @param requestHeaders Extra headers to send
+     * @return The response, or null if the page doesn't exist
+     * @throws IOException If the page could not be fetched
+     * @throws HttpStatusException If the server returned an error
+     */
+    private FetchResponse fetch(Map<String, String> requestHeaders) throws IOException {
+        fetchStart = System.nanoTime();
+        FetchResponse response = (fetcher != null ? fetcher : getDefaultFetcher()).fetch(pageUrl, requestHeaders);
+        timeToFirstByte = System.nanoTime() - fetchStart;
+        int statusCode = response.getStatusCode();
+        if (statusCode == 404 || statusCode == 410) {
+            response.close();
+            return null;
+        }
+        if (statusCode >= 400) {
+            response.close();
+            throw new HttpStatusException(url, statusCode,
+                    HttpStatusException.parseRetryAfter(response.getHeader("retry-after")));
+        }
+        if (statusCode == 304) {
+            return response;
+        }
+        try {
+            return unzip(response);
+        } catch (IOException e) {
+            response.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Decompresses gzip files that were sent without a Content-Encoding, such as a sitemap.xml.gz
+     * @param response The response
+     * @return The response with its body decompressed if it starts with the gzip magic number
+     */
+    private static FetchResponse unzip(FetchResponse response) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(response.getBody(), 2);
+        byte[] magic = new byte[2];
+        int n = in.readNBytes(magic, 0, 2);
+        in.unread(magic, 0, n);
+        InputStream body = in;
+        if (n == 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b) {
+            body = new GZIPInputStream(in, 8192);
+        }
+        return new FetchResponse(response.getUrl(), response.getStatusCode(), response.getHeaders(), body);
+    }
+    
+    /**
+     * Records the time to fetch the page, minus the time spent searching it while it was read
+     */
+    private void recordFetch() {
+        if (metrics != null) {
+            metrics.histogram(CrawlMetrics.TIME_TO_FIRST_BYTE).record(timeToFirstByte);
+            metrics.histogram(CrawlMetrics.FETCH_TIME).record(System.nanoTime() - fetchStart - searchTime);
+            metrics.counter(CrawlMetrics.BYTES).add(bytesRead);
+        }
+    }
+    
+    /**
+     * Records the time of each search. Tag searches grouped into a tokenizer are recorded under their own names,
+     * with the time spent tokenizing recorded under the tokenizer's.
+     */
+    private void recordSearchTimes(Search[] pageSearches, long[] searchTimes) {
+        for (int i = 0; i < pageSearches.length; i++) {
+            searchTime += searchTimes[i];
+            if (metrics == null) {
+                continue;
+            }
+            long time = searchTimes[i];
+            if (pageSearches[i] instanceof HTMLTagTokenizer) {
+                HTMLTagTokenizer tokenizer = (HTMLTagTokenizer) pageSearches[i];
+                XMLTagSearch[] tagSearches = tokenizer.getSearches();
+                long[] tagSearchTimes = tokenizer.getSearchTimes();
+                for (int j = 0; j < tagSearches.length; j++) {
+                    metrics.histogram(CrawlMetrics.SEARCH_TIME + searchName(tagSearches[j])).record(tagSearchTimes[j]);
+                    time -= tagSearchTimes[j];
+                }
+            }
+            metrics.histogram(CrawlMetrics.SEARCH_TIME + searchName(pageSearches[i])).record(time);
+        }
+    }
+    
+    /**
+     * @return The name of the search's class, or of the class it extends if it is anonymous
+     */
+    private static String searchName(Search search) {
+        Class<?> type = search.getClass();
+        while (type.isAnonymousClass()) {
+            type = type.getSuperclass();
+        }
+        return type.getSimpleName();
+    }
+    
     public URL getUrl() {
         return pageUrl;
     }
@@ -87,4 +438,30 @@ public class PageReader {
         return o == this;
     }
     
+    /**
+     * A page's text, kept so it can be hashed before it is searched
+     */
+    private static class PageText extends CharArrayWriter {
+        
+        PageText() {
+            super(8192);
+        }
+        
+        char[] getBuffer() {
+            return buf;
+        }
+        
+        /**
+         * @return A 64 bit FNV-1a hash of the text
+         */
+        long hash() {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < count; i++) {
+                hash = (hash ^ buf[i]) * 0x100000001b3L;
+            }
+            return hash;
+        }
+        
+    }
+    
 }
@@ -0,0 +1,109 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.nikm.webcrawler.fetch.FetchResponse;
+import org.nikm.webcrawler.fetch.PageFetcher;
+import org.nikm.webcrawler.politeness.RobotsCache;
+import org.nikm.webcrawler.politeness.RobotsDisallowedException;
+import org.nikm.webcrawler.politeness.RobotsRules;
+
+/**
+ * The fetcher given to a crawl's searches for the requests they make themselves, such as downloading images.
+ * Requests follow the robots.txt rules of their host and wait for the host's request delay like the crawl's pages.
+ */
+class PoliteFetcher implements PageFetcher {
+
+    /**
+     * Runs async fetches, which may wait a long time for robots.txt and their host's request delay.
+     * The common pool is left to computations; idle threads exit after a minute.
+     */
+    private static final ExecutorService ASYNC_FETCHES = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "polite-fetch-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private PageFetcher fetcher;
+    private CrawlSession session;
+    private RobotsCache robots;
+
+    /**
+     * @param fetcher The crawl's fetcher
+     * @param session The crawl, whose hosts are rate limited
+     * @param robots The crawl's robots.txt files, null to ignore them
+     */
+    PoliteFetcher(PageFetcher fetcher, CrawlSession session, RobotsCache robots) {
+        this.fetcher = fetcher;
+        this.session = session;
+        this.robots = robots;
+    }
+
+    @Override
+    public FetchResponse fetch(URL url) throws IOException {
+        return fetch(url, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * @throws RobotsDisallowedException If the url is disallowed by its host's robots.txt
+     */
+    @Override
+    public FetchResponse fetch(URL url, Map<String, String> requestHeaders) throws IOException {
+        String host = url.getHost().toLowerCase(Locale.ROOT);
+        try {
+            if (robots != null) {
+                RobotsRules rules = robots.getRules(url);
+                session.setCrawlDelay(host, rules.getCrawlDelay());
+                if (!rules.isAllowed(url.getFile())) {
+                    throw new RobotsDisallowedException(url.toString());
+                }
+            }
+            session.acquireHost(host);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + host);
+        }
+        return fetcher.fetch(url, requestHeaders);
+    }
+
+    @Override
+    public CompletableFuture<FetchResponse> fetchAsync(final URL url) {
+        final CompletableFuture<FetchResponse> future = new CompletableFuture<FetchResponse>();
+        ASYNC_FETCHES.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    future.complete(fetch(url));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public String getUserAgent() {
+        return fetcher.getUserAgent();
+    }
+
+}
@@ -0,0 +1,32 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler;
+
+import org.nikm.webcrawler.fetch.PageFetcher;
+import org.nikm.webcrawler.search.Search;
+
+/**
+ * Creates the searches used by a crawl worker.
+ * Search objects hold per-page state, so every call must return new instances.
+ */
+public interface SearchFactory {
+
+    /**
+     * @return A new set of searches for a single worker
+     */
+    public Search[] createSearches();
+
+    /**
+     * Creates the searches for a single worker, giving the searches that make requests of their own,
+     * such as an {@link org.nikm.webcrawler.search.HTMLImageSearch}, the crawl's fetcher.
+     * Calls {@link #createSearches()} by default.
+     * @param fetcher Fetches with the crawl's fetcher, following the robots.txt rules and request delay of each host
+     * @return A new set of searches for a single worker
+     */
+    public default Search[] createSearches(PageFetcher fetcher) {
+        return createSearches();
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+
+import org.nikm.logger.Log;
+import org.nikm.webcrawler.fetch.PageFetcher;
+import org.nikm.webcrawler.log.CrawlLog;
+import org.nikm.webcrawler.politeness.RobotsDisallowedException;
+import org.nikm.webcrawler.sitemap.SitemapListener;
+import org.nikm.webcrawler.sitemap.SitemapParser;
+import org.nikm.webcrawler.url.HostScope;
+import org.nikm.webcrawler.url.UrlCanonicalizer;
+
+/**
+ * Queues the pages listed by sitemaps and feeds before a crawl starts, following sitemap indexes.
+ * Pages are scored by how recently they changed, so a {@link org.nikm.webcrawler.frontier.PriorityFrontier}
+ * visits the newest pages first.
+ * Sitemaps are downloaded like the crawl's pages, following robots.txt and the request delay of their host.
+ */
+class SitemapSeeder implements SitemapListener {
+
+    /**
+     * The most sitemaps and feeds read in one crawl
+     */
+    static final int MAX_SITEMAPS = 1000;
+
+    /**
+     * The most of a sitemap that is read, after decompressing it
+     */
+    static final long MAX_SITEMAP_SIZE = 50 * 1024 * 1024;
+
+    /**
+     * The age in days at which a page's score is halved
+     */
+    private static final double SCORE_HALF_AGE = 30;
+
+    private CrawlSession session;
+    private UrlCanonicalizer canonicalizer;
+    private HostScope scope;
+    private PageFetcher fetcher;
+
+    private ArrayDeque<String> sitemaps;
+    private HashSet<String> seenSitemaps;
+    private String documentUrl;
+    private long now;
+    private int numPages;
+
+    /**
+     * @param session The crawl the pages are queued in
+     * @param canonicalizer Makes the listed urls canonical
+     * @param scope The pages outside of it are skipped
+     * @param fetcher Downloads the sitemaps, the crawl's {@link PoliteFetcher}
+     */
+    SitemapSeeder(CrawlSession session, UrlCanonicalizer canonicalizer, HostScope scope, PageFetcher fetcher) {
+        this.session = session;
+        this.canonicalizer = canonicalizer;
+        this.scope = scope;
+        this.fetcher = fetcher;
+        this.sitemaps = new ArrayDeque<String>();
+        this.seenSitemaps = new HashSet<String>();
+    }
+
+    /**
+     * Adds a sitemap, sitemap index or feed to read. It may be on any host, like the sitemaps listed by robots.txt.
+     * @param url The url of the document
+     */
+    void addSitemap(String url) {
+        if (seenSitemaps.size() < MAX_SITEMAPS && seenSitemaps.add(url)) {
+            sitemaps.add(url);
+        }
+    }
+
+    /**
+     * Reads the sitemaps and the sitemaps they list
+     * @return The amount of pages queued
+     */
+    int seed() throws InterruptedException {
+        SitemapParser parser = new SitemapParser(this);
+        now = System.currentTimeMillis();
+        while (!sitemaps.isEmpty()) {
+            documentUrl = sitemaps.poll();
+            CrawlLog.info("Reading sitemap: {}", documentUrl);
+            try {
+                PageReader reader = new PageReader(documentUrl);
+                reader.setFetcher(fetcher);
+                reader.setMaxPageSize(MAX_SITEMAP_SIZE);
+                if (!reader.searchPage(parser.getSearches())) {
+                    CrawlLog.info("Skipping non-existent sitemap: {}", documentUrl);
+                }
+            } catch (RobotsDisallowedException e) {
+                CrawlLog.info("Skipping sitemap disallowed by robots.txt: {}", documentUrl);
+            } catch (InterruptedIOException e) {
+                throw new InterruptedException(e.getMessage());
+            } catch (IOException e) {
+                Log.error("Could not read sitemap: " + documentUrl + " " + e.getMessage());
+            }
+        }
+        return numPages;
+    }
+
+    @Override
+    public void onPage(String url, long lastModified) {
+        String page = canonicalizer.canonicalize(documentUrl, url);
+        if (page == null || !scope.contains(page)) {
+            CrawlLog.debug("Skipping sitemap page: {}", url);
+            return;
+        }
+        numPages++;
+        session.addPage(page, 1, score(lastModified));
+    }
+
+    @Override
+    public void onSitemap(String url, long lastModified) {
+        String sitemap = canonicalizer.canonicalize(documentUrl, url);
+        if (sitemap == null || !scope.contains(sitemap)) {
+            CrawlLog.debug("Skipping sitemap: {}", url);
+            return;
+        }
+        addSitemap(sitemap);
+    }
+
+    /**
+     * @return A score between 0 and 1, 1 for a page that just changed and half that at {@link #SCORE_HALF_AGE} days old.
+     * 0 if the date is unknown.
+     */
+    private double score(long lastModified) {
+        if (lastModified == 0) {
+            return 0;
+        }
+        double ageDays = Math.max(0, now - lastModified) / 86400000.0;
+        return 1 / (1 + ageDays / SCORE_HALF_AGE);
+    }
+
+}
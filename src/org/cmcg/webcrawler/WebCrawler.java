@@ -5,125 +5,597 @@
 package org.nikm.webcrawler;
 
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.net.http.HttpTimeoutException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import org.nikm.logger.Log;
+import org.nikm.webcrawler.cache.PageCache;
+import org.nikm.webcrawler.cache.PageMetadata;
+import org.nikm.webcrawler.cluster.ClusterNode;
+import org.nikm.webcrawler.fetch.HttpClientFetcher;
+import org.nikm.webcrawler.fetch.HttpStatusException;
+import org.nikm.webcrawler.fetch.PageFetcher;
+import org.nikm.webcrawler.frontier.DiskFrontier;
+import org.nikm.webcrawler.frontier.FifoFrontier;
+import org.nikm.webcrawler.frontier.Frontier;
+import org.nikm.webcrawler.frontier.FrontierEntry;
+import org.nikm.webcrawler.log.CrawlLog;
+import org.nikm.webcrawler.metrics.CrawlMetrics;
+import org.nikm.webcrawler.metrics.Gauge;
+import org.nikm.webcrawler.metrics.PageEvent;
+import org.nikm.webcrawler.politeness.PolitenessPolicy;
+import org.nikm.webcrawler.politeness.RobotsCache;
+import org.nikm.webcrawler.politeness.RobotsRules;
+import org.nikm.webcrawler.politeness.RobotsUnavailableException;
+import org.nikm.webcrawler.search.HTMLImageSearch;
 import org.nikm.webcrawler.search.Search;
+import org.nikm.webcrawler.search.SearchUtil;
 import org.nikm.webcrawler.search.XMLTagSearch;
+import org.nikm.webcrawler.url.HostScope;
+import org.nikm.webcrawler.url.UrlCanonicalizer;
 
 public class WebCrawler {
 
-    private String homePage;
     private String rootUrl;
+    private UrlCanonicalizer canonicalizer;
+    private HostScope scope;
+    private ThreadFactory threadFactory;
+    private Frontier frontier;
+    private int checkpointInterval;
+    private long maxPageSize;
+    private PageFetcher fetcher;
+    private PolitenessPolicy politenessPolicy;
+    private PageCache pageCache;
+    private CrawlMetrics metrics;
+    private ClusterNode cluster;
+    private boolean sitemapSeeding;
+    private ArrayList<String> sitemaps;
 
     public WebCrawler(String rootUrl) {
         this.rootUrl = rootUrl;
-        this.homePage = rootUrl.replaceAll("www.", "").replaceAll("http://", "").replaceAll("https://", "");
+        this.canonicalizer = new UrlCanonicalizer();
+        this.scope = new HostScope(rootUrl);
+        this.threadFactory = Executors.defaultThreadFactory();
+        this.checkpointInterval = 100;
+        this.maxPageSize = PageReader.DEFAULT_MAX_PAGE_SIZE;
+        this.fetcher = new HttpClientFetcher();
+        this.politenessPolicy = new PolitenessPolicy();
+        this.metrics = new CrawlMetrics();
+        this.sitemaps = new ArrayList<String>();
     }
 
     /**
-     * 
-     * @param maxPages
-     * @param searches
+     * Sets the canonicalizer that resolves links and decides when two links are the same page
+     * @param canonicalizer The canonicalizer
      */
-    public void crawl(int maxPages, Search... searches) {
+    public void setUrlCanonicalizer(UrlCanonicalizer canonicalizer) {
+        this.canonicalizer = canonicalizer;
+    }
 
-        ArrayList<URL> visitedPages = new ArrayList<URL>();
-        ArrayList<URL> invalidPages = new ArrayList<URL>();
-        ArrayList<String> pagesToVisit = new ArrayList<String>();
+    /**
+     * Sets which links are followed. By default only links to the root url's host are followed.
+     * @param scope The scope
+     */
+    public void setScope(HostScope scope) {
+        this.scope = scope;
+    }
 
-        Search linkSearch = new XMLTagSearch("a") {
-            @Override
-            public void onFoundTag(HashMap<String, String> attributes, String tagContents) {
+    /**
+     * Sets the factory used to create worker threads for concurrent crawls.
+     * On Java 21+ <code>Thread.ofVirtual().factory()</code> runs each worker on a virtual thread.
+     * @param threadFactory The thread factory
+     */
+    public void setThreadFactory(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
 
-                String href = attributes.get("href");
-                if (href == null) {
-                    return;
-                }
+    /**
+     * Sets the frontier that decides which page is visited next and remembers queued pages,
+     * e.g. a {@link org.nikm.webcrawler.frontier.HostRoundRobinFrontier} with a
+     * {@link org.nikm.webcrawler.frontier.BloomSeenUrlStore} for very large crawls.
+     * The frontier is kept between crawls, so pages seen by a previous crawl are skipped.
+     * If not set each crawl uses a new unbounded {@link FifoFrontier}.
+     * @param frontier The frontier, or null for the default
+     */
+    public void setFrontier(Frontier frontier) {
+        this.frontier = frontier;
+    }
 
-                if (href.startsWith("\"") || href.startsWith("'")) {// Opening quote
-                    href = href.substring(1);
-                }
-                if (href.endsWith("\"") || href.endsWith("'")) {// Closing quote
-                    href = href.substring(0, href.length() - 1);
+    /**
+     * Sets how often a crawl using a {@link DiskFrontier} saves a checkpoint it can be resumed from.
+     * A checkpoint is also saved when the crawl ends.
+     * @param checkpointInterval The amount of visited pages between checkpoints, 0 to only save at the end
+     */
+    public void setCheckpointInterval(int checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Sets the maximum amount of bytes read from each page, the rest of a larger page is ignored
+     * @param maxPageSize The maximum page size in bytes, 0 for no limit
+     */
+    public void setMaxPageSize(long maxPageSize) {
+        this.maxPageSize = maxPageSize;
+    }
+
+    /**
+     * Sets the fetcher used to download pages, shared by all workers
+     * @param fetcher The fetcher
+     */
+    public void setFetcher(PageFetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    /**
+     * Sets the limits on requests to each host, how robots.txt is handled and how failed pages are retried
+     * @param politenessPolicy The policy
+     */
+    public void setPolitenessPolicy(PolitenessPolicy politenessPolicy) {
+        this.politenessPolicy = politenessPolicy;
+    }
+
+    /**
+     * Sets the cache of previously crawled pages. Pages that haven't changed since they were cached
+     * are not searched again, but the links they had are still followed. Pages that nearly duplicate
+     * another searched page are not searched either, but their links are followed. The cache is flushed at the end of each crawl but never closed.
+     * @param pageCache The cache, or null to search every page
+     */
+    public void setPageCache(PageCache pageCache) {
+        this.pageCache = pageCache;
+    }
+
+    /**
+     * Sets the metrics crawls are recorded in, metrics are added to by every crawl
+     * @param metrics The metrics
+     */
+    public void setMetrics(CrawlMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Makes this crawler one node of a crawl split between several processes. Every node crawls from the same root url,
+     * each crawls the hosts assigned to it and forwards links to the others, and maxPages limits the pages of the whole cluster.
+     * The node is started when the crawl starts and closed when it ends.
+     * <p>
+     * Every page of a host is crawled by the same node, so the crawl is only split if its scope has several hosts,
+     * see {@link HostScope#addSite(String)} and {@link HostScope#setIncludeSubdomains(boolean)}.
+     * Crawling a single host with a cluster throws an IllegalStateException.
+     * @param cluster This node, or null to crawl alone
+     */
+    public void setCluster(ClusterNode cluster) {
+        this.cluster = cluster;
+    }
+
+    /**
+     * Seeds each crawl with the pages listed in the sitemaps of the root url's robots.txt,
+     * or in its /sitemap.xml if robots.txt lists none. Sitemap indexes and gzipped sitemaps are followed.
+     * With a {@link org.nikm.webcrawler.frontier.PriorityFrontier} the most recently changed pages are visited first.
+     * @param sitemapSeeding true to read the sitemaps before crawling
+     */
+    public void setSitemapSeeding(boolean sitemapSeeding) {
+        this.sitemapSeeding = sitemapSeeding;
+    }
+
+    /**
+     * Adds a sitemap, sitemap index, RSS feed or Atom feed whose pages seed each crawl
+     * @param url The url of the document
+     */
+    public void addSitemap(String url) {
+        sitemaps.add(url);
+    }
+
+    /**
+     * @return The metrics of the crawls, they can be read while a crawl runs
+     */
+    public CrawlMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Crawls on the calling thread using the given searches. Image searches download through the crawl's
+     * fetcher while it runs and get their own fetcher back afterwards.
+     * @param maxPages The maximum amount of pages to search, 0 for no limit
+     * @param searches The searches to perform on each page
+     */
+    public void crawl(int maxPages, Search... searches) {
+        final Search[] userSearches = searches;
+        HashMap<HTMLImageSearch, PageFetcher> imageFetchers = new HashMap<HTMLImageSearch, PageFetcher>();
+        for (Search search : userSearches) {
+            if (search instanceof HTMLImageSearch) {
+                imageFetchers.put((HTMLImageSearch) search, ((HTMLImageSearch) search).getFetcher());
+            }
+        }
+        try {
+            crawl(maxPages, 1, new SearchFactory() {
+                @Override
+                public Search[] createSearches() {
+                    return userSearches;
                 }
 
-                if (!href.contains(homePage) && !href.startsWith("/")) {// Check if link if external
-                    Log.debug("Skipping external page: " + href);
-                    return;
+                @Override
+                public Search[] createSearches(PageFetcher fetcher) {
+                    for (Search search : userSearches) {
+                        if (search instanceof HTMLImageSearch) {
+                            ((HTMLImageSearch) search).setFetcher(fetcher);
+                        }
+                    }
+                    return userSearches;
                 }
-                pagesToVisit.add(href);
+            });
+        } finally {
+            for (Map.Entry<HTMLImageSearch, PageFetcher> imageFetcher : imageFetchers.entrySet()) {
+                imageFetcher.getKey().setFetcher(imageFetcher.getValue());
             }
-
-        };
-
-        Search[] temp = new Search[searches.length + 1];
-        temp[0] = linkSearch;
-        for (int i = 1; i < temp.length; i++) {
-            temp[i] = searches[i - 1];
         }
-        searches = temp;
+    }
 
-        PageReader currentPage = null;
+    /**
+     * Crawls with several workers fetching and searching pages at the same time
+     * @param maxPages The maximum amount of pages to search, 0 for no limit
+     * @param numWorkers The amount of workers, a single worker runs on the calling thread
+     * @param searchFactory Creates the searches for each worker
+     */
+    public void crawl(int maxPages, int numWorkers, SearchFactory searchFactory) {
+        if (numWorkers < 1) {
+            throw new IllegalArgumentException("Need at least one worker: " + numWorkers);
+        }
+        if (cluster != null && scope.isSingleHost()) {
+            throw new IllegalStateException("A cluster splits a crawl by host, but the scope only has " + scope.getHost());
+        }
 
-        try {
-            currentPage = new PageReader(rootUrl);
-        } catch (Exception e) {
-            Log.error("Invalid homepage" + Arrays.toString(e.getStackTrace()));
+        String homePage = canonicalizer.canonicalize(rootUrl);
+        if (homePage == null) {
+            Log.error("Invalid homepage: " + rootUrl);
             return;
         }
 
-        while (currentPage != null && (visitedPages.size() < maxPages || maxPages == 0)) {
+        Frontier crawlFrontier = frontier != null ? frontier : new FifoFrontier();
+        CrawlSession session = new CrawlSession(maxPages, crawlFrontier, checkpointInterval, politenessPolicy);
+        RobotsCache robotsCache = new RobotsCache(fetcher, syncUserAgent());
+        robotsCache.setRetryPolicy(politenessPolicy);
+        RobotsCache robots = politenessPolicy.isObeyRobots() ? robotsCache : null;
+        if (crawlFrontier instanceof DiskFrontier && ((DiskFrontier) crawlFrontier).isResumed()) {
+            DiskFrontier diskFrontier = (DiskFrontier) crawlFrontier;
+            Log.log("Resuming crawl after " + diskFrontier.getCheckpointedPages() + " pages");
+            session.resume(diskFrontier.getCheckpointedPages(), diskFrontier.takePendingEntries());
+        }
+        if (cluster != null) {
             try {
-                if (!visitedPages.contains(currentPage.getUrl()) && !invalidPages.contains(currentPage.getUrl())) {
-                    Log.log("Searching page: " + currentPage.toString());
-                    currentPage.searchPage(searches);
-                    visitedPages.add(currentPage.getUrl());
-                } else {
-                    Log.debug("Skipping already visited page: " + currentPage.toString());
-                }
+                session.setCluster(cluster);
+            } catch (IOException e) {
+                Log.error("Could not start cluster node " + cluster.getNodeId() + Arrays.toString(e.getStackTrace()));
+                return;
+            }
+        }
+        session.addPage(homePage, 0);
+        PageFetcher searchFetcher = new PoliteFetcher(fetcher != null ? fetcher : PageReader.getDefaultFetcher(), session, robots);
+        if ((sitemapSeeding || !sitemaps.isEmpty())
+                && (cluster == null || cluster.isLocal(UrlCanonicalizer.getHost(homePage)))) {
+            try {
+                seedFromSitemaps(session, homePage, robotsCache, searchFetcher);
+            } catch (InterruptedException e) {
+                session.stop();
+                Thread.currentThread().interrupt();
+            }
+        }
 
-                if (pagesToVisit.isEmpty()) {
-                    // Out of pages
-                    break;
-                }
+        metrics.start();
+        metrics.setGauge(CrawlMetrics.QUEUED_PAGES, new Gauge() {
+            @Override
+            public long getValue() {
+                return session.getNumQueuedPages();
+            }
+        });
 
-                String nextUrl = pagesToVisit.remove(0);
-                if (nextUrl.startsWith("/")) {
-                    nextUrl = rootUrl + nextUrl;
+        try {
+            if (numWorkers == 1) {
+                runWorker(session, robots, searchFactory.createSearches(searchFetcher));
+            } else {
+                ArrayList<Thread> workers = new ArrayList<Thread>();
+                for (int i = 0; i < numWorkers; i++) {
+                    final Search[] searches = searchFactory.createSearches(searchFetcher);
+                    Thread worker = threadFactory.newThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            runWorker(session, robots, searches);
+                        }
+                    });
+                    workers.add(worker);
+                    worker.start();
                 }
 
-                if (nextUrl.startsWith("\"") || nextUrl.startsWith("'")) {// Opening quote
-                    nextUrl = nextUrl.substring(1);
+                try {
+                    for (Thread worker : workers) {
+                        worker.join();
+                    }
+                } catch (InterruptedException e) {
+                    session.stop();
+                    Thread.currentThread().interrupt();
                 }
+            }
+        } finally {
+            // A search that throws still leaves the checkpoint, page cache and metrics complete
+            if (cluster != null) {
+                cluster.close();
+            }
+            session.checkpoint();
+            if (pageCache != null) {
+                try {
+                    pageCache.flush();
+                } catch (IOException e) {
+                    Log.error("Could not save page cache" + Arrays.toString(e.getStackTrace()));
+                }
+            }
+            metrics.stop();
+            Log.log("Searched through " + session.getNumVisitedPages() + " pages");
+            if (CrawlLog.isDebugEnabled()) {
+                // Formatted now, the metrics keep changing while the message waits to be written
+                CrawlLog.debug("Crawl metrics:\n" + metrics.toString());
+            }
+            CrawlLog.flush();
+        }
 
+    }
+
+    /**
+     * Makes the fetcher send the user agent that robots.txt is matched against
+     * @return The user agent of the crawl, the policy's if it has one and otherwise the fetcher's
+     */
+    private String syncUserAgent() {
+        PageFetcher crawlFetcher = fetcher != null ? fetcher : PageReader.getDefaultFetcher();
+        String userAgent = politenessPolicy.getUserAgent();
+        if (userAgent != null) {
+            crawlFetcher.setUserAgent(userAgent);
+            return userAgent;
+        }
+        userAgent = crawlFetcher.getUserAgent();
+        return userAgent != null ? userAgent : PageFetcher.DEFAULT_USER_AGENT;
+    }
+
+    /**
+     * Queues the pages of the crawl's sitemaps and feeds
+     * @param politeFetcher Downloads the sitemaps within robots.txt and the request delays
+     */
+    private void seedFromSitemaps(CrawlSession session, String homePage, RobotsCache robots, PageFetcher politeFetcher)
+            throws InterruptedException {
+        ArrayList<String> seedSitemaps = new ArrayList<String>(sitemaps);
+        if (sitemapSeeding) {
+            try {
+                URL url = new URL(homePage);
+                List<String> robotsSitemaps = Collections.<String>emptyList();
                 try {
-                    currentPage = new PageReader(nextUrl);
-                } catch (Exception e) {
-                    Log.error("Error creating URL: " + nextUrl + Arrays.toString(e.getStackTrace()));
+                    robotsSitemaps = robots.getRules(url).getSitemaps();
+                } catch (RobotsUnavailableException e) {
+                    Log.error("Could not read the sitemaps of robots.txt: " + e.getMessage());
                 }
-            } catch (SocketException e) {
-                if (currentPage != null) {
-                    pagesToVisit.add(currentPage.toString());
+                if (robotsSitemaps.isEmpty()) {
+                    seedSitemaps.add(url.getProtocol() + "://" + url.getAuthority() + "/sitemap.xml");
+                } else {
+                    seedSitemaps.addAll(robotsSitemaps);
                 }
-            } catch (IOException e) {
-                if (currentPage != null) {
+            } catch (MalformedURLException e) {
+                Log.error("Invalid homepage: " + homePage);
+            }
+        }
+
+        SitemapSeeder seeder = new SitemapSeeder(session, canonicalizer, scope, politeFetcher);
+        for (String sitemap : seedSitemaps) {
+            seeder.addSitemap(sitemap);
+        }
+        int numPages = seeder.seed();
+        CrawlLog.info("Queued {} pages from sitemaps", numPages);
+    }
+
+    private void runWorker(CrawlSession session, RobotsCache robots, Search... searches) {
+
+        LinkSearch linkSearch = new LinkSearch(session);
+        Search baseSearch = new BaseSearch(linkSearch);
+
+        Search[] temp = new Search[searches.length + 2];
+        temp[0] = baseSearch;
+        temp[1] = linkSearch;
+        for (int i = 2; i < temp.length; i++) {
+            temp[i] = searches[i - 2];
+        }
+        // Share one html tokenizer between the link search and any other tag searches
+        searches = SearchUtil.groupTagSearches(temp);
+
+        FrontierEntry currentPage;
+        try {
+            while ((currentPage = session.nextPage()) != null) {
+                PageEvent event = metrics.isJfrEvents() ? new PageEvent() : null;
+                if (event != null) {
+                    event.begin();
+                }
+                PageReader page = null;
+                String outcome = "error";
+                try {
+                    page = new PageReader(currentPage.getUrl());
+                    if (robots != null) {
+                        RobotsRules rules = robots.getRules(page.getUrl());
+                        session.setCrawlDelay(currentPage.getHost(), rules.getCrawlDelay());
+                        if (!rules.isAllowed(page.getUrl().getFile())) {
+                            CrawlLog.info("Skipping page disallowed by robots.txt: {}", currentPage);
+                            metrics.counter(CrawlMetrics.PAGES_DISALLOWED).increment();
+                            outcome = "disallowed";
+                            session.pageInvalid(currentPage);
+                            continue;
+                        }
+                    }
+
+                    CrawlLog.info("Searching page: {}", currentPage);
+                    linkSearch.depth = currentPage.getDepth() + 1;
+                    linkSearch.baseUrl = currentPage.getUrl();
+                    linkSearch.hasBaseTag = false;
+                    page.setMaxPageSize(maxPageSize);
+                    page.setFetcher(fetcher);
+                    page.setPageCache(pageCache);
+                    page.setDuplicateSearches(baseSearch, linkSearch);
+                    page.setMetrics(metrics);
+                    linkSearch.links.clear();
+                    boolean searched = page.searchPage(searches);
+                    if (searched) {
+                        metrics.counter(CrawlMetrics.PAGES).increment();
+                        outcome = "visited";
+                    } else if (page.isUnchanged()) {
+                        metrics.counter(CrawlMetrics.PAGES_UNCHANGED).increment();
+                        outcome = "unchanged";
+                    } else if (page.getDuplicateOf() != null) {
+                        metrics.counter(CrawlMetrics.PAGES_DUPLICATE).increment();
+                        outcome = "duplicate";
+                    } else {
+                        outcome = "not found";
+                    }
+                    if (pageCache != null) {
+                        if (page.isUnchanged()) {
+                            // Still follow the links the page had
+                            PageMetadata cached = pageCache.get(page.getCacheKey());
+                            for (String link : cached.getLinks()) {
+                                session.addPage(link, linkSearch.depth);
+                            }
+                        } else if (searched || page.getDuplicateOf() != null) {
+                            pageCache.setLinks(page.getCacheKey(), linkSearch.links.toArray(new String[0]));
+                        }
+                    }
+                    session.pageVisited(currentPage);
+                } catch (HttpStatusException e) {
+                    outcome = "http " + e.getStatusCode();
+                    metrics.counter(CrawlMetrics.ERRORS + "http." + e.getStatusCode()).increment();
+                    if (e.isTransient()) {
+                        metrics.counter(CrawlMetrics.PAGES_RETRIED).increment();
+                        session.pageRetry(currentPage, e.getRetryAfter());
+                    } else {
+                        Log.error("Error on URL: " + currentPage.toString() + " " + e.getMessage());
+                        session.pageInvalid(currentPage);
+                    }
+                } catch (RobotsUnavailableException e) {
+                    outcome = "robots unavailable";
+                    metrics.counter(CrawlMetrics.PAGES_RETRIED).increment();
+                    session.pageRetry(currentPage, e.getRetryAfter());
+                } catch (SocketException | SocketTimeoutException | HttpTimeoutException e) {
+                    outcome = e.getClass().getSimpleName();
+                    metrics.counter(CrawlMetrics.ERRORS + outcome).increment();
+                    metrics.counter(CrawlMetrics.PAGES_RETRIED).increment();
+                    session.pageRetry(currentPage, 0);
+                } catch (IOException e) {
+                    outcome = e.getClass().getSimpleName();
+                    metrics.counter(CrawlMetrics.ERRORS + outcome).increment();
                     Log.error("Error on URL: " + currentPage.toString());
-                    invalidPages.add(currentPage.getUrl());
+                    session.pageInvalid(currentPage);
+                    e.printStackTrace();
+                } catch (OutOfMemoryError e) {
+                    outcome = e.getClass().getSimpleName();
+                    metrics.counter(CrawlMetrics.ERRORS + outcome).increment();
+                    Log.error("Ran out of memory" + Arrays.toString(e.getStackTrace()));
+                    session.pageInvalid(currentPage);
+                    session.stop();
+                } catch (RuntimeException e) {
+                    outcome = e.getClass().getSimpleName();
+                    metrics.counter(CrawlMetrics.ERRORS + outcome).increment();
+                    session.pageInvalid(currentPage);
+                    session.stop();
+                    throw e;
+                } finally {
+                    if (event != null) {
+                        event.end();
+                        if (event.shouldCommit()) {
+                            event.url = currentPage.getUrl();
+                            event.outcome = outcome;
+                            if (page != null) {
+                                event.bytes = page.getBytesRead();
+                                event.timeToFirstByte = page.getTimeToFirstByte();
+                                event.searchTime = page.getSearchTime();
+                            }
+                            event.commit();
+                        }
+                    }
                 }
-                e.printStackTrace();
-            } catch (OutOfMemoryError e) {
-                Log.error("Ran out of memory" + Arrays.toString(e.getStackTrace()));
-                visitedPages = null;
-                break;
+            }
+        } catch (InterruptedException e) {
+            session.stop();
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Search search : temp) {
+                search.finish();
             }
         }
+    }
+
+    /**
+     * Queues the internal links found on a page
+     */
+    private class LinkSearch extends XMLTagSearch {
+
+        private CrawlSession session;
+        private int depth;
+        private String baseUrl;
+        private boolean hasBaseTag;
+        private ArrayList<String> links;
+
+        LinkSearch(CrawlSession session) {
+            super("a");
+            this.session = session;
+            this.links = new ArrayList<String>();
+        }
+
+        @Override
+        public void onFoundTag(HashMap<String, String> attributes, String tagContents) {
 
-        Log.log("Searched through " + visitedPages.size() + " pages");
+            String href = attributes.get("href");
+            if (href == null) {
+                return;
+            }
+
+            String url = canonicalizer.canonicalize(baseUrl, href);
+            if (url == null) {
+                CrawlLog.debug("Skipping unsupported link: {}", href);
+                return;
+            }
+            if (!scope.contains(url)) {
+                CrawlLog.debug("Skipping external page: {}", url);
+                return;
+            }
+            links.add(url);
+            session.addPage(url, depth);
+        }
+
+    }
+
+    /**
+     * Resolves the links of a page against its base tag
+     */
+    private class BaseSearch extends XMLTagSearch {
+
+        private LinkSearch linkSearch;
+
+        BaseSearch(LinkSearch linkSearch) {
+            super("base");
+            this.linkSearch = linkSearch;
+        }
+
+        @Override
+        public void onFoundTag(HashMap<String, String> attributes, String tagContents) {
+            String href = attributes.get("href");
+            if (href == null || linkSearch.hasBaseTag) {// Only the first base tag counts
+                return;
+            }
+            String base = canonicalizer.canonicalize(linkSearch.baseUrl, href);
+            if (base != null) {
+                linkSearch.baseUrl = base;
+                linkSearch.hasBaseTag = true;
+            }
+        }
 
     }
 
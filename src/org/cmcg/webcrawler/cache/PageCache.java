@@ -0,0 +1,307 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Remembers the validators, text hash and links of every crawled page so later crawls can
+ * send conditional requests and skip pages that haven't changed.
+ * Pages are kept on the heap and every change is appended to a log file, which is compacted when it is opened.
+ * Also finds pages whose text is nearly the same as another page using their {@link SimHash}.
+ */
+public class PageCache {
+
+    /**
+     * The default amount of bits two simhashes may differ by for their pages to be near duplicates
+     */
+    public static final int DEFAULT_NEAR_DUPLICATE_DISTANCE = 3;
+
+    private File file;
+    private DataOutputStream log;
+    private int numRecords;
+
+    private HashMap<String, PageMetadata> pages;
+    private HashMap<Integer, ArrayList<String>> simHashBlocks;
+    private int nearDuplicateDistance;
+
+    /**
+     * Creates a cache that only lasts as long as the crawler
+     */
+    public PageCache() {
+        this.pages = new HashMap<String, PageMetadata>();
+        this.simHashBlocks = new HashMap<Integer, ArrayList<String>>();
+        this.nearDuplicateDistance = DEFAULT_NEAR_DUPLICATE_DISTANCE;
+    }
+
+    /**
+     * Opens a cache saved in a file, creating the file if needed
+     * @param file The log file
+     */
+    public PageCache(File file) throws IOException {
+        this();
+        this.file = file;
+        if (file.exists()) {
+            load();
+        }
+        if (numRecords > pages.size() * 2) {
+            compact();
+        } else {
+            log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 64 * 1024));
+        }
+    }
+
+    /**
+     * Sets how similar pages must be to count as near duplicates
+     * @param nearDuplicateDistance The amount of bits their simhashes may differ by, at most 3, 0 to not look for near duplicates
+     */
+    public synchronized void setNearDuplicateDistance(int nearDuplicateDistance) {
+        if (nearDuplicateDistance < 0 || nearDuplicateDistance > 3) {
+            throw new IllegalArgumentException("Distance must be between 0 and 3: " + nearDuplicateDistance);
+        }
+        this.nearDuplicateDistance = nearDuplicateDistance;
+    }
+
+    /**
+     * @param key The normalized url of the page
+     * @return What is known about the page, or null if it was never cached
+     */
+    public synchronized PageMetadata get(String key) {
+        return pages.get(key);
+    }
+
+    /**
+     * Stores what is known about a page, replacing what was known before
+     * @param page The page
+     */
+    public synchronized void put(PageMetadata page) throws IOException {
+        PageMetadata previous = pages.put(page.getKey(), page);
+        if (previous != null && previous.getSimHash() != page.getSimHash()) {
+            unindex(previous);
+        }
+        if (previous == null || previous.getSimHash() != page.getSimHash()) {
+            index(page);
+        }
+        if (log != null) {
+            write(log, page);
+            numRecords++;
+        }
+    }
+
+    /**
+     * Replaces the links remembered for a page
+     * @param key The normalized url of the page
+     * @param links The links found on the page
+     */
+    public synchronized void setLinks(String key, String[] links) throws IOException {
+        PageMetadata page = pages.get(key);
+        if (page != null) {
+            put(new PageMetadata(key, page.getEtag(), page.getLastModified(), page.getContentHash(),
+                    page.getSimHash(), links));
+        }
+    }
+
+    /**
+     * Stores a page that is about to be searched, unless its text is nearly the same as another page's.
+     * A near duplicate is stored without its simhash, so only pages that were searched are found as near duplicates.
+     * Checking and storing at once means two near duplicate pages crawled at the same time can't both be searched.
+     * @param page The page
+     * @return The key of the page it nearly duplicates, or null if it was stored to be searched
+     */
+    public synchronized String putUnlessNearDuplicate(PageMetadata page) throws IOException {
+        String duplicateOf = findNearDuplicate(page.getKey(), page.getSimHash());
+        if (duplicateOf != null) {
+            page = new PageMetadata(page.getKey(), page.getEtag(), page.getLastModified(), page.getContentHash(),
+                    0, page.getLinks());
+        }
+        put(page);
+        return duplicateOf;
+    }
+
+    /**
+     * Looks for another page whose text is nearly the same
+     * @param key The normalized url of the page, which is never returned
+     * @param simHash The page's simhash
+     * @return The key of a near duplicate page, or null if there is none
+     */
+    public synchronized String findNearDuplicate(String key, long simHash) {
+        if (nearDuplicateDistance == 0 || simHash == 0) {
+            return null;
+        }
+        // Hashes that differ in at most 3 bits have at least one identical 16 bit block
+        for (int block = 0; block < 4; block++) {
+            ArrayList<String> candidates = simHashBlocks.get(blockKey(simHash, block));
+            if (candidates == null) {
+                continue;
+            }
+            for (String candidate : candidates) {
+                if (!candidate.equals(key)
+                        && SimHash.distance(pages.get(candidate).getSimHash(), simHash) <= nearDuplicateDistance) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The amount of cached pages
+     */
+    public synchronized int size() {
+        return pages.size();
+    }
+
+    /**
+     * Writes all changes to the file
+     */
+    public synchronized void flush() throws IOException {
+        if (log != null) {
+            log.flush();
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+
+    /**
+     * Rewrites the file with only the latest version of each page
+     */
+    public synchronized void compact() throws IOException {
+        if (file == null) {
+            return;
+        }
+        if (log != null) {
+            log.close();
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024))) {
+            for (PageMetadata page : pages.values()) {
+                write(out, page);
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        numRecords = pages.size();
+        log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 64 * 1024));
+    }
+
+    private void load() throws IOException {
+        long offset = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            while (true) {
+                int length;
+                byte[] record;
+                try {
+                    length = in.readInt();
+                    record = new byte[length];
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    break;
+                }
+                PageMetadata page = read(new DataInputStream(new ByteArrayInputStream(record)));
+                PageMetadata previous = pages.put(page.getKey(), page);
+                if (previous != null) {
+                    unindex(previous);
+                }
+                index(page);
+                numRecords++;
+                offset += 4 + length;
+            }
+        }
+        // Drop a partially written page
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() > offset) {
+                raf.setLength(offset);
+            }
+        }
+    }
+
+    private static void write(DataOutputStream out, PageMetadata page) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeUTF(page.getKey());
+        record.writeUTF(page.getEtag() == null ? "" : page.getEtag());
+        record.writeUTF(page.getLastModified() == null ? "" : page.getLastModified());
+        record.writeLong(page.getContentHash());
+        record.writeLong(page.getSimHash());
+        String[] links = page.getLinks();
+        record.writeInt(links == null ? 0 : links.length);
+        if (links != null) {
+            for (String link : links) {
+                record.writeUTF(link);
+            }
+        }
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    private static PageMetadata read(DataInputStream in) throws IOException {
+        String key = in.readUTF();
+        String etag = in.readUTF();
+        String lastModified = in.readUTF();
+        long contentHash = in.readLong();
+        long simHash = in.readLong();
+        String[] links = new String[in.readInt()];
+        for (int i = 0; i < links.length; i++) {
+            links[i] = in.readUTF();
+        }
+        return new PageMetadata(key, etag.isEmpty() ? null : etag, lastModified.isEmpty() ? null : lastModified,
+                contentHash, simHash, links);
+    }
+
+    private void index(PageMetadata page) {
+        if (page.getSimHash() == 0) {
+            return;
+        }
+        for (int block = 0; block < 4; block++) {
+            Integer blockKey = blockKey(page.getSimHash(), block);
+            ArrayList<String> keys = simHashBlocks.get(blockKey);
+            if (keys == null) {
+                keys = new ArrayList<String>(2);
+                simHashBlocks.put(blockKey, keys);
+            }
+            keys.add(page.getKey());
+        }
+    }
+
+    private void unindex(PageMetadata page) {
+        if (page.getSimHash() == 0) {
+            return;
+        }
+        for (int block = 0; block < 4; block++) {
+            Integer blockKey = blockKey(page.getSimHash(), block);
+            ArrayList<String> keys = simHashBlocks.get(blockKey);
+            if (keys != null) {
+                keys.remove(page.getKey());
+                if (keys.isEmpty()) {
+                    simHashBlocks.remove(blockKey);
+                }
+            }
+        }
+    }
+
+    private static Integer blockKey(long simHash, int block) {
+        return (block << 16) | (int) ((simHash >>> (block * 16)) & 0xFFFF);
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.cache;
+
+/**
+ * What is remembered about a page between crawls
+ */
+public class PageMetadata {
+
+    private String key;
+    private String etag;
+    private String lastModified;
+    private long contentHash;
+    private long simHash;
+    private String[] links;
+
+    /**
+     * @param key The normalized url of the page
+     * @param etag The ETag header, or null
+     * @param lastModified The Last-Modified header, or null
+     * @param contentHash A hash of the page's text
+     * @param simHash The {@link SimHash} of the page's text, 0 if the page has too little text
+     * @param links The links found on the page
+     */
+    public PageMetadata(String key, String etag, String lastModified, long contentHash, long simHash,
+            String[] links) {
+        this.key = key;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.contentHash = contentHash;
+        this.simHash = simHash;
+        this.links = links;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    public long getSimHash() {
+        return simHash;
+    }
+
+    public String[] getLinks() {
+        return links;
+    }
+
+}
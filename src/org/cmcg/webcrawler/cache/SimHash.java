@@ -0,0 +1,124 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.cache;
+
+/**
+ * Builds a 64 bit simhash of a page's text while it is read.
+ * Markup is skipped and the text is split into three word shingles,
+ * so pages that differ only in a few words get hashes that differ in only a few bits.
+ */
+public class SimHash {
+
+    private static final int SHINGLE_SIZE = 3;
+
+    private int[] weights;
+    private long[] recentWords;
+    private int numWords;
+    private int numFeatures;
+
+    private boolean inTag;
+    private boolean inWord;
+    private long wordHash;
+
+    public SimHash() {
+        this.weights = new int[64];
+        this.recentWords = new long[SHINGLE_SIZE];
+    }
+
+    /**
+     * Adds text to the hash
+     * @param buf The characters
+     * @param off The index of the first character
+     * @param len The amount of characters
+     */
+    public void update(char[] buf, int off, int len) {
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            char c = buf[i];
+            if (inTag) {
+                if (c == '>') {
+                    inTag = false;
+                }
+                continue;
+            }
+            if (c == '<') {
+                endWord();
+                inTag = true;
+            } else if (Character.isLetterOrDigit(c)) {
+                if (!inWord) {
+                    inWord = true;
+                    wordHash = 0xcbf29ce484222325L;
+                }
+                wordHash = (wordHash ^ Character.toLowerCase(c)) * 0x100000001b3L;
+            } else {
+                endWord();
+            }
+        }
+    }
+
+    private void endWord() {
+        if (!inWord) {
+            return;
+        }
+        inWord = false;
+        recentWords[numWords % SHINGLE_SIZE] = wordHash;
+        numWords++;
+        if (numWords < SHINGLE_SIZE) {
+            return;
+        }
+
+        long feature = 0;
+        for (int i = numWords - SHINGLE_SIZE; i < numWords; i++) {
+            feature = feature * 31 + recentWords[i % SHINGLE_SIZE];
+        }
+        feature = mix(feature);
+        for (int bit = 0; bit < 64; bit++) {
+            if ((feature & (1L << bit)) != 0) {
+                weights[bit]++;
+            } else {
+                weights[bit]--;
+            }
+        }
+        numFeatures++;
+    }
+
+    /**
+     * @return The amount of shingles added, hashes of pages with few shingles are unreliable
+     */
+    public int getNumFeatures() {
+        return numFeatures;
+    }
+
+    /**
+     * @return The hash of all text added so far
+     */
+    public long getValue() {
+        endWord();
+        long value = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                value |= 1L << bit;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return The amount of bits that differ between two hashes
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
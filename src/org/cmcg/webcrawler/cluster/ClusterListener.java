@@ -0,0 +1,34 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.cluster;
+
+/**
+ * The crawl running on a node, as seen by its {@link ClusterNode}
+ */
+public interface ClusterListener {
+
+    /**
+     * Called when another node forwards a page this node crawls
+     * @param url The canonical url of the page
+     * @param depth The amount of links followed from the root page
+     */
+    public void onPage(String url, int depth);
+
+    /**
+     * @return The amount of pages this node has visited or is visiting
+     */
+    public int getReservedPages();
+
+    /**
+     * @return true if this node has no pages to crawl and none in progress
+     */
+    public boolean isIdle();
+
+    /**
+     * Called when the page counts of other nodes change or the cluster finishes
+     */
+    public void onClusterStatus();
+
+}
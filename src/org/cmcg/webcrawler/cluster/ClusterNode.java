@@ -0,0 +1,652 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.nikm.logger.Log;
+import org.nikm.webcrawler.log.CrawlLog;
+
+/**
+ * One node of a crawl split between several processes. Each node crawls the hosts the {@link HashRing} assigns to it,
+ * so every host is only ever sent requests by one node and its politeness limits still hold.
+ * Links to other nodes' hosts are forwarded to them in batches over a socket, and the node that owns a host
+ * is the only one that decides whether its pages were seen before.
+ * <p>
+ * Nodes send each other their page counts along with the links, so every node knows roughly how many pages
+ * the cluster has visited and stops at the crawl's page limit. Counts are a flush interval old, so the cluster
+ * may visit up to a flush interval's worth of pages more than the limit.
+ * <p>
+ * Each batch of links is acknowledged once the receiving node has queued it. A batch that isn't acknowledged is sent again,
+ * and a node skips batches it already received. The crawl finishes once every node is idle and each node received as many
+ * links from every other node as that node had acknowledged, twice in a row.
+ * A node that accepted connections before and now refuses them has stopped. Links for it are dropped,
+ * and the links it sent and received are no longer counted.
+ */
+public class ClusterNode {
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final long DEFAULT_FLUSH_INTERVAL = 100;
+
+    /**
+     * Links recently forwarded, so a link found on many pages is only sent once
+     */
+    private static final int MAX_FORWARDED = 100000;
+
+    /**
+     * The longest url sent between nodes, in bytes
+     */
+    private static final int MAX_URL_LENGTH = 1024 * 1024;
+
+    /**
+     * The longest time a node waits for another to acknowledge a batch of links, in milliseconds
+     */
+    private static final int ACK_TIMEOUT = 10000;
+
+    private static final int LINKS = 1;
+    private static final int STATUS = 2;
+    private static final int ACK = 3;
+
+    private static final int BUSY = 0;
+    private static final int IDLE = 1;
+    private static final int CLOSED = 2;
+
+    private int nodeId;
+    private List<InetSocketAddress> addresses;
+    private HashRing ring;
+    private int batchSize;
+    private long flushInterval;
+
+    private ClusterListener listener;
+    private ServerSocket server;
+    private Peer[] peers;
+    private Thread sender;
+    private volatile boolean closed;
+    private volatile boolean finished;
+    private LinkedHashMap<String, Boolean> forwarded;
+
+    private long lastSent = -1;
+
+    /**
+     * @param nodeId The index of this node in the list of addresses
+     * @param addresses The address every node listens on, in the same order on every node
+     */
+    public ClusterNode(int nodeId, List<InetSocketAddress> addresses) {
+        if (nodeId < 0 || nodeId >= addresses.size()) {
+            throw new IllegalArgumentException("Node " + nodeId + " is not one of " + addresses.size() + " nodes");
+        }
+        this.nodeId = nodeId;
+        this.addresses = new ArrayList<InetSocketAddress>(addresses);
+        this.ring = new HashRing(addresses.size());
+        this.batchSize = DEFAULT_BATCH_SIZE;
+        this.flushInterval = DEFAULT_FLUSH_INTERVAL;
+        this.forwarded = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > MAX_FORWARDED;
+            }
+        };
+    }
+
+    /**
+     * Sets how links are batched. Must be called before the crawl starts.
+     * @param batchSize The most links sent to a node at once
+     * @param flushInterval The longest time a link waits to be sent, and the time between page count updates, in milliseconds
+     */
+    public void setBatching(int batchSize, long flushInterval) {
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Starts listening for other nodes. Called by the crawler when a crawl starts.
+     * @param listener The crawl on this node
+     */
+    public synchronized void start(ClusterListener listener) throws IOException {
+        if (this.listener != null) {
+            throw new IllegalStateException("Cluster node already started");
+        }
+        this.listener = listener;
+        this.peers = new Peer[addresses.size()];
+        for (int i = 0; i < peers.length; i++) {
+            if (i != nodeId) {
+                peers[i] = new Peer(addresses.get(i));
+            }
+        }
+
+        server = new ServerSocket();
+        server.setReuseAddress(true);
+        server.bind(addresses.get(nodeId));
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        }, "cluster-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                sendBatches();
+            }
+        }, "cluster-send");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * @param host The lower case host
+     * @return true if this node crawls the host
+     */
+    public boolean isLocal(String host) {
+        return ring.getNode(host) == nodeId;
+    }
+
+    /**
+     * Queues a page to be sent to the node that crawls its host
+     * @param url The canonical url of the page
+     * @param host The page's lower case host
+     * @param depth The amount of links followed from the root page
+     */
+    public void forward(String url, String host, int depth) {
+        synchronized (forwarded) {
+            if (forwarded.put(url, Boolean.TRUE) != null) {
+                return;
+            }
+        }
+        Peer peer = peers[ring.getNode(host)];
+        boolean full;
+        synchronized (peer) {
+            peer.urls.add(url);
+            peer.depths.add(depth);
+            full = peer.urls.size() >= batchSize;
+        }
+        if (full) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return The pages visited or being visited by the other nodes, as of their last update
+     */
+    public int getRemoteReservedPages() {
+        int total = 0;
+        for (Peer peer : peers) {
+            Status status = peer != null ? peer.status : null;
+            if (status != null) {
+                total += status.reservedPages;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return true once no node has pages left to crawl
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Stops sending and receiving. Called by the crawler when a crawl ends, after a final update is sent to the other nodes.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            sender.join(flushInterval * 10);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            server.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+        for (Peer peer : peers) {
+            if (peer != null) {
+                peer.disconnect();
+            }
+        }
+    }
+
+    private void acceptConnections() {
+        while (!closed) {
+            try {
+                final Socket socket = server.accept();
+                Thread reader = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        readMessages(socket);
+                    }
+                }, "cluster-receive");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    Log.error("Cluster node " + nodeId + " stopped accepting connections" + Arrays.toString(e.getStackTrace()));
+                }
+                return;
+            }
+        }
+    }
+
+    private void readMessages(Socket socket) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64))) {
+            while (true) {
+                int type = in.readByte();
+                if (type == LINKS) {
+                    Peer source = readPeer(in);
+                    long batch = in.readLong();
+                    int count = in.readInt();
+                    if (count < 0) {
+                        throw new IOException("Invalid batch size: " + count);
+                    }
+                    String[] urls = new String[count];
+                    int[] depths = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        urls[i] = readString(in);
+                        depths[i] = in.readInt();
+                    }
+                    synchronized (source.receiveLock) {
+                        // A batch is sent again when its acknowledgement is lost
+                        if (batch > source.lastBatch) {
+                            for (int i = 0; i < count; i++) {
+                                listener.onPage(urls[i], depths[i]);
+                            }
+                            source.linksReceived += count;
+                            source.lastBatch = batch;
+                        }
+                    }
+                    out.writeByte(ACK);
+                    out.writeLong(batch);
+                    out.flush();
+                } else if (type == STATUS) {
+                    Peer peer = readPeer(in);
+                    Status status = new Status();
+                    status.reservedPages = in.readInt();
+                    status.state = in.readByte();
+                    int numNodes = in.readInt();
+                    if (numNodes != peers.length) {
+                        throw new IOException("Node has " + numNodes + " nodes instead of " + peers.length);
+                    }
+                    status.sentTo = new long[numNodes];
+                    status.receivedFrom = new long[numNodes];
+                    for (int i = 0; i < numNodes; i++) {
+                        status.sentTo[i] = in.readLong();
+                        status.receivedFrom[i] = in.readLong();
+                    }
+                    peer.status = status;
+                    listener.onClusterStatus();
+                } else {
+                    throw new IOException("Unknown message type: " + type);
+                }
+            }
+        } catch (EOFException e) {
+            // The other node closed the connection
+        } catch (IOException e) {
+            if (!closed) {
+                Log.error("Lost connection to a cluster node: " + e);
+            }
+        }
+    }
+
+    /**
+     * Reads the id of the node that sent a message
+     */
+    private Peer readPeer(DataInputStream in) throws IOException {
+        int id = in.readInt();
+        if (id < 0 || id >= peers.length || peers[id] == null) {
+            throw new IOException("Unknown cluster node: " + id);
+        }
+        return peers[id];
+    }
+
+    /**
+     * Sends each node its waiting links and this node's page counts every flush interval,
+     * or sooner once a batch is full, then checks whether the crawl is finished
+     */
+    private void sendBatches() {
+        while (true) {
+            boolean closing;
+            synchronized (this) {
+                try {
+                    if (!closed && !hasFullBatch()) {
+                        wait(flushInterval);
+                    }
+                } catch (InterruptedException e) {
+                    closed = true;
+                }
+                closing = closed;
+            }
+            for (Peer peer : peers) {
+                if (peer != null) {
+                    sendLinks(peer);
+                }
+            }
+            long[] sentTo = new long[peers.length];
+            long[] receivedFrom = new long[peers.length];
+            for (int i = 0; i < peers.length; i++) {
+                if (peers[i] != null) {
+                    sentTo[i] = peers[i].linksSent;
+                    synchronized (peers[i].receiveLock) {
+                        receivedFrom[i] = peers[i].linksReceived;
+                    }
+                }
+            }
+            // Read after the counts, so a link received in between is either counted or keeps the node busy
+            boolean idle = listener.isIdle() && !hasWaitingLinks();
+            int reservedPages = listener.getReservedPages();
+            for (Peer peer : peers) {
+                if (peer != null) {
+                    sendStatus(peer, reservedPages, closing ? CLOSED : idle ? IDLE : BUSY, sentTo, receivedFrom);
+                }
+            }
+            if (closing) {
+                return;
+            }
+            checkFinished(idle, sentTo, receivedFrom);
+        }
+    }
+
+    private boolean hasWaitingLinks() {
+        for (Peer peer : peers) {
+            if (peer != null) {
+                synchronized (peer) {
+                    if (!peer.urls.isEmpty() || peer.batchUrls != null) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean hasFullBatch() {
+        for (Peer peer : peers) {
+            if (peer != null) {
+                synchronized (peer) {
+                    if (peer.urls.size() >= batchSize) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private void sendLinks(Peer peer) {
+        while (true) {
+            List<String> urls;
+            List<Integer> depths;
+            long batch;
+            synchronized (peer) {
+                if (peer.isGone()) {
+                    int dropped = peer.urls.size() + (peer.batchUrls != null ? peer.batchUrls.size() : 0);
+                    if (dropped > 0) {
+                        CrawlLog.info("Dropping {} links for finished cluster node {}", dropped, peer.address);
+                    }
+                    peer.urls.clear();
+                    peer.depths.clear();
+                    peer.batchUrls = null;
+                    peer.batchDepths = null;
+                    return;
+                }
+                if (peer.batchUrls == null) {
+                    if (peer.urls.isEmpty()) {
+                        return;
+                    }
+                    int count = Math.min(batchSize, peer.urls.size());
+                    peer.batchUrls = new ArrayList<String>(peer.urls.subList(0, count));
+                    peer.batchDepths = new ArrayList<Integer>(peer.depths.subList(0, count));
+                    peer.urls.subList(0, count).clear();
+                    peer.depths.subList(0, count).clear();
+                    peer.batch++;
+                }
+                urls = peer.batchUrls;
+                depths = peer.batchDepths;
+                batch = peer.batch;
+            }
+            try {
+                DataOutputStream out = peer.connect();
+                out.writeByte(LINKS);
+                out.writeInt(nodeId);
+                out.writeLong(batch);
+                out.writeInt(urls.size());
+                for (int i = 0; i < urls.size(); i++) {
+                    writeString(out, urls.get(i));
+                    out.writeInt(depths.get(i));
+                }
+                out.flush();
+                if (peer.in.readByte() != ACK || peer.in.readLong() != batch) {
+                    throw new IOException("Unexpected acknowledgement");
+                }
+            } catch (IOException e) {
+                // The node may not be up yet, the batch is sent again with the next flush
+                CrawlLog.info("Could not send {} links to {}: {}", urls.size(), peer.address, e);
+                peer.disconnect();
+                return;
+            }
+            synchronized (peer) {
+                peer.batchUrls = null;
+                peer.batchDepths = null;
+            }
+            peer.linksSent += urls.size();
+        }
+    }
+
+    private void sendStatus(Peer peer, int reservedPages, int state, long[] sentTo, long[] receivedFrom) {
+        if (peer.isGone()) {
+            return;
+        }
+        try {
+            DataOutputStream out = peer.connect();
+            out.writeByte(STATUS);
+            out.writeInt(nodeId);
+            out.writeInt(reservedPages);
+            out.writeByte(state);
+            out.writeInt(sentTo.length);
+            for (int i = 0; i < sentTo.length; i++) {
+                out.writeLong(sentTo[i]);
+                out.writeLong(receivedFrom[i]);
+            }
+            out.flush();
+        } catch (IOException e) {
+            // The node may not be up yet, or has finished
+            peer.disconnect();
+        }
+    }
+
+    /**
+     * The crawl is finished when every node is idle or closed and each node received as many links from every other node
+     * as that node had acknowledged, in two rounds with the same totals, so no link was in flight between them.
+     * Nodes that were lost are left out.
+     */
+    private void checkFinished(boolean idle, long[] sentTo, long[] receivedFrom) {
+        boolean allIdle = idle;
+        for (Peer peer : peers) {
+            if (peer != null && !peer.lost) {
+                Status status = peer.status;
+                allIdle &= status != null && status.state != BUSY;
+            }
+        }
+        if (!allIdle) {
+            lastSent = -1;
+            return;
+        }
+
+        long totalSent = 0;
+        for (int from = 0; from < peers.length; from++) {
+            for (int to = 0; to < peers.length; to++) {
+                if (from == to || isLost(from) || isLost(to)) {
+                    continue;
+                }
+                long sent = from == nodeId ? sentTo[to] : peers[from].status.sentTo[to];
+                long received = to == nodeId ? receivedFrom[from] : peers[to].status.receivedFrom[from];
+                if (sent != received) {
+                    lastSent = -1;
+                    return;
+                }
+                totalSent += sent;
+            }
+        }
+        if (totalSent == lastSent && !finished) {
+            CrawlLog.info("Cluster node {} finished", nodeId);
+            finished = true;
+            listener.onClusterStatus();
+        }
+        lastSent = totalSent;
+    }
+
+    private boolean isLost(int node) {
+        return node != nodeId && peers[node].lost;
+    }
+
+    /**
+     * Writes a string of any length, unlike {@link DataOutputStream#writeUTF(String)}
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_URL_LENGTH) {
+            throw new IOException("Invalid url length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public int getNumNodes() {
+        return addresses.size();
+    }
+
+    /**
+     * The last status a node sent
+     */
+    private static class Status {
+
+        private int reservedPages;
+        private int state;
+        private long[] sentTo;
+        private long[] receivedFrom;
+
+    }
+
+    /**
+     * Another node, the links waiting to be sent to it and its last known status
+     */
+    private static class Peer {
+
+        private InetSocketAddress address;
+        private Socket socket;
+        private DataOutputStream out;
+        private DataInputStream in;
+        private boolean connected;
+        private ArrayList<String> urls;
+        private ArrayList<Integer> depths;
+
+        // The batch sent until it is acknowledged
+        private ArrayList<String> batchUrls;
+        private ArrayList<Integer> batchDepths;
+        private long batch;
+
+        // Not held while writing to this node, so forward can't block a receiving thread
+        private final Object receiveLock = new Object();
+        private long lastBatch;
+        private long linksReceived;
+
+        private volatile long linksSent;
+        private volatile Status status;
+        private volatile boolean lost;
+
+        Peer(InetSocketAddress address) {
+            this.address = address;
+            this.urls = new ArrayList<String>();
+            this.depths = new ArrayList<Integer>();
+        }
+
+        /**
+         * @return true if the node finished or was lost
+         */
+        boolean isGone() {
+            Status last = status;
+            return lost || (last != null && last.state == CLOSED);
+        }
+
+        DataOutputStream connect() throws IOException {
+            if (out == null) {
+                Socket newSocket = new Socket();
+                try {
+                    newSocket.connect(address, 1000);
+                } catch (ConnectException e) {
+                    newSocket.close();
+                    if (connected && !lost) {
+                        Log.error("Lost cluster node " + address + ", dropping its links");
+                        lost = true;
+                    }
+                    throw e;
+                }
+                socket = newSocket;
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(ACK_TIMEOUT);
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64));
+                connected = true;
+            }
+            return out;
+        }
+
+        void disconnect() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Already closed
+                }
+            }
+            socket = null;
+            out = null;
+            in = null;
+        }
+
+    }
+
+}
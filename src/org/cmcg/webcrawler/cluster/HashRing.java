@@ -0,0 +1,77 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.cluster;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Assigns each host to a node by consistent hashing. Every node is placed at many points on a ring of hashes
+ * and a host belongs to the first node after its own hash, so adding a node only moves about 1/n of the hosts.
+ */
+public class HashRing {
+
+    /**
+     * Points on the ring for each node, more points spread the hosts more evenly
+     */
+    private static final int POINTS_PER_NODE = 128;
+
+    private long[] points;
+    private int[] nodes;
+
+    /**
+     * @param numNodes The amount of nodes, numbered from 0
+     */
+    public HashRing(int numNodes) {
+        if (numNodes < 1) {
+            throw new IllegalArgumentException("Need at least one node: " + numNodes);
+        }
+        long[][] ring = new long[numNodes * POINTS_PER_NODE][];
+        for (int node = 0; node < numNodes; node++) {
+            for (int i = 0; i < POINTS_PER_NODE; i++) {
+                ring[node * POINTS_PER_NODE + i] = new long[] {hash("node-" + node + "-" + i), node};
+            }
+        }
+        Arrays.sort(ring, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return Long.compare(a[0], b[0]);
+            }
+        });
+        this.points = new long[ring.length];
+        this.nodes = new int[ring.length];
+        for (int i = 0; i < ring.length; i++) {
+            points[i] = ring[i][0];
+            nodes[i] = (int) ring[i][1];
+        }
+    }
+
+    /**
+     * @param host The lower case host
+     * @return The node that crawls the host
+     */
+    public int getNode(String host) {
+        int i = Arrays.binarySearch(points, hash(host));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return nodes[i == points.length ? 0 : i];
+    }
+
+    /**
+     * A 64 bit FNV-1a hash, mixed so similar strings spread around the ring
+     */
+    private static long hash(String s) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            hash = (hash ^ s.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
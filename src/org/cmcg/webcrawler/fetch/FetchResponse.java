@@ -0,0 +1,72 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.fetch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The response to a fetch. The body is already decompressed.
+ */
+public class FetchResponse implements Closeable {
+
+    private URL url;
+    private int statusCode;
+    private Map<String, List<String>> headers;
+    private InputStream body;
+
+    /**
+     * @param url The url the response came from, after redirects
+     * @param statusCode The http status code
+     * @param headers The response headers, keyed by lower case name
+     * @param body The response body
+     */
+    public FetchResponse(URL url, int statusCode, Map<String, List<String>> headers, InputStream body) {
+        this.url = url;
+        this.statusCode = statusCode;
+        this.headers = headers != null ? headers : Collections.<String, List<String>>emptyMap();
+        this.body = body;
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @param name The header name, in lower case
+     * @return The first value of the header, or null if it wasn't sent
+     */
+    public String getHeader(String name) {
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    public String getContentType() {
+        return getHeader("content-type");
+    }
+
+    public InputStream getBody() {
+        return body;
+    }
+
+    @Override
+    public void close() throws IOException {
+        body.close();
+    }
+
+}
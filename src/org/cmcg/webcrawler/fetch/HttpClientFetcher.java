@@ -0,0 +1,239 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.fetch;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Fetches pages with {@link HttpClient}, which keeps connections to each host open for reuse
+ * and uses HTTP/2 when the server supports it. Responses are compressed with gzip or deflate when the
+ * server supports it and decompressed while reading.
+ * Urls that aren't http or https are fetched with a {@link URLConnectionFetcher}.
+ */
+public class HttpClientFetcher implements PageFetcher {
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+    public static final int DEFAULT_READ_TIMEOUT = 30000;
+
+    private HttpClient client;
+    private URLConnectionFetcher fallback;
+    private long readTimeout;
+    private String userAgent;
+
+    public HttpClientFetcher() {
+        this(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * @param connectTimeout The time to wait for a connection in milliseconds
+     * @param readTimeout The time to wait for the response headers, and then for each chunk of the body,
+     * in milliseconds, 0 to wait forever
+     */
+    public HttpClientFetcher(int connectTimeout, int readTimeout) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofMillis(connectTimeout))
+                .build();
+        this.fallback = new URLConnectionFetcher(connectTimeout, readTimeout);
+        this.readTimeout = readTimeout;
+        this.userAgent = DEFAULT_USER_AGENT;
+    }
+
+    @Override
+    public void setUserAgent(String userAgent) {
+        this.userAgent = userAgent;
+        fallback.setUserAgent(userAgent);
+    }
+
+    @Override
+    public String getUserAgent() {
+        return userAgent;
+    }
+
+    @Override
+    public FetchResponse fetch(URL url) throws IOException {
+        return fetch(url, Collections.<String, String>emptyMap());
+    }
+
+    @Override
+    public FetchResponse fetch(URL url, Map<String, String> requestHeaders) throws IOException {
+        if (!isHttp(url)) {
+            return fallback.fetch(url, requestHeaders);
+        }
+        try {
+            return toFetchResponse(url, client.send(newRequest(url, requestHeaders), new StreamingBodyHandler()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + url);
+        }
+    }
+
+    @Override
+    public CompletableFuture<FetchResponse> fetchAsync(final URL url) {
+        if (!isHttp(url)) {
+            return fallback.fetchAsync(url);
+        }
+        HttpRequest request;
+        try {
+            request = newRequest(url, Collections.<String, String>emptyMap());
+        } catch (IOException e) {
+            CompletableFuture<FetchResponse> failed = new CompletableFuture<FetchResponse>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return client.sendAsync(request, new StreamingBodyHandler())
+                .thenApply(new Function<HttpResponse<InputStream>, FetchResponse>() {
+                    @Override
+                    public FetchResponse apply(HttpResponse<InputStream> response) {
+                        try {
+                            return toFetchResponse(url, response);
+                        } catch (IOException e) {
+                            throw new CompletionException(e);
+                        }
+                    }
+                });
+    }
+
+    private static boolean isHttp(URL url) {
+        String protocol = url.getProtocol();
+        return protocol.equalsIgnoreCase("http") || protocol.equalsIgnoreCase("https");
+    }
+
+    private HttpRequest newRequest(URL url, Map<String, String> requestHeaders) throws IOException {
+        HttpRequest.Builder request;
+        try {
+            request = HttpRequest.newBuilder(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new IOException("Invalid url: " + url, e);
+        }
+        if (readTimeout != 0) {
+            request.timeout(Duration.ofMillis(readTimeout));
+        }
+        for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+            request.header(header.getKey(), header.getValue());
+        }
+        return request
+                .header("User-Agent", userAgent)
+                .header("Accept-Encoding", "gzip, deflate")
+                .GET()
+                .build();
+    }
+
+    private FetchResponse toFetchResponse(URL url, HttpResponse<InputStream> response) throws IOException {
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        for (Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+            headers.put(header.getKey().toLowerCase(Locale.ROOT), header.getValue());
+        }
+
+        InputStream rawBody = response.body();
+        InputStream body = rawBody;
+        List<String> encodings = headers.get("content-encoding");
+        String encoding = encodings == null || encodings.isEmpty() ? "" : encodings.get(0).trim().toLowerCase(Locale.ROOT);
+        try {
+            if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+                body = new DecodedBody(new GZIPInputStream(rawBody, 8192), rawBody, null);
+            } else if (encoding.equals("deflate")) {
+                Inflater inflater = new Inflater();
+                body = new DecodedBody(new InflaterInputStream(rawBody, inflater, 8192), rawBody, inflater);
+            }
+        } catch (IOException e) {
+            rawBody.close();
+            throw e;
+        }
+
+        URL finalUrl = url;
+        try {
+            finalUrl = response.uri().toURL();
+        } catch (Exception e) {
+            // Keep the requested url
+        }
+        return new FetchResponse(finalUrl, response.statusCode(), headers, body);
+    }
+
+    /**
+     * A decompressed body. Decompressors stop at their trailer, so when they are done the raw body
+     * is read to its end, otherwise closing it would close the connection instead of reusing it.
+     */
+    private static class DecodedBody extends FilterInputStream {
+
+        private InputStream rawBody;
+        private Inflater inflater;
+
+        /**
+         * @param inflater An inflater the decompressor doesn't end itself, or null
+         */
+        DecodedBody(InputStream decoded, InputStream rawBody, Inflater inflater) {
+            super(decoded);
+            this.rawBody = rawBody;
+            this.inflater = inflater;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                finishRawBody();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n == -1) {
+                finishRawBody();
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                // An InflaterInputStream only ends the inflaters it creates, this one's native memory is freed here
+                if (inflater != null) {
+                    inflater.end();
+                }
+            }
+        }
+
+        private void finishRawBody() throws IOException {
+            byte[] skip = new byte[512];
+            while (rawBody.read(skip, 0, skip.length) != -1) {
+                // Trailing bytes after the compressed data
+            }
+        }
+    }
+
+    private class StreamingBodyHandler implements HttpResponse.BodyHandler<InputStream> {
+        @Override
+        public HttpResponse.BodySubscriber<InputStream> apply(HttpResponse.ResponseInfo responseInfo) {
+            return new StreamingBodySubscriber(readTimeout);
+        }
+    }
+
+}
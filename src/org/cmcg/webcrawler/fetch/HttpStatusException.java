@@ -0,0 +1,65 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.fetch;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a server answers with an error status
+ */
+public class HttpStatusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private int statusCode;
+    private long retryAfter;
+
+    /**
+     * @param url The requested url
+     * @param statusCode The http status code
+     * @param retryAfter The delay asked for by a Retry-After header in milliseconds, 0 if there was none
+     */
+    public HttpStatusException(String url, int statusCode, long retryAfter) {
+        super("Server returned HTTP response code: " + statusCode + " for URL: " + url);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return The delay asked for by a Retry-After header in milliseconds, 0 if there was none
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * @return true if the request may succeed when tried again later
+     */
+    public boolean isTransient() {
+        return statusCode == 408 || statusCode == 429 || statusCode == 500 || statusCode == 502
+                || statusCode == 503 || statusCode == 504;
+    }
+
+    /**
+     * Reads a Retry-After header given in seconds
+     * @param value The header value, may be null
+     * @return The delay in milliseconds, 0 if there is none or it is given as a date
+     */
+    public static long parseRetryAfter(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim())) * 1000;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+}
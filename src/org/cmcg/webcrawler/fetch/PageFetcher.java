@@ -0,0 +1,64 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.fetch;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Fetches pages for a PageReader.
+ * Implementations must be thread safe, one fetcher is shared by all workers of a crawl.
+ */
+public interface PageFetcher {
+
+    /**
+     * The User-Agent header sent by the fetchers, its product token is also the name matched against robots.txt
+     */
+    public static final String DEFAULT_USER_AGENT = "OS-Web-Crawler (+https://github.com/nik-m2/Web-Crawler)";
+
+    /**
+     * Fetches a page, blocking until the response headers arrive
+     * @param url The url of the page
+     * @return The response, which must be closed by the caller
+     * @throws IOException If the page could not be fetched
+     */
+    public FetchResponse fetch(URL url) throws IOException;
+
+    /**
+     * Fetches a page with extra request headers, e.g. the validators of a conditional request.
+     * Fetchers that can't send headers ignore them.
+     * @param url The url of the page
+     * @param requestHeaders The headers to send
+     * @return The response, which must be closed by the caller
+     * @throws IOException If the page could not be fetched
+     */
+    public default FetchResponse fetch(URL url, Map<String, String> requestHeaders) throws IOException {
+        return fetch(url);
+    }
+
+    /**
+     * Fetches a page without blocking
+     * @param url The url of the page
+     * @return Completes with the response once the headers arrive
+     */
+    public CompletableFuture<FetchResponse> fetchAsync(URL url);
+
+    /**
+     * Sets the User-Agent header sent with every request. Fetchers that can't send headers ignore it.
+     * @param userAgent The header value
+     */
+    public default void setUserAgent(String userAgent) {
+    }
+
+    /**
+     * @return The User-Agent header sent with every request, null if the fetcher doesn't send one
+     */
+    public default String getUserAgent() {
+        return null;
+    }
+
+}
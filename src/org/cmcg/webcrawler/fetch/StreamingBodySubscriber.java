@@ -0,0 +1,153 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.fetch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exposes a response body as an InputStream whose reads time out if no data arrives in time.
+ * Only one chunk is requested at a time, so a slow reader never buffers more than a chunk.
+ */
+class StreamingBodySubscriber implements HttpResponse.BodySubscriber<InputStream> {
+
+    private static final Object END = new Object();
+
+    private LinkedBlockingQueue<Object> chunks;
+    private long readTimeout;
+    private volatile Flow.Subscription subscription;
+    private BodyStream stream;
+
+    /**
+     * @param readTimeout The time to wait for data in milliseconds, 0 to wait forever
+     */
+    StreamingBodySubscriber(long readTimeout) {
+        this.chunks = new LinkedBlockingQueue<Object>();
+        this.readTimeout = readTimeout;
+        this.stream = new BodyStream();
+    }
+
+    @Override
+    public CompletionStage<InputStream> getBody() {
+        return CompletableFuture.<InputStream>completedFuture(stream);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        if (stream.closed) {
+            subscription.cancel();
+        } else {
+            subscription.request(1);
+        }
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> item) {
+        chunks.offer(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        chunks.offer(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        chunks.offer(END);
+    }
+
+    private class BodyStream extends InputStream {
+
+        private Iterator<ByteBuffer> buffers;
+        private ByteBuffer current;
+        private boolean eof;
+        private volatile boolean closed;
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            while (current == null || !current.hasRemaining()) {
+                if (buffers != null && buffers.hasNext()) {
+                    current = buffers.next();
+                    continue;
+                }
+                if (eof) {
+                    return -1;
+                }
+                if (buffers != null) {
+                    // Finished the previous chunk, ask for the next one
+                    buffers = null;
+                    subscription.request(1);
+                }
+                Object chunk = nextChunk();
+                if (chunk == END) {
+                    eof = true;
+                } else if (chunk instanceof Throwable) {
+                    Throwable t = (Throwable) chunk;
+                    throw t instanceof IOException ? (IOException) t : new IOException(t);
+                } else {
+                    @SuppressWarnings("unchecked")
+                    List<ByteBuffer> list = (List<ByteBuffer>) chunk;
+                    buffers = list.iterator();
+                }
+            }
+            int n = Math.min(len, current.remaining());
+            current.get(b, off, n);
+            return n;
+        }
+
+        private Object nextChunk() throws IOException {
+            try {
+                if (readTimeout == 0) {
+                    return chunks.take();
+                }
+                Object chunk = chunks.poll(readTimeout, TimeUnit.MILLISECONDS);
+                if (chunk == null) {
+                    throw new SocketTimeoutException("Read timed out after " + readTimeout + "ms");
+                }
+                return chunk;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                Flow.Subscription s = subscription;
+                if (!eof && s != null) {
+                    // Gives up the rest of the body, the connection can't be reused
+                    s.cancel();
+                }
+            }
+        }
+    }
+
+}
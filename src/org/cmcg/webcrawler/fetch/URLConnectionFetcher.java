@@ -0,0 +1,118 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.fetch;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Fetches pages with {@link URL#openConnection()}, which also supports non-http urls such as file: urls.
+ * Like {@link HttpClientFetcher}, http error statuses are returned as responses rather than thrown.
+ */
+public class URLConnectionFetcher implements PageFetcher {
+
+    private int connectTimeout;
+    private int readTimeout;
+    private String userAgent;
+
+    public URLConnectionFetcher() {
+        this(0, 0);
+    }
+
+    /**
+     * @param connectTimeout The connect timeout in milliseconds, 0 for none
+     * @param readTimeout The read timeout in milliseconds, 0 for none
+     */
+    public URLConnectionFetcher(int connectTimeout, int readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.userAgent = DEFAULT_USER_AGENT;
+    }
+
+    @Override
+    public void setUserAgent(String userAgent) {
+        this.userAgent = userAgent;
+    }
+
+    @Override
+    public String getUserAgent() {
+        return userAgent;
+    }
+
+    @Override
+    public FetchResponse fetch(URL url) throws IOException {
+        return fetch(url, Collections.<String, String>emptyMap());
+    }
+
+    @Override
+    public FetchResponse fetch(URL url, Map<String, String> requestHeaders) throws IOException {
+        URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        if (userAgent != null) {
+            connection.setRequestProperty("User-Agent", userAgent);
+        }
+        for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        int statusCode = 200;
+        InputStream body;
+        if (connection instanceof HttpURLConnection) {
+            // Error statuses are returned like any other, so the caller sees the status and its Retry-After
+            HttpURLConnection http = (HttpURLConnection) connection;
+            statusCode = http.getResponseCode();
+            body = statusCode >= 400 ? http.getErrorStream() : http.getInputStream();
+            if (body == null) {
+                body = new ByteArrayInputStream(new byte[0]);
+            }
+        } else {
+            try {
+                body = connection.getInputStream();
+            } catch (FileNotFoundException e) {
+                return new FetchResponse(url, 404, null, new ByteArrayInputStream(new byte[0]));
+            }
+        }
+
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            if (header.getKey() != null) {
+                headers.put(header.getKey().toLowerCase(Locale.ROOT), header.getValue());
+            }
+        }
+        if (connection.getContentType() != null && !headers.containsKey("content-type")) {
+            headers.put("content-type", Collections.singletonList(connection.getContentType()));
+        }
+        return new FetchResponse(connection.getURL(), statusCode, headers, body);
+    }
+
+    @Override
+    public CompletableFuture<FetchResponse> fetchAsync(final URL url) {
+        CompletableFuture<FetchResponse> future = new CompletableFuture<FetchResponse>();
+        CompletableFuture.runAsync(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    future.complete(fetch(url));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+
+}
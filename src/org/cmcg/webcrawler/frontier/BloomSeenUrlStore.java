@@ -0,0 +1,105 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.frontier;
+
+/**
+ * A memory bounded SeenUrlStore backed by a bloom filter.
+ * Never forgets a url, but may report a url as seen when it wasn't (false positive),
+ * in which case the page is skipped.
+ */
+public class BloomSeenUrlStore implements SeenUrlStore {
+
+    private long[] bits;
+    private long numBits;
+    private int numHashes;
+    private long size;
+
+    /**
+     * @param expectedUrls The amount of urls the filter is sized for
+     * @param falsePositiveRate The false positive rate once expectedUrls have been added, e.g. 0.001
+     */
+    public BloomSeenUrlStore(long expectedUrls, double falsePositiveRate) {
+        if (expectedUrls <= 0) {
+            throw new IllegalArgumentException("expectedUrls must be positive: " + expectedUrls);
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1: " + falsePositiveRate);
+        }
+        double ln2 = Math.log(2);
+        long m = (long) Math.ceil(-expectedUrls * Math.log(falsePositiveRate) / (ln2 * ln2));
+        m = Math.max(64, (m + 63) / 64 * 64);
+        if (m / 64 > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Bloom filter too large: " + m + " bits");
+        }
+        this.bits = new long[(int) (m / 64)];
+        this.numBits = m;
+        this.numHashes = Math.max(1, (int) Math.round((double) m / expectedUrls * ln2));
+    }
+
+    @Override
+    public boolean add(String url) {
+        long hash = hash(url);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        boolean added = false;
+        for (int i = 1; i <= numHashes; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % numBits;
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if ((bits[index] & mask) == 0) {
+                bits[index] |= mask;
+                added = true;
+            }
+        }
+        if (added) {
+            size++;
+        }
+        return added;
+    }
+
+    @Override
+    public boolean contains(String url) {
+        long hash = hash(url);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % numBits;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return The size of the filter in bytes
+     */
+    public long getMemoryUsage() {
+        return bits.length * 8L;
+    }
+
+    /**
+     * 64 bit FNV-1a over the chars of the string, finished with a murmur3 mix
+     */
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
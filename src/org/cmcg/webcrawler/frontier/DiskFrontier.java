@@ -0,0 +1,308 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.frontier;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A FIFO frontier that appends every queued url to a {@link FrontierLog} on disk and only keeps a
+ * bounded window of upcoming urls on the heap. Queued urls are remembered by a {@link DiskSeenUrlStore}.
+ * <p>
+ * A crawl using this frontier can be resumed: {@link #checkpoint(Collection, int)} records the read position
+ * in the log, the pages being fetched and the amount of visited pages. Opening the same directory again
+ * continues from the last checkpoint, pages visited before it are not fetched again. The checkpoint also records
+ * how many urls were queued, so opening only reads the urls queued after it.
+ * A checkpoint can also be taken in two steps, so the crawl only has to wait for
+ * {@link #prepareCheckpoint(Collection, int)} and not for the files to be written.
+ */
+public class DiskFrontier extends Frontier {
+
+    private static final int CHECKPOINT_VERSION = 2;
+    private static final long SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    private Path directory;
+    private FrontierLog log;
+
+    // Ring buffer of the next urls, with their positions in the log
+    private FrontierEntry[] window;
+    private long[] windowPositions;
+    private int windowStart;
+    private int windowSize;
+
+    // Position of the first url that isn't in the window, and the amount of such urls
+    private long diskPosition;
+    private long diskOnly;
+
+    private boolean resumed;
+    private int checkpointedPages;
+    private List<FrontierEntry> pendingEntries;
+
+    private final Object checkpointLock = new Object();
+    private long checkpointSequence;
+    private long writtenSequence;
+    // Read position of the last written checkpoint, the log before it is no longer needed
+    private volatile long writtenPosition;
+
+    /**
+     * Opens the frontier, resuming from the last checkpoint if the directory has one
+     * @param directory The directory for the frontier's files
+     * @param memoryEntries The amount of queued urls kept on the heap
+     * @param memoryUrls The amount of seen urls kept on the heap, see {@link DiskSeenUrlStore}
+     */
+    public DiskFrontier(File directory, int memoryEntries, int memoryUrls) throws IOException {
+        super(new DiskSeenUrlStore(directory.toPath().resolve("seen"), memoryUrls), 0);
+        if (memoryEntries <= 0) {
+            throw new IllegalArgumentException("memoryEntries must be positive: " + memoryEntries);
+        }
+        this.directory = directory.toPath();
+        this.log = new FrontierLog(this.directory.resolve("queue"), SEGMENT_BYTES);
+        this.window = new FrontierEntry[memoryEntries];
+        this.windowPositions = new long[memoryEntries];
+        this.pendingEntries = new ArrayList<FrontierEntry>();
+
+        Path checkpoint = this.directory.resolve("checkpoint");
+        long countedPosition;
+        if (Files.exists(checkpoint)) {
+            countedPosition = readCheckpoint(checkpoint);
+            resumed = true;
+        } else {
+            diskPosition = log.getEndPosition();
+            countedPosition = diskPosition;
+        }
+
+        // The checkpoint counted the urls up to the end of the log, only count the ones queued after it
+        final long[] count = new long[1];
+        log.read(countedPosition, Integer.MAX_VALUE, new FrontierLog.Reader() {
+            @Override
+            public void onEntry(FrontierEntry entry, long position) {
+                count[0]++;
+            }
+        });
+        diskOnly += count[0];
+    }
+
+    @Override
+    protected void enqueue(FrontierEntry entry) {
+        try {
+            long position = log.append(entry);
+            if (diskOnly == 0 && windowSize < window.length) {
+                int index = (windowStart + windowSize) % window.length;
+                window[index] = entry;
+                windowPositions[index] = position;
+                windowSize++;
+                diskPosition = log.getEndPosition();
+            } else {
+                diskOnly++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    protected FrontierEntry dequeue() {
+        if (windowSize == 0) {
+            fillWindow();
+        }
+        FrontierEntry entry = window[windowStart];
+        window[windowStart] = null;
+        windowStart = (windowStart + 1) % window.length;
+        windowSize--;
+        return entry;
+    }
+
+    private void fillWindow() {
+        try {
+            diskPosition = log.read(diskPosition, window.length - windowSize, new FrontierLog.Reader() {
+                @Override
+                public void onEntry(FrontierEntry entry, long position) {
+                    int index = (windowStart + windowSize) % window.length;
+                    window[index] = entry;
+                    windowPositions[index] = position;
+                    windowSize++;
+                    diskOnly--;
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, windowSize + diskOnly);
+    }
+
+    /**
+     * Saves the state of the crawl so it can be resumed. Pages that are queued after the checkpoint may be lost
+     * or queued twice if the crawl is killed before the next checkpoint.
+     * @param pending Pages that were taken from the frontier but not visited yet, they are queued again on resume
+     * @param visitedPages The amount of pages visited so far
+     */
+    public void checkpoint(Collection<FrontierEntry> pending, int visitedPages) throws IOException {
+        writeCheckpoint(prepareCheckpoint(pending, visitedPages));
+        log.deleteBefore(writtenPosition);
+    }
+
+    /**
+     * Takes the state of the crawl for a checkpoint and writes the queued urls to the files without waiting for the disk.
+     * Like every other method it must not run at the same time as other calls on the frontier.
+     * @param pending Pages that were taken from the frontier but not visited yet, they are queued again on resume
+     * @param visitedPages The amount of pages visited so far
+     * @return The checkpoint to write with {@link #writeCheckpoint(Checkpoint)}
+     */
+    public Checkpoint prepareCheckpoint(Collection<FrontierEntry> pending, int visitedPages) throws IOException {
+        // Segments before the last written checkpoint are no longer needed
+        log.deleteBefore(writtenPosition);
+        log.flush(false);
+        DiskSeenUrlStore seenUrls = (DiskSeenUrlStore) getSeenUrls();
+        seenUrls.flush(false);
+        return new Checkpoint(++checkpointSequence, windowSize > 0 ? windowPositions[windowStart] : diskPosition,
+                windowSize + diskOnly, log.getEndPosition(), visitedPages, new ArrayList<FrontierEntry>(pending),
+                log.getWriteChannel(), seenUrls);
+    }
+
+    /**
+     * Forces the queued urls of a checkpoint to the storage device and saves it. Can run while the frontier is used,
+     * checkpoints older than the last written one are skipped.
+     * @param checkpoint A checkpoint from {@link #prepareCheckpoint(Collection, int)}
+     */
+    public void writeCheckpoint(Checkpoint checkpoint) throws IOException {
+        synchronized (checkpointLock) {
+            if (checkpoint.sequence <= writtenSequence) {
+                return;
+            }
+            try {
+                checkpoint.logChannel.force(false);
+            } catch (ClosedChannelException e) {
+                // The segment was full and forced when it was closed
+            }
+            checkpoint.seenUrls.sync();
+            write(checkpoint);
+            writtenSequence = checkpoint.sequence;
+            writtenPosition = checkpoint.readPosition;
+        }
+    }
+
+    private void write(Checkpoint checkpoint) throws IOException {
+        Path temp = directory.resolve("checkpoint.tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+            out.writeInt(CHECKPOINT_VERSION);
+            out.writeLong(checkpoint.readPosition);
+            out.writeLong(checkpoint.queuedUrls);
+            out.writeLong(checkpoint.endPosition);
+            out.writeInt(checkpoint.visitedPages);
+            out.writeInt(checkpoint.pending.size());
+            for (FrontierEntry entry : checkpoint.pending) {
+                out.writeUTF(entry.getUrl());
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getHost());
+                out.writeInt(entry.getDepth());
+                out.writeDouble(entry.getScore());
+            }
+        }
+        Files.move(temp, directory.resolve("checkpoint"), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return The end of the log when the checkpoint was taken, the urls after it still have to be counted
+     */
+    private long readCheckpoint(Path checkpoint) throws IOException {
+        long endPosition;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(checkpoint))) {
+            int version = in.readInt();
+            if (version != CHECKPOINT_VERSION && version != 1) {
+                throw new IOException("Unsupported checkpoint version: " + version);
+            }
+            diskPosition = in.readLong();
+            endPosition = diskPosition;
+            if (version >= 2) {
+                diskOnly = in.readLong();
+                endPosition = in.readLong();
+            }
+            checkpointedPages = in.readInt();
+            int numPending = in.readInt();
+            for (int i = 0; i < numPending; i++) {
+                pendingEntries.add(new FrontierEntry(in.readUTF(), in.readUTF(), in.readUTF(), in.readInt(),
+                        in.readDouble()));
+            }
+        }
+        return endPosition;
+    }
+
+    /**
+     * @return true if the frontier was resumed from a checkpoint
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * @return The amount of pages visited when the last checkpoint was taken
+     */
+    public int getCheckpointedPages() {
+        return checkpointedPages;
+    }
+
+    /**
+     * Takes the pages that were being fetched when the last checkpoint was taken, so they can be queued again.
+     * Afterwards the frontier no longer counts as resumed.
+     * @return The pending pages
+     */
+    public List<FrontierEntry> takePendingEntries() {
+        List<FrontierEntry> entries = pendingEntries;
+        pendingEntries = new ArrayList<FrontierEntry>();
+        resumed = false;
+        return entries;
+    }
+
+    public void close() throws IOException {
+        log.deleteBefore(writtenPosition);
+        log.close();
+        ((DiskSeenUrlStore) getSeenUrls()).close();
+    }
+
+    /**
+     * The state of a crawl taken by {@link DiskFrontier#prepareCheckpoint(Collection, int)}
+     */
+    public static class Checkpoint {
+
+        private long sequence;
+        private long readPosition;
+        private long queuedUrls;
+        private long endPosition;
+        private int visitedPages;
+        private List<FrontierEntry> pending;
+        private FileChannel logChannel;
+        private DiskSeenUrlStore seenUrls;
+
+        private Checkpoint(long sequence, long readPosition, long queuedUrls, long endPosition, int visitedPages,
+                List<FrontierEntry> pending, FileChannel logChannel, DiskSeenUrlStore seenUrls) {
+            this.sequence = sequence;
+            this.readPosition = readPosition;
+            this.queuedUrls = queuedUrls;
+            this.endPosition = endPosition;
+            this.visitedPages = visitedPages;
+            this.pending = pending;
+            this.logChannel = logChannel;
+            this.seenUrls = seenUrls;
+        }
+
+    }
+
+}
@@ -0,0 +1,424 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.frontier;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+
+/**
+ * A SeenUrlStore that keeps recent urls on the heap and spills them to sorted, memory mapped run files
+ * once the heap budget is reached. Every added url is also appended to a journal so the store survives restarts.
+ * Each run has a bloom filter so most lookups of unseen urls never touch the disk.
+ * A new run is merged with the run before it while that run isn't larger, so there are only
+ * logarithmically many runs to check however many urls are seen.
+ */
+public class DiskSeenUrlStore implements SeenUrlStore {
+
+    private static final int INDEX_INTERVAL = 64;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Comparator<byte[]> UNSIGNED_ORDER = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] a, byte[] b) {
+            int length = Math.min(a.length, b.length);
+            for (int i = 0; i < length; i++) {
+                int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return a.length - b.length;
+        }
+    };
+
+    private Path directory;
+    private int memoryUrls;
+
+    private HashSet<String> recentUrls;
+    private ArrayList<Run> runs;
+    private long size;
+
+    private FileChannel journal;
+    private ByteBuffer journalBuffer;
+
+    /**
+     * Opens the store, loading any urls saved in the directory
+     * @param directory The directory for the run files and the journal
+     * @param memoryUrls The amount of urls kept on the heap before they are written to a run file
+     */
+    public DiskSeenUrlStore(Path directory, int memoryUrls) throws IOException {
+        if (memoryUrls <= 0) {
+            throw new IllegalArgumentException("memoryUrls must be positive: " + memoryUrls);
+        }
+        this.directory = directory;
+        this.memoryUrls = memoryUrls;
+        this.recentUrls = new HashSet<String>();
+        this.runs = new ArrayList<Run>();
+        this.journalBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        Files.createDirectories(directory);
+        ArrayList<Path> runFiles = new ArrayList<Path>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "run-*.dat")) {
+            for (Path file : files) {
+                runFiles.add(file);
+            }
+        }
+        Collections.sort(runFiles);
+        for (Path file : runFiles) {
+            Run run = new Run(file);
+            runs.add(run);
+            size += run.count;
+        }
+
+        journal = FileChannel.open(directory.resolve("journal.dat"), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.READ);
+        replayJournal();
+    }
+
+    private void replayJournal() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long offset = 0;
+        while (true) {
+            buffer.clear();
+            if (journal.read(buffer, offset) <= 0) {
+                break;
+            }
+            buffer.flip();
+            int parsed = 0;
+            while (buffer.remaining() >= 2) {
+                int length = buffer.getShort(buffer.position()) & 0xFFFF;
+                if (buffer.remaining() < 2 + length) {
+                    break;
+                }
+                buffer.getShort();
+                String url = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+                if (recentUrls.add(url)) {
+                    size++;
+                }
+                parsed += 2 + length;
+            }
+            if (parsed == 0) {
+                break;
+            }
+            offset += parsed;
+        }
+        // Drop a partially written url
+        journal.truncate(offset);
+        journal.position(offset);
+    }
+
+    @Override
+    public boolean add(String url) {
+        if (contains(url)) {
+            return false;
+        }
+        byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Url too long: " + url);
+        }
+        try {
+            if (journalBuffer.remaining() < 2 + bytes.length) {
+                flushJournal();
+            }
+            journalBuffer.putShort((short) bytes.length);
+            journalBuffer.put(bytes);
+
+            recentUrls.add(url);
+            size++;
+            if (recentUrls.size() >= memoryUrls) {
+                spill();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(String url) {
+        if (recentUrls.contains(url)) {
+            return true;
+        }
+        if (runs.isEmpty()) {
+            return false;
+        }
+        byte[] bytes = null;
+        for (int i = runs.size() - 1; i >= 0; i--) {
+            Run run = runs.get(i);
+            if (run.bloom.contains(url)) {
+                if (bytes == null) {
+                    bytes = url.getBytes(StandardCharsets.UTF_8);
+                }
+                if (run.contains(bytes)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return The amount of run files on disk
+     */
+    public int getNumRuns() {
+        return runs.size();
+    }
+
+    /**
+     * Writes all added urls to disk
+     * @param sync true to also force them to the storage device
+     */
+    public void flush(boolean sync) throws IOException {
+        flushJournal();
+        if (sync) {
+            journal.force(false);
+        }
+    }
+
+    /**
+     * Forces the urls written by {@link #flush(boolean)} to the storage device.
+     * Unlike the other methods it may run while urls are added.
+     */
+    public void sync() throws IOException {
+        journal.force(false);
+    }
+
+    public void close() throws IOException {
+        flushJournal();
+        journal.close();
+    }
+
+    private void flushJournal() throws IOException {
+        journalBuffer.flip();
+        while (journalBuffer.hasRemaining()) {
+            journal.write(journalBuffer);
+        }
+        journalBuffer.clear();
+    }
+
+    /**
+     * Writes the urls on the heap to a new run file and starts a new journal
+     */
+    private void spill() throws IOException {
+        byte[][] urls = new byte[recentUrls.size()][];
+        int i = 0;
+        for (String url : recentUrls) {
+            urls[i++] = url.getBytes(StandardCharsets.UTF_8);
+        }
+        Arrays.sort(urls, UNSIGNED_ORDER);
+
+        Path file = runFile(runs.isEmpty() ? 0 : runs.get(runs.size() - 1).number + 1);
+        Path temp = directory.resolve("run.tmp");
+        try (RunWriter writer = new RunWriter(temp, urls.length)) {
+            for (byte[] url : urls) {
+                writer.write(url);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        runs.add(new Run(file));
+
+        recentUrls.clear();
+        journalBuffer.clear();
+        journal.truncate(0);
+        journal.position(0);
+
+        while (runs.size() >= 2) {
+            Run newer = runs.get(runs.size() - 1);
+            Run older = runs.get(runs.size() - 2);
+            // Run files are mapped, so they can't grow past 2GB
+            if (older.count > newer.count || (long) older.data.capacity() + newer.data.capacity() > Integer.MAX_VALUE) {
+                break;
+            }
+            Run merged = merge(older, newer);
+            runs.remove(runs.size() - 1);
+            runs.set(runs.size() - 1, merged);
+        }
+    }
+
+    /**
+     * Merges two runs into a file that replaces the newer one, then deletes the older one.
+     * The runs never hold the same url, the store only adds urls it hasn't seen.
+     */
+    private Run merge(Run older, Run newer) throws IOException {
+        Path temp = directory.resolve("run.tmp");
+        try (RunWriter writer = new RunWriter(temp, older.count + newer.count)) {
+            int olderOffset = 4;
+            int newerOffset = 4;
+            byte[] olderUrl = older.count > 0 ? older.urlAt(olderOffset) : null;
+            byte[] newerUrl = newer.count > 0 ? newer.urlAt(newerOffset) : null;
+            int olderLeft = older.count;
+            int newerLeft = newer.count;
+            while (olderLeft > 0 || newerLeft > 0) {
+                if (newerLeft == 0 || (olderLeft > 0 && UNSIGNED_ORDER.compare(olderUrl, newerUrl) < 0)) {
+                    writer.write(olderUrl);
+                    olderOffset += 2 + olderUrl.length;
+                    olderUrl = --olderLeft > 0 ? older.urlAt(olderOffset) : null;
+                } else {
+                    writer.write(newerUrl);
+                    newerOffset += 2 + newerUrl.length;
+                    newerUrl = --newerLeft > 0 ? newer.urlAt(newerOffset) : null;
+                }
+            }
+        }
+        Path file = runFile(newer.number);
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(runFile(older.number));
+        return new Run(file);
+    }
+
+    private Path runFile(int number) {
+        return directory.resolve(String.format("run-%06d.dat", number));
+    }
+
+    /**
+     * Writes a run file: the amount of urls, then each url as its length and bytes
+     */
+    private static class RunWriter implements Closeable {
+        FileChannel channel;
+        ByteBuffer buffer;
+
+        RunWriter(Path file, int count) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            buffer.putInt(count);
+        }
+
+        void write(byte[] url) throws IOException {
+            if (buffer.remaining() < 2 + url.length) {
+                flush();
+            }
+            buffer.putShort((short) url.length);
+            buffer.put(url);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * A sorted, memory mapped file of urls with a sparse index of every {@link #INDEX_INTERVAL}th url
+     */
+    private static class Run {
+        int number;
+        int count;
+        MappedByteBuffer data;
+        byte[][] indexUrls;
+        int[] indexOffsets;
+        BloomSeenUrlStore bloom;
+
+        Run(Path file) throws IOException {
+            String name = file.getFileName().toString();
+            this.number = Integer.parseInt(name.substring(4, name.length() - 4));
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("Run file too large: " + file);
+                }
+                data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            count = data.getInt(0);
+            bloom = new BloomSeenUrlStore(Math.max(1, count), 0.01);
+            indexUrls = new byte[(count + INDEX_INTERVAL - 1) / INDEX_INTERVAL][];
+            indexOffsets = new int[indexUrls.length];
+
+            int offset = 4;
+            for (int i = 0; i < count; i++) {
+                byte[] url = urlAt(offset);
+                bloom.add(new String(url, StandardCharsets.UTF_8));
+                if (i % INDEX_INTERVAL == 0) {
+                    indexUrls[i / INDEX_INTERVAL] = url;
+                    indexOffsets[i / INDEX_INTERVAL] = offset;
+                }
+                offset += 2 + url.length;
+            }
+        }
+
+        /**
+         * @param offset The offset of a url's length
+         * @return The url's bytes
+         */
+        byte[] urlAt(int offset) {
+            byte[] url = new byte[data.getShort(offset) & 0xFFFF];
+            for (int j = 0; j < url.length; j++) {
+                url[j] = data.get(offset + 2 + j);
+            }
+            return url;
+        }
+
+        boolean contains(byte[] url) {
+            int block = Arrays.binarySearch(indexUrls, url, UNSIGNED_ORDER);
+            if (block >= 0) {
+                return true;
+            }
+            block = -block - 2;
+            if (block < 0) {
+                return false;
+            }
+
+            int offset = indexOffsets[block];
+            int end = Math.min(count, (block + 1) * INDEX_INTERVAL);
+            for (int i = block * INDEX_INTERVAL; i < end; i++) {
+                int length = data.getShort(offset) & 0xFFFF;
+                int c = compare(url, offset + 2, length);
+                if (c == 0) {
+                    return true;
+                }
+                if (c < 0) {
+                    return false;
+                }
+                offset += 2 + length;
+            }
+            return false;
+        }
+
+        private int compare(byte[] url, int offset, int length) {
+            int min = Math.min(url.length, length);
+            for (int i = 0; i < min; i++) {
+                int c = (url[i] & 0xFF) - (data.get(offset + i) & 0xFF);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return url.length - length;
+        }
+    }
+
+}
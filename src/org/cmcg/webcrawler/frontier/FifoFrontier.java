@@ -0,0 +1,47 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.frontier;
+
+import java.util.ArrayDeque;
+
+/**
+ * Visits urls in the order they were found (breadth first)
+ */
+public class FifoFrontier extends Frontier {
+
+    private ArrayDeque<FrontierEntry> queue;
+
+    /**
+     * Creates an unbounded frontier that remembers queued urls in a {@link HashSeenUrlStore}
+     */
+    public FifoFrontier() {
+        this(new HashSeenUrlStore(), 0);
+    }
+
+    /**
+     * @param seenUrls Stores every url that has been queued
+     * @param capacity The maximum amount of queued urls, 0 for no limit
+     */
+    public FifoFrontier(SeenUrlStore seenUrls, int capacity) {
+        super(seenUrls, capacity);
+        this.queue = new ArrayDeque<FrontierEntry>();
+    }
+
+    @Override
+    protected void enqueue(FrontierEntry entry) {
+        queue.addLast(entry);
+    }
+
+    @Override
+    protected FrontierEntry dequeue() {
+        return queue.pollFirst();
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+}
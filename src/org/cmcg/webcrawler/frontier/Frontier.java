@@ -0,0 +1,125 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.frontier;
+
+/**
+ * Holds the urls a crawl still has to visit and decides the order they are visited in.
+ * Urls are deduplicated on enqueue, so a url is only ever queued once.
+ * Implementations are not thread safe, the crawl synchronizes access.
+ */
+public abstract class Frontier {
+
+    private SeenUrlStore seenUrls;
+    private int capacity;
+    private long numDropped;
+
+    /**
+     * @param seenUrls Stores every url that has been queued
+     * @param capacity The maximum amount of queued urls, 0 for no limit
+     */
+    protected Frontier(SeenUrlStore seenUrls, int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity can't be negative: " + capacity);
+        }
+        this.seenUrls = seenUrls;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Queues a url unless it has been queued before.
+     * If the frontier is full the url with the lowest priority is dropped, which may be the offered url.
+     * A dropped url isn't marked as seen, so it can be offered again once there is room.
+     * @param entry The url to queue
+     * @return true if the url was queued
+     */
+    public boolean offer(FrontierEntry entry) {
+        if (seenUrls.contains(entry.getKey())) {
+            return false;
+        }
+        if (capacity != 0 && size() >= capacity) {
+            numDropped++;
+            FrontierEntry dropped = dropFor(entry);
+            if (dropped == entry) {
+                return false;
+            }
+            seenUrls.remove(dropped.getKey());
+        } else {
+            enqueue(entry);
+        }
+        seenUrls.add(entry.getKey());
+        return true;
+    }
+
+    /**
+     * @return The next url to visit, or null if the frontier is empty
+     */
+    public FrontierEntry poll() {
+        return isEmpty() ? null : dequeue();
+    }
+
+    /**
+     * Puts back a url taken with {@link #poll()} that can't be visited yet.
+     * It is queued in the frontier's order behind the urls queued now, even if the frontier is full.
+     * @param entry The url
+     */
+    public void requeue(FrontierEntry entry) {
+        enqueue(entry);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @param key A normalized url
+     * @return true if the url has been queued at some point
+     */
+    public boolean hasSeen(String key) {
+        return seenUrls.contains(key);
+    }
+
+    public SeenUrlStore getSeenUrls() {
+        return seenUrls;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The amount of urls dropped because the frontier was full
+     */
+    public long getNumDropped() {
+        return numDropped;
+    }
+
+    /**
+     * Called when the frontier is full.
+     * Drops the offered url by default.
+     * @param entry The offered url
+     * @return The dropped url, either the offered url or a queued url that was replaced by it
+     */
+    protected FrontierEntry dropFor(FrontierEntry entry) {
+        return entry;
+    }
+
+    /**
+     * Adds a deduplicated url
+     * @param entry The url to add
+     */
+    protected abstract void enqueue(FrontierEntry entry);
+
+    /**
+     * Removes the next url, only called when the frontier isn't empty
+     * @return The next url to visit
+     */
+    protected abstract FrontierEntry dequeue();
+
+    /**
+     * @return The amount of queued urls
+     */
+    public abstract int size();
+
+}
@@ -0,0 +1,57 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.frontier;
+
+/**
+ * A url waiting in the frontier
+ */
+public class FrontierEntry {
+
+    private String url;
+    private String key;
+    private String host;
+    private int depth;
+    private double score;
+
+    /**
+     * @param url The url to fetch
+     * @param key The normalized url, used for deduplication
+     * @param host The host of the url
+     * @param depth The amount of links followed from the root page
+     * @param score The priority of the url, higher scores are visited first by a {@link PriorityFrontier}
+     */
+    public FrontierEntry(String url, String key, String host, int depth, double score) {
+        this.url = url;
+        this.key = key;
+        this.host = host;
+        this.depth = depth;
+        this.score = score;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public String toString() {
+        return url;
+    }
+
+}
@@ -0,0 +1,298 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.frontier;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * An append-only log of frontier entries, split into segment files.
+ * A position in the log packs the segment number in the high bits and the offset in the segment in the low 40 bits.
+ */
+class FrontierLog {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    /**
+     * Receives entries read from the log
+     */
+    interface Reader {
+        void onEntry(FrontierEntry entry, long position);
+    }
+
+    private Path directory;
+    private long segmentBytes;
+
+    private ArrayList<Long> segments;
+    private FileChannel writeChannel;
+    private ByteBuffer writeBuffer;
+    private long writeSegment;
+    private long writeOffset;
+
+    private FileChannel readChannel;
+    private long readChannelSegment;
+    private ByteBuffer readBuffer;
+
+    /**
+     * Opens the log, dropping a partially written entry at the end of the last segment
+     * @param directory The directory holding the segment files
+     * @param segmentBytes The size a segment grows to before a new one is started
+     */
+    FrontierLog(Path directory, long segmentBytes) throws IOException {
+        if (segmentBytes <= BUFFER_SIZE || segmentBytes > OFFSET_MASK) {
+            throw new IllegalArgumentException("Invalid segment size: " + segmentBytes);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.segments = new ArrayList<Long>();
+        this.writeBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.readChannelSegment = -1;
+
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.log")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                segments.add(Long.parseLong(name.substring(8, name.length() - 4)));
+            }
+        }
+        Collections.sort(segments);
+
+        if (segments.isEmpty()) {
+            segments.add(0L);
+        }
+        writeSegment = segments.get(segments.size() - 1);
+        writeChannel = FileChannel.open(segmentFile(writeSegment), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.READ);
+
+        // Find the end of the last complete entry
+        long end = offset(read(position(writeSegment, 0), Integer.MAX_VALUE, new Reader() {
+            @Override
+            public void onEntry(FrontierEntry entry, long position) {
+            }
+        }));
+        writeChannel.truncate(end);
+        writeOffset = end;
+    }
+
+    /**
+     * Appends an entry to the log
+     * @param entry The entry to append
+     * @return The position of the entry
+     */
+    long append(FrontierEntry entry) throws IOException {
+        byte[] url = entry.getUrl().getBytes(StandardCharsets.UTF_8);
+        byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+        byte[] host = entry.getHost().getBytes(StandardCharsets.UTF_8);
+        if (url.length > 0xFFFF || key.length > 0xFFFF || host.length > 0xFFFF) {
+            throw new IllegalArgumentException("Url too long: " + entry.getUrl());
+        }
+
+        int length = 4 + 8 + 6 + url.length + key.length + host.length;
+        if (writeBuffer.remaining() < 4 + length) {
+            flushBuffer();
+        }
+
+        long position = position(writeSegment, writeOffset);
+        writeBuffer.putInt(length);
+        writeBuffer.putInt(entry.getDepth());
+        writeBuffer.putDouble(entry.getScore());
+        putString(url);
+        putString(key);
+        putString(host);
+        writeOffset += 4 + length;
+
+        if (writeOffset >= segmentBytes) {
+            flushBuffer();
+            // A checkpoint may be waiting to force this segment
+            writeChannel.force(false);
+            writeChannel.close();
+            writeSegment++;
+            writeOffset = 0;
+            segments.add(writeSegment);
+            writeChannel = FileChannel.open(segmentFile(writeSegment), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.READ);
+        }
+        return position;
+    }
+
+    private void putString(byte[] bytes) {
+        writeBuffer.putShort((short) bytes.length);
+        writeBuffer.put(bytes);
+    }
+
+    /**
+     * Reads entries starting at a position
+     * @param position The position of the first entry to read
+     * @param max The maximum amount of entries to read
+     * @param reader Receives the entries
+     * @return The position after the last entry read
+     */
+    long read(long position, int max, Reader reader) throws IOException {
+        flushBuffer();
+
+        long segment = segment(position);
+        long offset = offset(position);
+        int numRead = 0;
+
+        while (numRead < max) {
+            FileChannel channel = readChannel(segment);
+            if (channel == null) {
+                break;
+            }
+
+            readBuffer.clear();
+            int bytes = 0;
+            while (readBuffer.hasRemaining()) {
+                int n = channel.read(readBuffer, offset + bytes);
+                if (n <= 0) {
+                    break;
+                }
+                bytes += n;
+            }
+            readBuffer.flip();
+
+            int parsed = 0;
+            while (numRead < max && readBuffer.remaining() >= 4) {
+                int length = readBuffer.getInt(readBuffer.position());
+                if (readBuffer.remaining() < 4 + length) {
+                    break;
+                }
+                readBuffer.getInt();
+                int depth = readBuffer.getInt();
+                double score = readBuffer.getDouble();
+                String url = getString();
+                String key = getString();
+                String host = getString();
+                reader.onEntry(new FrontierEntry(url, key, host, depth, score), position(segment, offset + parsed));
+                parsed += 4 + length;
+                numRead++;
+            }
+            offset += parsed;
+
+            if (parsed == 0) {
+                // End of this segment, continue in the next one if there is one
+                int index = segments.indexOf(segment);
+                if (index == -1 || index == segments.size() - 1) {
+                    break;
+                }
+                segment = segments.get(index + 1);
+                offset = 0;
+            }
+        }
+        return position(segment, offset);
+    }
+
+    private String getString() {
+        int length = readBuffer.getShort() & 0xFFFF;
+        String s = new String(readBuffer.array(), readBuffer.position(), length, StandardCharsets.UTF_8);
+        readBuffer.position(readBuffer.position() + length);
+        return s;
+    }
+
+    private FileChannel readChannel(long segment) throws IOException {
+        if (segment == writeSegment) {
+            return writeChannel;
+        }
+        if (segment != readChannelSegment) {
+            if (readChannel != null) {
+                readChannel.close();
+                readChannel = null;
+            }
+            readChannelSegment = segment;
+            if (!segments.contains(segment)) {
+                return null;
+            }
+            readChannel = FileChannel.open(segmentFile(segment), StandardOpenOption.READ);
+        }
+        return readChannel;
+    }
+
+    /**
+     * @return The position the next entry will be appended at
+     */
+    long getEndPosition() {
+        return position(writeSegment, writeOffset);
+    }
+
+    /**
+     * Deletes the segments before the segment of a position
+     * @param position A position that is still needed
+     */
+    void deleteBefore(long position) throws IOException {
+        long segment = segment(position);
+        while (!segments.isEmpty() && segments.get(0) < segment) {
+            long oldSegment = segments.remove(0);
+            if (oldSegment == readChannelSegment && readChannel != null) {
+                readChannel.close();
+                readChannel = null;
+                readChannelSegment = -1;
+            }
+            Files.deleteIfExists(segmentFile(oldSegment));
+        }
+    }
+
+    /**
+     * @return The channel of the segment being appended to, forcing it makes the flushed entries durable
+     */
+    FileChannel getWriteChannel() {
+        return writeChannel;
+    }
+
+    /**
+     * Writes buffered entries to disk
+     * @param sync true to also force them to the storage device
+     */
+    void flush(boolean sync) throws IOException {
+        flushBuffer();
+        if (sync) {
+            writeChannel.force(false);
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        writeBuffer.flip();
+        long offset = writeOffset - writeBuffer.remaining();
+        while (writeBuffer.hasRemaining()) {
+            offset += writeChannel.write(writeBuffer, offset);
+        }
+        writeBuffer.clear();
+    }
+
+    void close() throws IOException {
+        flushBuffer();
+        writeChannel.close();
+        if (readChannel != null) {
+            readChannel.close();
+        }
+    }
+
+    private Path segmentFile(long segment) {
+        return directory.resolve(String.format("segment-%06d.log", segment));
+    }
+
+    static long position(long segment, long offset) {
+        return (segment << OFFSET_BITS) | offset;
+    }
+
+    static long segment(long position) {
+        return position >>> OFFSET_BITS;
+    }
+
+    static long offset(long position) {
+        return position & OFFSET_MASK;
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.frontier;
+
+import java.util.HashSet;
+
+/**
+ * An exact SeenUrlStore backed by a hash set
+ */
+public class HashSeenUrlStore implements SeenUrlStore {
+
+    private HashSet<String> urls;
+
+    public HashSeenUrlStore() {
+        this.urls = new HashSet<String>();
+    }
+
+    /**
+     * @param expectedUrls The amount of urls the store is sized for
+     */
+    public HashSeenUrlStore(int expectedUrls) {
+        this.urls = new HashSet<String>(Math.max(16, (int) (expectedUrls / 0.75f) + 1));
+    }
+
+    @Override
+    public boolean add(String url) {
+        return urls.add(url);
+    }
+
+    @Override
+    public boolean contains(String url) {
+        return urls.contains(url);
+    }
+
+    @Override
+    public void remove(String url) {
+        urls.remove(url);
+    }
+
+    @Override
+    public long size() {
+        return urls.size();
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.frontier;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * Takes turns between hosts, visiting the urls of each host in the order they were found
+ */
+public class HostRoundRobinFrontier extends Frontier {
+
+    private HashMap<String, ArrayDeque<FrontierEntry>> hostQueues;
+    private ArrayDeque<ArrayDeque<FrontierEntry>> turns;
+    private int size;
+
+    /**
+     * @param seenUrls Stores every url that has been queued
+     * @param capacity The maximum amount of queued urls, 0 for no limit
+     */
+    public HostRoundRobinFrontier(SeenUrlStore seenUrls, int capacity) {
+        super(seenUrls, capacity);
+        this.hostQueues = new HashMap<String, ArrayDeque<FrontierEntry>>();
+        this.turns = new ArrayDeque<ArrayDeque<FrontierEntry>>();
+    }
+
+    @Override
+    protected void enqueue(FrontierEntry entry) {
+        ArrayDeque<FrontierEntry> hostQueue = hostQueues.get(entry.getHost());
+        if (hostQueue == null) {
+            hostQueue = new ArrayDeque<FrontierEntry>();
+            hostQueues.put(entry.getHost(), hostQueue);
+            turns.addLast(hostQueue);
+        }
+        hostQueue.addLast(entry);
+        size++;
+    }
+
+    @Override
+    protected FrontierEntry dequeue() {
+        ArrayDeque<FrontierEntry> hostQueue = turns.pollFirst();
+        FrontierEntry entry = hostQueue.pollFirst();
+        if (hostQueue.isEmpty()) {
+            hostQueues.remove(entry.getHost());
+        } else {
+            turns.addLast(hostQueue);
+        }
+        size--;
+        return entry;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The amount of hosts with queued urls
+     */
+    public int getNumHosts() {
+        return hostQueues.size();
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.frontier;
+
+import java.util.Comparator;
+import java.util.TreeSet;
+
+/**
+ * Visits urls with the highest score first, then the lowest depth, then in the order they were found.
+ * When full, the url with the lowest priority is dropped.
+ */
+public class PriorityFrontier extends Frontier {
+
+    private static final Comparator<Slot> ORDER = new Comparator<Slot>() {
+        @Override
+        public int compare(Slot a, Slot b) {
+            int c = Double.compare(b.entry.getScore(), a.entry.getScore());
+            if (c == 0) {
+                c = Integer.compare(a.entry.getDepth(), b.entry.getDepth());
+            }
+            if (c == 0) {
+                c = Long.compare(a.sequence, b.sequence);
+            }
+            return c;
+        }
+    };
+
+    private TreeSet<Slot> queue;
+    private long sequence;
+
+    /**
+     * @param seenUrls Stores every url that has been queued
+     * @param capacity The maximum amount of queued urls, 0 for no limit
+     */
+    public PriorityFrontier(SeenUrlStore seenUrls, int capacity) {
+        super(seenUrls, capacity);
+        this.queue = new TreeSet<Slot>(ORDER);
+    }
+
+    @Override
+    protected FrontierEntry dropFor(FrontierEntry entry) {
+        Slot slot = new Slot(entry, sequence++);
+        if (ORDER.compare(slot, queue.last()) >= 0) {
+            return entry;
+        }
+        Slot dropped = queue.pollLast();
+        queue.add(slot);
+        return dropped.entry;
+    }
+
+    @Override
+    protected void enqueue(FrontierEntry entry) {
+        queue.add(new Slot(entry, sequence++));
+    }
+
+    @Override
+    protected FrontierEntry dequeue() {
+        return queue.pollFirst().entry;
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    private static class Slot {
+        FrontierEntry entry;
+        long sequence;
+
+        Slot(FrontierEntry entry, long sequence) {
+            this.entry = entry;
+            this.sequence = sequence;
+        }
+    }
+
+}
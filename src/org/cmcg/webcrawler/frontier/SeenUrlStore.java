@@ -0,0 +1,40 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.frontier;
+
+/**
+ * Remembers which urls a crawl has already seen.
+ * Urls are expected to be normalized by the caller.
+ * Implementations are not thread safe, the crawl synchronizes access.
+ */
+public interface SeenUrlStore {
+
+    /**
+     * Marks a url as seen
+     * @param url The normalized url
+     * @return true if the url had not been seen before
+     */
+    public boolean add(String url);
+
+    /**
+     * @param url The normalized url
+     * @return true if the url has been seen. May return false positives depending on the implementation
+     */
+    public boolean contains(String url);
+
+    /**
+     * Forgets a url, so it can be added again.
+     * Stores that can't forget a url, like bloom filters, keep it seen.
+     * @param url The normalized url
+     */
+    public default void remove(String url) {
+    }
+
+    /**
+     * @return The amount of urls added
+     */
+    public long size();
+
+}
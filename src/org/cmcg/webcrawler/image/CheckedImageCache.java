@@ -0,0 +1,279 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.image;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers which reference images each site image matched, so an image is only compared once.
+ * Images are looked up by their normalized url, and by a hash of their content so the same image
+ * under another url is only compared once. Both maps evict their least recently used entries once full.
+ * The cache can be saved to a file and loaded by later crawls that use the same reference images.
+ * An image loaded from the file is downloaded again before it is trusted, with the validators of its last download
+ * so an unchanged image only costs a 304 response, see {@link #getValidators(String)}.
+ */
+public class CheckedImageCache {
+
+    private static final int FILE_MAGIC = 0x494D4743;// IMGC
+    private static final int FILE_VERSION = 2;
+
+    /**
+     * Longer urls and headers in a saved cache mean the file is corrupt
+     */
+    private static final int MAX_STRING_LENGTH = 1024 * 1024;
+
+    private static final int[] NO_MATCHES = new int[0];
+
+    private int maxEntries;
+    private LruMap<String, Entry> byUrl;
+    private LruMap<Long, int[]> byContent;
+
+    /**
+     * @param maxEntries The most images remembered
+     */
+    public CheckedImageCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.byUrl = new LruMap<String, Entry>(maxEntries);
+        this.byContent = new LruMap<Long, int[]>(maxEntries);
+    }
+
+    /**
+     * @param url The normalized url of the image
+     * @return The indexes of the reference images it matched, or null if it hasn't been checked since the cache was loaded
+     */
+    public synchronized int[] getByUrl(String url) {
+        Entry entry = byUrl.get(url);
+        return entry == null || entry.loaded ? null : entry.matches;
+    }
+
+    /**
+     * @param url The normalized url of the image
+     * @return The headers of a conditional request for an image checked by an earlier crawl, empty if there are none
+     */
+    public synchronized Map<String, String> getValidators(String url) {
+        HashMap<String, String> validators = new HashMap<String, String>();
+        Entry entry = byUrl.get(url);
+        if (entry != null) {
+            if (entry.etag != null) {
+                validators.put("If-None-Match", entry.etag);
+            }
+            if (entry.lastModified != null) {
+                validators.put("If-Modified-Since", entry.lastModified);
+            }
+        }
+        return validators;
+    }
+
+    /**
+     * Trusts an image checked by an earlier crawl, once the server said it hasn't changed
+     * @param url The normalized url of the image
+     * @return The indexes of the reference images it matched, or null if it is no longer remembered
+     */
+    public synchronized int[] revalidate(String url) {
+        Entry entry = byUrl.get(url);
+        if (entry == null) {
+            return null;
+        }
+        entry.loaded = false;
+        return entry.matches;
+    }
+
+    /**
+     * @param contentHash The hash of the image file, see {@link #hashContent(byte[], int)}
+     * @return The indexes of the reference images it matched, or null if it hasn't been checked
+     */
+    public synchronized int[] getByContent(long contentHash) {
+        return byContent.get(contentHash);
+    }
+
+    /**
+     * @param url The normalized url of the image
+     * @param contentHash The hash of the image file
+     * @param matches The indexes of the reference images it matched
+     */
+    public void put(String url, long contentHash, int[] matches) {
+        put(url, contentHash, matches, null, null);
+    }
+
+    /**
+     * @param url The normalized url of the image
+     * @param contentHash The hash of the image file
+     * @param matches The indexes of the reference images it matched
+     * @param etag The ETag header of the image, or null
+     * @param lastModified The Last-Modified header of the image, or null
+     */
+    public synchronized void put(String url, long contentHash, int[] matches, String etag, String lastModified) {
+        if (matches.length == 0) {
+            matches = NO_MATCHES;
+        }
+        byUrl.put(url, new Entry(contentHash, matches, etag, lastModified));
+        byContent.put(contentHash, matches);
+    }
+
+    /**
+     * @return The amount of remembered urls
+     */
+    public synchronized int size() {
+        return byUrl.size();
+    }
+
+    /**
+     * Loads a cache saved by {@link #save(File, long)}
+     * @param file The file, nothing is loaded if it doesn't exist
+     * @param referenceSetId Identifies the reference images, the file is ignored if it was saved for others
+     * @return true if the file was loaded
+     */
+    public synchronized boolean load(File file, long referenceSetId) throws IOException {
+        if (!file.exists()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION || in.readLong() != referenceSetId) {
+                return false;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String url = readString(in);
+                String etag = readString(in);
+                String lastModified = readString(in);
+                long contentHash = in.readLong();
+                int[] matches = new int[in.readInt()];
+                for (int j = 0; j < matches.length; j++) {
+                    matches[j] = in.readInt();
+                }
+                put(url, contentHash, matches, etag, lastModified);
+                // The image may have changed since, see getValidators
+                byUrl.get(url).loaded = true;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Saves the cache, least recently used images first so loading keeps their order
+     * @param file The file, replaced atomically
+     * @param referenceSetId Identifies the reference images the matches refer to
+     */
+    public synchronized void save(File file, long referenceSetId) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeLong(referenceSetId);
+            out.writeInt(byUrl.size());
+            for (Map.Entry<String, Entry> entry : byUrl.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue().etag);
+                writeString(out, entry.getValue().lastModified);
+                out.writeLong(entry.getValue().contentHash);
+                int[] matches = entry.getValue().matches;
+                out.writeInt(matches.length);
+                for (int match : matches) {
+                    out.writeInt(match);
+                }
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes a string as its length and UTF-8 bytes, unlike writeUTF it may be longer than 64KB
+     * @param s The string, or null
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > MAX_STRING_LENGTH) {
+            throw new IOException("Invalid string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param data The bytes of an image file
+     * @param length The amount of bytes
+     * @return A 64 bit FNV-1a hash of the bytes
+     */
+    public static long hashContent(byte[] data, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ (data[i] & 0xFF)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    private static class Entry {
+
+        private long contentHash;
+        private int[] matches;
+        private String etag;
+        private String lastModified;
+        /**
+         * True if the image was checked by an earlier crawl and hasn't been revalidated yet
+         */
+        private boolean loaded;
+
+        Entry(long contentHash, int[] matches, String etag, String lastModified) {
+            this.contentHash = contentHash;
+            this.matches = matches;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+    }
+
+    private static class LruMap<K, V> extends LinkedHashMap<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private int maxEntries;
+
+        LruMap(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxEntries;
+        }
+
+    }
+
+}
@@ -0,0 +1,163 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.image;
+
+import java.util.Arrays;
+
+/**
+ * A multi-index hash table of 64 bit hashes under the Hamming distance.
+ * Each hash is split into four 16 bit blocks and filed under each of them. Two hashes within distance r
+ * have at least one block within distance r / 4, so a search only probes the buckets near each block of
+ * the query instead of comparing against every hash.
+ * Not thread safe while adding, searches may run concurrently.
+ */
+public class HashIndex {
+
+    private static final int NUM_BLOCKS = 4;
+    private static final int BLOCK_BITS = 16;
+    private static final int NUM_BUCKETS = 1 << BLOCK_BITS;
+
+    /**
+     * Above this distance probing every nearby bucket costs more than scanning all hashes
+     */
+    private static final int MAX_PROBE_DISTANCE = 12;
+
+    private long[] hashes;
+    private int[] ids;
+    private int size;
+
+    private int[][] bucketHeads;
+    private int[][] nextInBucket;
+
+    public HashIndex() {
+        this.hashes = new long[16];
+        this.ids = new int[16];
+        this.bucketHeads = new int[NUM_BLOCKS][NUM_BUCKETS];
+        this.nextInBucket = new int[NUM_BLOCKS][16];
+        for (int[] heads : bucketHeads) {
+            Arrays.fill(heads, -1);
+        }
+    }
+
+    /**
+     * @param hash The item's hash
+     * @param id The item's id
+     */
+    public void add(long hash, int id) {
+        if (size == hashes.length) {
+            hashes = Arrays.copyOf(hashes, size * 2);
+            ids = Arrays.copyOf(ids, size * 2);
+            for (int block = 0; block < NUM_BLOCKS; block++) {
+                nextInBucket[block] = Arrays.copyOf(nextInBucket[block], size * 2);
+            }
+        }
+        hashes[size] = hash;
+        ids[size] = id;
+        for (int block = 0; block < NUM_BLOCKS; block++) {
+            int bucket = block(hash, block);
+            nextInBucket[block][size] = bucketHeads[block][bucket];
+            bucketHeads[block][bucket] = size;
+        }
+        size++;
+    }
+
+    /**
+     * Finds all items whose hash is within a distance of the query
+     * @param hash The query
+     * @param maxDistance The largest Hamming distance to include
+     * @return The ids of the items, in no particular order
+     */
+    public int[] search(long hash, int maxDistance) {
+        int[] found = new int[8];
+        int numFound = 0;
+
+        if (maxDistance > MAX_PROBE_DISTANCE) {
+            for (int i = 0; i < size; i++) {
+                if (ImageHash.distance(hash, hashes[i]) <= maxDistance) {
+                    if (numFound == found.length) {
+                        found = Arrays.copyOf(found, numFound * 2);
+                    }
+                    found[numFound++] = ids[i];
+                }
+            }
+            return Arrays.copyOf(found, numFound);
+        }
+
+        int[] items = new int[8];
+        int numItems = 0;
+        int blockDistance = maxDistance / NUM_BLOCKS;
+        int[] flips = new int[blockDistance];
+        for (int block = 0; block < NUM_BLOCKS; block++) {
+            int queryBlock = block(hash, block);
+            // Visit every bucket that differs from the query's block in at most blockDistance bits
+            for (int numFlips = 0; numFlips <= blockDistance; numFlips++) {
+                for (int i = 0; i < numFlips; i++) {
+                    flips[i] = i;
+                }
+                while (true) {
+                    int bucket = queryBlock;
+                    for (int i = 0; i < numFlips; i++) {
+                        bucket ^= 1 << flips[i];
+                    }
+                    for (int item = bucketHeads[block][bucket]; item != -1; item = nextInBucket[block][item]) {
+                        if (ImageHash.distance(hash, hashes[item]) <= maxDistance) {
+                            if (numItems == items.length) {
+                                items = Arrays.copyOf(items, numItems * 2);
+                            }
+                            items[numItems++] = item;
+                        }
+                    }
+                    if (!nextCombination(flips, numFlips)) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        // An item close in several blocks was found once per block
+        Arrays.sort(items, 0, numItems);
+        for (int i = 0; i < numItems; i++) {
+            if (i > 0 && items[i] == items[i - 1]) {
+                continue;
+            }
+            if (numFound == found.length) {
+                found = Arrays.copyOf(found, numFound * 2);
+            }
+            found[numFound++] = ids[items[i]];
+        }
+        return Arrays.copyOf(found, numFound);
+    }
+
+    /**
+     * @return The amount of added items
+     */
+    public int size() {
+        return size;
+    }
+
+    private static int block(long hash, int block) {
+        return (int) (hash >>> (block * BLOCK_BITS)) & (NUM_BUCKETS - 1);
+    }
+
+    /**
+     * Moves to the next set of bit positions in lexicographic order
+     * @return false if there are no more
+     */
+    private static boolean nextCombination(int[] flips, int numFlips) {
+        int i = numFlips - 1;
+        while (i >= 0 && flips[i] == BLOCK_BITS - numFlips + i) {
+            i--;
+        }
+        if (i < 0) {
+            return false;
+        }
+        flips[i]++;
+        for (int j = i + 1; j < numFlips; j++) {
+            flips[j] = flips[j - 1] + 1;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.image;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * 64 bit perceptual hashes of images. Similar looking images get hashes that differ in few bits,
+ * so the Hamming distance between hashes can be used to find match candidates.
+ */
+public class ImageHash {
+
+    /**
+     * Compares each pixel of an 8x8 thumbnail to the thumbnail's mean. Fastest, least robust.
+     */
+    public static final int AVERAGE = 0;
+
+    /**
+     * Compares each pixel of a 9x8 thumbnail to its right neighbour. Fast and robust to brightness changes.
+     */
+    public static final int DIFFERENCE = 1;
+
+    /**
+     * Compares the low frequencies of a 32x32 thumbnail's DCT to their median. Slowest, robust to scaling and compression.
+     */
+    public static final int PERCEPTUAL = 2;
+
+    private static final double[][] DCT_COEFFICIENTS = new double[8][32];
+
+    static {
+        for (int u = 0; u < 8; u++) {
+            for (int x = 0; x < 32; x++) {
+                DCT_COEFFICIENTS[u][x] = Math.cos((2 * x + 1) * u * Math.PI / 64);
+            }
+        }
+    }
+
+    private ImageHash() {
+    }
+
+    /**
+     * @param algorithm {@link #AVERAGE}, {@link #DIFFERENCE} or {@link #PERCEPTUAL}
+     * @param image The image
+     * @return The image's hash
+     */
+    public static long hash(int algorithm, BufferedImage image) {
+        switch (algorithm) {
+        case AVERAGE:
+            return averageHash(image);
+        case DIFFERENCE:
+            return differenceHash(image);
+        case PERCEPTUAL:
+            return perceptualHash(image);
+        default:
+            throw new IllegalArgumentException("Unknown hash algorithm: " + algorithm);
+        }
+    }
+
+    public static long averageHash(BufferedImage image) {
+        double[] gray = grayscale(image, 8, 8);
+        double mean = 0;
+        for (double value : gray) {
+            mean += value;
+        }
+        mean /= gray.length;
+
+        long hash = 0;
+        for (int i = 0; i < 64; i++) {
+            if (gray[i] > mean) {
+                hash |= 1L << i;
+            }
+        }
+        return hash;
+    }
+
+    public static long differenceHash(BufferedImage image) {
+        double[] gray = grayscale(image, 9, 8);
+        long hash = 0;
+        int bit = 0;
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                if (gray[y * 9 + x] > gray[y * 9 + x + 1]) {
+                    hash |= 1L << bit;
+                }
+                bit++;
+            }
+        }
+        return hash;
+    }
+
+    public static long perceptualHash(BufferedImage image) {
+        double[] gray = grayscale(image, 32, 32);
+
+        // Only the 8x8 lowest frequencies of the 2D DCT are needed, rows first then columns
+        double[] rows = new double[32 * 8];
+        for (int y = 0; y < 32; y++) {
+            for (int u = 0; u < 8; u++) {
+                double sum = 0;
+                for (int x = 0; x < 32; x++) {
+                    sum += gray[y * 32 + x] * DCT_COEFFICIENTS[u][x];
+                }
+                rows[y * 8 + u] = sum;
+            }
+        }
+        double[] dct = new double[64];
+        for (int v = 0; v < 8; v++) {
+            for (int u = 0; u < 8; u++) {
+                double sum = 0;
+                for (int y = 0; y < 32; y++) {
+                    sum += rows[y * 8 + u] * DCT_COEFFICIENTS[v][y];
+                }
+                dct[v * 8 + u] = sum;
+            }
+        }
+
+        // The DC term only holds the average brightness
+        double[] sorted = new double[63];
+        System.arraycopy(dct, 1, sorted, 0, 63);
+        Arrays.sort(sorted);
+        double median = sorted[31];
+
+        long hash = 0;
+        for (int i = 1; i < 64; i++) {
+            if (dct[i] > median) {
+                hash |= 1L << i;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return The amount of bits that differ between two hashes
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * Shrinks an image to a grayscale thumbnail by averaging the pixels that fall into each cell
+     */
+    static double[] grayscale(BufferedImage image, int width, int height) {
+        int imageWidth = image.getWidth();
+        int imageHeight = image.getHeight();
+        double[] sums = new double[width * height];
+        int[] counts = new int[width * height];
+
+        int[] row = new int[imageWidth];
+        for (int y = 0; y < imageHeight; y++) {
+            image.getRGB(0, y, imageWidth, 1, row, 0, imageWidth);
+            int cellRow = (int) ((long) y * height / imageHeight) * width;
+            for (int x = 0; x < imageWidth; x++) {
+                int rgb = row[x];
+                int cell = cellRow + (int) ((long) x * width / imageWidth);
+                sums[cell] += 0.299 * ((rgb >> 16) & 0xFF) + 0.587 * ((rgb >> 8) & 0xFF) + 0.114 * (rgb & 0xFF);
+                counts[cell]++;
+            }
+        }
+
+        for (int i = 0; i < sums.length; i++) {
+            if (counts[i] != 0) {
+                sums[i] /= counts[i];
+            }
+        }
+        if (imageWidth < width || imageHeight < height) {
+            fillEmptyCells(sums, counts, width, height, imageWidth, imageHeight);
+        }
+        return sums;
+    }
+
+    /**
+     * Images smaller than the thumbnail leave cells without pixels, those take the value of the pixel they cover
+     */
+    private static void fillEmptyCells(double[] sums, int[] counts, int width, int height, int imageWidth,
+            int imageHeight) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (counts[y * width + x] == 0) {
+                    int sourceX = (int) ((long) x * imageWidth / width);
+                    int sourceY = (int) ((long) y * imageHeight / height);
+                    int cellX = (int) ((long) sourceX * width / imageWidth);
+                    int cellY = (int) ((long) sourceY * height / imageHeight);
+                    sums[y * width + x] = sums[cellY * width + cellX];
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.image;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+/**
+ * Reads the pixels of images as packed ARGB ints, the format {@link java.awt.image.PixelGrabber} produces
+ */
+public class ImagePixels {
+
+    private ImagePixels() {
+    }
+
+    /**
+     * Gets an image's pixels, reading an ARGB image's raster directly instead of copying it
+     * @param image The image
+     * @param buffer A buffer to reuse for images that must be converted, may be null or too small
+     * @return The pixels, row by row. Either the image's own data, the buffer, or a new array if the buffer was too small.
+     *         May be longer than width * height.
+     */
+    public static int[] argb(BufferedImage image, int[] buffer) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int length = width * height;
+
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB && isPacked(image.getRaster(), width)) {
+            return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+        if (buffer == null || buffer.length < length) {
+            buffer = new int[length];
+        }
+        if (image.getType() == BufferedImage.TYPE_INT_RGB && isPacked(image.getRaster(), width)) {
+            int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            for (int i = 0; i < length; i++) {
+                buffer[i] = data[i] | 0xFF000000;
+            }
+            return buffer;
+        }
+        image.getRGB(0, 0, width, height, buffer, 0, width);
+        return buffer;
+    }
+
+    /**
+     * Scales an image the way {@link Image#SCALE_SMOOTH} does
+     * @param image The image
+     * @param width The new width
+     * @param height The new height
+     * @return The scaled pixels
+     */
+    public static int[] scale(BufferedImage image, int width, int height) {
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.drawImage(image.getScaledInstance(width, height, Image.SCALE_SMOOTH), 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return ((DataBufferInt) scaled.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Compares pixels, stopping at the first difference
+     * @param a The first pixels
+     * @param b The second pixels
+     * @param length The amount of pixels to compare
+     * @return true if they are all equal
+     */
+    public static boolean equal(int[] a, int[] b, int length) {
+        if (a.length < length || b.length < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the raster's data is exactly its pixels, one int per pixel without padding or offset
+     */
+    private static boolean isPacked(Raster raster, int width) {
+        if (!(raster.getDataBuffer() instanceof DataBufferInt) || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)) {
+            return false;
+        }
+        SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        return model.getScanlineStride() == width && raster.getDataBuffer().getOffset() == 0
+                && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0;
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.image;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the pixels of recently used reference images within a memory budget.
+ * Once the budget is exceeded the least recently used pixels are dropped, and must be decoded again when next needed.
+ */
+public class PixelCache {
+
+    private long maxBytes;
+    private long bytes;
+    private LinkedHashMap<Integer, int[]> pixels;
+
+    /**
+     * @param maxBytes The most memory used by cached pixels, in bytes
+     */
+    public PixelCache(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must not be negative: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.pixels = new LinkedHashMap<Integer, int[]>(16, 0.75f, true);
+    }
+
+    /**
+     * @param id The id of the image
+     * @return The image's pixels, or null if they aren't cached
+     */
+    public synchronized int[] get(int id) {
+        return pixels.get(id);
+    }
+
+    /**
+     * Caches an image's pixels, dropping the least recently used pixels until the cache fits its budget.
+     * Pixels larger than the whole budget aren't cached.
+     * @param id The id of the image
+     * @param imagePixels The image's pixels
+     */
+    public synchronized void put(int id, int[] imagePixels) {
+        long size = sizeOf(imagePixels);
+        if (size > maxBytes) {
+            return;
+        }
+        int[] old = pixels.put(id, imagePixels);
+        if (old != null) {
+            bytes -= sizeOf(old);
+        }
+        bytes += size;
+
+        Iterator<Map.Entry<Integer, int[]>> it = pixels.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<Integer, int[]> eldest = it.next();
+            bytes -= sizeOf(eldest.getValue());
+            it.remove();
+        }
+    }
+
+    /**
+     * @return The memory used by cached pixels, in bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return The amount of cached images
+     */
+    public synchronized int size() {
+        return pixels.size();
+    }
+
+    private static long sizeOf(int[] imagePixels) {
+        return 4L * imagePixels.length;
+    }
+
+}
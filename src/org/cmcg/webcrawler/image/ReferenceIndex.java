@@ -0,0 +1,170 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.image;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+
+/**
+ * The size and hash of each reference image file, saved so later runs only decode images that were added or changed.
+ * A file's fingerprint is only used if the file's size and modification time haven't changed.
+ */
+public class ReferenceIndex {
+
+    private static final int FILE_MAGIC = 0x494D4749;// IMGI
+    private static final int FILE_VERSION = 2;
+
+    /**
+     * Longer paths in a saved index mean the file is corrupt
+     */
+    private static final int MAX_PATH_LENGTH = 1024 * 1024;
+
+    private HashMap<String, Fingerprint> fingerprints;
+
+    public ReferenceIndex() {
+        this.fingerprints = new HashMap<String, Fingerprint>();
+    }
+
+    /**
+     * @param path The path of the image file
+     * @param lastModified The file's modification time
+     * @param length The file's size in bytes
+     * @return The image's fingerprint, or null if it isn't indexed or the file changed
+     */
+    public synchronized Fingerprint get(String path, long lastModified, long length) {
+        Fingerprint fingerprint = fingerprints.get(path);
+        if (fingerprint == null || fingerprint.lastModified != lastModified || fingerprint.length != length) {
+            return null;
+        }
+        return fingerprint;
+    }
+
+    public synchronized void put(Fingerprint fingerprint) {
+        fingerprints.put(fingerprint.path, fingerprint);
+    }
+
+    /**
+     * @return The amount of indexed images
+     */
+    public synchronized int size() {
+        return fingerprints.size();
+    }
+
+    /**
+     * Loads an index saved by {@link #save(File)}
+     * @param file The file, nothing is loaded if it doesn't exist
+     * @return true if the file was loaded
+     */
+    public synchronized boolean load(File file) throws IOException {
+        if (!file.exists()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                return false;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                put(new Fingerprint(readString(in), in.readLong(), in.readLong(), in.readInt(), in.readInt(), in.readLong()));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param file The file, replaced atomically
+     */
+    public synchronized void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(fingerprints.size());
+            for (Fingerprint fingerprint : fingerprints.values()) {
+                writeString(out, fingerprint.path);
+                out.writeLong(fingerprint.lastModified);
+                out.writeLong(fingerprint.length);
+                out.writeInt(fingerprint.width);
+                out.writeInt(fingerprint.height);
+                out.writeLong(fingerprint.hash);
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes a string as its length and UTF-8 bytes, unlike writeUTF it may be longer than 64KB
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_PATH_LENGTH) {
+            throw new IOException("Invalid path length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static class Fingerprint {
+
+        private String path;
+        private long lastModified;
+        private long length;
+        private int width;
+        private int height;
+        private long hash;
+
+        /**
+         * @param path The path of the image file
+         * @param lastModified The file's modification time
+         * @param length The file's size in bytes
+         * @param width The image's width
+         * @param height The image's height
+         * @param hash The image's hash
+         */
+        public Fingerprint(String path, long lastModified, long length, int width, int height, long hash) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.width = width;
+            this.height = height;
+            this.hash = hash;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public long getHash() {
+            return hash;
+        }
+
+    }
+
+}
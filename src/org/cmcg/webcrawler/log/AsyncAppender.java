@@ -0,0 +1,148 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.log;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.nikm.logger.Log;
+
+/**
+ * Writes log messages to {@link Log} on a background thread, so threads that log don't wait for the output.
+ * Messages wait in a bounded queue and are formatted and written in batches. When the queue is full
+ * messages are either dropped or the logging thread waits, depending on the policy.
+ * The writer thread is a daemon, {@link CrawlLog} flushes its appender when the JVM exits.
+ */
+public class AsyncAppender {
+
+    /**
+     * Drop messages while the queue is full, logging threads never wait
+     */
+    public static final int DROP = 0;
+    /**
+     * Wait for space in the queue, no message is lost
+     */
+    public static final int BLOCK = 1;
+
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private static final int BATCH_SIZE = 256;
+
+    private ArrayBlockingQueue<LogEntry> queue;
+    private int policy;
+    private volatile Thread writer;
+    private LongAdder dropped;
+    private AtomicLong appended;
+    private long written;
+
+    /**
+     * @param capacity The most messages waiting to be written
+     * @param policy {@link #DROP} or {@link #BLOCK}
+     */
+    public AsyncAppender(int capacity, int policy) {
+        if (policy != DROP && policy != BLOCK) {
+            throw new IllegalArgumentException("Unknown policy: " + policy);
+        }
+        this.queue = new ArrayBlockingQueue<LogEntry>(capacity);
+        this.policy = policy;
+        this.dropped = new LongAdder();
+        this.appended = new AtomicLong();
+    }
+
+    void append(LogEntry entry) {
+        if (writer == null) {
+            startWriter();
+        }
+        if (!queue.offer(entry)) {
+            if (policy == DROP) {
+                dropped.increment();
+                return;
+            }
+            try {
+                queue.put(entry);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropped.increment();
+                return;
+            }
+        }
+        appended.incrementAndGet();
+    }
+
+    private synchronized void startWriter() {
+        if (writer != null) {
+            return;
+        }
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeEntries();
+            }
+        }, "crawl-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private void writeEntries() {
+        ArrayList<LogEntry> batch = new ArrayList<LogEntry>(BATCH_SIZE);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, BATCH_SIZE - 1);
+            for (LogEntry entry : batch) {
+                try {
+                    entry.write();
+                } catch (RuntimeException e) {
+                    Log.error("Could not write log message: " + e);
+                }
+            }
+            long numDropped = dropped.sumThenReset();
+            if (numDropped > 0) {
+                Log.log("Dropped " + numDropped + " log messages");
+            }
+            synchronized (this) {
+                written += batch.size();
+                notifyAll();
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Waits until the messages logged so far are written
+     * @param timeout The most time to wait in milliseconds
+     */
+    public void flush(long timeout) {
+        long target = appended.get();
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (this) {
+            try {
+                long remaining;
+                while (written < target && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                    wait(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return The amount of messages dropped since the last batch was written
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public int getPolicy() {
+        return policy;
+    }
+
+}
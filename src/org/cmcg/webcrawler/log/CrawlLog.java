@@ -0,0 +1,143 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.log;
+
+import java.util.function.Supplier;
+
+/**
+ * Logging for the crawl's hot paths. Messages below the level are skipped before they are built,
+ * and messages that pass are built and written by an {@link AsyncAppender} instead of the logging thread.
+ * Messages use {} placeholders, filled in with the arguments' toString when the message is written,
+ * so arguments shouldn't change after they are logged.
+ * Errors are still written straight to {@link org.nikm.logger.Log} so they are never dropped.
+ */
+public class CrawlLog {
+
+    public static final int DEBUG = 0;
+    public static final int INFO = 1;
+    public static final int OFF = 2;
+
+    private static volatile int level = INFO;
+    private static volatile AsyncAppender appender = new AsyncAppender(AsyncAppender.DEFAULT_CAPACITY, AsyncAppender.DROP);
+
+    static {
+        // One hook for every appender, the ones that were replaced were flushed by setAppender
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, "crawl-log-flush"));
+    }
+
+    private CrawlLog() {
+    }
+
+    /**
+     * @param level {@link #DEBUG}, {@link #INFO} or {@link #OFF}
+     */
+    public static void setLevel(int level) {
+        CrawlLog.level = level;
+    }
+
+    public static int getLevel() {
+        return level;
+    }
+
+    /**
+     * Sets the appender messages are written by. The previous appender's messages are written first.
+     * @param appender The appender, or null to write messages on the logging thread
+     */
+    public static void setAppender(AsyncAppender appender) {
+        flush();
+        CrawlLog.appender = appender;
+    }
+
+    public static boolean isDebugEnabled() {
+        return level <= DEBUG;
+    }
+
+    public static boolean isInfoEnabled() {
+        return level <= INFO;
+    }
+
+    public static void debug(String message) {
+        if (level <= DEBUG) {
+            append(new LogEntry(DEBUG, message, null));
+        }
+    }
+
+    public static void debug(String format, Object arg) {
+        if (level <= DEBUG) {
+            append(new LogEntry(DEBUG, format, new Object[] {arg}));
+        }
+    }
+
+    public static void debug(String format, Object arg1, Object arg2) {
+        if (level <= DEBUG) {
+            append(new LogEntry(DEBUG, format, new Object[] {arg1, arg2}));
+        }
+    }
+
+    public static void debug(Supplier<String> message) {
+        if (level <= DEBUG) {
+            append(new LogEntry(DEBUG, message));
+        }
+    }
+
+    public static void info(String message) {
+        if (level <= INFO) {
+            append(new LogEntry(INFO, message, null));
+        }
+    }
+
+    public static void info(String format, Object arg) {
+        if (level <= INFO) {
+            append(new LogEntry(INFO, format, new Object[] {arg}));
+        }
+    }
+
+    public static void info(String format, Object arg1, Object arg2) {
+        if (level <= INFO) {
+            append(new LogEntry(INFO, format, new Object[] {arg1, arg2}));
+        }
+    }
+
+    /**
+     * Logs a message with more arguments. The arguments array is created even when the level is off,
+     * on hot paths check {@link #isInfoEnabled()} first.
+     */
+    public static void info(String format, Object... args) {
+        if (level <= INFO) {
+            append(new LogEntry(INFO, format, args));
+        }
+    }
+
+    public static void info(Supplier<String> message) {
+        if (level <= INFO) {
+            append(new LogEntry(INFO, message));
+        }
+    }
+
+    /**
+     * Waits up to a second for the messages logged so far to be written
+     */
+    public static void flush() {
+        AsyncAppender current = appender;
+        if (current != null) {
+            current.flush(1000);
+        }
+    }
+
+    private static void append(LogEntry entry) {
+        AsyncAppender current = appender;
+        if (current != null) {
+            current.append(entry);
+        } else {
+            entry.write();
+        }
+    }
+
+}
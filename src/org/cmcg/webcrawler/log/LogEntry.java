@@ -0,0 +1,60 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.log;
+
+import java.util.function.Supplier;
+
+import org.nikm.logger.Log;
+
+/**
+ * A message waiting to be written, formatted when it is written rather than when it is logged
+ */
+class LogEntry {
+
+    private int level;
+    private String format;
+    private Object[] args;
+    private Supplier<String> supplier;
+
+    LogEntry(int level, String format, Object[] args) {
+        this.level = level;
+        this.format = format;
+        this.args = args;
+    }
+
+    LogEntry(int level, Supplier<String> supplier) {
+        this.level = level;
+        this.supplier = supplier;
+    }
+
+    void write() {
+        String message = supplier != null ? supplier.get() : format(format, args);
+        if (level == CrawlLog.DEBUG) {
+            Log.debug(message);
+        } else {
+            Log.log(message);
+        }
+    }
+
+    /**
+     * Replaces each {} in the format with the next argument
+     */
+    static String format(String format, Object[] args) {
+        if (args == null || args.length == 0) {
+            return format;
+        }
+        StringBuilder message = new StringBuilder(format.length() + 16 * args.length);
+        int arg = 0;
+        int start = 0;
+        int placeholder;
+        while (arg < args.length && (placeholder = format.indexOf("{}", start)) != -1) {
+            message.append(format, start, placeholder).append(args[arg++]);
+            start = placeholder + 2;
+        }
+        message.append(format, start, format.length());
+        return message.toString();
+    }
+
+}
@@ -0,0 +1,224 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The counters, histograms and gauges of a crawl, by name. Updating a metric doesn't lock, so they can be
+ * updated on every page and read from another thread while the crawl runs.
+ * Times are recorded in nanoseconds.
+ */
+public class CrawlMetrics {
+
+    /**
+     * Pages fetched and searched
+     */
+    public static final String PAGES = "pages";
+    /**
+     * Pages skipped because they haven't changed since they were cached
+     */
+    public static final String PAGES_UNCHANGED = "pages.unchanged";
+    /**
+     * Pages skipped because they nearly duplicate another page
+     */
+    public static final String PAGES_DUPLICATE = "pages.duplicate";
+    /**
+     * Pages skipped because robots.txt disallows them
+     */
+    public static final String PAGES_DISALLOWED = "pages.disallowed";
+    /**
+     * Pages queued again after a transient error
+     */
+    public static final String PAGES_RETRIED = "pages.retried";
+    /**
+     * Bytes of page content read
+     */
+    public static final String BYTES = "fetch.bytes";
+    /**
+     * Time from sending a request to receiving the response headers
+     */
+    public static final String TIME_TO_FIRST_BYTE = "fetch.ttfb";
+    /**
+     * Time spent fetching and decoding a page, excluding the time spent searching it
+     */
+    public static final String FETCH_TIME = "fetch.time";
+    /**
+     * Prefix of the time each kind of search spends on a page, followed by the search's class name.
+     * Tag searches sharing an HTMLTagTokenizer are timed on their own, the tokenizer's time is the time spent tokenizing.
+     */
+    public static final String SEARCH_TIME = "search.";
+    /**
+     * Prefix of the errors by type, followed by the exception's class name or the http status code
+     */
+    public static final String ERRORS = "errors.";
+    /**
+     * Pages waiting to be crawled
+     */
+    public static final String QUEUED_PAGES = "queue.pages";
+    /**
+     * Time to compare a site image with the reference images
+     */
+    public static final String IMAGE_COMPARE_TIME = "image.compare";
+    /**
+     * Time to download a site image
+     */
+    public static final String IMAGE_DOWNLOAD_TIME = "image.download";
+
+    private ConcurrentHashMap<String, Counter> counters;
+    private ConcurrentHashMap<String, Histogram> histograms;
+    private ConcurrentHashMap<String, Gauge> gauges;
+    private volatile long startTime;
+    private volatile long endTime;
+    private volatile boolean jfrEvents;
+
+    public CrawlMetrics() {
+        this.counters = new ConcurrentHashMap<String, Counter>();
+        this.histograms = new ConcurrentHashMap<String, Histogram>();
+        this.gauges = new ConcurrentHashMap<String, Gauge>();
+    }
+
+    /**
+     * @param name The name of the counter
+     * @return The counter, created the first time it is used
+     */
+    public Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            Counter newCounter = new Counter();
+            counter = counters.putIfAbsent(name, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * @param name The name of the histogram
+     * @return The histogram, created the first time it is used
+     */
+    public Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram newHistogram = new Histogram();
+            histogram = histograms.putIfAbsent(name, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * @param name The name of the gauge
+     * @param gauge The gauge, or null to remove it
+     */
+    public void setGauge(String name, Gauge gauge) {
+        if (gauge == null) {
+            gauges.remove(name);
+        } else {
+            gauges.put(name, gauge);
+        }
+    }
+
+    /**
+     * @return The value of each counter, sorted by name
+     */
+    public Map<String, Long> getCounters() {
+        TreeMap<String, Long> values = new TreeMap<String, Long>();
+        for (Map.Entry<String, Counter> counter : counters.entrySet()) {
+            values.put(counter.getKey(), counter.getValue().get());
+        }
+        return values;
+    }
+
+    /**
+     * @return Each histogram, sorted by name
+     */
+    public Map<String, Histogram> getHistograms() {
+        return new TreeMap<String, Histogram>(histograms);
+    }
+
+    /**
+     * @return The current value of each gauge, sorted by name
+     */
+    public Map<String, Long> getGauges() {
+        TreeMap<String, Long> values = new TreeMap<String, Long>();
+        for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+            values.put(gauge.getKey(), gauge.getValue().getValue());
+        }
+        return values;
+    }
+
+    /**
+     * Called when a crawl starts
+     */
+    public void start() {
+        startTime = System.nanoTime();
+        endTime = 0;
+    }
+
+    /**
+     * Called when a crawl ends
+     */
+    public void stop() {
+        endTime = System.nanoTime();
+    }
+
+    /**
+     * @return The time the last crawl has run for, in nanoseconds
+     */
+    public long getElapsedTime() {
+        if (startTime == 0) {
+            return 0;
+        }
+        long end = endTime;
+        return (end != 0 ? end : System.nanoTime()) - startTime;
+    }
+
+    /**
+     * @return The average amount of pages searched per second
+     */
+    public double getPagesPerSecond() {
+        long elapsed = getElapsedTime();
+        return elapsed == 0 ? 0 : counter(PAGES).get() * 1e9 / elapsed;
+    }
+
+    /**
+     * Sets whether a Java Flight Recorder event is committed for each page. Events are only recorded while
+     * a flight recording is running, but creating them has a small cost when none is.
+     * @param jfrEvents true to commit {@link PageEvent}s
+     */
+    public void setJfrEvents(boolean jfrEvents) {
+        this.jfrEvents = jfrEvents;
+    }
+
+    public boolean isJfrEvents() {
+        return jfrEvents;
+    }
+
+    /**
+     * @return Every metric on its own line
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append("pages/sec ").append(String.format("%.2f", getPagesPerSecond()));
+        for (Map.Entry<String, Long> counter : getCounters().entrySet()) {
+            report.append('\n').append(counter.getKey()).append(' ').append(counter.getValue());
+        }
+        for (Map.Entry<String, Long> gauge : getGauges().entrySet()) {
+            report.append('\n').append(gauge.getKey()).append(' ').append(gauge.getValue());
+        }
+        for (Map.Entry<String, Histogram> histogram : getHistograms().entrySet()) {
+            report.append('\n').append(histogram.getKey()).append(' ').append(histogram.getValue());
+        }
+        return report.toString();
+    }
+
+}
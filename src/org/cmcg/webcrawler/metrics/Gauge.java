@@ -0,0 +1,17 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.metrics;
+
+/**
+ * A value read when the metrics are read, such as the size of a queue
+ */
+public interface Gauge {
+
+    /**
+     * @return The current value
+     */
+    public long getValue();
+
+}
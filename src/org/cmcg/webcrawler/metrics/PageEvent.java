@@ -0,0 +1,44 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A Java Flight Recorder event for each crawled page, only committed when JFR events are enabled in {@link CrawlMetrics}
+ */
+@Name("org.nikm.webcrawler.Page")
+@Label("Crawled Page")
+@Category("Web Crawler")
+@Description("A page fetched and searched by the crawler")
+public class PageEvent extends Event {
+
+    @Label("URL")
+    public String url;
+
+    @Label("Outcome")
+    @Description("visited, unchanged, duplicate, not found, disallowed, robots unavailable, "
+            + "http and the status of an error response, or the class of the exception")
+    public String outcome;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Time To First Byte")
+    @Timespan(Timespan.NANOSECONDS)
+    public long timeToFirstByte;
+
+    @Label("Search Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long searchTime;
+
+}
@@ -0,0 +1,299 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.politeness;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.nikm.webcrawler.frontier.FrontierEntry;
+
+/**
+ * Holds pages taken from the frontier until their host may be sent another request.
+ * Each host gets a token bucket that refills at one request per request delay,
+ * and a limit on the amount of its pages being fetched at once.
+ * Hosts without pages are forgotten once their token bucket has refilled.
+ * Not thread safe, the crawl session synchronizes all calls.
+ */
+public class HostScheduler {
+
+    /**
+     * The time between looking for hosts to forget, in milliseconds
+     */
+    private static final long PRUNE_INTERVAL = 60000;
+
+    private PolitenessPolicy policy;
+    private HashMap<String, Host> hosts;
+    private PriorityQueue<Host> readyHosts;
+    private int size;
+    private long lastPrune;
+
+    /**
+     * @param policy The limits applied to each host
+     */
+    public HostScheduler(PolitenessPolicy policy) {
+        this.policy = policy;
+        this.hosts = new HashMap<String, Host>();
+        this.readyHosts = new PriorityQueue<Host>(16, new Comparator<Host>() {
+            @Override
+            public int compare(Host a, Host b) {
+                return Long.compare(a.queuedReadyTime, b.queuedReadyTime);
+            }
+        });
+    }
+
+    /**
+     * Queues a page behind the other pages of its host
+     * @param entry The page
+     * @param now The current time in milliseconds
+     */
+    public void add(FrontierEntry entry, long now) {
+        pruneIdleHosts(now);
+        Host host = getHost(entry.getHost(), now);
+        host.pages.addLast(entry);
+        size++;
+        schedule(host, now);
+    }
+
+    /**
+     * Queues a page that failed in front of the other pages of its host, and holds back the host for a while
+     * @param entry The page
+     * @param delay The time to wait before the host is sent another request in milliseconds
+     * @param now The current time in milliseconds
+     */
+    public void retry(FrontierEntry entry, long delay, long now) {
+        Host host = getHost(entry.getHost(), now);
+        host.pages.addFirst(entry);
+        host.backoffUntil = Math.max(host.backoffUntil, now + delay);
+        size++;
+        schedule(host, now);
+    }
+
+    /**
+     * Takes a page whose host may be sent a request now
+     * @param now The current time in milliseconds
+     * @return The page, or null if every host with queued pages must wait
+     */
+    public FrontierEntry poll(long now) {
+        Host host;
+        while ((host = readyHosts.peek()) != null) {
+            long readyTime = host.getReadyTime(now);
+            if (readyTime > host.queuedReadyTime) {// Delay changed while queued
+                readyHosts.poll();
+                host.queuedReadyTime = readyTime;
+                readyHosts.add(host);
+                continue;
+            }
+            if (readyTime > now) {
+                return null;
+            }
+
+            readyHosts.poll();
+            host.queued = false;
+            host.takeToken(now);
+            host.activeRequests++;
+            size--;
+            FrontierEntry entry = host.pages.pollFirst();
+            schedule(host, now);
+            return entry;
+        }
+        return null;
+    }
+
+    /**
+     * Called when a page returned by {@link #poll(long)} is done, so its host can be sent another request
+     * @param entry The page
+     * @param now The current time in milliseconds
+     */
+    public void release(FrontierEntry entry, long now) {
+        Host host = hosts.get(entry.getHost());
+        if (host == null) {
+            return;
+        }
+        host.activeRequests--;
+        schedule(host, now);
+    }
+
+    /**
+     * Counts a request that isn't a queued page, such as an image found on a page, against the host's request delay.
+     * It doesn't take one of the host's connections, the page it was found on may still hold the last one.
+     * @param name The lower case host
+     * @param now The current time in milliseconds
+     * @return 0 if the request may be sent now, otherwise the earliest time to try again
+     */
+    public long acquire(String name, long now) {
+        pruneIdleHosts(now);
+        Host host = getHost(name, now);
+        long readyTime = host.getReadyTime(now);
+        if (readyTime > now) {
+            return readyTime;
+        }
+        host.takeToken(now);
+        return 0;
+    }
+
+    /**
+     * Sets a host's Crawl-delay from its robots.txt, used if longer than the policy's request delay
+     * @param host The lower case host
+     * @param crawlDelay The delay in milliseconds
+     * @param now The current time in milliseconds
+     */
+    public void setCrawlDelay(String host, long crawlDelay, long now) {
+        getHost(host, now).crawlDelay = crawlDelay;
+    }
+
+    /**
+     * @return The earliest time a queued page may be taken, or Long.MAX_VALUE if all hosts are busy
+     */
+    public long getNextReadyTime() {
+        Host host = readyHosts.peek();
+        return host == null ? Long.MAX_VALUE : host.queuedReadyTime;
+    }
+
+    /**
+     * @return All queued pages
+     */
+    public List<FrontierEntry> getQueuedPages() {
+        ArrayList<FrontierEntry> pages = new ArrayList<FrontierEntry>(size);
+        for (Host host : hosts.values()) {
+            pages.addAll(host.pages);
+        }
+        return pages;
+    }
+
+    /**
+     * @return The amount of queued pages
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param name The lower case host
+     * @return The amount of queued pages of the host
+     */
+    public int size(String name) {
+        Host host = hosts.get(name);
+        return host == null ? 0 : host.pages.size();
+    }
+
+    /**
+     * @return The amount of hosts that are remembered
+     */
+    public int getNumHosts() {
+        return hosts.size();
+    }
+
+    /**
+     * Forgets the hosts that have no pages and could be sent a burst of requests, they are the same as a new host
+     */
+    private void pruneIdleHosts(long now) {
+        if (now - lastPrune < PRUNE_INTERVAL) {
+            return;
+        }
+        lastPrune = now;
+        Iterator<Host> iterator = hosts.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isIdle(now)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private Host getHost(String name, long now) {
+        Host host = hosts.get(name);
+        if (host == null) {
+            host = new Host(now);
+            hosts.put(name, host);
+        }
+        return host;
+    }
+
+    /**
+     * Adds a host to the ready queue if it has pages and may be sent another request
+     */
+    private void schedule(Host host, long now) {
+        int maxConnections = policy.getMaxConnectionsPerHost();
+        if (host.queued || host.pages.isEmpty() || (maxConnections > 0 && host.activeRequests >= maxConnections)) {
+            return;
+        }
+        host.queued = true;
+        host.queuedReadyTime = host.getReadyTime(now);
+        readyHosts.add(host);
+    }
+
+    private class Host {
+
+        private ArrayDeque<FrontierEntry> pages;
+        private int activeRequests;
+        private long crawlDelay;
+        private long backoffUntil;
+        private double tokens;
+        private long lastRefill;
+        private boolean queued;
+        private long queuedReadyTime;
+
+        Host(long now) {
+            this.pages = new ArrayDeque<FrontierEntry>();
+            this.tokens = policy.getBurst();
+            this.lastRefill = now;
+        }
+
+        long getDelay() {
+            return Math.max(policy.getRequestDelay(), crawlDelay);
+        }
+
+        /**
+         * @return The earliest time the host may be sent a request
+         */
+        long getReadyTime(long now) {
+            long delay = getDelay();
+            long readyTime = now;
+            if (delay > 0) {
+                refill(now, delay);
+                if (tokens < 1) {
+                    readyTime = lastRefill + (long) Math.ceil((1 - tokens) * delay);
+                }
+            }
+            return Math.max(readyTime, backoffUntil);
+        }
+
+        /**
+         * @return true if the host has no pages or requests and its bucket is full
+         */
+        boolean isIdle(long now) {
+            if (!pages.isEmpty() || activeRequests > 0 || queued || backoffUntil > now) {
+                return false;
+            }
+            long delay = getDelay();
+            if (delay > 0) {
+                refill(now, delay);
+                return tokens >= policy.getBurst();
+            }
+            return true;
+        }
+
+        void takeToken(long now) {
+            long delay = getDelay();
+            if (delay > 0) {
+                refill(now, delay);
+                tokens = Math.max(0, tokens - 1);
+            }
+        }
+
+        private void refill(long now, long delay) {
+            if (now > lastRefill) {
+                tokens = Math.min(policy.getBurst(), tokens + (double) (now - lastRefill) / delay);
+                lastRefill = now;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.politeness;
+
+/**
+ * Settings that limit how hard a crawl works a single host.
+ * By default hosts are not throttled, but robots.txt is obeyed and failed requests are retried a few times.
+ */
+public class PolitenessPolicy {
+
+    private int maxConnectionsPerHost;
+    private long requestDelay;
+    private int burst;
+    private boolean obeyRobots;
+    private String userAgent;
+    private int maxRetries;
+    private long retryDelay;
+    private long maxRetryDelay;
+
+    public PolitenessPolicy() {
+        this.maxConnectionsPerHost = 0;
+        this.requestDelay = 0;
+        this.burst = 1;
+        this.obeyRobots = true;
+        this.userAgent = null;
+        this.maxRetries = 3;
+        this.retryDelay = 1000;
+        this.maxRetryDelay = 60000;
+    }
+
+    /**
+     * @param maxConnectionsPerHost The maximum amount of pages fetched from one host at the same time, 0 for no limit
+     */
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    /**
+     * Sets the minimum delay between requests to one host. A robots.txt Crawl-delay is used instead if it is longer.
+     * @param requestDelay The delay in milliseconds, 0 for no delay
+     */
+    public void setRequestDelay(long requestDelay) {
+        this.requestDelay = requestDelay;
+    }
+
+    /**
+     * Sets how many requests a host that was left alone for a while can be sent without waiting for the request delay
+     * @param burst The amount of requests, at least 1
+     */
+    public void setBurst(int burst) {
+        if (burst < 1) {
+            throw new IllegalArgumentException("Burst must be at least 1: " + burst);
+        }
+        this.burst = burst;
+    }
+
+    /**
+     * @param obeyRobots true to skip pages disallowed by a host's robots.txt and honor its Crawl-delay
+     */
+    public void setObeyRobots(boolean obeyRobots) {
+        this.obeyRobots = obeyRobots;
+    }
+
+    /**
+     * Sets the user agent of the crawl. It is sent as the User-Agent header by the crawl's fetcher,
+     * and its product token is matched against the User-agent lines of robots.txt.
+     * @param userAgent The user agent, null to use the fetcher's
+     */
+    public void setUserAgent(String userAgent) {
+        this.userAgent = userAgent;
+    }
+
+    /**
+     * Sets how failed requests are retried. The delay doubles after every attempt, up to the maximum.
+     * @param maxRetries The amount of retries before a page is given up, 0 to never retry
+     * @param retryDelay The delay before the first retry in milliseconds
+     * @param maxRetryDelay The longest delay between retries in milliseconds
+     */
+    public void setRetries(int maxRetries, long retryDelay, long maxRetryDelay) {
+        this.maxRetries = maxRetries;
+        this.retryDelay = retryDelay;
+        this.maxRetryDelay = maxRetryDelay;
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    public long getRequestDelay() {
+        return requestDelay;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    public boolean isObeyRobots() {
+        return obeyRobots;
+    }
+
+    /**
+     * @return The user agent set with {@link #setUserAgent(String)}, null if the fetcher's is used
+     */
+    public String getUserAgent() {
+        return userAgent;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * @param attempt The number of the retry, starting at 1
+     * @return The delay before that retry in milliseconds
+     */
+    public long getRetryDelay(int attempt) {
+        long delay = retryDelay;
+        for (int i = 1; i < attempt && delay < maxRetryDelay; i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, maxRetryDelay);
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.politeness;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.nikm.logger.Log;
+import org.nikm.webcrawler.PageReader;
+import org.nikm.webcrawler.fetch.HttpStatusException;
+import org.nikm.webcrawler.fetch.PageFetcher;
+
+/**
+ * Downloads and remembers the robots.txt of each host.
+ * Each file is downloaded once, workers asking for a host that is being downloaded wait for it.
+ * A file that can't be read because of a network error or a server error is downloaded again after the
+ * retry delays of the {@link PolitenessPolicy}, once it has failed more times in a row than the policy retries
+ * a page every page of its host is disallowed.
+ */
+public class RobotsCache {
+
+    /**
+     * The most of a robots.txt file that is read
+     */
+    public static final long MAX_ROBOTS_SIZE = 500 * 1024;
+
+    private PageFetcher fetcher;
+    private String userAgent;
+    private PolitenessPolicy retryPolicy;
+    private ConcurrentHashMap<String, CompletableFuture<RobotsRules>> rules;
+    private ConcurrentHashMap<String, Failure> failures;
+
+    /**
+     * @param fetcher The fetcher used to download robots.txt files
+     * @param userAgent The user agent the requests are sent with, its product token is matched against the User-agent lines
+     */
+    public RobotsCache(PageFetcher fetcher, String userAgent) {
+        this.fetcher = fetcher;
+        this.userAgent = userAgent;
+        this.retryPolicy = new PolitenessPolicy();
+        this.rules = new ConcurrentHashMap<String, CompletableFuture<RobotsRules>>();
+        this.failures = new ConcurrentHashMap<String, Failure>();
+    }
+
+    /**
+     * Sets how files that can't be read are retried
+     * @param retryPolicy The policy whose retries and retry delays are used
+     */
+    public void setRetryPolicy(PolitenessPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Gets the rules for the host of a url, downloading its robots.txt if this is the first time the host is seen
+     * @param url Any url on the host
+     * @return The rules
+     * @throws RobotsUnavailableException If the file failed to download recently and the page should be tried again later
+     */
+    public RobotsRules getRules(URL url) throws InterruptedException, RobotsUnavailableException {
+        String origin = url.getProtocol().toLowerCase() + "://" + url.getHost().toLowerCase()
+                + (url.getPort() != -1 && url.getPort() != url.getDefaultPort() ? ":" + url.getPort() : "");
+
+        while (true) {
+            CompletableFuture<RobotsRules> future = new CompletableFuture<RobotsRules>();
+            CompletableFuture<RobotsRules> existing = rules.putIfAbsent(origin, future);
+            if (existing == null) {
+                try {
+                    download(origin, future);
+                } finally {// Never leave other workers waiting
+                    future.complete(RobotsRules.ALLOW_ALL);
+                }
+                existing = future;
+            }
+            try {
+                return existing.get();
+            } catch (ExecutionException e) {
+                Failure failure = failures.get(origin);
+                long wait = failure != null ? failure.retryTime - now() : 0;
+                if (wait > 0) {
+                    throw new RobotsUnavailableException(origin + "/robots.txt", wait);
+                }
+                // Time to try again
+                rules.remove(origin, existing);
+            }
+        }
+    }
+
+    private void download(String origin, CompletableFuture<RobotsRules> future) {
+        String robotsUrl = origin + "/robots.txt";
+        try {
+            future.complete(fetchRules(robotsUrl));
+            failures.remove(origin);
+        } catch (IOException e) {
+            Failure failure = failures.get(origin);
+            int count = failure != null ? failure.count + 1 : 1;
+            if (count > retryPolicy.getMaxRetries()) {
+                Log.error("Could not read " + robotsUrl + " " + count + " times, skipping its host: " + e.getMessage());
+                failures.remove(origin);
+                future.complete(RobotsRules.DISALLOW_ALL);
+                return;
+            }
+            long delay = retryPolicy.getRetryDelay(count);
+            Log.error("Could not read " + robotsUrl + ", trying again in " + delay + "ms: " + e.getMessage());
+            failures.put(origin, new Failure(count, now() + delay));
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * @throws IOException If the file couldn't be read because of a network or server error
+     */
+    private RobotsRules fetchRules(String robotsUrl) throws IOException {
+        try {
+            PageReader reader = new PageReader(robotsUrl);
+            reader.setFetcher(fetcher);
+            reader.setMaxPageSize(MAX_ROBOTS_SIZE);
+            return RobotsRules.parse(reader.downloadPage(), userAgent);
+        } catch (FileNotFoundException e) {
+            return RobotsRules.ALLOW_ALL;
+        } catch (HttpStatusException e) {
+            if (e.getStatusCode() < 500) {// Missing or forbidden, nothing is restricted
+                return RobotsRules.ALLOW_ALL;
+            }
+            throw e;
+        }
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    /**
+     * The failures in a row of a host's robots.txt
+     */
+    private static class Failure {
+        int count;
+        long retryTime;
+
+        Failure(int count, long retryTime) {
+            this.count = count;
+            this.retryTime = retryTime;
+        }
+    }
+
+}
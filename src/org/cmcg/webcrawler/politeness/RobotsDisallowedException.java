@@ -0,0 +1,23 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.politeness;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a url that isn't a page, such as an image, is disallowed by its host's robots.txt
+ */
+public class RobotsDisallowedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param url The disallowed url
+     */
+    public RobotsDisallowedException(String url) {
+        super("Disallowed by robots.txt: " + url);
+    }
+
+}
@@ -0,0 +1,232 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.politeness;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The rules of a robots.txt file that apply to one user agent
+ */
+public class RobotsRules {
+
+    /**
+     * Rules that allow everything, used when a host has no robots.txt
+     */
+    public static final RobotsRules ALLOW_ALL = new RobotsRules(new ArrayList<Rule>(), 0, new ArrayList<String>());
+
+    /**
+     * Rules that disallow everything, used when a host's robots.txt could not be read
+     */
+    public static final RobotsRules DISALLOW_ALL = new RobotsRules(
+            new ArrayList<Rule>(Collections.singletonList(new Rule("/", false))), 0, new ArrayList<String>());
+
+    private List<Rule> rules;
+    private long crawlDelay;
+    private List<String> sitemaps;
+
+    private RobotsRules(List<Rule> rules, long crawlDelay, List<String> sitemaps) {
+        this.rules = rules;
+        this.crawlDelay = crawlDelay;
+        this.sitemaps = sitemaps;
+    }
+
+    /**
+     * Parses a robots.txt file.
+     * Uses the group whose User-agent is contained in the product token of the given user agent, or the * group if there is none.
+     * @param text The contents of the file
+     * @param userAgent The User-Agent header the crawler sends
+     * @return The rules for the user agent
+     */
+    public static RobotsRules parse(String text, String userAgent) {
+        String agent = getProductToken(userAgent).toLowerCase(Locale.ROOT);
+
+        ArrayList<Rule> matchedRules = new ArrayList<Rule>();
+        ArrayList<Rule> wildcardRules = new ArrayList<Rule>();
+        long matchedDelay = -1;
+        long wildcardDelay = -1;
+        boolean foundMatch = false;
+        ArrayList<String> sitemaps = new ArrayList<String>();
+
+        boolean groupMatched = false;
+        boolean groupWildcard = false;
+        boolean inAgentLines = false;
+
+        for (String line : text.split("\r\n|\r|\n")) {
+            int comment = line.indexOf('#');
+            if (comment != -1) {
+                line = line.substring(0, comment);
+            }
+            int colon = line.indexOf(':');
+            if (colon == -1) {
+                continue;
+            }
+            String field = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+
+            if (field.equals("user-agent")) {
+                if (!inAgentLines) {// Start of a new group
+                    groupMatched = false;
+                    groupWildcard = false;
+                    inAgentLines = true;
+                }
+                String name = value.toLowerCase(Locale.ROOT);
+                if (name.equals("*")) {
+                    groupWildcard = true;
+                } else if (!name.isEmpty() && agent.contains(name)) {
+                    groupMatched = true;
+                    foundMatch = true;
+                }
+                continue;
+            }
+            if (field.equals("sitemap")) {// Not part of a group
+                if (!value.isEmpty()) {
+                    sitemaps.add(value);
+                }
+                continue;
+            }
+            inAgentLines = false;
+
+            if (field.equals("allow") || field.equals("disallow")) {
+                if (value.isEmpty()) {// An empty disallow allows everything
+                    continue;
+                }
+                Rule rule = new Rule(value, field.equals("allow"));
+                if (groupMatched) {
+                    matchedRules.add(rule);
+                }
+                if (groupWildcard) {
+                    wildcardRules.add(rule);
+                }
+            } else if (field.equals("crawl-delay")) {
+                long delay;
+                try {
+                    delay = (long) (Double.parseDouble(value) * 1000);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (groupMatched) {
+                    matchedDelay = delay;
+                }
+                if (groupWildcard) {
+                    wildcardDelay = delay;
+                }
+            }
+        }
+
+        if (foundMatch) {
+            return new RobotsRules(matchedRules, Math.max(0, matchedDelay), sitemaps);
+        }
+        return new RobotsRules(wildcardRules, Math.max(0, wildcardDelay), sitemaps);
+    }
+
+    /**
+     * Checks a path against the rules. The longest matching rule wins, an allow rule wins a tie.
+     * @param path The path and query of a url
+     * @return true if the path may be crawled
+     */
+    public boolean isAllowed(String path) {
+        if (path.isEmpty()) {
+            path = "/";
+        }
+        Rule best = null;
+        for (Rule rule : rules) {
+            if (!rule.matches(path)) {
+                continue;
+            }
+            if (best == null || rule.pattern.length() > best.pattern.length()
+                    || (rule.pattern.length() == best.pattern.length() && rule.allow)) {
+                best = rule;
+            }
+        }
+        return best == null || best.allow;
+    }
+
+    /**
+     * Gets the name that robots.txt files refer to a crawler by
+     * @param userAgent A User-Agent header such as "OS-Web-Crawler/1.0 (+https://example.com)"
+     * @return The part before the first version, space or comment, such as "OS-Web-Crawler"
+     */
+    public static String getProductToken(String userAgent) {
+        for (int i = 0; i < userAgent.length(); i++) {
+            char c = userAgent.charAt(i);
+            if (c == '/' || c == '(' || Character.isWhitespace(c)) {
+                return userAgent.substring(0, i);
+            }
+        }
+        return userAgent;
+    }
+
+    /**
+     * @return The Crawl-delay in milliseconds, 0 if there is none
+     */
+    public long getCrawlDelay() {
+        return crawlDelay;
+    }
+
+    /**
+     * @return The urls of the Sitemap lines
+     */
+    public List<String> getSitemaps() {
+        return sitemaps;
+    }
+
+    /**
+     * An allow or disallow line. Supports * wildcards and a $ end anchor.
+     */
+    private static class Rule {
+
+        private String pattern;
+        private boolean allow;
+
+        Rule(String pattern, boolean allow) {
+            this.pattern = pattern;
+            this.allow = allow;
+        }
+
+        /**
+         * Matches the path by walking both strings once, going back to the last * on a mismatch,
+         * so a pattern with many * takes at most path length times pattern length steps
+         */
+        boolean matches(String path) {
+            boolean anchored = pattern.endsWith("$");
+            int patternLength = anchored ? pattern.length() - 1 : pattern.length();
+            int patternIndex = 0;
+            int pathIndex = 0;
+            int star = -1;
+            int starPathIndex = 0;
+            while (true) {
+                if (!anchored && patternIndex == patternLength) {
+                    // Rules are prefixes
+                    return true;
+                }
+                if (pathIndex == path.length()) {
+                    break;
+                }
+                if (patternIndex < patternLength && pattern.charAt(patternIndex) == '*') {
+                    star = patternIndex++;
+                    starPathIndex = pathIndex;
+                } else if (patternIndex < patternLength && pattern.charAt(patternIndex) == path.charAt(pathIndex)) {
+                    patternIndex++;
+                    pathIndex++;
+                } else if (star != -1) {
+                    // Let the last * take one more character
+                    patternIndex = star + 1;
+                    pathIndex = ++starPathIndex;
+                } else {
+                    return false;
+                }
+            }
+            while (patternIndex < patternLength && pattern.charAt(patternIndex) == '*') {
+                patternIndex++;
+            }
+            return patternIndex == patternLength;
+        }
+
+    }
+
+}
@@ -0,0 +1,34 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.politeness;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a host's robots.txt could not be read recently, the page should be tried again later
+ */
+public class RobotsUnavailableException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private long retryAfter;
+
+    /**
+     * @param robotsUrl The url of the robots.txt file
+     * @param retryAfter The time until the file is downloaded again in milliseconds
+     */
+    public RobotsUnavailableException(String robotsUrl, long retryAfter) {
+        super("Could not read " + robotsUrl + ", trying again in " + retryAfter + "ms");
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return The time until the file is downloaded again in milliseconds
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+
+}
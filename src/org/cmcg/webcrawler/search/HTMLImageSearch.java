@@ -4,82 +4,165 @@
 */
 package org.nikm.webcrawler.search;
 
-import java.awt.Image;
 import java.awt.image.BufferedImage;
-import java.awt.image.PixelGrabber;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.imageio.ImageIO;
-import javax.swing.ImageIcon;
 
 import org.nikm.logger.Log;
+import org.nikm.webcrawler.PageReader;
+import org.nikm.webcrawler.fetch.FetchResponse;
+import org.nikm.webcrawler.fetch.PageFetcher;
+import org.nikm.webcrawler.image.CheckedImageCache;
+import org.nikm.webcrawler.log.CrawlLog;
+import org.nikm.webcrawler.metrics.CrawlMetrics;
+import org.nikm.webcrawler.politeness.RobotsDisallowedException;
+import org.nikm.webcrawler.url.HostScope;
+import org.nikm.webcrawler.url.UrlCanonicalizer;
 
 /**
  * A search object that searches for 'img' tags and compares the image to local images.
+ * Local images are indexed by their perceptual hash, so each site image is only compared
+ * pixel by pixel to the local images whose hash is close to its own.
+ * <p>
+ * Images are downloaded and compared by a pool of image threads, so parsing a page never waits for its images.
+ * {@link #onFoundImage(String, String, String)} is called from those threads.
+ * <p>
+ * The local images, checked images and image threads are kept by an {@link ImageLibrary}.
+ * When a crawl has several workers, load one library and give it to the image search of every worker.
  */
 public abstract class HTMLImageSearch extends XMLTagSearch {
 
-    private String homePage;
+    /**
+     * Larger images are skipped
+     */
+    private static final int MAX_IMAGE_SIZE = 32 * 1024 * 1024;
 
-    private boolean preloadImages;
-    private boolean resizeImages;
-    private ArrayList<SearchImage> imagesToFind;
-    private HashMap<URL, Integer[]> checkedImages;
+    private ImageLibrary library;
+    private PageFetcher fetcher;
+    private UrlCanonicalizer canonicalizer;
+    private HostScope scope;
 
     /**
-     * 
-     * @param homePage The homepage for the hosted images. Skips URLs that don't contain this string.
-     * @param preloadImages True if local images should be loaded before processing. False if each local image should be loaded every time it's checked (Easier on memory).
+     *
+     * @param homePage The homepage for the hosted images. Skips images on other hosts, see {@link #setScope(HostScope)}.
+     * @param preloadImages True if local images should be loaded before processing. False if local images should be decoded when they are compared, keeping only the most recently used within a memory budget, see {@link ImageLibrary#setPixelCacheSize(long)}.
      * @param resizeImages True if site images should be resized before comparison
      * @param imagesToFind The paths for the local images. Directories are searched recursively for images.
      */
     public HTMLImageSearch(String homePage, boolean preloadImages, boolean resizeImages, String... imagesToFind) {
+        this(homePage, preloadImages, resizeImages, null, imagesToFind);
+    }
+
+    /**
+     *
+     * @param homePage The homepage for the hosted images. Skips images on other hosts, see {@link #setScope(HostScope)}.
+     * @param preloadImages True if local images should be loaded before processing. False if local images should be decoded when they are compared, keeping only the most recently used within a memory budget, see {@link ImageLibrary#setPixelCacheSize(long)}.
+     * @param resizeImages True if site images should be resized before comparison
+     * @param indexFile A file the hashes of the local images are saved to, so images that haven't changed aren't decoded
+     * the next time they aren't preloaded. May be null.
+     * @param imagesToFind The paths for the local images. Directories are searched recursively for images.
+     */
+    public HTMLImageSearch(String homePage, boolean preloadImages, boolean resizeImages, File indexFile, String... imagesToFind) {
+        this(homePage, new ImageLibrary(preloadImages, resizeImages, indexFile, imagesToFind));
+    }
+
+    /**
+     * @param homePage The homepage for the hosted images. Skips images on other hosts, see {@link #setScope(HostScope)}.
+     * @param library The local images, shared with the image searches of the other workers
+     */
+    public HTMLImageSearch(String homePage, ImageLibrary library) {
         super("img");
-        this.homePage = homePage;
-        this.preloadImages = preloadImages;
-        this.imagesToFind = new ArrayList<SearchImage>();
-        this.checkedImages = new HashMap<URL, Integer[]>();
-
-        ArrayList<String> pathsToFind = new ArrayList<String>();
-        for (String s : imagesToFind) {
-            pathsToFind.add(s);
-        }
+        this.library = library;
+        this.canonicalizer = new UrlCanonicalizer();
+        this.scope = new HostScope(homePage);
+    }
 
-        String s;
-        while (!pathsToFind.isEmpty()) {
-            addPath(pathsToFind.remove(0));
-        }
+    /**
+     * @return The local images, checked images and image threads of this search
+     */
+    public ImageLibrary getLibrary() {
+        return library;
     }
 
-    private void addPath(String s) {
-        File file = new File(s);
+    /**
+     * Sets the cache of checked images of the library, see {@link ImageLibrary#setCheckedImageCache(File, int)}
+     */
+    public void setCheckedImageCache(File cacheFile, int maxEntries) throws IOException {
+        library.setCheckedImageCache(cacheFile, maxEntries);
+    }
 
-        if (file.exists()) {
-            if (file.isDirectory()) {
-                for (File f : file.listFiles()) {
-                    if (f.isDirectory() || f.getName().endsWith(".png") || f.getName().endsWith(".jpg")
-                            || f.getName().endsWith(".jpeg") || f.getName().endsWith(".bmp")) {
-                        addPath(f.getPath());
-                    }
-                }
-                return;
-            }
-            
-            try {
-                this.imagesToFind.add(new SearchImage(s, preloadImages));
-            } catch (IOException e) {
-                Log.error("Could not load image: " + Arrays.toString(e.getStackTrace()));
-            }
-        }
+    /**
+     * Sets the fetcher images are downloaded with. A crawl passes its fetcher to {@link org.nikm.webcrawler.SearchFactory#createSearches(PageFetcher)},
+     * which follows the crawl's robots.txt rules and request delays.
+     * @param fetcher The fetcher, or null for {@link PageReader#getDefaultFetcher()}
+     */
+    public void setFetcher(PageFetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    /**
+     * @return The fetcher images are downloaded with, null for {@link PageReader#getDefaultFetcher()}
+     */
+    public PageFetcher getFetcher() {
+        return fetcher;
+    }
+
+    /**
+     * Sets the canonicalizer that resolves image urls against their page, such as the crawl's
+     * @param canonicalizer The canonicalizer
+     */
+    public void setUrlCanonicalizer(UrlCanonicalizer canonicalizer) {
+        this.canonicalizer = canonicalizer;
+    }
+
+    /**
+     * Sets the hosts whose images are checked, such as the crawl's
+     * @param scope The scope
+     */
+    public void setScope(HostScope scope) {
+        this.scope = scope;
+    }
+
+    /**
+     * Sets how different image hashes may be in the library, see {@link ImageLibrary#setMaxHashDistance(int)}
+     */
+    public void setMaxHashDistance(int maxHashDistance) {
+        library.setMaxHashDistance(maxHashDistance);
+    }
+
+    /**
+     * Sets the memory of the library's pixel cache, see {@link ImageLibrary#setPixelCacheSize(long)}
+     */
+    public void setPixelCacheSize(long maxBytes) {
+        library.setPixelCacheSize(maxBytes);
+    }
+
+    /**
+     * Sets the metrics of the library, see {@link ImageLibrary#setMetrics(CrawlMetrics)}
+     */
+    public void setMetrics(CrawlMetrics metrics) {
+        library.setMetrics(metrics);
+    }
+
+    /**
+     * Sets the size of the library's image pool, see {@link ImageLibrary#setImageThreads(int, int)}
+     */
+    public void setImageThreads(int numImageThreads, int queueCapacity) {
+        library.setImageThreads(numImageThreads, queueCapacity);
     }
 
     /**
-     * Called when a matching image is found
+     * Called on an image thread when a matching image is found
      * @param originalImage The path to the original Image
      * @param matchedImage The url to the matched image
      * @param pageUrl The url the image was found on
@@ -89,159 +172,142 @@ public abstract class HTMLImageSearch extends XMLTagSearch {
     @Override
     public void onFoundTag(HashMap<String, String> attributes, String tagContents) {
         String src = attributes.get("src");
-
-        if (src == null || !src.contains(homePage) || src.endsWith(".gif")) {
+        if (src == null) {
             return;
         }
-
-        src = src.trim();
-
-        if (src.startsWith("\"") || src.startsWith("'")) {
-            src = src.substring(1);
-        }
-
-        if (src.endsWith("\"") || src.endsWith("'")) {
-            src = src.substring(0, src.length() - 1);
-        }
-
-        if (src.startsWith("/")) {
-            src = "http://" + homePage + src;
+        src = canonicalizer.canonicalize(super.pageUrl, src);
+        if (src == null || !scope.contains(src) || src.endsWith(".gif")) {
+            return;
         }
 
+        final String imageUrl = src;
+        final String imagePageUrl = super.pageUrl;
         try {
-            URL url = new URL(src);
-            if (checkedImages.containsKey(url)) {
-                for (Integer i : checkedImages.get(url)) {
-                    onFoundImage(imagesToFind.get(i).path, src, super.pageUrl);
+            library.execute(new Runnable() {
+                @Override
+                public void run() {
+                    checkImage(imageUrl, imagePageUrl);
                 }
-                return;
-            }
-
-            Image siteImage = ImageIO.read(url);
-
-            if (siteImage == null) {
-                return;
-            }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.error("Could not queue image: " + imageUrl);
+        }
+    }
 
-            int size = imagesToFind.size();
-
-            ArrayList<Integer> matchedLocalImages = new ArrayList<Integer>();
-            ImageIcon icon = new ImageIcon(siteImage);
-            int h1 = icon.getIconHeight();
-            int w1 = icon.getIconWidth();
-            
-            Log.log("Testing against " + size + " " + (preloadImages ? "" : "non-") + "preloaded images: " + src);
-
-            local_image_loop: for (int i = 0; i < size; i++) {
-                SearchImage searchImage = imagesToFind.get(i);
-                int[] pixelData = searchImage.getPixelData();
-                if (pixelData == null) {
-                    Log.error("Pixel data was null for image: " + searchImage.path);
-                    continue;
-                }
-                int h2 = searchImage.height;
-                int w2 = searchImage.width;
-
-                if (w1 != w2 || h1 != h2) {
-                    if (resizeImages) {
-                        siteImage = siteImage.getScaledInstance(w1, h1, Image.SCALE_SMOOTH);
-                    } else {
-                        continue;//TODO if an image gets skipped it won't get another change to retry atm
+    /**
+     * Downloads an image and compares it to the local images, unless it was checked before.
+     * An image checked by an earlier crawl is requested with the validators of that download, and only compared again if it changed.
+     * @param src The normalized url of the image
+     * @param pageUrl The url of the page it was found on
+     */
+    private void checkImage(String src, String pageUrl) {
+        try {
+            CrawlMetrics metrics = library.getMetrics();
+            CheckedImageCache checkedImages = library.getCheckedImages();
+            int[] matches = checkedImages.getByUrl(src);
+            if (matches == null) {
+                long start = System.nanoTime();
+                ImageFile image = download(src, checkedImages.getValidators(src));
+                if (image != null && image.data == null) {
+                    matches = checkedImages.revalidate(src);
+                    if (matches == null) {
+                        // Forgotten since the request was sent
+                        image = download(src, Collections.<String, String>emptyMap());
                     }
                 }
-
-                int[] pixelData2 = new int[w1 * h1];
-                PixelGrabber pxGrabber = new PixelGrabber(siteImage, 0, 0, w1, h1, pixelData2, 0, w1);
-
-                try {
-                    pxGrabber.grabPixels();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                    continue;//TODO here too
+                if (image == null) {
+                    return;
                 }
-
-                for (int j = 0; j < pixelData.length; j++) {
-                    if (pixelData[j] != pixelData2[j]) {
-                        continue local_image_loop;
+                if (metrics != null) {
+                    metrics.histogram(CrawlMetrics.IMAGE_DOWNLOAD_TIME).record(System.nanoTime() - start);
+                }
+                if (matches == null) {
+                    long contentHash = CheckedImageCache.hashContent(image.data, image.data.length);
+                    matches = checkedImages.getByContent(contentHash);
+                    if (matches == null) {
+                        BufferedImage decodedImage = ImageIO.read(new ByteArrayInputStream(image.data));
+                        if (decodedImage == null) {
+                            return;
+                        }
+                        start = System.nanoTime();
+                        matches = library.compareImage(decodedImage, src);
+                        if (metrics != null) {
+                            metrics.histogram(CrawlMetrics.IMAGE_COMPARE_TIME).record(System.nanoTime() - start);
+                        }
                     }
+                    library.putCheckedImage(src, contentHash, matches, image.etag, image.lastModified);
                 }
-
-                matchedLocalImages.add(i);
-                onFoundImage(searchImage.path, src, super.pageUrl);
             }
 
-            checkedImages.put(url, matchedLocalImages.toArray(new Integer[matchedLocalImages.size()]));
+            for (int i : matches) {
+                onFoundImage(library.getPath(i), src, pageUrl);
+            }
+        } catch (RobotsDisallowedException e) {
+            CrawlLog.info("Skipping image disallowed by robots.txt: {}", src);
         } catch (Exception e) {
-            e.printStackTrace();
+            Log.error("Could not check image " + src + Arrays.toString(e.getStackTrace()));
         }
-
     }
 
-    @Override
-    public void reset() {
-        super.reset();
-    }
-    
-    private class SearchImage {
-        private static final int NUM_RETRIES = 5;
-
-        int width, height;
-        String path;
-        private BufferedImage image;
-        private int[] pixelData;
-        private int loadRetries;
-
-        SearchImage(String path, boolean preload) throws IOException {
-            this.path = path;
-
-            BufferedImage image = null;
-
-            image = ImageIO.read(new File(path));
-
-            ImageIcon icon = new ImageIcon(image);
-            this.width = icon.getIconWidth();
-            this.height = icon.getIconHeight();
-
-            if (preload) {
-                this.image = image;
-                pixelData = new int[width * height];
-                PixelGrabber pxGrabber = new PixelGrabber(image, 0, 0, width, height, pixelData, 0, width);
-                try {
-                    pxGrabber.grabPixels();
-                } catch (InterruptedException e) {
-                    Log.error("Could not grab pixels from image \"" + this.path + "\"" + Arrays.toString(e.getStackTrace()));
-                }
+    /**
+     * @param src The url of the image
+     * @param validators The headers of a conditional request, may be empty
+     * @return The image file, without data if it wasn't modified, or null if it doesn't exist or is too large
+     */
+    private ImageFile download(String src, Map<String, String> validators) throws IOException {
+        try (FetchResponse response = (fetcher != null ? fetcher : PageReader.getDefaultFetcher()).fetch(new URL(src), validators)) {
+            ImageFile image = new ImageFile();
+            image.etag = response.getHeader("etag");
+            image.lastModified = response.getHeader("last-modified");
+            if (response.getStatusCode() == 304 && !validators.isEmpty()) {
+                return image;
             }
-        }
-
-        private BufferedImage getImage() {
-            if (image == null && loadRetries < NUM_RETRIES) {
-                try {
-                    return ImageIO.read(new File(path));
-                } catch (IOException e) {
-                    loadRetries++;
-                    Log.log("Could not load image file \"" + this.path + "\"\nRetry count: " + loadRetries);
-                    e.printStackTrace();
-                }
+            if (response.getStatusCode() != 200) {
+                return null;
             }
-            return image;
-        }
-
-        int[] getPixelData() {
-            if (pixelData == null) {
-                pixelData = new int[width * height];
-                Image image = getImage();
-                if (image != null) {
-                    PixelGrabber pxGrabber = new PixelGrabber(image, 0, 0, width, height, pixelData, 0, width);
-                    try {
-                        pxGrabber.grabPixels();
-                    } catch (InterruptedException e) {
-                        Log.error("Could not grab pixels from image \"" + this.path + "\"" + Arrays.toString(e.getStackTrace()));
+            InputStream body = response.getBody();
+            byte[] data = new byte[64 * 1024];
+            int length = 0;
+            int read;
+            while ((read = body.read(data, length, data.length - length)) != -1) {
+                length += read;
+                if (length == data.length) {
+                    if (data.length >= MAX_IMAGE_SIZE) {
+                        CrawlLog.info("Skipping image larger than {} bytes: {}", MAX_IMAGE_SIZE, src);
+                        return null;
                     }
+                    data = Arrays.copyOf(data, data.length * 2);
                 }
             }
-            return pixelData;
+            image.data = Arrays.copyOf(data, length);
+            return image;
         }
     }
 
+    /**
+     * Waits until every queued image of the library has been checked, then saves its checked image cache
+     */
+    @Override
+    public void finish() {
+        library.finish();
+    }
+
+    /**
+     * Stops the library's image threads once they have checked the queued images
+     */
+    public void shutdown() {
+        library.shutdown();
+    }
+
+    /**
+     * A downloaded image and its validators
+     */
+    private static class ImageFile {
+
+        private byte[] data;
+        private String etag;
+        private String lastModified;
+
+    }
+
 }
@@ -0,0 +1,516 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * A Search object that tokenizes html once and passes the tags to every registered XMLTagSearch for that tag.
+ * Tags nobody is searching for are skipped without buffering their attributes,
+ * and the attribute buffers are reused between tags.
+ * Tags with a search that reads contents are passed on once the text up to the next tag has been read.
+ * CDATA sections are part of the contents, with their &amp; and &lt; escaped so the contents can be decoded the same way.
+ * Use {@link SearchUtil#groupTagSearches(Search...)} to share one tokenizer between several tag searches.
+ * The time each search spends handling its tags is measured, see {@link #getSearchTimes()}.
+ */
+public class HTMLTagTokenizer extends Search {
+    
+    /**
+     * The most characters of a tag's contents that are kept
+     */
+    private static final int MAX_CONTENTS_LENGTH = 8192;
+    
+    private static final String CDATA_START = "[CDATA[";
+    
+    private enum State {
+        TEXT,
+        CONTENTS,
+        CONTENTS_TAG_OPEN,
+        CONTENTS_CDATA_START,
+        CDATA,
+        TAG_OPEN,
+        TAG_NAME,
+        MARKUP_DECLARATION,
+        COMMENT,
+        SKIP_TAG,
+        BEFORE_ATTRIBUTE_NAME,
+        ATTRIBUTE_NAME,
+        AFTER_ATTRIBUTE_NAME,
+        BEFORE_ATTRIBUTE_VALUE,
+        ATTRIBUTE_VALUE_DOUBLE_QUOTED,
+        ATTRIBUTE_VALUE_SINGLE_QUOTED,
+        ATTRIBUTE_VALUE_UNQUOTED,
+    }
+    
+    // Registered tag names, lower case, with the searches for each
+    private char[][] tagNames;
+    private XMLTagSearch[][] tagSearches;
+    private long[][] tagSearchTimes;
+    private boolean[] readsContents;
+    private int maxTagNameLength;
+    
+    private State state;
+    private char[] tagName;
+    private int tagNameLength;
+    private int matchedTag;
+    private int dashes;
+    
+    private StringBuilder attributeName;
+    private StringBuilder attributeValue;
+    private HashMap<String, String> tagAttributes;
+    private HashMap<String, String> contentsAttributes;
+    private StringBuilder contents;
+    
+    /**
+     * @param searches The tag searches to pass tags to
+     */
+    public HTMLTagTokenizer(XMLTagSearch... searches) {
+        this.tagNames = new char[0][];
+        this.tagSearches = new XMLTagSearch[0][];
+        this.tagSearchTimes = new long[0][];
+        this.readsContents = new boolean[0];
+        this.tagName = new char[0];
+        this.attributeName = new StringBuilder();
+        this.attributeValue = new StringBuilder();
+        this.contents = new StringBuilder();
+        for (XMLTagSearch search : searches) {
+            addSearch(search);
+        }
+        clear();
+    }
+    
+    /**
+     * Registers a tag search
+     * @param search The search to pass its tag to
+     */
+    public void addSearch(XMLTagSearch search) {
+        char[] name = search.getTag().toLowerCase(Locale.ROOT).toCharArray();
+        for (int i = 0; i < tagNames.length; i++) {
+            if (Arrays.equals(tagNames[i], name)) {
+                tagSearches[i] = Arrays.copyOf(tagSearches[i], tagSearches[i].length + 1);
+                tagSearches[i][tagSearches[i].length - 1] = search;
+                tagSearchTimes[i] = new long[tagSearches[i].length];
+                readsContents[i] |= search.isReadingContents();
+                return;
+            }
+        }
+        tagNames = Arrays.copyOf(tagNames, tagNames.length + 1);
+        tagNames[tagNames.length - 1] = name;
+        tagSearches = Arrays.copyOf(tagSearches, tagSearches.length + 1);
+        tagSearches[tagSearches.length - 1] = new XMLTagSearch[] { search };
+        tagSearchTimes = Arrays.copyOf(tagSearchTimes, tagSearchTimes.length + 1);
+        tagSearchTimes[tagSearchTimes.length - 1] = new long[1];
+        readsContents = Arrays.copyOf(readsContents, readsContents.length + 1);
+        readsContents[readsContents.length - 1] = search.isReadingContents();
+        if (name.length > maxTagNameLength) {
+            maxTagNameLength = name.length;
+            tagName = new char[name.length];
+        }
+    }
+    
+    /**
+     * @return The registered searches, in the order of {@link #getSearchTimes()}
+     */
+    public XMLTagSearch[] getSearches() {
+        ArrayList<XMLTagSearch> searches = new ArrayList<XMLTagSearch>();
+        for (XMLTagSearch[] tagSearch : tagSearches) {
+            searches.addAll(Arrays.asList(tagSearch));
+        }
+        return searches.toArray(new XMLTagSearch[searches.size()]);
+    }
+    
+    /**
+     * @return The nanoseconds each registered search spent handling its tags since the page was initialized.
+     * The rest of the tokenizer's time is spent tokenizing, shared by all of its searches.
+     */
+    public long[] getSearchTimes() {
+        long[] times = new long[0];
+        for (long[] tagTimes : tagSearchTimes) {
+            int start = times.length;
+            times = Arrays.copyOf(times, start + tagTimes.length);
+            System.arraycopy(tagTimes, 0, times, start, tagTimes.length);
+        }
+        return times;
+    }
+    
+    @Override
+    public void initialize(String pageUrl) {
+        super.initialize(pageUrl);
+        for (int i = 0; i < tagSearches.length; i++) {
+            Arrays.fill(tagSearchTimes[i], 0);
+            for (XMLTagSearch search : tagSearches[i]) {
+                search.initialize(pageUrl);
+            }
+        }
+    }
+    
+    @Override
+    public boolean processChar(char c) {
+        switch (state) {
+            case TEXT:
+                if (c == '<') {
+                    state = State.TAG_OPEN;
+                }
+                return false;
+                
+            case CONTENTS:
+                if (c == '<') {
+                    // The contents go on if this is a CDATA section
+                    state = State.CONTENTS_TAG_OPEN;
+                } else {
+                    appendContents(c);
+                }
+                break;
+                
+            case CONTENTS_TAG_OPEN:
+                if (c == '!') {
+                    dashes = 0;
+                    state = State.CONTENTS_CDATA_START;
+                } else {
+                    submitContents();
+                    state = State.TAG_OPEN;
+                    processChar(c);
+                }
+                break;
+                
+            case CONTENTS_CDATA_START:
+                // dashes counts the matched characters of [CDATA[
+                if (c == CDATA_START.charAt(dashes)) {
+                    if (++dashes == CDATA_START.length()) {
+                        dashes = 0;
+                        state = State.CDATA;
+                    }
+                } else {
+                    submitContents();
+                    state = dashes == 0 ? State.MARKUP_DECLARATION : State.SKIP_TAG;
+                    dashes = 0;
+                    processChar(c);
+                }
+                break;
+                
+            case CDATA:
+                // dashes counts the ] that may end the section
+                if (c == ']') {
+                    dashes++;
+                } else if (c == '>' && dashes >= 2) {
+                    appendBrackets(dashes - 2);
+                    dashes = 0;
+                    state = State.CONTENTS;
+                } else {
+                    appendBrackets(dashes);
+                    dashes = 0;
+                    if (c == '&') {
+                        appendContents("&amp;");
+                    } else if (c == '<') {
+                        appendContents("&lt;");
+                    } else {
+                        appendContents(c);
+                    }
+                }
+                break;
+                
+            case TAG_OPEN:
+                if (c == '!') {
+                    dashes = 0;
+                    state = State.MARKUP_DECLARATION;
+                } else if (c == '/' || c == '?') {
+                    // Closing tags and processing instructions have no attributes we want
+                    state = State.SKIP_TAG;
+                } else if (Character.isLetter(c)) {
+                    tagNameLength = 0;
+                    state = State.TAG_NAME;
+                    appendTagName(c);
+                } else if (c != '<') {
+                    // A lone '<' in text
+                    state = State.TEXT;
+                }
+                break;
+                
+            case TAG_NAME:
+                if (c == '>' || c == '/' || Character.isWhitespace(c)) {
+                    matchedTag = findTag();
+                    if (matchedTag == -1) {
+                        state = c == '>' ? State.TEXT : State.SKIP_TAG;
+                    } else if (c == '>') {
+                        submitTag();
+                    } else {
+                        state = State.BEFORE_ATTRIBUTE_NAME;
+                    }
+                } else {
+                    appendTagName(c);
+                }
+                break;
+                
+            case MARKUP_DECLARATION:
+                if (c == '-' && ++dashes == 2) {
+                    dashes = 0;
+                    state = State.COMMENT;
+                } else if (c == '>') {
+                    state = State.TEXT;
+                } else if (c != '-') {
+                    // <!DOCTYPE ...> and the like
+                    state = State.SKIP_TAG;
+                }
+                break;
+                
+            case COMMENT:
+                if (c == '-') {
+                    dashes++;
+                } else if (c == '>' && dashes >= 2) {
+                    state = State.TEXT;
+                } else {
+                    dashes = 0;
+                }
+                break;
+                
+            case SKIP_TAG:
+                if (c == '>') {
+                    state = State.TEXT;
+                }
+                break;
+                
+            case BEFORE_ATTRIBUTE_NAME:
+                if (c == '>') {
+                    submitTag();
+                } else if (c != '/' && !Character.isWhitespace(c)) {
+                    attributeName.append(Character.toLowerCase(c));
+                    state = State.ATTRIBUTE_NAME;
+                }
+                break;
+                
+            case ATTRIBUTE_NAME:
+                if (c == '=') {
+                    state = State.BEFORE_ATTRIBUTE_VALUE;
+                } else if (c == '>') {
+                    submitAttribute();
+                    submitTag();
+                } else if (c == '/') {
+                    submitAttribute();
+                    state = State.BEFORE_ATTRIBUTE_NAME;
+                } else if (Character.isWhitespace(c)) {
+                    state = State.AFTER_ATTRIBUTE_NAME;
+                } else {
+                    attributeName.append(Character.toLowerCase(c));
+                }
+                break;
+                
+            case AFTER_ATTRIBUTE_NAME:
+                if (c == '=') {
+                    state = State.BEFORE_ATTRIBUTE_VALUE;
+                } else if (c == '>') {
+                    submitAttribute();
+                    submitTag();
+                } else if (c == '/') {
+                    submitAttribute();
+                    state = State.BEFORE_ATTRIBUTE_NAME;
+                } else if (!Character.isWhitespace(c)) {
+                    // Attribute without a value, followed by another attribute
+                    submitAttribute();
+                    attributeName.append(Character.toLowerCase(c));
+                    state = State.ATTRIBUTE_NAME;
+                }
+                break;
+                
+            case BEFORE_ATTRIBUTE_VALUE:
+                if (c == '"') {
+                    state = State.ATTRIBUTE_VALUE_DOUBLE_QUOTED;
+                } else if (c == '\'') {
+                    state = State.ATTRIBUTE_VALUE_SINGLE_QUOTED;
+                } else if (c == '>') {
+                    submitAttribute();
+                    submitTag();
+                } else if (!Character.isWhitespace(c)) {
+                    attributeValue.append(c);
+                    state = State.ATTRIBUTE_VALUE_UNQUOTED;
+                }
+                break;
+                
+            case ATTRIBUTE_VALUE_DOUBLE_QUOTED:
+                if (c == '"') {
+                    submitAttribute();
+                    state = State.BEFORE_ATTRIBUTE_NAME;
+                } else {
+                    attributeValue.append(c);
+                }
+                break;
+                
+            case ATTRIBUTE_VALUE_SINGLE_QUOTED:
+                if (c == '\'') {
+                    submitAttribute();
+                    state = State.BEFORE_ATTRIBUTE_NAME;
+                } else {
+                    attributeValue.append(c);
+                }
+                break;
+                
+            case ATTRIBUTE_VALUE_UNQUOTED:
+                if (c == '>') {
+                    submitAttribute();
+                    submitTag();
+                } else if (Character.isWhitespace(c)) {
+                    submitAttribute();
+                    state = State.BEFORE_ATTRIBUTE_NAME;
+                } else {
+                    attributeValue.append(c);
+                }
+                break;
+                
+            default:
+                throw new RuntimeException("State does not have handler: " + state);
+        }
+        return state != State.TEXT;
+    }
+    
+    @Override
+    public void processChars(char[] buf, int off, int len) {
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            if (state == State.TEXT) {
+                //Skip ahead to the next tag
+                while (i < end && buf[i] != '<') {
+                    i++;
+                }
+                if (i == end) {
+                    break;
+                }
+            } else if (state == State.CONTENTS) {
+                int start = i;
+                while (i < end && buf[i] != '<') {
+                    i++;
+                }
+                contents.append(buf, start, Math.min(i - start, MAX_CONTENTS_LENGTH - contents.length()));
+                if (i == end) {
+                    break;
+                }
+            }
+            processChar(buf[i]);
+        }
+    }
+    
+    private void appendContents(char c) {
+        if (contents.length() < MAX_CONTENTS_LENGTH) {
+            contents.append(c);
+        }
+    }
+    
+    private void appendContents(String s) {
+        if (contents.length() + s.length() <= MAX_CONTENTS_LENGTH) {
+            contents.append(s);
+        }
+    }
+    
+    private void appendBrackets(int count) {
+        for (int i = 0; i < count; i++) {
+            appendContents(']');
+        }
+    }
+    
+    private void appendTagName(char c) {
+        if (tagNameLength == maxTagNameLength) {
+            // Longer than every tag we are looking for
+            state = State.SKIP_TAG;
+            return;
+        }
+        tagName[tagNameLength++] = SearchUtil.foldCase(c);
+    }
+    
+    private int findTag() {
+        tag_loop: for (int i = 0; i < tagNames.length; i++) {
+            char[] name = tagNames[i];
+            if (name.length != tagNameLength) {
+                continue;
+            }
+            for (int j = 0; j < tagNameLength; j++) {
+                if (name[j] != tagName[j]) {
+                    continue tag_loop;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+    
+    private void submitAttribute() {
+        if (attributeName.length() > 0) {
+            if (tagAttributes == null) {
+                tagAttributes = new HashMap<String, String>();
+            }
+            String name = attributeName.toString();
+            // The first occurrence of an attribute wins, like in browsers
+            if (!tagAttributes.containsKey(name)) {
+                tagAttributes.put(name, attributeValue.toString());
+            }
+        }
+        attributeName.setLength(0);
+        attributeValue.setLength(0);
+    }
+    
+    private void submitTag() {
+        HashMap<String, String> attributes = tagAttributes != null ? tagAttributes : new HashMap<String, String>();
+        tagAttributes = null;
+        if (readsContents[matchedTag]) {
+            // Passed on when the next tag starts
+            contentsAttributes = attributes;
+            contents.setLength(0);
+            state = State.CONTENTS;
+            return;
+        }
+        state = State.TEXT;
+        foundTag(attributes, "");
+    }
+    
+    private void submitContents() {
+        HashMap<String, String> attributes = contentsAttributes;
+        contentsAttributes = null;
+        String tagContents = contents.toString();
+        contents.setLength(0);
+        foundTag(attributes, tagContents);
+    }
+    
+    private void foundTag(HashMap<String, String> attributes, String tagContents) {
+        XMLTagSearch[] searches = tagSearches[matchedTag];
+        long[] times = tagSearchTimes[matchedTag];
+        for (int i = 0; i < searches.length; i++) {
+            long start = System.nanoTime();
+            // Every search gets its own map so it may keep or change it
+            searches[i].onFoundTag(i == searches.length - 1 ? attributes : new HashMap<String, String>(attributes), tagContents);
+            times[i] += System.nanoTime() - start;
+        }
+    }
+    
+    /**
+     * Resets the tokenizer without resetting the registered searches.
+     * A tag still reading its contents when the page ends is passed on first.
+     */
+    void clear() {
+        if (state == State.CONTENTS || state == State.CONTENTS_TAG_OPEN
+                || state == State.CONTENTS_CDATA_START || state == State.CDATA) {
+            submitContents();
+        }
+        state = State.TEXT;
+        tagNameLength = 0;
+        matchedTag = -1;
+        dashes = 0;
+        tagAttributes = null;
+        attributeName.setLength(0);
+        attributeValue.setLength(0);
+        contentsAttributes = null;
+        contents.setLength(0);
+    }
+    
+    @Override
+    public void reset() {
+        clear();
+        for (XMLTagSearch[] searches : tagSearches) {
+            for (XMLTagSearch search : searches) {
+                search.reset();
+            }
+        }
+    }
+    
+}
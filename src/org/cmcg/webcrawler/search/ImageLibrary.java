@@ -0,0 +1,602 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.search;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+import org.nikm.logger.Log;
+import org.nikm.webcrawler.image.CheckedImageCache;
+import org.nikm.webcrawler.image.HashIndex;
+import org.nikm.webcrawler.image.ImageHash;
+import org.nikm.webcrawler.image.ImagePixels;
+import org.nikm.webcrawler.image.PixelCache;
+import org.nikm.webcrawler.image.ReferenceIndex;
+import org.nikm.webcrawler.log.CrawlLog;
+import org.nikm.webcrawler.metrics.CrawlMetrics;
+
+/**
+ * The local images an {@link HTMLImageSearch} looks for, along with the cache of checked site images
+ * and the image threads that download and compare them.
+ * Loading the local images takes a while, so a crawl loads one library and shares it between the image searches of all its workers.
+ */
+public class ImageLibrary {
+
+    /**
+     * The default largest amount of bits a site image's hash may differ from a local image's hash
+     * for the images to be compared
+     */
+    public static final int DEFAULT_MAX_HASH_DISTANCE = 8;
+
+    private static final int HASH_ALGORITHM = ImageHash.PERCEPTUAL;
+
+    /**
+     * The default amount of images waiting to be downloaded before page parsing blocks
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    /**
+     * The default amount of checked images remembered
+     */
+    public static final int DEFAULT_CACHE_SIZE = 100000;
+
+    /**
+     * The default memory used to keep the pixels of local images that aren't preloaded, in bytes
+     */
+    public static final long DEFAULT_PIXEL_CACHE_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Extensions of the files loaded from directories of local images, files given directly are loaded whatever their extension
+     */
+    private static final String[] IMAGE_EXTENSIONS = {"png", "jpg", "jpeg", "bmp", "webp"};
+
+    /**
+     * Site images are converted to ARGB in a buffer kept by each image thread, unless they are larger than this
+     */
+    private static final int MAX_REUSED_BUFFER = 4 * 1024 * 1024;
+
+    private boolean preloadImages;
+    private boolean resizeImages;
+    private ArrayList<SearchImage> imagesToFind;
+    private CheckedImageCache checkedImages;
+    private File cacheFile;
+    private int unsavedImages;
+    private long referenceSetId;
+    private HashIndex index;
+    private int maxHashDistance;
+
+    private int numImageThreads;
+    private int queueCapacity;
+    private ThreadPoolExecutor imageExecutor;
+    private int pendingImages;
+    private ThreadLocal<int[]> sitePixelBuffer;
+    private PixelCache pixelCache;
+    private CrawlMetrics metrics;
+
+    /**
+     *
+     * @param preloadImages True if local images should be loaded before processing. False if local images should be decoded when they are compared, keeping only the most recently used within a memory budget, see {@link #setPixelCacheSize(long)}.
+     * @param resizeImages True if site images should be resized before comparison
+     * @param indexFile A file the hashes of the local images are saved to, so images that haven't changed aren't decoded
+     * the next time they aren't preloaded. May be null.
+     * @param imagesToFind The paths for the local images. Directories are searched recursively for images.
+     */
+    public ImageLibrary(boolean preloadImages, boolean resizeImages, File indexFile, String... imagesToFind) {
+        this.preloadImages = preloadImages;
+        this.resizeImages = resizeImages;
+        this.sitePixelBuffer = new ThreadLocal<int[]>();
+        this.pixelCache = new PixelCache(DEFAULT_PIXEL_CACHE_SIZE);
+        this.imagesToFind = new ArrayList<SearchImage>();
+        this.checkedImages = new CheckedImageCache(DEFAULT_CACHE_SIZE);
+        this.index = new HashIndex();
+        this.maxHashDistance = DEFAULT_MAX_HASH_DISTANCE;
+        // Mostly waiting on downloads, so use more threads than cores
+        this.numImageThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        this.queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+        // Sorted so each image gets the same index every time
+        TreeSet<String> paths = new TreeSet<String>();
+        for (String s : imagesToFind) {
+            addPath(s, paths);
+        }
+        loadImages(new ArrayList<String>(paths), indexFile);
+
+        long setId = 0xcbf29ce484222325L;
+        for (int i = 0; i < this.imagesToFind.size(); i++) {
+            SearchImage image = this.imagesToFind.get(i);
+            index.add(image.hash, i);
+            setId = (setId ^ image.path.hashCode()) * 0x100000001b3L;
+            setId = (setId ^ image.hash) * 0x100000001b3L;
+        }
+        this.referenceSetId = setId;
+    }
+
+    /**
+     * Sets the cache of checked images, saved to a file when a crawl finishes so later crawls skip images
+     * that were already checked. A saved cache is only loaded if the local images haven't changed.
+     * @param cacheFile The file, or null to not save the cache
+     * @param maxEntries The most images remembered
+     */
+    public synchronized void setCheckedImageCache(File cacheFile, int maxEntries) throws IOException {
+        CheckedImageCache cache = new CheckedImageCache(maxEntries);
+        if (cacheFile != null && cache.load(cacheFile, referenceSetId)) {
+            Log.log("Loaded " + cache.size() + " checked images from " + cacheFile);
+        }
+        this.checkedImages = cache;
+        this.cacheFile = cacheFile;
+        this.unsavedImages = 0;
+    }
+
+    /**
+     * Sets how different a site image's perceptual hash may be from a local image's hash for the two to be compared.
+     * Larger distances find images that were scaled or recompressed, but compare more images.
+     * @param maxHashDistance The amount of differing bits out of 64, 0 to only compare images with the same hash
+     */
+    public void setMaxHashDistance(int maxHashDistance) {
+        this.maxHashDistance = maxHashDistance;
+    }
+
+    /**
+     * Sets the memory used to keep the pixels of local images that aren't preloaded. Must be called before the first page is searched.
+     * @param maxBytes The most memory used by the pixels, in bytes, 0 to decode a local image every time it's compared
+     */
+    public void setPixelCacheSize(long maxBytes) {
+        this.pixelCache = new PixelCache(maxBytes);
+    }
+
+    /**
+     * Sets the metrics the time to download and compare each site image is recorded in,
+     * such as {@link org.nikm.webcrawler.WebCrawler#getMetrics()}
+     * @param metrics The metrics, or null to not record them
+     */
+    public void setMetrics(CrawlMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the size of the image pool. Must be called before the first page is searched.
+     * @param numImageThreads The amount of threads downloading and comparing images
+     * @param queueCapacity The amount of images waiting for a thread before page parsing blocks
+     */
+    public synchronized void setImageThreads(int numImageThreads, int queueCapacity) {
+        if (imageExecutor != null) {
+            throw new IllegalStateException("Image threads already started");
+        }
+        this.numImageThreads = numImageThreads;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @return The amount of local images that were loaded
+     */
+    public int size() {
+        return imagesToFind.size();
+    }
+
+    CrawlMetrics getMetrics() {
+        return metrics;
+    }
+
+    synchronized CheckedImageCache getCheckedImages() {
+        return checkedImages;
+    }
+
+    /**
+     * @param image The index of a local image, as returned by {@link #compareImage(BufferedImage, String)}
+     * @return The path of the image
+     */
+    String getPath(int image) {
+        return imagesToFind.get(image).path;
+    }
+
+    /**
+     * Remembers what a site image matched, see {@link CheckedImageCache#put(String, long, int[], String, String)}
+     */
+    void putCheckedImage(String src, long contentHash, int[] matches, String etag, String lastModified) {
+        CheckedImageCache cache;
+        synchronized (this) {
+            cache = checkedImages;
+            unsavedImages++;
+        }
+        cache.put(src, contentHash, matches, etag, lastModified);
+    }
+
+    private void addPath(String s, Set<String> paths) {
+        Path path = Paths.get(s);
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> files = Files.walk(path)) {
+                Iterator<Path> it = files.iterator();
+                while (it.hasNext()) {
+                    Path file = it.next();
+                    if (isImageFile(file.getFileName().toString()) && Files.isRegularFile(file)) {
+                        paths.add(file.toString());
+                    }
+                }
+            } catch (IOException | UncheckedIOException e) {
+                Log.error("Could not list images in " + s + Arrays.toString(e.getStackTrace()));
+            }
+        } else if (Files.isRegularFile(path)) {
+            paths.add(path.toString());
+        }
+    }
+
+    private static boolean isImageFile(String name) {
+        int dot = name.lastIndexOf('.');
+        if (dot == -1) {
+            return false;
+        }
+        String extension = name.substring(dot + 1).toLowerCase(Locale.ROOT);
+        for (String imageExtension : IMAGE_EXTENSIONS) {
+            if (extension.equals(imageExtension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decodes and hashes the local images on every core, skipping the images whose hashes were saved to the index file
+     */
+    private void loadImages(List<String> paths, File indexFile) {
+        ReferenceIndex savedIndex = new ReferenceIndex();
+        if (indexFile != null) {
+            try {
+                if (savedIndex.load(indexFile)) {
+                    Log.log("Loaded " + savedIndex.size() + " image hashes from " + indexFile);
+                }
+            } catch (IOException e) {
+                Log.error("Could not load image hashes from " + indexFile + Arrays.toString(e.getStackTrace()));
+            }
+        }
+
+        SearchImage[] images = new SearchImage[paths.size()];
+        ReferenceIndex currentIndex = new ReferenceIndex();
+        AtomicInteger numIndexed = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            pool.invoke(new LoadImagesTask(paths, images, savedIndex, currentIndex, numIndexed, 0, images.length));
+        } finally {
+            pool.shutdown();
+        }
+
+        for (SearchImage image : images) {
+            if (image != null) {
+                image.id = this.imagesToFind.size();
+                this.imagesToFind.add(image);
+            }
+        }
+
+        if (indexFile != null && (numIndexed.get() != savedIndex.size() || numIndexed.get() != currentIndex.size())) {
+            try {
+                currentIndex.save(indexFile);
+            } catch (IOException e) {
+                Log.error("Could not save image hashes to " + indexFile + Arrays.toString(e.getStackTrace()));
+            }
+        }
+    }
+
+    /**
+     * Compares a site image to the local images with a similar hash
+     * @param decodedImage The site image
+     * @param src The url of the image
+     * @return The indexes of the matching local images
+     */
+    int[] compareImage(BufferedImage decodedImage, String src) {
+        int width = decodedImage.getWidth();
+        int height = decodedImage.getHeight();
+        int[] candidates = index.search(ImageHash.hash(HASH_ALGORITHM, decodedImage), maxHashDistance);
+
+        if (CrawlLog.isInfoEnabled()) {
+            CrawlLog.info("Testing against {} of {} {}preloaded images: {}", candidates.length, imagesToFind.size(),
+                    preloadImages ? "" : "non-", src);
+        }
+        if (candidates.length == 0) {
+            return new int[0];
+        }
+
+        int[] sitePixels = ImagePixels.argb(decodedImage, sitePixelBuffer.get());
+        if (sitePixels.length <= MAX_REUSED_BUFFER) {
+            sitePixelBuffer.set(sitePixels);
+        }
+        // Scaled once for each size among the candidates
+        HashMap<Long, int[]> scaledPixels = null;
+
+        int[] matches = new int[candidates.length];
+        int numMatches = 0;
+        for (int i : candidates) {
+            SearchImage searchImage = imagesToFind.get(i);
+            int[] pixels = sitePixels;
+            if (searchImage.width != width || searchImage.height != height) {
+                if (!resizeImages) {
+                    continue;
+                }
+                if (scaledPixels == null) {
+                    scaledPixels = new HashMap<Long, int[]>();
+                }
+                Long size = ((long) searchImage.width << 32) | searchImage.height;
+                pixels = scaledPixels.get(size);
+                if (pixels == null) {
+                    pixels = ImagePixels.scale(decodedImage, searchImage.width, searchImage.height);
+                    scaledPixels.put(size, pixels);
+                }
+            }
+
+            int[] pixelData = searchImage.getPixelData();
+            if (pixelData == null) {
+                Log.error("Pixel data was null for image: " + searchImage.path);
+                continue;
+            }
+            if (ImagePixels.equal(pixelData, pixels, searchImage.width * searchImage.height)) {
+                matches[numMatches++] = i;
+            }
+        }
+        return Arrays.copyOf(matches, numMatches);
+    }
+
+    /**
+     * Runs a task on the image threads, waiting while the queue is full
+     * @param task Checks a site image
+     * @throws RejectedExecutionException If the image threads were shut down
+     */
+    void execute(final Runnable task) {
+        synchronized (this) {
+            pendingImages++;
+        }
+        try {
+            getImageExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        imageDone();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            imageDone();
+            throw e;
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getImageExecutor() {
+        if (imageExecutor == null) {
+            final AtomicInteger threadNumber = new AtomicInteger();
+            imageExecutor = new ThreadPoolExecutor(numImageThreads, numImageThreads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable task) {
+                            Thread thread = new Thread(task, "image-search-" + threadNumber.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    }, new RejectedExecutionHandler() {
+                        @Override
+                        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+                            if (executor.isShutdown()) {
+                                throw new RejectedExecutionException("Image threads were shut down");
+                            }
+                            // Queue is full, wait for a free slot so parsing slows to the pace of the image threads
+                            try {
+                                executor.getQueue().put(task);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                throw new RejectedExecutionException("Interrupted while queueing image", e);
+                            }
+                            // Shut down while waiting, the task would never run and finish() would wait for it
+                            if (executor.isShutdown() && executor.getQueue().remove(task)) {
+                                throw new RejectedExecutionException("Image threads were shut down");
+                            }
+                        }
+                    });
+            imageExecutor.allowCoreThreadTimeOut(true);
+        }
+        return imageExecutor;
+    }
+
+    private synchronized void imageDone() {
+        pendingImages--;
+        if (pendingImages == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until every queued image has been checked, then saves the checked image cache if images were checked since it was last saved.
+     * Called by the image search of every worker, the first one to finish saves the cache.
+     */
+    public void finish() {
+        CheckedImageCache cache;
+        synchronized (this) {
+            try {
+                while (pendingImages > 0) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (cacheFile == null || unsavedImages == 0) {
+                return;
+            }
+            cache = checkedImages;
+            unsavedImages = 0;
+        }
+        try {
+            cache.save(cacheFile, referenceSetId);
+        } catch (IOException e) {
+            Log.error("Could not save checked images to " + cacheFile + Arrays.toString(e.getStackTrace()));
+        }
+    }
+
+    /**
+     * Stops the image threads once they have checked the queued images
+     */
+    public synchronized void shutdown() {
+        if (imageExecutor != null) {
+            imageExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Loads a range of local images, splitting it between threads
+     */
+    private class LoadImagesTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private List<String> paths;
+        private SearchImage[] images;
+        private ReferenceIndex savedIndex;
+        private ReferenceIndex currentIndex;
+        private AtomicInteger numIndexed;
+        private int start, end;
+
+        LoadImagesTask(List<String> paths, SearchImage[] images, ReferenceIndex savedIndex, ReferenceIndex currentIndex,
+                AtomicInteger numIndexed, int start, int end) {
+            this.paths = paths;
+            this.images = images;
+            this.savedIndex = savedIndex;
+            this.currentIndex = currentIndex;
+            this.numIndexed = numIndexed;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > 1) {
+                int mid = (start + end) >>> 1;
+                invokeAll(new LoadImagesTask(paths, images, savedIndex, currentIndex, numIndexed, start, mid),
+                        new LoadImagesTask(paths, images, savedIndex, currentIndex, numIndexed, mid, end));
+                return;
+            }
+            for (int i = start; i < end; i++) {
+                String path = paths.get(i);
+                File file = new File(path);
+                long lastModified = file.lastModified();
+                long length = file.length();
+                try {
+                    ReferenceIndex.Fingerprint fingerprint = preloadImages ? null : savedIndex.get(path, lastModified, length);
+                    if (fingerprint != null) {
+                        images[i] = new SearchImage(path, fingerprint.getWidth(), fingerprint.getHeight(), fingerprint.getHash());
+                        numIndexed.incrementAndGet();
+                    } else {
+                        images[i] = new SearchImage(path, preloadImages);
+                    }
+                    currentIndex.put(new ReferenceIndex.Fingerprint(path, lastModified, length,
+                            images[i].width, images[i].height, images[i].hash));
+                } catch (IOException | RuntimeException e) {
+                    Log.error("Could not load image " + path + Arrays.toString(e.getStackTrace()));
+                }
+            }
+        }
+
+    }
+
+    /**
+     * A reference image. Only its size and hash are kept, its pixels are kept by the image itself if images
+     * are preloaded, otherwise they are decoded when needed and kept in the pixel cache.
+     */
+    private class SearchImage {
+        private static final int NUM_RETRIES = 5;
+
+        int id;
+        int width, height;
+        String path;
+        long hash;
+        private int[] pixelData;
+        private int loadRetries;
+
+        SearchImage(String path, boolean preload) throws IOException {
+            this.path = path;
+
+            BufferedImage image = ImageIO.read(new File(path));
+            if (image == null) {
+                throw new IOException("Unsupported image format: " + path);
+            }
+
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+            this.hash = ImageHash.hash(HASH_ALGORITHM, image);
+
+            if (preload) {
+                pixelData = ImagePixels.argb(image, null);
+            }
+        }
+
+        SearchImage(String path, int width, int height, long hash) {
+            this.path = path;
+            this.width = width;
+            this.height = height;
+            this.hash = hash;
+        }
+
+        private BufferedImage loadImage() {
+            if (loadRetries < NUM_RETRIES) {
+                try {
+                    BufferedImage image = ImageIO.read(new File(path));
+                    if (image != null && image.getWidth() == width && image.getHeight() == height) {
+                        return image;
+                    }
+                    Log.error("Image file changed since it was loaded: " + path);
+                    loadRetries = NUM_RETRIES;
+                } catch (IOException e) {
+                    loadRetries++;
+                    Log.error("Could not load image file \"" + this.path + "\"\nRetry count: " + loadRetries
+                            + Arrays.toString(e.getStackTrace()));
+                }
+            }
+            return null;
+        }
+
+        int[] getPixelData() {
+            if (pixelData != null) {
+                return pixelData;
+            }
+            PixelCache cache = pixelCache;
+            int[] pixels = cache.get(id);
+            if (pixels == null) {
+                // Only one thread decodes each image
+                synchronized (this) {
+                    pixels = cache.get(id);
+                    if (pixels == null) {
+                        BufferedImage image = loadImage();
+                        if (image != null) {
+                            pixels = ImagePixels.argb(image, null);
+                            cache.put(id, pixels);
+                        }
+                    }
+                }
+            }
+            return pixels;
+        }
+    }
+
+}
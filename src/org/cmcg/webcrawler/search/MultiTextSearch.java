@@ -0,0 +1,275 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * A Search object that searches for many keywords at once.
+ * The keywords are compiled into an Aho-Corasick automaton with a flat int transition table,
+ * so each character costs one table lookup no matter how many keywords there are.
+ */
+public abstract class MultiTextSearch extends Search {
+
+    protected boolean caseSensitive;
+    protected int numCharsProcessed;
+    
+    private String[] keywords;
+    private int[] keywordLengths;
+    
+    /**
+     * The most ints in the transition table, arrays can't be larger
+     */
+    private static final long MAX_TABLE_SIZE = Integer.MAX_VALUE - 8;
+    
+    // The column of each ascii char in the transition table, 0 for chars that aren't in any keyword
+    private char[] asciiClasses;
+    // The other chars that are in a keyword once folded, sorted, with their columns
+    private char[] otherChars;
+    private char[] otherClasses;
+    private int numClasses;
+    
+    // transitions[state * numClasses + charClass] is the next state
+    private int[] transitions;
+    // The keyword ending at a state, or -1
+    private int[] keywordAt;
+    // The longest proper suffix state that ends a keyword, or -1
+    private int[] dictionaryLink;
+    // The state itself if it ends a keyword, otherwise its dictionary link
+    private int[] firstMatch;
+    
+    private int state;
+    
+    /**
+     * Creates a case insensitive search
+     * @param keywords The keywords to search for
+     */
+    public MultiTextSearch(String... keywords) {
+        this(Arrays.asList(keywords), false);
+    }
+    
+    /**
+     * @param keywords The keywords to search for
+     * @param caseSensitive if true matches must have the same character case as the keyword
+     */
+    public MultiTextSearch(Collection<String> keywords, boolean caseSensitive) {
+        if (keywords.isEmpty()) {
+            throw new IllegalArgumentException("Need at least one keyword");
+        }
+        this.caseSensitive = caseSensitive;
+        
+        // Deduplicate keywords that are equal after case folding
+        HashMap<String, Integer> keywordIds = new HashMap<String, Integer>();
+        ArrayList<String> uniqueKeywords = new ArrayList<String>();
+        ArrayList<char[]> foldedKeywords = new ArrayList<char[]>();
+        long numChars = 0;
+        for (String keyword : keywords) {
+            if (keyword == null || keyword.isEmpty()) {
+                throw new IllegalArgumentException("Keywords can't be empty");
+            }
+            char[] folded = new char[keyword.length()];
+            for (int i = 0; i < folded.length; i++) {
+                folded[i] = fold(keyword.charAt(i));
+            }
+            if (keywordIds.put(new String(folded), uniqueKeywords.size()) == null) {
+                uniqueKeywords.add(keyword);
+                foldedKeywords.add(folded);
+                numChars += folded.length;
+            }
+        }
+        this.keywords = uniqueKeywords.toArray(new String[uniqueKeywords.size()]);
+        this.keywordLengths = new int[this.keywords.length];
+        
+        char[] foldedChars = buildCharClasses(foldedKeywords);
+        buildAutomaton(foldedKeywords, foldedChars, numChars + 1);
+    }
+    
+    /**
+     * Called when a keyword is found
+     * @param keyword The keyword, as it was given to the constructor
+     * @param characterIndex The character index for the start of the match
+     */
+    public abstract void onFoundString(String keyword, int characterIndex);
+    
+    private char fold(char c) {
+        return caseSensitive ? c : SearchUtil.foldCase(c);
+    }
+    
+    /**
+     * Gives each char of the folded keywords a column, the column of a folded char is its index in foldedChars plus one.
+     * Only ascii chars get a table entry, so a search doesn't keep a table of every char.
+     */
+    private char[] buildCharClasses(ArrayList<char[]> foldedKeywords) {
+        StringBuilder chars = new StringBuilder();
+        for (char[] keyword : foldedKeywords) {
+            chars.append(keyword);
+        }
+        char[] foldedChars = chars.toString().toCharArray();
+        Arrays.sort(foldedChars);
+        int numChars = 0;
+        for (int i = 0; i < foldedChars.length; i++) {
+            if (i == 0 || foldedChars[i] != foldedChars[i - 1]) {
+                foldedChars[numChars++] = foldedChars[i];
+            }
+        }
+        foldedChars = Arrays.copyOf(foldedChars, numChars);
+        numClasses = numChars + 1;
+        
+        asciiClasses = new char[128];
+        StringBuilder others = new StringBuilder();
+        StringBuilder otherColumns = new StringBuilder();
+        // Without case folding only the keyword chars themselves match, otherwise any char folding to one
+        int last = caseSensitive ? (numChars > 0 ? foldedChars[numChars - 1] : 0) : Character.MAX_VALUE;
+        for (int c = 0; c <= last; c++) {
+            int index = Arrays.binarySearch(foldedChars, fold((char) c));
+            if (index < 0) {
+                continue;
+            }
+            if (c < 128) {
+                asciiClasses[c] = (char) (index + 1);
+            } else {
+                others.append((char) c);
+                otherColumns.append((char) (index + 1));
+            }
+        }
+        otherChars = others.toString().toCharArray();
+        otherClasses = otherColumns.toString().toCharArray();
+        return foldedChars;
+    }
+    
+    /**
+     * @return The column of a char in the transition table
+     */
+    private int charClass(char c) {
+        if (c < 128) {
+            return asciiClasses[c];
+        }
+        if (otherChars.length == 0) {
+            return 0;
+        }
+        int index = Arrays.binarySearch(otherChars, c);
+        return index >= 0 ? otherClasses[index] : 0;
+    }
+    
+    private void buildAutomaton(ArrayList<char[]> foldedKeywords, char[] foldedChars, long maxStates) {
+        if (maxStates * numClasses > MAX_TABLE_SIZE) {
+            throw new IllegalArgumentException("Keywords too large for a transition table: " + maxStates + " states with "
+                    + numClasses + " columns, split them between several searches");
+        }
+        int[] trie = new int[(int) (maxStates * numClasses)];
+        Arrays.fill(trie, -1);
+        int[] keywordAt = new int[(int) maxStates];
+        Arrays.fill(keywordAt, -1);
+        int numStates = 1;
+        
+        for (int k = 0; k < foldedKeywords.size(); k++) {
+            char[] keyword = foldedKeywords.get(k);
+            int s = 0;
+            for (char c : keyword) {
+                int index = s * numClasses + Arrays.binarySearch(foldedChars, c) + 1;
+                if (trie[index] == -1) {
+                    trie[index] = numStates++;
+                }
+                s = trie[index];
+            }
+            keywordAt[s] = k;
+            keywordLengths[k] = keyword.length;
+        }
+        
+        this.transitions = Arrays.copyOf(trie, numStates * numClasses);
+        this.keywordAt = Arrays.copyOf(keywordAt, numStates);
+        this.dictionaryLink = new int[numStates];
+        this.firstMatch = new int[numStates];
+        int[] failure = new int[numStates];
+        
+        // Breadth first, so the failure state of every state is finished before the state itself
+        int[] queue = new int[numStates];
+        int head = 0;
+        int tail = 0;
+        dictionaryLink[0] = -1;
+        firstMatch[0] = -1;
+        for (int c = 0; c < numClasses; c++) {
+            int t = transitions[c];
+            if (t == -1) {
+                transitions[c] = 0;
+            } else {
+                failure[t] = 0;
+                queue[tail++] = t;
+            }
+        }
+        while (head < tail) {
+            int s = queue[head++];
+            int f = failure[s];
+            dictionaryLink[s] = this.keywordAt[f] != -1 ? f : dictionaryLink[f];
+            firstMatch[s] = this.keywordAt[s] != -1 ? s : dictionaryLink[s];
+            for (int c = 0; c < numClasses; c++) {
+                int index = s * numClasses + c;
+                int t = transitions[index];
+                if (t == -1) {
+                    transitions[index] = transitions[f * numClasses + c];
+                } else {
+                    failure[t] = transitions[f * numClasses + c];
+                    queue[tail++] = t;
+                }
+            }
+        }
+    }
+    
+    @Override
+    public boolean processChar(char c) {
+        state = transitions[state * numClasses + charClass(c)];
+        numCharsProcessed++;
+        if (firstMatch[state] != -1) {
+            reportMatches(state);
+        }
+        return state != 0;
+    }
+    
+    @Override
+    public void processChars(char[] buf, int off, int len) {
+        int[] transitions = this.transitions;
+        char[] asciiClasses = this.asciiClasses;
+        int[] firstMatch = this.firstMatch;
+        int numClasses = this.numClasses;
+        int s = state;
+        int processedBefore = numCharsProcessed - off;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            char c = buf[i];
+            s = transitions[s * numClasses + (c < 128 ? asciiClasses[c] : charClass(c))];
+            if (firstMatch[s] != -1) {
+                state = s;
+                numCharsProcessed = processedBefore + i + 1;
+                reportMatches(s);
+            }
+        }
+        state = s;
+        numCharsProcessed = processedBefore + end;
+    }
+    
+    private void reportMatches(int s) {
+        for (int m = firstMatch[s]; m != -1; m = dictionaryLink[m]) {
+            int keyword = keywordAt[m];
+            onFoundString(keywords[keyword], numCharsProcessed - keywordLengths[keyword]);
+        }
+    }
+    
+    @Override
+    public void reset() {
+        this.state = 0;
+        this.numCharsProcessed = 0;
+    }
+    
+    /**
+     * @return The amount of keywords, after removing duplicates
+     */
+    public int getNumKeywords() {
+        return keywords.length;
+    }
+    
+}
@@ -27,9 +27,29 @@ public abstract class Search {
      */
     public abstract boolean processChar(char c);
     
+    /**
+     * Processes a chunk of characters, equivalent to calling {@link #processChar(char)} for each of them.
+     * Subclasses that can skip through a chunk faster should override this.
+     * @param buf The buffer holding the characters
+     * @param off The index of the first character to process
+     * @param len The amount of characters to process
+     */
+    public void processChars(char[] buf, int off, int len) {
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            processChar(buf[i]);
+        }
+    }
+    
     /**
      * Called after a page is processed
      */
     public abstract void reset();
     
+    /**
+     * Called when the crawl ends. Searches that work in the background wait for that work to complete.
+     */
+    public void finish() {
+    }
+    
 }
@@ -4,11 +4,22 @@
 */
 package org.nikm.webcrawler.search;
 
+import java.util.ArrayList;
+
 /**
  * Search Utilities
  */
 public class SearchUtil {
     
+    private static final int CHUNK_SIZE = 8192;
+    
+    private static final char[] ASCII_LOWER = new char[128];
+    static {
+        for (char c = 0; c < 128; c++) {
+            ASCII_LOWER[c] = Character.toLowerCase(c);
+        }
+    }
+    
     /**
      * Executes the specified searches on the specified string.
      * Equivalent to <code>executeSearch(toSearch, "", searches)</code>
@@ -26,13 +37,16 @@ public class SearchUtil {
      * @param searches The searches to perform
      */
     public static void executeSearch(String toSearch, String pageUrl, Search... searches) {
+        searches = groupTagSearches(searches);
         for (Search s : searches) {
             s.initialize(pageUrl);
         }
-        for (int i = 0; i < toSearch.length(); i++) {
-            char c = toSearch.charAt(i);
+        char[] chunk = new char[Math.min(CHUNK_SIZE, toSearch.length())];
+        for (int i = 0; i < toSearch.length(); i += chunk.length) {
+            int len = Math.min(chunk.length, toSearch.length() - i);
+            toSearch.getChars(i, i + len, chunk, 0);
             for (Search s : searches) {
-                s.processChar(c);
+                s.processChars(chunk, 0, len);
             }
         }
         for (Search s : searches) {
@@ -40,4 +54,43 @@ public class SearchUtil {
         }
     }
     
+    /**
+     * Replaces all tag searches with a single {@link HTMLTagTokenizer} that passes tags to them,
+     * so the html is only tokenized once no matter how many tag searches there are.
+     * @param searches The searches to group
+     * @return The grouped searches, or the same array if there are less than two tag searches
+     */
+    public static Search[] groupTagSearches(Search... searches) {
+        int numTagSearches = 0;
+        for (Search s : searches) {
+            if (s instanceof XMLTagSearch) {
+                numTagSearches++;
+            }
+        }
+        if (numTagSearches < 2) {
+            return searches;
+        }
+        
+        HTMLTagTokenizer tokenizer = new HTMLTagTokenizer();
+        ArrayList<Search> grouped = new ArrayList<Search>();
+        grouped.add(tokenizer);
+        for (Search s : searches) {
+            if (s instanceof XMLTagSearch) {
+                tokenizer.addSearch((XMLTagSearch) s);
+            } else {
+                grouped.add(s);
+            }
+        }
+        return grouped.toArray(new Search[grouped.size()]);
+    }
+    
+    /**
+     * Folds a character for case insensitive matching, using a table for ASCII characters
+     * @param c The character to fold
+     * @return The lower case character
+     */
+    static char foldCase(char c) {
+        return c < 128 ? ASCII_LOWER[c] : Character.toLowerCase(c);
+    }
+    
 }
@@ -5,7 +5,9 @@
 package org.nikm.webcrawler.search;
 
 /**
- * A Search object that searches for text
+ * A Search object that searches for text.
+ * Matches are found with a streaming Knuth-Morris-Pratt matcher, so overlapping matches are found
+ * and no memory is allocated until a match completes.
  */
 public abstract class TextSearch extends Search {
 
@@ -14,7 +16,11 @@ public abstract class TextSearch extends Search {
     
     protected int numCharsProcessed;
     protected int currentIndex;
-    protected String matchedString;
+    
+    private char[] pattern;
+    private int[] failure;
+    private char[] recentChars;
+    private int recentPos;
     
     /**
      * Creates a case insensitive text search
@@ -30,9 +36,32 @@ public abstract class TextSearch extends Search {
      * @param caseSensitive if true matches must have the same character case as the search 
      */
     public TextSearch(String stringToFind, boolean caseSensitive) {
-    	//TODO assert stringToFind is not empty
+        if (stringToFind == null || stringToFind.isEmpty()) {
+            throw new IllegalArgumentException("Text to find can't be empty");
+        }
         this.stringToFind = stringToFind;
         this.caseSensitive = caseSensitive;
+        
+        int length = stringToFind.length();
+        this.pattern = new char[length];
+        for (int i = 0; i < length; i++) {
+            pattern[i] = fold(stringToFind.charAt(i));
+        }
+        
+        // failure[i] is the length of the longest proper prefix of pattern[0..i] that is also a suffix of it
+        this.failure = new int[length];
+        int k = 0;
+        for (int i = 1; i < length; i++) {
+            while (k > 0 && pattern[i] != pattern[k]) {
+                k = failure[k - 1];
+            }
+            if (pattern[i] == pattern[k]) {
+                k++;
+            }
+            failure[i] = k;
+        }
+        
+        this.recentChars = new char[length];
     }
     
     /**
@@ -42,32 +71,81 @@ public abstract class TextSearch extends Search {
      */
     public abstract void onFoundString(String matchedString, int characterIndex);
     
+    private char fold(char c) {
+        if (caseSensitive) {
+            return c;
+        }
+        return SearchUtil.foldCase(c);
+    }
+    
     @Override
     public boolean processChar(char c) {
-        char toMatch = stringToFind.charAt(currentIndex);
-        if (c == toMatch  || (!caseSensitive && 
-                Character.toLowerCase(c) == Character.toLowerCase(toMatch))) {
-            matchedString += c;
-            currentIndex++;
-            if (currentIndex == stringToFind.length()) {
-                onFoundString(matchedString, numCharsProcessed - currentIndex);
-                matchedString = "";
-                currentIndex = 0;
-            }
+        char f = fold(c);
+        
+        // Remember the last pattern.length chars so the match can be built when it completes
+        recentChars[recentPos] = c;
+        recentPos = recentPos + 1 == recentChars.length ? 0 : recentPos + 1;
+        numCharsProcessed++;
+        
+        int j = currentIndex;
+        while (j > 0 && pattern[j] != f) {
+            j = failure[j - 1];
+        }
+        if (pattern[j] == f) {
+            j++;
+        }
+        
+        if (j == pattern.length) {
+            currentIndex = failure[j - 1];
+            onFoundString(matchedString(), numCharsProcessed - pattern.length);
             return true;
-        } else if (currentIndex != 0) {
-            matchedString = "";
-            currentIndex = 0;
         }
-        numCharsProcessed++;
-        return false;
+        currentIndex = j;
+        return j != 0;
+    }
+    
+    private String matchedString() {
+        int length = recentChars.length;
+        StringBuilder match = new StringBuilder(length);
+        match.append(recentChars, recentPos, length - recentPos);
+        match.append(recentChars, 0, recentPos);
+        return match.toString();
+    }
+    
+    /**
+     * Skips characters that can't start a match without going through {@link #processChar(char)}.
+     * Subclasses that override processChar must override this as well.
+     */
+    @Override
+    public void processChars(char[] buf, int off, int len) {
+        char first = pattern[0];
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            if (currentIndex == 0) {
+                int start = i;
+                if (caseSensitive) {
+                    while (i < end && buf[i] != first) {
+                        i++;
+                    }
+                } else {
+                    while (i < end && fold(buf[i]) != first) {
+                        i++;
+                    }
+                }
+                numCharsProcessed += i - start;
+                if (i == end) {
+                    break;
+                }
+            }
+            processChar(buf[i]);
+        }
     }
     
     @Override
     public void reset() {
         this.numCharsProcessed = 0;
         this.currentIndex = 0;
-        this.matchedString = "";
+        this.recentPos = 0;
     }
     
 }
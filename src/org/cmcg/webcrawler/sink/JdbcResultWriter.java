@@ -0,0 +1,74 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.sink;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inserts results into a table with one batched statement per batch. The table needs the columns
+ * type, page, value, match_index and attributes, attributes are stored as name=value lines.
+ */
+public class JdbcResultWriter implements ResultWriter {
+
+    private Connection connection;
+    private PreparedStatement insert;
+
+    /**
+     * @param connection The connection, closed with the writer
+     * @param table The name of the table
+     */
+    public JdbcResultWriter(Connection connection, String table) throws SQLException {
+        this.connection = connection;
+        this.insert = connection.prepareStatement(
+                "INSERT INTO " + table + " (type, page, value, match_index, attributes) VALUES (?, ?, ?, ?, ?)");
+    }
+
+    @Override
+    public void write(List<SearchResult> results) throws IOException {
+        try {
+            for (SearchResult result : results) {
+                insert.setString(1, result.getType());
+                insert.setString(2, result.getPageUrl());
+                insert.setString(3, result.getValue());
+                insert.setInt(4, result.getIndex());
+                insert.setString(5, attributes(result.getAttributes()));
+                insert.addBatch();
+            }
+            insert.executeBatch();
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            throw new IOException("Could not insert " + results.size() + " results", e);
+        }
+    }
+
+    private static String attributes(Map<String, String> attributes) {
+        if (attributes.isEmpty()) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+            text.append(attribute.getKey()).append('=').append(attribute.getValue()).append('\n');
+        }
+        return text.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            insert.close();
+            connection.close();
+        } catch (SQLException e) {
+            throw new IOException("Could not close connection", e);
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.sink;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Appends results to a file as newline delimited JSON, one object per line:
+ * <pre>{"type":"tag","page":"https://...","value":"a","index":-1,"attributes":{"href":"/about"}}</pre>
+ */
+public class NdjsonResultWriter implements ResultWriter {
+
+    private Writer out;
+    private StringBuilder line;
+
+    /**
+     * @param file The file, results are appended if it exists
+     */
+    public NdjsonResultWriter(File file) throws IOException {
+        this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8), 64 * 1024);
+        this.line = new StringBuilder(256);
+    }
+
+    @Override
+    public void write(List<SearchResult> results) throws IOException {
+        for (SearchResult result : results) {
+            line.setLength(0);
+            line.append("{\"type\":");
+            appendString(result.getType());
+            line.append(",\"page\":");
+            appendString(result.getPageUrl());
+            line.append(",\"value\":");
+            appendString(result.getValue());
+            line.append(",\"index\":").append(result.getIndex());
+            if (!result.getAttributes().isEmpty()) {
+                line.append(",\"attributes\":{");
+                boolean first = true;
+                for (Map.Entry<String, String> attribute : result.getAttributes().entrySet()) {
+                    if (!first) {
+                        line.append(',');
+                    }
+                    first = false;
+                    appendString(attribute.getKey());
+                    line.append(':');
+                    appendString(attribute.getValue());
+                }
+                line.append('}');
+            }
+            line.append("}\n");
+            out.append(line);
+        }
+        out.flush();
+    }
+
+    private void appendString(String s) {
+        if (s == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+}
@@ -0,0 +1,274 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.sink;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nikm.logger.Log;
+import org.nikm.webcrawler.search.HTMLImageSearch;
+import org.nikm.webcrawler.search.ImageLibrary;
+import org.nikm.webcrawler.search.Search;
+import org.nikm.webcrawler.search.TextSearch;
+import org.nikm.webcrawler.search.XMLTagSearch;
+
+/**
+ * Takes results from searches and writes them in batches on its own thread, so slow writes such as database inserts
+ * don't hold up searching. A batch is written once it is full or the flush interval has passed since the last one.
+ * Searches wait when the queue of unwritten results is full, so a writer that can't keep up slows the crawl
+ * rather than losing results.
+ */
+public class ResultSink {
+
+    public static final int DEFAULT_CAPACITY = 65536;
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+    private static final SearchResult FLUSH = new SearchResult("flush", null, null, -1, null);
+    private static final SearchResult CLOSE = new SearchResult("close", null, null, -1, null);
+
+    private ArrayBlockingQueue<SearchResult> queue;
+    private ResultWriter writer;
+    private int batchSize;
+    private long flushInterval;
+    private Thread thread;
+    private volatile boolean closed;
+    private AtomicLong emitted;
+    private AtomicLong dropped;
+    private long processed;
+    private long failed;
+
+    public ResultSink(ResultWriter writer) {
+        this(writer, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    /**
+     * @param writer Writes the results
+     * @param capacity The most results waiting to be written before searches wait
+     * @param batchSize The most results written at once
+     * @param flushInterval The longest time a result waits for its batch to fill, in milliseconds
+     */
+    public ResultSink(ResultWriter writer, int capacity, int batchSize, long flushInterval) {
+        if (batchSize < 1 || flushInterval < 1) {
+            throw new IllegalArgumentException("Batch size and flush interval must be positive");
+        }
+        this.queue = new ArrayBlockingQueue<SearchResult>(capacity);
+        this.writer = writer;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.emitted = new AtomicLong();
+        this.dropped = new AtomicLong();
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeResults();
+            }
+        }, "result-sink");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues a result, waiting while the queue is full.
+     * Results emitted after the sink is closed, such as by image threads still running at shutdown, are dropped.
+     * @param result The result
+     */
+    public void emit(SearchResult result) {
+        if (closed) {
+            if (dropped.incrementAndGet() == 1) {
+                Log.error("Result sink is closed, dropping results from: " + result.getPageUrl());
+            }
+            return;
+        }
+        emitted.incrementAndGet();
+        try {
+            queue.put(result);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            synchronized (this) {
+                processed++;
+                failed++;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until the results queued so far are written
+     */
+    public void flush() {
+        long target = emitted.get();
+        try {
+            queue.put(FLUSH);
+            synchronized (this) {
+                while (processed < target && thread.isAlive()) {
+                    wait(100);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the queued results, then closes the writer
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(CLOSE);
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeResults() {
+        ArrayList<SearchResult> batch = new ArrayList<SearchResult>(batchSize);
+        long nextFlush = System.currentTimeMillis() + flushInterval;
+        boolean closing = false;
+        while (!closing) {
+            boolean flush = false;
+            try {
+                long wait = Math.max(1, nextFlush - System.currentTimeMillis());
+                SearchResult result = queue.poll(wait, TimeUnit.MILLISECONDS);
+                while (result != null) {
+                    if (result == FLUSH) {
+                        flush = true;
+                    } else if (result == CLOSE) {
+                        closing = true;
+                    } else {
+                        batch.add(result);
+                    }
+                    result = batch.size() < batchSize ? queue.poll() : null;
+                }
+            } catch (InterruptedException e) {
+                closing = true;
+            }
+            if (flush || closing || batch.size() >= batchSize || System.currentTimeMillis() >= nextFlush) {
+                writeBatch(batch);
+                nextFlush = System.currentTimeMillis() + flushInterval;
+            }
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            Log.error("Could not close result writer" + Arrays.toString(e.getStackTrace()));
+        }
+    }
+
+    private void writeBatch(ArrayList<SearchResult> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        boolean written = false;
+        try {
+            writer.write(batch);
+            written = true;
+        } catch (IOException | RuntimeException e) {
+            Log.error("Could not write " + batch.size() + " results" + Arrays.toString(e.getStackTrace()));
+        }
+        synchronized (this) {
+            processed += batch.size();
+            if (!written) {
+                failed += batch.size();
+            }
+            notifyAll();
+        }
+        batch.clear();
+    }
+
+    /**
+     * @return The amount of results that were written
+     */
+    public synchronized long getWrittenResults() {
+        return processed - failed;
+    }
+
+    /**
+     * @return The amount of results that couldn't be written
+     */
+    public synchronized long getFailedResults() {
+        return failed;
+    }
+
+    /**
+     * @return The amount of results dropped because they were emitted after the sink was closed
+     */
+    public long getDroppedResults() {
+        return dropped.get();
+    }
+
+    /**
+     * Creates a text search that sends its matches to this sink. The crawl waits for its results to be written when it ends.
+     * @param stringToFind The text to search for
+     * @param caseSensitive if true matches must have the same character case as the search
+     */
+    public Search textSearch(String stringToFind, boolean caseSensitive) {
+        return new TextSearch(stringToFind, caseSensitive) {
+            @Override
+            public void onFoundString(String matchedString, int characterIndex) {
+                emit(new SearchResult(SearchResult.TEXT, pageUrl, matchedString, characterIndex, null));
+            }
+
+            @Override
+            public void finish() {
+                flush();
+            }
+        };
+    }
+
+    /**
+     * Creates a tag search that sends the tags it finds to this sink, with their attributes.
+     * The crawl waits for its results to be written when it ends.
+     * @param tagToFind The name of the tag
+     */
+    public Search tagSearch(String tagToFind) {
+        return new XMLTagSearch(tagToFind) {
+            @Override
+            public void onFoundTag(HashMap<String, String> attributes, String tagContents) {
+                emit(new SearchResult(SearchResult.TAG, pageUrl, getTag(), -1, new HashMap<String, String>(attributes)));
+            }
+
+            @Override
+            public void finish() {
+                flush();
+            }
+        };
+    }
+
+    /**
+     * Creates an image search that sends the site images matching a local image to this sink,
+     * with the path of the local image as the "original" attribute.
+     * The crawl waits for its images to be checked and its results to be written when it ends.
+     * @param homePage The homepage for the hosted images, images on other hosts are skipped
+     * @param library The local images, shared with the image searches of the other workers
+     */
+    public HTMLImageSearch imageSearch(String homePage, ImageLibrary library) {
+        return new HTMLImageSearch(homePage, library) {
+            @Override
+            public void onFoundImage(String originalImage, String matchedImage, String pageUrl) {
+                emit(new SearchResult(SearchResult.IMAGE, pageUrl, matchedImage, -1,
+                        Collections.singletonMap("original", originalImage)));
+            }
+
+            @Override
+            public void finish() {
+                super.finish();
+                flush();
+            }
+        };
+    }
+
+}
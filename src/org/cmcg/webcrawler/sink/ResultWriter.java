@@ -0,0 +1,25 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.sink;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes batches of results for a {@link ResultSink}. Only the sink's writer thread calls it.
+ */
+public interface ResultWriter {
+
+    /**
+     * @param results The results, in the order they were found on each page
+     */
+    public void write(List<SearchResult> results) throws IOException;
+
+    /**
+     * Called once the last batch is written
+     */
+    public void close() throws IOException;
+
+}
@@ -0,0 +1,60 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.sink;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A match found by a search, queued in a {@link ResultSink} to be written after the page's search moves on
+ */
+public class SearchResult {
+
+    public static final String TEXT = "text";
+    public static final String TAG = "tag";
+    public static final String IMAGE = "image";
+
+    private String type;
+    private String pageUrl;
+    private String value;
+    private int index;
+    private Map<String, String> attributes;
+
+    /**
+     * @param type The kind of match, such as {@link #TEXT}, {@link #TAG} or {@link #IMAGE}
+     * @param pageUrl The url of the page the match was found on
+     * @param value The matched text, tag name or image url
+     * @param index The character index of the match, or -1 if it has none
+     * @param attributes Other details of the match, such as a tag's attributes, may be null
+     */
+    public SearchResult(String type, String pageUrl, String value, int index, Map<String, String> attributes) {
+        this.type = type;
+        this.pageUrl = pageUrl;
+        this.value = value;
+        this.index = index;
+        this.attributes = attributes != null ? attributes : Collections.<String, String>emptyMap();
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getPageUrl() {
+        return pageUrl;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+}
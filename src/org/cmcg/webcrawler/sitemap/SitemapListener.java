@@ -0,0 +1,26 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.sitemap;
+
+/**
+ * Receives the urls a {@link SitemapParser} finds
+ */
+public interface SitemapListener {
+
+    /**
+     * Called for each page listed by a sitemap or feed
+     * @param url The url of the page, as written in the document
+     * @param lastModified When the page last changed in milliseconds since the epoch, 0 if unknown
+     */
+    public void onPage(String url, long lastModified);
+
+    /**
+     * Called for each sitemap listed by a sitemap index
+     * @param url The url of the sitemap, as written in the document
+     * @param lastModified When the sitemap last changed in milliseconds since the epoch, 0 if unknown
+     */
+    public void onSitemap(String url, long lastModified);
+
+}
@@ -0,0 +1,231 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.sitemap;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+
+import org.nikm.webcrawler.search.Search;
+import org.nikm.webcrawler.search.XMLTagSearch;
+
+/**
+ * Finds the urls in sitemaps, sitemap indexes, RSS feeds and Atom feeds while they are read.
+ * Run the parser's searches on each document with a {@link org.nikm.webcrawler.PageReader},
+ * every url is passed to the listener with its last modified date.
+ * A parser reads one document at a time.
+ */
+public class SitemapParser {
+
+    private SitemapListener listener;
+    private Search[] searches;
+
+    // The tag of the url or item being read, null outside of one
+    private String record;
+    private String location;
+    private long lastModified;
+
+    /**
+     * @param listener Receives the urls
+     */
+    public SitemapParser(SitemapListener listener) {
+        this.listener = listener;
+        this.searches = new Search[] {
+            new RecordSearch("url"),
+            new RecordSearch("sitemap"),
+            new RecordSearch("item"),
+            new RecordSearch("entry"),
+            new LocationSearch("loc"),
+            new LocationSearch("link"),
+            new DateSearch("lastmod"),
+            new DateSearch("updated"),
+            new DateSearch("published"),
+            new DateSearch("pubdate"),
+        };
+    }
+
+    /**
+     * @return The searches that parse a document
+     */
+    public Search[] getSearches() {
+        return searches;
+    }
+
+    /**
+     * Passes on the url that was being read
+     */
+    private void endRecord() {
+        if (record != null && location != null && !location.isEmpty()) {
+            if (record.equals("sitemap")) {
+                listener.onSitemap(location, lastModified);
+            } else {
+                listener.onPage(location, lastModified);
+            }
+        }
+        record = null;
+        location = null;
+        lastModified = 0;
+    }
+
+    /**
+     * Parses the dates used by sitemaps, Atom feeds and RSS feeds
+     * @param text A W3C date such as 2024-01-31 or 2024-01-31T10:00:00+00:00, or an RFC 1123 date
+     * @return The date in milliseconds since the epoch, 0 if it couldn't be parsed
+     */
+    public static long parseDate(String text) {
+        text = text.trim();
+        if (text.isEmpty()) {
+            return 0;
+        }
+        try {
+            if (!Character.isDigit(text.charAt(0))) {
+                return ZonedDateTime.parse(text, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            }
+            if (text.length() == 10) {
+                return LocalDate.parse(text).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            }
+            try {
+                return OffsetDateTime.parse(text).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                // Times without a zone are taken as UTC
+                return LocalDateTime.parse(text).toInstant(ZoneOffset.UTC).toEpochMilli();
+            }
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Decodes the xml entities in a url and trims it
+     * @param text The text of a tag or attribute
+     * @return The decoded text
+     */
+    static String decode(String text) {
+        text = text.trim();
+        int amp = text.indexOf('&');
+        if (amp == -1) {
+            return text;
+        }
+        StringBuilder decoded = new StringBuilder(text.length());
+        decoded.append(text, 0, amp);
+        for (int i = amp; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int end = c == '&' ? text.indexOf(';', i) : -1;
+            if (end == -1) {
+                decoded.append(c);
+                continue;
+            }
+            String entity = text.substring(i + 1, end);
+            int replacement = -1;
+            if (entity.equals("amp")) {
+                replacement = '&';
+            } else if (entity.equals("lt")) {
+                replacement = '<';
+            } else if (entity.equals("gt")) {
+                replacement = '>';
+            } else if (entity.equals("quot")) {
+                replacement = '"';
+            } else if (entity.equals("apos")) {
+                replacement = '\'';
+            } else if (entity.startsWith("#")) {
+                try {
+                    replacement = entity.startsWith("#x") || entity.startsWith("#X")
+                            ? Integer.parseInt(entity.substring(2), 16) : Integer.parseInt(entity.substring(1));
+                } catch (NumberFormatException e) {
+                    // Not an entity
+                }
+            }
+            if (replacement < 0 || !Character.isValidCodePoint(replacement)) {
+                decoded.append(c);
+                continue;
+            }
+            decoded.appendCodePoint(replacement);
+            i = end;
+        }
+        return decoded.toString();
+    }
+
+    /**
+     * Starts a url of a sitemap, a sitemap of an index, an RSS item or an Atom entry
+     */
+    private class RecordSearch extends XMLTagSearch {
+
+        RecordSearch(String tag) {
+            super(tag);
+        }
+
+        @Override
+        public void onFoundTag(HashMap<String, String> attributes, String tagContents) {
+            // Closing tags aren't passed on, a record ends when the next one starts
+            endRecord();
+            record = getTag();
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            endRecord();
+        }
+
+    }
+
+    /**
+     * Reads the url of a record, from the loc of a sitemap, the link text of an RSS item
+     * or the link href of an Atom entry
+     */
+    private class LocationSearch extends XMLTagSearch {
+
+        LocationSearch(String tag) {
+            super(tag, true);
+        }
+
+        @Override
+        public void onFoundTag(HashMap<String, String> attributes, String tagContents) {
+            if (record == null || location != null) {
+                // Outside of a record, like the link of the feed itself
+                return;
+            }
+            String text = null;
+            if (record.equals("entry")) {
+                String rel = attributes.get("rel");
+                String href = attributes.get("href");
+                if (href != null && (rel == null || rel.equalsIgnoreCase("alternate"))) {
+                    text = decode(href);
+                }
+            } else {
+                text = decode(tagContents);
+            }
+            // An empty link, like an Atom link in an RSS item, leaves room for the next one
+            if (text != null && !text.isEmpty()) {
+                location = text;
+            }
+        }
+
+    }
+
+    /**
+     * Reads when a record last changed, the latest date wins when there are several
+     */
+    private class DateSearch extends XMLTagSearch {
+
+        DateSearch(String tag) {
+            super(tag, true);
+        }
+
+        @Override
+        public void onFoundTag(HashMap<String, String> attributes, String tagContents) {
+            if (record != null) {
+                lastModified = Math.max(lastModified, parseDate(tagContents));
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.url;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Decides which links belong to the crawled sites by comparing hosts exactly.
+ * A leading www. is ignored on both sides, so example.com and www.example.com are the same site.
+ */
+public class HostScope {
+
+    private ArrayList<String> hosts;
+    private boolean includeSubdomains;
+
+    /**
+     * @param rootUrl A url on the site
+     */
+    public HostScope(String rootUrl) {
+        this.hosts = new ArrayList<String>();
+        addSite(rootUrl);
+    }
+
+    /**
+     * Also follows links to another site
+     * @param url A url on the site
+     */
+    public void addSite(String url) {
+        String canonical = new UrlCanonicalizer().canonicalize(url);
+        String siteHost = canonical != null ? UrlCanonicalizer.getHost(canonical) : "";
+        if (siteHost.startsWith("www.")) {
+            siteHost = siteHost.substring(4);
+        }
+        siteHost = siteHost.toLowerCase(Locale.ROOT);
+        if (!siteHost.isEmpty() && !hosts.contains(siteHost)) {
+            hosts.add(siteHost);
+        }
+    }
+
+    /**
+     * @param includeSubdomains true to also crawl subdomains of the site, e.g. blog.example.com for example.com
+     */
+    public void setIncludeSubdomains(boolean includeSubdomains) {
+        this.includeSubdomains = includeSubdomains;
+    }
+
+    /**
+     * @return The first site's host without www., empty if its url was invalid
+     */
+    public String getHost() {
+        return hosts.isEmpty() ? "" : hosts.get(0);
+    }
+
+    /**
+     * @return true if only links to a single host are followed
+     */
+    public boolean isSingleHost() {
+        return hosts.size() <= 1 && !includeSubdomains;
+    }
+
+    /**
+     * @param url A url made by a {@link UrlCanonicalizer}
+     * @return true if the url is on one of the sites
+     */
+    public boolean contains(String url) {
+        int start = url.indexOf("://");
+        if (start == -1) {
+            return false;
+        }
+        start += 3;
+        int end = UrlCanonicalizer.hostEnd(url, start);
+        if (url.startsWith("www.", start)) {
+            start += 4;
+        }
+
+        int length = end - start;
+        for (String host : hosts) {
+            if (length == host.length() && url.regionMatches(start, host, 0, length)) {
+                return true;
+            }
+            if (includeSubdomains && length > host.length()
+                    && url.charAt(end - host.length() - 1) == '.'
+                    && url.regionMatches(end - host.length(), host, 0, host.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,588 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.url;
+
+import java.net.IDN;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+
+/**
+ * Turns links into one canonical form so the same page is only queued once.
+ * <ul>
+ * <li>Relative links are resolved against the page's base url</li>
+ * <li>Only http and https links are kept, mailto:, javascript: and the like are dropped</li>
+ * <li>The scheme and host are lower cased, default ports, user info and fragments are removed</li>
+ * <li>Dot segments are removed from the path and an empty path becomes /</li>
+ * <li>Percent escapes are upper cased, escaped unreserved characters are decoded and unsafe characters are escaped</li>
+ * <li>Tracking parameters are removed from the query and the remaining parameters are sorted</li>
+ * </ul>
+ * Parses links by hand instead of using {@link java.net.URI}, which rejects many links found in real pages.
+ * Thread safe once configured.
+ */
+public class UrlCanonicalizer {
+
+    private static final String[] DEFAULT_TRACKING_PARAMS = { "gclid", "dclid", "fbclid", "msclkid", "yclid",
+            "mc_cid", "mc_eid", "_ga", "_hsenc", "_hsmi" };
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Ascii characters that can be copied into a url as they are
+     */
+    private static final boolean[] PLAIN = new boolean[128];
+
+    static {
+        for (char c = '!'; c < 0x7F; c++) {
+            PLAIN[c] = "\"<>^`{|}%".indexOf(c) == -1;
+        }
+    }
+
+    private HashSet<String> trackingParams;
+    private boolean stripUtmParams;
+    private boolean sortQuery;
+
+    public UrlCanonicalizer() {
+        this.trackingParams = new HashSet<String>(Arrays.asList(DEFAULT_TRACKING_PARAMS));
+        this.stripUtmParams = true;
+        this.sortQuery = true;
+    }
+
+    /**
+     * @param sortQuery true to sort query parameters, so links that only list them in another order match
+     */
+    public void setSortQuery(boolean sortQuery) {
+        this.sortQuery = sortQuery;
+    }
+
+    /**
+     * @param stripUtmParams true to remove all utm_ parameters
+     */
+    public void setStripUtmParams(boolean stripUtmParams) {
+        this.stripUtmParams = stripUtmParams;
+    }
+
+    /**
+     * Adds a query parameter that is removed from every url
+     * @param name The parameter name, matched case insensitively
+     */
+    public void addTrackingParam(String name) {
+        trackingParams.add(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Stops removing the default tracking parameters, except utm_ parameters
+     */
+    public void clearTrackingParams() {
+        trackingParams.clear();
+    }
+
+    /**
+     * @param url An absolute url
+     * @return The canonical url, or null if it isn't a valid http or https url
+     */
+    public String canonicalize(String url) {
+        return canonicalize(null, url);
+    }
+
+    /**
+     * Resolves a link and makes it canonical
+     * @param base The absolute url the link is relative to, the page's url or its base tag
+     * @param link The link as found on the page
+     * @return The canonical url, or null if it isn't an http or https link or can't be resolved
+     */
+    public String canonicalize(String base, String link) {
+        Parts parts = parse(clean(link));
+        if (parts == null) {
+            return null;
+        }
+        if (parts.host == null) {
+            if (base == null) {
+                return null;
+            }
+            Parts baseParts = parse(clean(base));
+            if (baseParts == null || baseParts.host == null
+                    || (parts.scheme != null && !parts.scheme.equals(baseParts.scheme))) {
+                return null;
+            }
+            resolve(parts, baseParts);
+        } else {
+            if (parts.scheme == null) {// Network path reference
+                if (base == null) {
+                    return null;
+                }
+                Parts baseParts = parse(clean(base));
+                if (baseParts == null || baseParts.scheme == null) {
+                    return null;
+                }
+                parts.scheme = baseParts.scheme;
+            }
+            parts.path = removeDotSegments(parts.path);
+        }
+        return build(parts);
+    }
+
+    /**
+     * @param url A canonical url
+     * @return The url's host, or null if it has none
+     */
+    public static String getHost(String url) {
+        int start = url.indexOf("://");
+        if (start == -1) {
+            return null;
+        }
+        start += 3;
+        return url.substring(start, hostEnd(url, start));
+    }
+
+    /**
+     * @param url A canonical url
+     * @param start The index the host starts at
+     * @return The index after the host
+     */
+    static int hostEnd(String url, int start) {
+        if (start < url.length() && url.charAt(start) == '[') {
+            int close = url.indexOf(']', start);
+            return close == -1 ? url.length() : close + 1;
+        }
+        int end = start;
+        while (end < url.length()) {
+            char c = url.charAt(end);
+            if (c == '/' || c == ':' || c == '?') {
+                break;
+            }
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Trims a link and removes the tabs and line breaks browsers ignore
+     */
+    private static String clean(String link) {
+        if (link == null) {
+            return null;
+        }
+        int start = 0;
+        int end = link.length();
+        while (start < end && link.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && link.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        boolean dirty = false;
+        for (int i = start; i < end; i++) {
+            char c = link.charAt(i);
+            if (c == '\t' || c == '\n' || c == '\r' || c == '\\') {
+                dirty = true;
+                break;
+            }
+        }
+        if (!dirty) {
+            return start == 0 && end == link.length() ? link : link.substring(start, end);
+        }
+        StringBuilder cleaned = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = link.charAt(i);
+            if (c == '\\') {// Browsers treat backslashes in http urls as slashes
+                cleaned.append('/');
+            } else if (c != '\t' && c != '\n' && c != '\r') {
+                cleaned.append(c);
+            }
+        }
+        return cleaned.toString();
+    }
+
+    private static Parts parse(String link) {
+        if (link == null) {
+            return null;
+        }
+        int length = link.length();
+        Parts parts = new Parts();
+        int index = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = link.charAt(i);
+            if (c == ':') {
+                if (i == 0 || !isScheme(link, i)) {
+                    break;
+                }
+                String scheme = link.substring(0, i).toLowerCase(Locale.ROOT);
+                if (!scheme.equals("http") && !scheme.equals("https")) {
+                    return null;
+                }
+                parts.scheme = scheme;
+                index = i + 1;
+                break;
+            }
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+        }
+
+        int end = link.indexOf('#', index);
+        if (end == -1) {
+            end = length;
+        }
+
+        if (link.startsWith("//", index)) {
+            int authorityEnd = index + 2;
+            while (authorityEnd < end && link.charAt(authorityEnd) != '/' && link.charAt(authorityEnd) != '?') {
+                authorityEnd++;
+            }
+            if (!parseAuthority(parts, link, index + 2, authorityEnd)) {
+                return null;
+            }
+            index = authorityEnd;
+        }
+
+        int query = link.indexOf('?', index);
+        if (query == -1 || query > end) {
+            parts.path = link.substring(index, end);
+        } else {
+            parts.path = link.substring(index, query);
+            parts.query = link.substring(query + 1, end);
+        }
+        // Before dot segments are removed, so an escaped dot segment is removed like any other
+        parts.path = decodeUnreserved(parts.path);
+        return parts;
+    }
+
+    /**
+     * Decodes the percent escapes of unreserved characters, other escapes are left as they are
+     */
+    private static String decodeUnreserved(String path) {
+        int percent = path.indexOf('%');
+        if (percent == -1) {
+            return path;
+        }
+        StringBuilder decoded = new StringBuilder(path.length());
+        decoded.append(path, 0, percent);
+        for (int i = percent; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '%' && i + 2 < path.length()) {
+                int high = hexValue(path.charAt(i + 1));
+                int low = hexValue(path.charAt(i + 2));
+                if (high != -1 && low != -1 && isUnreserved((char) (high * 16 + low))) {
+                    decoded.append((char) (high * 16 + low));
+                    i += 2;
+                    continue;
+                }
+            }
+            decoded.append(c);
+        }
+        return decoded.toString();
+    }
+
+    private static boolean isScheme(String link, int end) {
+        if (!isAsciiLetter(link.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < end; i++) {
+            char c = link.charAt(i);
+            if (!isAsciiLetter(c) && !(c >= '0' && c <= '9') && c != '+' && c != '-' && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean parseAuthority(Parts parts, String link, int start, int end) {
+        int at = link.lastIndexOf('@', end - 1);
+        if (at >= start) {// Drop user info
+            start = at + 1;
+        }
+        if (start >= end) {
+            return false;
+        }
+
+        int hostEnd;
+        int portStart = -1;
+        if (link.charAt(start) == '[') {
+            int close = link.indexOf(']', start);
+            if (close == -1 || close >= end) {
+                return false;
+            }
+            hostEnd = close + 1;
+            if (hostEnd < end) {
+                if (link.charAt(hostEnd) != ':') {
+                    return false;
+                }
+                portStart = hostEnd + 1;
+            }
+        } else {
+            int colon = link.lastIndexOf(':', end - 1);
+            if (colon >= start) {
+                hostEnd = colon;
+                portStart = colon + 1;
+            } else {
+                hostEnd = end;
+            }
+        }
+
+        String host = link.substring(start, hostEnd).toLowerCase(Locale.ROOT);
+        if (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+        if (host.isEmpty()) {
+            return false;
+        }
+        if (host.charAt(0) != '[') {
+            for (int i = 0; i < host.length(); i++) {
+                char c = host.charAt(i);
+                if (c >= 0x80) {
+                    try {
+                        host = IDN.toASCII(host).toLowerCase(Locale.ROOT);
+                    } catch (IllegalArgumentException e) {
+                        return false;
+                    }
+                    break;
+                }
+            }
+            for (int i = 0; i < host.length(); i++) {
+                char c = host.charAt(i);
+                if (!(c >= 'a' && c <= 'z') && !(c >= '0' && c <= '9') && c != '-' && c != '.' && c != '_') {
+                    return false;
+                }
+            }
+        }
+        parts.host = host;
+
+        if (portStart != -1 && portStart < end) {
+            if (end - portStart > 5) {
+                return false;
+            }
+            int port = 0;
+            for (int i = portStart; i < end; i++) {
+                char c = link.charAt(i);
+                if (c < '0' || c > '9') {
+                    return false;
+                }
+                port = port * 10 + (c - '0');
+            }
+            if (port > 65535) {
+                return false;
+            }
+            parts.port = port;
+        }
+        return true;
+    }
+
+    private static void resolve(Parts parts, Parts base) {
+        parts.scheme = base.scheme;
+        parts.host = base.host;
+        parts.port = base.port;
+        if (parts.path.isEmpty()) {
+            parts.path = removeDotSegments(base.path);
+            if (parts.query == null) {
+                parts.query = base.query;
+            }
+        } else if (parts.path.charAt(0) == '/') {
+            parts.path = removeDotSegments(parts.path);
+        } else {
+            String basePath = base.path.isEmpty() ? "/" : base.path;
+            parts.path = removeDotSegments(basePath.substring(0, basePath.lastIndexOf('/') + 1) + parts.path);
+        }
+    }
+
+    /**
+     * Removes . and .. segments, see RFC 3986 section 5.2.4
+     */
+    private static String removeDotSegments(String path) {
+        if (path.indexOf('.') == -1) {
+            return path;
+        }
+        boolean hasDotSegment = false;
+        int segmentStart = 0;
+        for (int i = 0; i <= path.length(); i++) {
+            if (i == path.length() || path.charAt(i) == '/') {
+                int length = i - segmentStart;
+                if ((length == 1 && path.charAt(segmentStart) == '.')
+                        || (length == 2 && path.charAt(segmentStart) == '.' && path.charAt(segmentStart + 1) == '.')) {
+                    hasDotSegment = true;
+                    break;
+                }
+                segmentStart = i + 1;
+            }
+        }
+        if (!hasDotSegment) {
+            return path;
+        }
+
+        ArrayList<String> segments = new ArrayList<String>();
+        boolean trailingSlash = false;
+        segmentStart = path.startsWith("/") ? 1 : 0;
+        for (int i = segmentStart; i <= path.length(); i++) {
+            if (i == path.length() || path.charAt(i) == '/') {
+                String segment = path.substring(segmentStart, i);
+                trailingSlash = false;
+                if (segment.equals(".")) {
+                    trailingSlash = true;
+                } else if (segment.equals("..")) {
+                    if (!segments.isEmpty()) {
+                        segments.remove(segments.size() - 1);
+                    }
+                    trailingSlash = true;
+                } else {
+                    segments.add(segment);
+                }
+                segmentStart = i + 1;
+            }
+        }
+
+        StringBuilder resolved = new StringBuilder(path.length());
+        for (String segment : segments) {
+            resolved.append('/').append(segment);
+        }
+        if (trailingSlash || resolved.length() == 0) {
+            resolved.append('/');
+        }
+        return resolved.toString();
+    }
+
+    private String build(Parts parts) {
+        StringBuilder url = new StringBuilder(parts.host.length() + parts.path.length()
+                + (parts.query != null ? parts.query.length() : 0) + 16);
+        url.append(parts.scheme).append("://").append(parts.host);
+        if (parts.port != -1 && parts.port != (parts.scheme.equals("https") ? 443 : 80)) {
+            url.append(':').append(parts.port);
+        }
+        if (parts.path.isEmpty()) {
+            url.append('/');
+        } else {
+            if (parts.path.charAt(0) != '/') {
+                url.append('/');
+            }
+            appendEscaped(url, parts.path, 0, parts.path.length());
+        }
+        if (parts.query != null) {
+            appendQuery(url, parts.query);
+        }
+        return url.toString();
+    }
+
+    private void appendQuery(StringBuilder url, String query) {
+        ArrayList<String> params = null;
+        int mark = url.length();
+        url.append('?');
+        int start = 0;
+        for (int i = 0; i <= query.length(); i++) {
+            if (i != query.length() && query.charAt(i) != '&') {
+                continue;
+            }
+            if (i > start && !isTrackingParam(query, start, i)) {
+                if (sortQuery) {
+                    if (params == null) {
+                        params = new ArrayList<String>();
+                    }
+                    StringBuilder param = new StringBuilder(i - start);
+                    appendEscaped(param, query, start, i);
+                    params.add(param.toString());
+                } else {
+                    if (url.length() > mark + 1) {
+                        url.append('&');
+                    }
+                    appendEscaped(url, query, start, i);
+                }
+            }
+            start = i + 1;
+        }
+        if (params != null) {
+            Collections.sort(params);
+            for (int i = 0; i < params.size(); i++) {
+                if (i > 0) {
+                    url.append('&');
+                }
+                url.append(params.get(i));
+            }
+        }
+        if (url.length() == mark + 1) {// Nothing left
+            url.setLength(mark);
+        }
+    }
+
+    private boolean isTrackingParam(String query, int start, int end) {
+        int nameEnd = query.indexOf('=', start);
+        if (nameEnd == -1 || nameEnd > end) {
+            nameEnd = end;
+        }
+        if (stripUtmParams && query.regionMatches(true, start, "utm_", 0, 4)) {
+            return true;
+        }
+        return !trackingParams.isEmpty() && trackingParams.contains(query.substring(start, nameEnd).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Appends part of a url, normalizing percent escapes and escaping characters that aren't allowed in urls
+     */
+    private static void appendEscaped(StringBuilder url, String part, int start, int end) {
+        int plainEnd = start;
+        while (plainEnd < end && part.charAt(plainEnd) < 0x80 && PLAIN[part.charAt(plainEnd)]) {
+            plainEnd++;
+        }
+        url.append(part, start, plainEnd);
+
+        for (int i = plainEnd; i < end; i++) {
+            char c = part.charAt(i);
+            if (c < 0x80 && PLAIN[c]) {
+                url.append(c);
+            } else if (c == '%') {
+                int high = i + 2 < end ? hexValue(part.charAt(i + 1)) : -1;
+                int low = i + 2 < end ? hexValue(part.charAt(i + 2)) : -1;
+                if (high == -1 || low == -1) {
+                    url.append("%25");
+                    continue;
+                }
+                char decoded = (char) (high * 16 + low);
+                if (isUnreserved(decoded)) {
+                    url.append(decoded);
+                } else {
+                    url.append('%').append(HEX[high]).append(HEX[low]);
+                }
+                i += 2;
+            } else if (c >= 0x80) {
+                int codePoint = part.codePointAt(i);
+                int count = Character.charCount(codePoint);
+                for (byte b : part.substring(i, i + count).getBytes(StandardCharsets.UTF_8)) {
+                    url.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+                }
+                i += count - 1;
+            } else {
+                url.append('%').append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            }
+        }
+    }
+
+    /**
+     * @return The value of an ascii hex digit, -1 for any other character
+     */
+    private static int hexValue(char c) {
+        return c < 0x80 ? Character.digit(c, 16) : -1;
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    private static class Parts {
+
+        private String scheme;
+        private String host;
+        private int port = -1;
+        private String path;
+        private String query;
+
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in-process HTTP server on a free local port that counts the requests for each path
+ */
+public class TestServer implements Closeable {
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private ConcurrentHashMap<String, AtomicInteger> requests;
+
+    public TestServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.executor = Executors.newFixedThreadPool(8);
+        this.requests = new ConcurrentHashMap<String, AtomicInteger>();
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Serves a path, replacing the handler it had
+     * @param path The path the handler serves, and every path below it
+     * @param handler Answers the requests
+     */
+    public void handle(String path, final HttpHandler handler) {
+        try {
+            server.removeContext(path);
+        } catch (IllegalArgumentException e) {
+            // Not served yet
+        }
+        server.createContext(path, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String query = exchange.getRequestURI().getRawQuery();
+                String key = exchange.getRequestURI().getPath() + (query != null ? "?" + query : "");
+                requests.computeIfAbsent(key, new Function<String, AtomicInteger>() {
+                    @Override
+                    public AtomicInteger apply(String k) {
+                        return new AtomicInteger();
+                    }
+                }).incrementAndGet();
+                try {
+                    handler.handle(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * @param path A path starting with /
+     * @return The url of the path on this server
+     */
+    public String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    /**
+     * @return The amount of requests for a path, with its query
+     */
+    public int getRequests(String path) {
+        AtomicInteger count = requests.get(path);
+        return count != null ? count.get() : 0;
+    }
+
+    /**
+     * @return The requests for each path, with its query
+     */
+    public ConcurrentHashMap<String, AtomicInteger> getRequests() {
+        return requests;
+    }
+
+    /**
+     * Sends a complete response
+     */
+    public static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        if (contentType != null) {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+        }
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,522 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+import org.nikm.webcrawler.cache.PageCache;
+import org.nikm.webcrawler.fetch.HttpClientFetcher;
+import org.nikm.webcrawler.fetch.PageFetcher;
+import org.nikm.webcrawler.metrics.CrawlMetrics;
+import org.nikm.webcrawler.politeness.PolitenessPolicy;
+import org.nikm.webcrawler.search.HTMLImageSearch;
+import org.nikm.webcrawler.search.ImageLibrary;
+import org.nikm.webcrawler.search.Search;
+import org.nikm.webcrawler.search.TextSearch;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+public class WebCrawlerTest {
+
+    private TestServer server;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = new TestServer();
+        server.handle("/robots.txt", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                TestServer.respond(exchange, 404, null, new byte[0]);
+            }
+        });
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.close();
+    }
+
+    /**
+     * Serves /p0 to /p(size - 1), each linking to three other pages
+     */
+    private void serveLinkGraph(final int size) {
+        server.handle("/p", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int page = Integer.parseInt(exchange.getRequestURI().getPath().substring(2));
+                StringBuilder html = new StringBuilder("<html><body>page ").append(page);
+                for (int i = 1; i <= 3; i++) {
+                    html.append("<a href=\"/p").append((page * 3 + i) % size).append("\">link</a>");
+                }
+                html.append("</body></html>");
+                TestServer.respond(exchange, 200, "text/html; charset=utf-8", html.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        });
+    }
+
+    private WebCrawler crawler(String path) {
+        WebCrawler crawler = new WebCrawler(server.url(path));
+        PolitenessPolicy policy = new PolitenessPolicy();
+        policy.setRequestDelay(0);
+        policy.setMaxConnectionsPerHost(4);
+        policy.setRetries(2, 1, 10);
+        crawler.setPolitenessPolicy(policy);
+        return crawler;
+    }
+
+    private void crawl(final WebCrawler crawler, final int maxPages, final int numWorkers, final AtomicInteger searchedPages) {
+        assertTimeoutPreemptively(Duration.ofSeconds(30), new Executable() {
+            @Override
+            public void execute() {
+                crawler.crawl(maxPages, numWorkers, new SearchFactory() {
+                    @Override
+                    public Search[] createSearches() {
+                        return new Search[] { new TextSearch("page") {
+                            @Override
+                            public void initialize(String pageUrl) {
+                                super.initialize(pageUrl);
+                                searchedPages.incrementAndGet();
+                            }
+
+                            @Override
+                            public void onFoundString(String matchedString, int characterIndex) {
+                            }
+                        } };
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return The amount of pages of the link graph that were fetched, checking none were fetched twice
+     */
+    private int fetchedPages() {
+        int pages = 0;
+        for (Map.Entry<String, AtomicInteger> request : server.getRequests().entrySet()) {
+            if (request.getKey().startsWith("/p")) {
+                assertEquals(1, request.getValue().get(), "Fetched more than once: " + request.getKey());
+                pages++;
+            }
+        }
+        return pages;
+    }
+
+    @Test
+    public void crawlsMaxPagesWithOneWorker() {
+        serveLinkGraph(100);
+        AtomicInteger searched = new AtomicInteger();
+        crawl(crawler("/p0"), 20, 1, searched);
+        assertEquals(20, fetchedPages());
+        assertEquals(20, searched.get());
+    }
+
+    @Test
+    public void crawlsMaxPagesWithSeveralWorkers() {
+        serveLinkGraph(100);
+        AtomicInteger searched = new AtomicInteger();
+        crawl(crawler("/p0"), 30, 6, searched);
+        assertEquals(30, fetchedPages());
+        assertEquals(30, searched.get());
+    }
+
+    @Test
+    public void stopsWhenOutOfPages() {
+        serveLinkGraph(12);
+        AtomicInteger searched = new AtomicInteger();
+        crawl(crawler("/p0"), 100, 6, searched);
+        assertEquals(12, fetchedPages());
+        assertEquals(12, searched.get());
+    }
+
+    @Test
+    public void givesUpAfterMaxRetries() {
+        server.handle("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String html = "<html><a href=\"/busy\">busy</a></html>";
+                TestServer.respond(exchange, 200, "text/html", html.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.handle("/busy", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                TestServer.respond(exchange, 503, null, new byte[0]);
+            }
+        });
+        AtomicInteger searched = new AtomicInteger();
+        crawl(crawler("/"), 0, 2, searched);
+        // The first attempt and two retries
+        assertEquals(3, server.getRequests("/busy"));
+        assertEquals(1, searched.get());
+    }
+
+    @Test
+    public void finishesCrawlWhenSearchThrows(@TempDir Path directory) throws IOException {
+        serveLinkGraph(4);
+        final HTMLImageSearch imageSearch = new HTMLImageSearch(server.url("/p0"), false, false, writeReferenceImage(directory).getPath()) {
+            @Override
+            public void onFoundImage(String originalImage, String matchedImage, String pageUrl) {
+            }
+        };
+        PageFetcher ownFetcher = new HttpClientFetcher();
+        imageSearch.setFetcher(ownFetcher);
+        final TextSearch failingSearch = new TextSearch("page") {
+            @Override
+            public void onFoundString(String matchedString, int characterIndex) {
+                throw new IllegalStateException("search failed");
+            }
+        };
+        final WebCrawler crawler = crawler("/p0");
+        assertThrows(IllegalStateException.class, new Executable() {
+            @Override
+            public void execute() {
+                crawler.crawl(0, imageSearch, failingSearch);
+            }
+        });
+        imageSearch.shutdown();
+
+        // The metrics were stopped and the image search has its own fetcher again
+        long elapsed = crawler.getMetrics().getElapsedTime();
+        assertTrue(elapsed > 0);
+        assertEquals(elapsed, crawler.getMetrics().getElapsedTime());
+        assertSame(ownFetcher, imageSearch.getFetcher());
+    }
+
+    @Test
+    public void retriesRobotsAfterFailure() {
+        final AtomicInteger robotsRequests = new AtomicInteger();
+        server.handle("/robots.txt", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                TestServer.respond(exchange, robotsRequests.incrementAndGet() == 1 ? 503 : 404, null, new byte[0]);
+            }
+        });
+        serveLinkGraph(12);
+        AtomicInteger searched = new AtomicInteger();
+        crawl(crawler("/p0"), 100, 2, searched);
+        assertEquals(2, server.getRequests("/robots.txt"));
+        assertEquals(12, fetchedPages());
+    }
+
+    @Test
+    public void sendsUserAgentMatchedByRobots() {
+        final AtomicReference<String> sentAgent = new AtomicReference<String>();
+        server.handle("/robots.txt", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String text = "User-agent: *\nDisallow: /\n\nUser-agent: TestBot\nDisallow: /p1\n";
+                TestServer.respond(exchange, 200, "text/plain", text.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        serveLinkGraph(12);
+        server.handle("/p0", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                sentAgent.set(exchange.getRequestHeaders().getFirst("User-Agent"));
+                String html = "<html><a href=\"/p1\">1</a><a href=\"/p2\">2</a></html>";
+                TestServer.respond(exchange, 200, "text/html", html.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        WebCrawler crawler = crawler("/p0");
+        PolitenessPolicy policy = new PolitenessPolicy();
+        policy.setRequestDelay(0);
+        policy.setUserAgent("TestBot/2.0");
+        crawler.setPolitenessPolicy(policy);
+        AtomicInteger searched = new AtomicInteger();
+        crawl(crawler, 100, 2, searched);
+        assertEquals("TestBot/2.0", sentAgent.get());
+        assertEquals(0, server.getRequests("/p1"));
+        assertTrue(server.getRequests("/p2") > 0);
+    }
+
+    @Test
+    public void followsLinksOfNearDuplicatePages() {
+        // The pages of a list have the same text and only differ in their links
+        server.handle("/list", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int page = Integer.parseInt(exchange.getRequestURI().getPath().substring(5));
+                StringBuilder html = new StringBuilder("<html><body><p>");
+                for (int i = 0; i < 40; i++) {
+                    html.append("the same listing text on every page word").append(i).append(' ');
+                }
+                html.append("</p><a href=\"/list").append(page + 1).append("\">next</a></body></html>");
+                TestServer.respond(exchange, page > 5 ? 404 : 200, "text/html", html.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        WebCrawler crawler = crawler("/list1");
+        PageCache pageCache = new PageCache();
+        crawler.setPageCache(pageCache);
+        AtomicInteger searched = new AtomicInteger();
+        crawl(crawler, 0, 2, searched);
+
+        for (int i = 1; i <= 6; i++) {
+            assertEquals(1, server.getRequests("/list" + i), "/list" + i);
+        }
+        // Only the first page is searched
+        assertEquals(1, searched.get());
+        assertEquals(4, crawler.getMetrics().counter(CrawlMetrics.PAGES_DUPLICATE).get());
+        assertEquals(Collections.singletonList(server.url("/list3")),
+                Arrays.asList(pageCache.get(server.url("/list2")).getLinks()));
+    }
+
+    @Test
+    public void readsSitemapsInScopeAndAllowedByRobots() {
+        server.handle("/robots.txt", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String text = "User-agent: *\nDisallow: /private\nSitemap: " + server.url("/index.xml") + "\n";
+                TestServer.respond(exchange, 200, "text/plain", text.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.handle("/index.xml", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String xml = "<sitemapindex><sitemap><loc>" + server.url("/sitemap.xml") + "</loc></sitemap>"
+                        + "<sitemap><loc>" + server.url("/private/sitemap.xml") + "</loc></sitemap>"
+                        + "<sitemap><loc>http://other.invalid/sitemap.xml</loc></sitemap></sitemapindex>";
+                TestServer.respond(exchange, 200, "application/xml", xml.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        HttpHandler sitemap = new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String xml = "<urlset><url><loc>" + server.url("/p5") + "</loc></url></urlset>";
+                TestServer.respond(exchange, 200, "application/xml", xml.getBytes(StandardCharsets.UTF_8));
+            }
+        };
+        server.handle("/sitemap.xml", sitemap);
+        server.handle("/private", sitemap);
+        serveLinkGraph(100);
+
+        WebCrawler crawler = crawler("/p0");
+        crawler.setSitemapSeeding(true);
+        AtomicInteger searched = new AtomicInteger();
+        crawl(crawler, 2, 1, searched);
+
+        assertEquals(1, server.getRequests("/sitemap.xml"));
+        assertEquals(0, server.getRequests("/private/sitemap.xml"));
+        assertEquals(1, server.getRequests("/p5"));
+    }
+
+    @Test
+    public void downloadsImagesPolitely(@TempDir Path directory) throws IOException {
+        File reference = writeReferenceImage(directory);
+        final byte[] png = Files.readAllBytes(reference.toPath());
+
+        final AtomicReference<String> sentAgent = new AtomicReference<String>();
+        server.handle("/robots.txt", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] text = "User-agent: *\nDisallow: /private\n".getBytes(StandardCharsets.UTF_8);
+                TestServer.respond(exchange, 200, "text/plain", text);
+            }
+        });
+        server.handle("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String html = "<html><img src=\"/img.png\"><img src=\"/private/img.png\">"
+                        + "<img src=\"http://other.invalid/?" + server.url("/img.png") + "\"></html>";
+                TestServer.respond(exchange, 200, "text/html", html.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        HttpHandler images = new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                sentAgent.set(exchange.getRequestHeaders().getFirst("User-Agent"));
+                TestServer.respond(exchange, 200, "image/png", png);
+            }
+        };
+        server.handle("/img.png", images);
+        server.handle("/private", images);
+
+        final ArrayList<String> found = new ArrayList<String>();
+        final HTMLImageSearch imageSearch = new HTMLImageSearch(server.url("/"), true, false, reference.getPath()) {
+            @Override
+            public void onFoundImage(String originalImage, String matchedImage, String pageUrl) {
+                synchronized (found) {
+                    found.add(matchedImage);
+                }
+            }
+        };
+        final WebCrawler crawler = crawler("/");
+        PolitenessPolicy policy = new PolitenessPolicy();
+        policy.setRequestDelay(0);
+        policy.setUserAgent("TestBot/2.0");
+        crawler.setPolitenessPolicy(policy);
+        assertTimeoutPreemptively(Duration.ofSeconds(30), new Executable() {
+            @Override
+            public void execute() {
+                crawler.crawl(1, imageSearch);
+            }
+        });
+        imageSearch.shutdown();
+
+        assertEquals(Collections.singletonList(server.url("/img.png")), found);
+        assertEquals(0, server.getRequests("/private/img.png"));
+        assertEquals("TestBot/2.0", sentAgent.get());
+    }
+
+    @Test
+    public void sharesImageLibraryBetweenWorkers(@TempDir Path directory) throws IOException {
+        File reference = writeReferenceImage(directory);
+        final byte[] png = Files.readAllBytes(reference.toPath());
+        server.handle("/p", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int page = Integer.parseInt(exchange.getRequestURI().getPath().substring(2));
+                String html = "<html><img src=\"/img.png\"><a href=\"/p" + (page + 1) % 12 + "\">next</a>"
+                        + "<a href=\"/p" + (page + 5) % 12 + "\">skip</a></html>";
+                TestServer.respond(exchange, 200, "text/html", html.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.handle("/img.png", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                TestServer.respond(exchange, 200, "image/png", png);
+            }
+        });
+
+        final ImageLibrary library = new ImageLibrary(false, false, null, reference.getPath());
+        File cacheFile = directory.resolve("checked").toFile();
+        library.setCheckedImageCache(cacheFile, 100);
+        library.setImageThreads(2, 16);
+        final AtomicInteger found = new AtomicInteger();
+        final WebCrawler crawler = crawler("/p0");
+        // Other tests' image threads may not have exited yet
+        int otherImageThreads = countImageThreads();
+        assertTimeoutPreemptively(Duration.ofSeconds(30), new Executable() {
+            @Override
+            public void execute() {
+                crawler.crawl(0, 4, new SearchFactory() {
+                    @Override
+                    public Search[] createSearches() {
+                        return new Search[] { new HTMLImageSearch(server.url("/"), library) {
+                            @Override
+                            public void onFoundImage(String originalImage, String matchedImage, String pageUrl) {
+                                found.incrementAndGet();
+                            }
+                        } };
+                    }
+                });
+            }
+        });
+
+        int imageThreads = countImageThreads() - otherImageThreads;
+        library.shutdown();
+        assertTrue(imageThreads <= 2, imageThreads + " image threads");
+        assertEquals(12, found.get());
+        // Checked once, unless two threads downloaded it at the same time
+        assertTrue(server.getRequests("/img.png") <= 2);
+        assertTrue(cacheFile.isFile());
+    }
+
+    @Test
+    public void revalidatesImagesCheckedByEarlierCrawls(@TempDir Path directory) throws IOException {
+        File reference = writeReferenceImage(directory);
+        final byte[] png = Files.readAllBytes(reference.toPath());
+        final AtomicReference<String> etag = new AtomicReference<String>("\"v1\"");
+        final AtomicInteger notModified = new AtomicInteger();
+        server.handle("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                TestServer.respond(exchange, 200, "text/html", "<html><img src=\"/img.png\"></html>".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.handle("/img.png", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().set("ETag", etag.get());
+                if (etag.get().equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    notModified.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                TestServer.respond(exchange, 200, "image/png", png);
+            }
+        });
+
+        File cacheFile = directory.resolve("checked").toFile();
+        assertEquals(1, crawlImages(reference, cacheFile));
+        assertEquals(1, crawlImages(reference, cacheFile));
+        assertEquals(1, notModified.get());
+        // A changed image is downloaded and checked again
+        etag.set("\"v2\"");
+        assertEquals(1, crawlImages(reference, cacheFile));
+        assertEquals(1, notModified.get());
+        assertEquals(3, server.getRequests("/img.png"));
+    }
+
+    /**
+     * Crawls the root page with a new image library that loads and saves the checked image cache
+     * @return The amount of found images
+     */
+    private int crawlImages(File reference, File cacheFile) throws IOException {
+        final ImageLibrary library = new ImageLibrary(false, false, null, reference.getPath());
+        library.setCheckedImageCache(cacheFile, 100);
+        final AtomicInteger found = new AtomicInteger();
+        final WebCrawler crawler = crawler("/");
+        assertTimeoutPreemptively(Duration.ofSeconds(30), new Executable() {
+            @Override
+            public void execute() {
+                crawler.crawl(1, new HTMLImageSearch(server.url("/"), library) {
+                    @Override
+                    public void onFoundImage(String originalImage, String matchedImage, String pageUrl) {
+                        found.incrementAndGet();
+                    }
+                });
+            }
+        });
+        library.shutdown();
+        return found.get();
+    }
+
+    private static int countImageThreads() {
+        int imageThreads = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("image-search-")) {
+                imageThreads++;
+            }
+        }
+        return imageThreads;
+    }
+
+    private static File writeReferenceImage(Path directory) throws IOException {
+        BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(3, 4, 0xff00ff00);
+        File reference = directory.resolve("reference.png").toFile();
+        ImageIO.write(image, "png", reference);
+        return reference;
+    }
+
+}
@@ -0,0 +1,325 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.cluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.nikm.webcrawler.SearchFactory;
+import org.nikm.webcrawler.TestServer;
+import org.nikm.webcrawler.WebCrawler;
+import org.nikm.webcrawler.fetch.FetchResponse;
+import org.nikm.webcrawler.fetch.HttpClientFetcher;
+import org.nikm.webcrawler.fetch.PageFetcher;
+import org.nikm.webcrawler.politeness.PolitenessPolicy;
+import org.nikm.webcrawler.search.Search;
+import org.nikm.webcrawler.search.TextSearch;
+import org.nikm.webcrawler.url.HostScope;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+public class ClusterNodeTest {
+
+    private static final int HOSTS = 8;
+
+    private TestServer server;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = new TestServer();
+        server.handle("/robots.txt", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                TestServer.respond(exchange, 404, null, new byte[0]);
+            }
+        });
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.close();
+    }
+
+    /**
+     * Serves /p0 to /p(size - 1) on the hosts site0.cluster.test to site7.cluster.test,
+     * each page linking to three pages on other hosts
+     */
+    private void serveLinkGraph(final int size, final long latency) {
+        server.handle("/p", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int page = Integer.parseInt(exchange.getRequestURI().getPath().substring(2));
+                StringBuilder html = new StringBuilder("<html><body>page ").append(page);
+                for (int i = 1; i <= 3; i++) {
+                    html.append("<a href=\"").append(pageUrl((page * 3 + i) % size)).append("\">link</a>");
+                }
+                html.append("</body></html>");
+                try {
+                    Thread.sleep(latency);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                TestServer.respond(exchange, 200, "text/html; charset=utf-8", html.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        });
+    }
+
+    private static String pageUrl(int page) {
+        return "http://site" + page % HOSTS + ".cluster.test/p" + page;
+    }
+
+    private static List<InetSocketAddress> freeAddresses(int count) throws IOException {
+        ArrayList<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+        for (int i = 0; i < count; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                addresses.add(new InetSocketAddress("127.0.0.1", socket.getLocalPort()));
+            }
+        }
+        return addresses;
+    }
+
+    private WebCrawler crawler(ClusterNode cluster, PageFetcher fetcher) {
+        WebCrawler crawler = new WebCrawler(pageUrl(0));
+        PolitenessPolicy policy = new PolitenessPolicy();
+        policy.setRequestDelay(0);
+        policy.setMaxConnectionsPerHost(4);
+        crawler.setPolitenessPolicy(policy);
+        HostScope scope = new HostScope("http://cluster.test/");
+        scope.setIncludeSubdomains(true);
+        crawler.setScope(scope);
+        crawler.setFetcher(fetcher);
+        cluster.setBatching(4, 10);
+        crawler.setCluster(cluster);
+        return crawler;
+    }
+
+    private static SearchFactory countingSearches(final AtomicInteger searchedPages) {
+        return new SearchFactory() {
+            @Override
+            public Search[] createSearches() {
+                return new Search[] { new TextSearch("page") {
+                    @Override
+                    public void initialize(String pageUrl) {
+                        super.initialize(pageUrl);
+                        searchedPages.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onFoundString(String matchedString, int characterIndex) {
+                    }
+                } };
+            }
+        };
+    }
+
+    /**
+     * Crawls with one node per crawler, each on its own thread
+     */
+    private void crawlCluster(final WebCrawler[] crawlers, final int maxPages, final AtomicInteger[] searched) {
+        assertTimeoutPreemptively(Duration.ofSeconds(30), new Executable() {
+            @Override
+            public void execute() throws InterruptedException {
+                Thread[] threads = new Thread[crawlers.length];
+                for (int i = 0; i < crawlers.length; i++) {
+                    final int node = i;
+                    threads[i] = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            crawlers[node].crawl(maxPages, 2, countingSearches(searched[node]));
+                        }
+                    });
+                    threads[i].start();
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+            }
+        });
+    }
+
+    @Test
+    public void splitsHostsBetweenNodes() throws IOException {
+        serveLinkGraph(40, 0);
+        List<InetSocketAddress> addresses = freeAddresses(2);
+        ClusterNode[] nodes = new ClusterNode[2];
+        LoopbackFetcher[] fetchers = new LoopbackFetcher[2];
+        WebCrawler[] crawlers = new WebCrawler[2];
+        AtomicInteger[] searched = new AtomicInteger[2];
+        for (int i = 0; i < 2; i++) {
+            nodes[i] = new ClusterNode(i, addresses);
+            fetchers[i] = new LoopbackFetcher(server);
+            crawlers[i] = crawler(nodes[i], fetchers[i]);
+            searched[i] = new AtomicInteger();
+        }
+
+        crawlCluster(crawlers, 0, searched);
+
+        // Every page was fetched once, by the node that owns its host
+        int fetched = 0;
+        for (Map.Entry<String, AtomicInteger> request : server.getRequests().entrySet()) {
+            if (request.getKey().startsWith("/p")) {
+                assertEquals(1, request.getValue().get(), "Fetched more than once: " + request.getKey());
+                fetched++;
+            }
+        }
+        assertEquals(40, fetched);
+        assertEquals(40, searched[0].get() + searched[1].get());
+        for (int i = 0; i < 2; i++) {
+            assertFalse(fetchers[i].hosts.isEmpty(), "Node " + i + " crawled nothing");
+            for (String host : fetchers[i].hosts) {
+                assertTrue(nodes[i].isLocal(host), "Node " + i + " fetched " + host);
+            }
+        }
+        // The root page is on one node, the other only crawls pages forwarded to it
+        assertTrue(searched[0].get() > 0 && searched[1].get() > 0);
+    }
+
+    @Test
+    public void sharesMaxPagesBetweenNodes() throws IOException {
+        serveLinkGraph(40, 20);
+        List<InetSocketAddress> addresses = freeAddresses(2);
+        WebCrawler[] crawlers = new WebCrawler[2];
+        AtomicInteger[] searched = new AtomicInteger[2];
+        for (int i = 0; i < 2; i++) {
+            crawlers[i] = crawler(new ClusterNode(i, addresses), new LoopbackFetcher(server));
+            searched[i] = new AtomicInteger();
+        }
+
+        crawlCluster(crawlers, 10, searched);
+
+        int total = searched[0].get() + searched[1].get();
+        // Page counts are a flush interval old, so a few more pages may be visited
+        assertTrue(total >= 10 && total < 20, total + " pages");
+    }
+
+    @Test
+    public void rejectsSingleHostScope() throws IOException {
+        final WebCrawler crawler = new WebCrawler(server.url("/"));
+        crawler.setCluster(new ClusterNode(0, freeAddresses(2)));
+        assertThrows(IllegalStateException.class, new Executable() {
+            @Override
+            public void execute() {
+                crawler.crawl(1, 1, countingSearches(new AtomicInteger()));
+            }
+        });
+    }
+
+    @Test
+    public void rejectsUnknownNodeIds() throws IOException {
+        List<InetSocketAddress> addresses = freeAddresses(2);
+        final AtomicInteger statuses = new AtomicInteger();
+        ClusterNode node = new ClusterNode(0, addresses);
+        node.start(new ClusterListener() {
+            @Override
+            public void onPage(String url, int depth) {
+            }
+
+            @Override
+            public int getReservedPages() {
+                return 0;
+            }
+
+            @Override
+            public boolean isIdle() {
+                return false;
+            }
+
+            @Override
+            public void onClusterStatus() {
+                statuses.incrementAndGet();
+            }
+        });
+        try (Socket socket = new Socket()) {
+            socket.connect(addresses.get(0));
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            // A status from a node that isn't in the cluster
+            out.writeByte(2);
+            out.writeInt(7);
+            out.flush();
+            // The node closes the connection instead of failing
+            assertEquals(-1, socket.getInputStream().read());
+        } finally {
+            node.close();
+        }
+        assertEquals(0, statuses.get());
+        assertEquals(0, node.getRemoteReservedPages());
+    }
+
+    /**
+     * Fetches every host from the test server and remembers which hosts were fetched
+     */
+    private static class LoopbackFetcher implements PageFetcher {
+
+        private TestServer server;
+        private HttpClientFetcher fetcher;
+        private Set<String> hosts;
+
+        LoopbackFetcher(TestServer server) {
+            this.server = server;
+            this.fetcher = new HttpClientFetcher();
+            this.hosts = ConcurrentHashMap.newKeySet();
+        }
+
+        @Override
+        public FetchResponse fetch(URL url) throws IOException {
+            return fetch(url, Collections.<String, String>emptyMap());
+        }
+
+        @Override
+        public FetchResponse fetch(URL url, Map<String, String> requestHeaders) throws IOException {
+            hosts.add(url.getHost());
+            return fetcher.fetch(new URL(server.url(url.getFile())), requestHeaders);
+        }
+
+        @Override
+        public CompletableFuture<FetchResponse> fetchAsync(URL url) {
+            hosts.add(url.getHost());
+            try {
+                return fetcher.fetchAsync(new URL(server.url(url.getFile())));
+            } catch (IOException e) {
+                CompletableFuture<FetchResponse> failed = new CompletableFuture<FetchResponse>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+        }
+
+        @Override
+        public void setUserAgent(String userAgent) {
+            fetcher.setUserAgent(userAgent);
+        }
+
+        @Override
+        public String getUserAgent() {
+            return fetcher.getUserAgent();
+        }
+
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.fetch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.api.function.Executable;
+import org.nikm.webcrawler.PageReader;
+import org.nikm.webcrawler.TestServer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+public class PageFetcherTest {
+
+    private static final String PAGE = "<html><body>Hello from the test server</body></html>";
+
+    private TestServer server;
+
+    static List<PageFetcher> fetchers() {
+        return Arrays.<PageFetcher>asList(new HttpClientFetcher(2000, 2000), new URLConnectionFetcher(2000, 2000));
+    }
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = new TestServer();
+        server.handle("/page", respondWith(200, PAGE.getBytes(StandardCharsets.UTF_8)));
+        server.handle("/forbidden", respondWith(403, new byte[0]));
+        server.handle("/busy", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().set("Retry-After", "7");
+                TestServer.respond(exchange, 503, "text/plain", "busy".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.handle("/etag", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().set("ETag", "\"v1\"");
+                if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    TestServer.respond(exchange, 304, null, new byte[0]);
+                } else {
+                    TestServer.respond(exchange, 200, "text/html", PAGE.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        });
+        server.handle("/compressed", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                if (accepted != null && accepted.contains("gzip")) {
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                    TestServer.respond(exchange, 200, "text/html", gzip(PAGE));
+                } else {
+                    TestServer.respond(exchange, 200, "text/html", PAGE.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        });
+        server.handle("/deflated", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (DeflaterOutputStream out = new DeflaterOutputStream(bytes)) {
+                    out.write(PAGE.getBytes(StandardCharsets.UTF_8));
+                }
+                exchange.getResponseHeaders().set("Content-Encoding", "Deflate");
+                TestServer.respond(exchange, 200, "text/html", bytes.toByteArray());
+            }
+        });
+        server.handle("/sitemap.xml.gz", respondWith(200, gzip(PAGE)));
+        char[] large = new char[100000];
+        Arrays.fill(large, 'a');
+        server.handle("/large", respondWith(200, new String(large).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.close();
+    }
+
+    private static HttpHandler respondWith(final int status, final byte[] body) {
+        return new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                TestServer.respond(exchange, status, "text/html; charset=utf-8", body);
+            }
+        };
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private PageReader reader(PageFetcher fetcher, String path) throws IOException {
+        PageReader reader = new PageReader(server.url(path));
+        reader.setFetcher(fetcher);
+        return reader;
+    }
+
+    @ParameterizedTest
+    @MethodSource("fetchers")
+    public void downloadsPage(PageFetcher fetcher) throws IOException {
+        assertEquals(PAGE, reader(fetcher, "/page").downloadPage());
+    }
+
+    @ParameterizedTest
+    @MethodSource("fetchers")
+    public void treatsMissingPagesAsNotFound(PageFetcher fetcher) throws IOException {
+        final PageReader reader = reader(fetcher, "/missing");
+        assertThrows(FileNotFoundException.class, new Executable() {
+            @Override
+            public void execute() throws Throwable {
+                reader.downloadPage();
+            }
+        });
+        assertFalse(reader(fetcher, "/missing").searchPage());
+    }
+
+    @ParameterizedTest
+    @MethodSource("fetchers")
+    public void throwsErrorStatusesWithRetryAfter(PageFetcher fetcher) throws IOException {
+        final PageReader busy = reader(fetcher, "/busy");
+        HttpStatusException e = assertThrows(HttpStatusException.class, new Executable() {
+            @Override
+            public void execute() throws Throwable {
+                busy.searchPage();
+            }
+        });
+        assertEquals(503, e.getStatusCode());
+        assertEquals(7000, e.getRetryAfter());
+        assertTrue(e.isTransient());
+
+        final PageReader forbidden = reader(fetcher, "/forbidden");
+        e = assertThrows(HttpStatusException.class, new Executable() {
+            @Override
+            public void execute() throws Throwable {
+                forbidden.searchPage();
+            }
+        });
+        assertEquals(403, e.getStatusCode());
+        assertFalse(e.isTransient());
+    }
+
+    @ParameterizedTest
+    @MethodSource("fetchers")
+    public void sendsConditionalRequests(PageFetcher fetcher) throws IOException {
+        URL url = new URL(server.url("/etag"));
+        try (FetchResponse response = fetcher.fetch(url, Collections.<String, String>emptyMap())) {
+            assertEquals(200, response.getStatusCode());
+            assertEquals("\"v1\"", response.getHeader("etag"));
+        }
+        try (FetchResponse response = fetcher.fetch(url, Collections.singletonMap("If-None-Match", "\"v1\""))) {
+            assertEquals(304, response.getStatusCode());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("fetchers")
+    public void decompressesGzip(PageFetcher fetcher) throws IOException {
+        assertEquals(PAGE, reader(fetcher, "/compressed").downloadPage());
+        // A gzip file sent without a Content-Encoding, like a compressed sitemap
+        assertEquals(PAGE, reader(fetcher, "/sitemap.xml.gz").downloadPage());
+    }
+
+    @Test
+    public void decompressesDeflate() throws IOException {
+        HttpClientFetcher fetcher = new HttpClientFetcher(2000, 2000);
+        // Closing ends the response's inflater, each response gets its own
+        for (int i = 0; i < 2; i++) {
+            try (FetchResponse response = fetcher.fetch(new URL(server.url("/deflated")))) {
+                assertEquals(PAGE, new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("fetchers")
+    public void stopsReadingAtMaxPageSize(PageFetcher fetcher) throws IOException {
+        PageReader reader = reader(fetcher, "/large");
+        reader.setMaxPageSize(10000);
+        assertEquals(10000, reader.downloadPage().length());
+        reader = reader(fetcher, "/large");
+        reader.setMaxPageSize(0);
+        assertEquals(100000, reader.downloadPage().length());
+    }
+
+}
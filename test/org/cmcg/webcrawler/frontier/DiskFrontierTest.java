@@ -0,0 +1,84 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.frontier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DiskFrontierTest {
+
+    @TempDir
+    Path directory;
+
+    private static FrontierEntry entry(int page) {
+        String url = "http://example.com/p" + page;
+        return new FrontierEntry(url, url, "example.com", 1, 0);
+    }
+
+    @Test
+    public void resumesFromTheLastWrittenCheckpoint() throws IOException {
+        File dir = directory.toFile();
+        DiskFrontier frontier = new DiskFrontier(dir, 4, 100);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(frontier.offer(entry(i)));
+        }
+        FrontierEntry inProgress = frontier.poll();
+        frontier.poll();
+        DiskFrontier.Checkpoint older = frontier.prepareCheckpoint(Collections.<FrontierEntry>emptyList(), 0);
+        frontier.poll();
+        DiskFrontier.Checkpoint newer = frontier.prepareCheckpoint(Collections.singletonList(inProgress), 2);
+        frontier.writeCheckpoint(newer);
+        // Written late, must not replace the newer checkpoint
+        frontier.writeCheckpoint(older);
+        frontier.offer(entry(10));
+        frontier.close();
+
+        DiskFrontier resumed = new DiskFrontier(dir, 4, 100);
+        assertTrue(resumed.isResumed());
+        assertEquals(2, resumed.getCheckpointedPages());
+        List<FrontierEntry> pending = resumed.takePendingEntries();
+        assertEquals(1, pending.size());
+        assertEquals(inProgress.getUrl(), pending.get(0).getUrl());
+        assertFalse(resumed.offer(entry(5)));
+        for (int i = 3; i < 10; i++) {
+            assertEquals(entry(i).getUrl(), resumed.poll().getUrl());
+        }
+        resumed.close();
+    }
+
+    @Test
+    public void countsQueuedUrlsFromTheCheckpoint() throws IOException {
+        File dir = directory.toFile();
+        DiskFrontier frontier = new DiskFrontier(dir, 4, 100);
+        for (int i = 0; i < 20; i++) {
+            frontier.offer(entry(i));
+        }
+        frontier.poll();
+        frontier.checkpoint(Collections.<FrontierEntry>emptyList(), 1);
+        // Queued after the checkpoint, still in the log when it is opened again
+        frontier.offer(entry(20));
+        frontier.offer(entry(21));
+        frontier.close();
+
+        DiskFrontier resumed = new DiskFrontier(dir, 4, 100);
+        assertEquals(21, resumed.size());
+        for (int i = 1; i < 22; i++) {
+            assertEquals(entry(i).getUrl(), resumed.poll().getUrl());
+        }
+        assertEquals(0, resumed.size());
+        resumed.close();
+    }
+
+}
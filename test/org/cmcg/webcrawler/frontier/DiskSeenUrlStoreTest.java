@@ -0,0 +1,67 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.frontier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DiskSeenUrlStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private static String url(int page) {
+        return "http://example.com/p" + page;
+    }
+
+    @Test
+    public void mergesRuns() throws IOException {
+        DiskSeenUrlStore store = new DiskSeenUrlStore(directory, 10);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(store.add(url(i)));
+            // 100 spills, merged like a binary counter
+            assertTrue(store.getNumRuns() <= 7, store.getNumRuns() + " runs");
+        }
+        assertEquals(3, store.getNumRuns());
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(store.add(url(i)), url(i));
+        }
+        assertFalse(store.contains(url(1000)));
+        assertEquals(1000, store.size());
+        store.close();
+
+        DiskSeenUrlStore reopened = new DiskSeenUrlStore(directory, 10);
+        assertEquals(3, reopened.getNumRuns());
+        assertEquals(1000, reopened.size());
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(reopened.contains(url(i)), url(i));
+        }
+        assertFalse(reopened.contains(url(1000)));
+        reopened.close();
+    }
+
+    @Test
+    public void keepsUnspilledUrls() throws IOException {
+        DiskSeenUrlStore store = new DiskSeenUrlStore(directory, 10);
+        for (int i = 0; i < 25; i++) {
+            store.add(url(i));
+        }
+        store.close();
+
+        DiskSeenUrlStore reopened = new DiskSeenUrlStore(directory, 10);
+        assertEquals(25, reopened.size());
+        assertTrue(reopened.contains(url(24)));
+        assertTrue(reopened.contains(url(0)));
+        reopened.close();
+    }
+
+}
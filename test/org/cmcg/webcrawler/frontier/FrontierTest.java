@@ -0,0 +1,59 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.frontier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class FrontierTest {
+
+    private static FrontierEntry entry(int page, double score) {
+        String url = "http://example.com/p" + page;
+        return new FrontierEntry(url, url, "example.com", 1, score);
+    }
+
+    @Test
+    public void deduplicatesUrls() {
+        FifoFrontier frontier = new FifoFrontier(new HashSeenUrlStore(), 0);
+        assertTrue(frontier.offer(entry(1, 0)));
+        assertFalse(frontier.offer(entry(1, 0)));
+        frontier.poll();
+        assertFalse(frontier.offer(entry(1, 0)));
+    }
+
+    @Test
+    public void offersDroppedUrlAgainOnceThereIsRoom() {
+        FifoFrontier frontier = new FifoFrontier(new HashSeenUrlStore(), 2);
+        assertTrue(frontier.offer(entry(1, 0)));
+        assertTrue(frontier.offer(entry(2, 0)));
+        assertFalse(frontier.offer(entry(3, 0)));
+        assertEquals(1, frontier.getNumDropped());
+        assertFalse(frontier.hasSeen(entry(3, 0).getKey()));
+
+        frontier.poll();
+        assertTrue(frontier.offer(entry(3, 0)));
+        assertFalse(frontier.offer(entry(3, 0)));
+    }
+
+    @Test
+    public void forgetsUrlReplacedByHigherPriority() {
+        PriorityFrontier frontier = new PriorityFrontier(new HashSeenUrlStore(), 2);
+        assertTrue(frontier.offer(entry(1, 0.5)));
+        assertTrue(frontier.offer(entry(2, 0.1)));
+        // Replaces the lowest score
+        assertTrue(frontier.offer(entry(3, 0.9)));
+        assertFalse(frontier.hasSeen(entry(2, 0).getKey()));
+        assertTrue(frontier.hasSeen(entry(3, 0).getKey()));
+
+        assertEquals(entry(3, 0).getUrl(), frontier.poll().getUrl());
+        assertTrue(frontier.offer(entry(2, 0.1)));
+        assertEquals(entry(1, 0).getUrl(), frontier.poll().getUrl());
+        assertEquals(entry(2, 0).getUrl(), frontier.poll().getUrl());
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.image;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CheckedImageCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        CheckedImageCache cache = new CheckedImageCache(2);
+        cache.put("http://a.com/1.png", 1, new int[] { 1 });
+        cache.put("http://a.com/2.png", 2, new int[0]);
+        assertArrayEquals(new int[] { 1 }, cache.getByUrl("http://a.com/1.png"));
+        assertArrayEquals(new int[] { 1 }, cache.getByContent(1));
+
+        cache.put("http://a.com/3.png", 3, new int[] { 2, 3 });
+        assertEquals(2, cache.size());
+        assertNull(cache.getByUrl("http://a.com/2.png"));
+        assertNull(cache.getByContent(2));
+        assertArrayEquals(new int[] { 1 }, cache.getByUrl("http://a.com/1.png"));
+        assertArrayEquals(new int[] { 2, 3 }, cache.getByUrl("http://a.com/3.png"));
+    }
+
+    @Test
+    public void loadsSavedCache() throws IOException {
+        File file = directory.resolve("checked.bin").toFile();
+        char[] longPath = new char[100000];
+        Arrays.fill(longPath, 'x');
+        String longUrl = "http://a.com/" + new String(longPath) + ".png";
+
+        CheckedImageCache cache = new CheckedImageCache(10);
+        cache.put("http://a.com/1.png", 1, new int[] { 4, 5 }, "\"v1\"", "Wed, 31 Jan 2024 10:00:00 GMT");
+        cache.put("http://a.com/ü.png", 2, new int[0], null, "Wed, 31 Jan 2024 10:00:00 GMT");
+        cache.put(longUrl, 3, new int[] { 6 });
+        cache.save(file, 42);
+
+        CheckedImageCache loaded = new CheckedImageCache(10);
+        assertTrue(loaded.load(file, 42));
+        assertEquals(3, loaded.size());
+        assertArrayEquals(new int[] { 4, 5 }, loaded.getByContent(1));
+        assertArrayEquals(new int[] { 6 }, loaded.getByContent(3));
+
+        Map<String, String> validators = new HashMap<String, String>();
+        validators.put("If-None-Match", "\"v1\"");
+        validators.put("If-Modified-Since", "Wed, 31 Jan 2024 10:00:00 GMT");
+        assertEquals(validators, loaded.getValidators("http://a.com/1.png"));
+        assertEquals(Collections.singletonMap("If-Modified-Since", "Wed, 31 Jan 2024 10:00:00 GMT"),
+                loaded.getValidators("http://a.com/ü.png"));
+        assertEquals(Collections.emptyMap(), loaded.getValidators(longUrl));
+
+        // Loaded images aren't trusted until the server says they haven't changed
+        assertNull(loaded.getByUrl("http://a.com/1.png"));
+        assertArrayEquals(new int[] { 4, 5 }, loaded.revalidate("http://a.com/1.png"));
+        assertArrayEquals(new int[] { 4, 5 }, loaded.getByUrl("http://a.com/1.png"));
+        assertArrayEquals(new int[] { 6 }, loaded.revalidate(longUrl));
+        assertNull(loaded.revalidate("http://a.com/missing.png"));
+    }
+
+    @Test
+    public void ignoresOtherReferenceImages() throws IOException {
+        File file = directory.resolve("checked.bin").toFile();
+        CheckedImageCache cache = new CheckedImageCache(10);
+        assertFalse(cache.load(file, 42));
+        cache.put("http://a.com/1.png", 1, new int[] { 1 });
+        cache.save(file, 42);
+
+        CheckedImageCache loaded = new CheckedImageCache(10);
+        assertFalse(loaded.load(file, 43));
+        assertEquals(0, loaded.size());
+    }
+
+    @Test
+    public void rejectsCorruptStrings() throws IOException {
+        final File file = directory.resolve("checked.bin").toFile();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.write("IMGC".getBytes(StandardCharsets.US_ASCII));
+            out.writeInt(2);
+            out.writeLong(42);
+            out.writeInt(1);
+            out.writeInt(Integer.MAX_VALUE);
+        }
+        assertThrows(IOException.class, new Executable() {
+            @Override
+            public void execute() throws IOException {
+                new CheckedImageCache(10).load(file, 42);
+            }
+        });
+    }
+
+    @Test
+    public void hashesContent() {
+        byte[] data = "image".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(CheckedImageCache.hashContent(data, 5), CheckedImageCache.hashContent(Arrays.copyOf(data, 10), 5));
+        assertFalse(CheckedImageCache.hashContent(data, 5) == CheckedImageCache.hashContent(data, 4));
+        // The FNV-1a offset basis
+        assertEquals(0xcbf29ce484222325L, CheckedImageCache.hashContent(data, 0));
+    }
+
+}
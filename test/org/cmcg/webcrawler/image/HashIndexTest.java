@@ -0,0 +1,76 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.image;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class HashIndexTest {
+
+    /**
+     * @return The ids of the hashes within maxDistance of the query, sorted
+     */
+    private static int[] bruteForce(long[] hashes, long query, int maxDistance) {
+        int[] found = new int[hashes.length];
+        int numFound = 0;
+        for (int i = 0; i < hashes.length; i++) {
+            if (ImageHash.distance(query, hashes[i]) <= maxDistance) {
+                found[numFound++] = i;
+            }
+        }
+        return Arrays.copyOf(found, numFound);
+    }
+
+    private static long flipBits(Random random, long hash, int numFlips) {
+        for (int i = 0; i < numFlips; i++) {
+            hash ^= 1L << random.nextInt(64);
+        }
+        return hash;
+    }
+
+    @Test
+    public void matchesBruteForce() {
+        Random random = new Random(7);
+        // Clusters of nearby hashes, so every radius has some matches
+        long[] hashes = new long[2000];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = i % 20 == 0 ? random.nextLong() : flipBits(random, hashes[i - i % 20], random.nextInt(20));
+        }
+        HashIndex index = new HashIndex();
+        for (int i = 0; i < hashes.length; i++) {
+            index.add(hashes[i], i);
+        }
+        assertEquals(hashes.length, index.size());
+
+        for (int query = 0; query < 200; query++) {
+            long hash = flipBits(random, hashes[random.nextInt(hashes.length)], random.nextInt(8));
+            // Both the probing search and, above 12, the scan
+            for (int maxDistance = 0; maxDistance <= 20; maxDistance++) {
+                int[] found = index.search(hash, maxDistance);
+                Arrays.sort(found);
+                assertArrayEquals(bruteForce(hashes, hash, maxDistance), found, "Distance " + maxDistance);
+            }
+        }
+    }
+
+    @Test
+    public void findsEachIdOnce() {
+        HashIndex index = new HashIndex();
+        index.add(0L, 1);
+        index.add(0L, 2);
+        index.add(0xFFFFL, 3);
+        // 0 is within distance 0 in all four blocks, but found once
+        int[] found = index.search(0L, 4);
+        Arrays.sort(found);
+        assertArrayEquals(new int[] { 1, 2 }, found);
+        assertEquals(0, new HashIndex().search(0L, 64).length);
+    }
+
+}
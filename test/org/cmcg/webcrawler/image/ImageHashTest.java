@@ -0,0 +1,106 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.image;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+public class ImageHashTest {
+
+    private static final int[] ALGORITHMS = { ImageHash.AVERAGE, ImageHash.DIFFERENCE, ImageHash.PERCEPTUAL };
+
+    /**
+     * A gradient with a few shapes, seed picks where the shapes go
+     */
+    private static BufferedImage drawImage(int seed) {
+        BufferedImage image = new BufferedImage(240, 180, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            for (int x = 0; x < 240; x++) {
+                graphics.setColor(new Color(x, 255 - x, (x * 3 + seed * 40) % 256));
+                graphics.drawLine(x, 0, x, 180);
+            }
+            graphics.setColor(Color.BLACK);
+            graphics.fillOval(20 + seed * 50 % 160, 30, 60, 60);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(140 - seed * 70 % 120, 100 + seed * 13 % 50, 80, 40);
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    private static BufferedImage resize(BufferedImage image, int width, int height) {
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = resized.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return resized;
+    }
+
+    @Test
+    public void keepsHashWhenScaled() {
+        BufferedImage image = drawImage(0);
+        for (int algorithm : ALGORITHMS) {
+            long hash = ImageHash.hash(algorithm, image);
+            assertEquals(hash, ImageHash.hash(algorithm, drawImage(0)));
+            for (int[] size : new int[][] { { 120, 90 }, { 480, 360 }, { 200, 180 }, { 96, 72 } }) {
+                int distance = ImageHash.distance(hash, ImageHash.hash(algorithm, resize(image, size[0], size[1])));
+                assertTrue(distance <= 6, "Algorithm " + algorithm + " at " + size[0] + "x" + size[1] + ": " + distance);
+            }
+        }
+    }
+
+    @Test
+    public void separatesDifferentImages() {
+        for (int algorithm : ALGORITHMS) {
+            long hash = ImageHash.hash(algorithm, drawImage(0));
+            for (int seed = 1; seed < 4; seed++) {
+                int distance = ImageHash.distance(hash, ImageHash.hash(algorithm, drawImage(seed)));
+                assertTrue(distance > 6, "Algorithm " + algorithm + " seed " + seed + ": " + distance);
+            }
+        }
+    }
+
+    @Test
+    public void hashesImagesSmallerThanThumbnail() {
+        BufferedImage image = new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, 0xFFFFFF);
+        image.setRGB(1, 1, 0xFFFFFF);
+        double[] gray = ImageHash.grayscale(image, 8, 8);
+        // Every cell takes the pixel it covers
+        assertEquals(255, gray[0], 1e-6);
+        assertEquals(0, gray[7], 1e-6);
+        assertEquals(255, gray[63], 1e-6);
+        assertEquals(ImageHash.averageHash(image), ImageHash.averageHash(resize(image, 64, 64)));
+    }
+
+    @Test
+    public void countsDifferentBits() {
+        assertEquals(0, ImageHash.distance(42, 42));
+        assertEquals(64, ImageHash.distance(0, -1));
+        assertEquals(2, ImageHash.distance(0b1010, 0b0110));
+        assertThrows(IllegalArgumentException.class, new Executable() {
+            @Override
+            public void execute() {
+                ImageHash.hash(3, new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+            }
+        });
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.image;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import org.junit.jupiter.api.Test;
+
+public class ImagePixelsTest {
+
+    private static BufferedImage image(int type, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, 0xFF000000 | (x * 40) << 16 | (y * 40) << 8 | (x + y) * 20);
+            }
+        }
+        return image;
+    }
+
+    private static void assertPixels(BufferedImage expected, int[] pixels) {
+        int width = expected.getWidth();
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(expected.getRGB(x, y), pixels[y * width + x], x + "," + y);
+            }
+        }
+    }
+
+    @Test
+    public void readsArgbRasterDirectly() {
+        BufferedImage image = image(BufferedImage.TYPE_INT_ARGB, 5, 4);
+        int[] pixels = ImagePixels.argb(image, null);
+        assertSame(((DataBufferInt) image.getRaster().getDataBuffer()).getData(), pixels);
+        assertPixels(image, pixels);
+    }
+
+    @Test
+    public void convertsOtherImagesIntoBuffer() {
+        int[] buffer = new int[100];
+        for (int type : new int[] { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR }) {
+            BufferedImage image = image(type, 5, 4);
+            int[] pixels = ImagePixels.argb(image, buffer);
+            assertSame(buffer, pixels);
+            // RGB pixels get an opaque alpha
+            assertPixels(image, pixels);
+        }
+        BufferedImage image = image(BufferedImage.TYPE_INT_RGB, 20, 10);
+        int[] pixels = ImagePixels.argb(image, buffer);
+        assertNotSame(buffer, pixels);
+        assertEquals(200, pixels.length);
+        assertPixels(image, pixels);
+    }
+
+    @Test
+    public void copiesSubimages() {
+        BufferedImage image = image(BufferedImage.TYPE_INT_ARGB, 6, 6);
+        BufferedImage subimage = image.getSubimage(1, 2, 3, 3);
+        // Shares the parent's raster, which is wider than the subimage
+        int[] pixels = ImagePixels.argb(subimage, null);
+        assertEquals(9, pixels.length);
+        assertPixels(subimage, pixels);
+    }
+
+    @Test
+    public void scalesImages() {
+        BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                image.setRGB(x, y, 0x336699);
+            }
+        }
+        int[] scaled = ImagePixels.scale(image, 4, 2);
+        assertEquals(8, scaled.length);
+        for (int pixel : scaled) {
+            assertEquals(0xFF336699, pixel);
+        }
+    }
+
+    @Test
+    public void comparesPrefixes() {
+        assertTrue(ImagePixels.equal(new int[] { 1, 2, 3 }, new int[] { 1, 2, 4 }, 2));
+        assertFalse(ImagePixels.equal(new int[] { 1, 2, 3 }, new int[] { 1, 2, 4 }, 3));
+        assertFalse(ImagePixels.equal(new int[] { 1, 2 }, new int[] { 1, 2, 3 }, 3));
+        assertTrue(ImagePixels.equal(new int[0], new int[0], 0));
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.image;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+public class PixelCacheTest {
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        // Room for three images of 10 pixels
+        PixelCache cache = new PixelCache(120);
+        for (int id = 1; id <= 3; id++) {
+            cache.put(id, new int[10]);
+        }
+        assertEquals(120, cache.getBytes());
+        assertNotNull(cache.get(1));
+
+        cache.put(4, new int[10]);
+        assertEquals(3, cache.size());
+        assertNull(cache.get(2));
+        assertNotNull(cache.get(1));
+        assertNotNull(cache.get(3));
+        assertNotNull(cache.get(4));
+    }
+
+    @Test
+    public void staysWithinBudget() {
+        PixelCache cache = new PixelCache(100);
+        cache.put(1, new int[10]);
+        cache.put(2, new int[10]);
+        // Makes room by dropping both older images
+        int[] large = new int[20];
+        cache.put(3, large);
+        assertEquals(1, cache.size());
+        assertSame(large, cache.get(3));
+        assertEquals(80, cache.getBytes());
+
+        // Larger than the whole budget, not cached and nothing dropped
+        cache.put(4, new int[26]);
+        assertNull(cache.get(4));
+        assertEquals(80, cache.getBytes());
+
+        // Replacing an image counts only its new size
+        cache.put(3, new int[5]);
+        assertEquals(20, cache.getBytes());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void cachesNothingWithoutBudget() {
+        PixelCache cache = new PixelCache(0);
+        cache.put(1, new int[1]);
+        assertNull(cache.get(1));
+        cache.put(2, new int[0]);
+        assertNotNull(cache.get(2));
+        assertEquals(0, cache.getBytes());
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.image;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+import org.nikm.webcrawler.image.ReferenceIndex.Fingerprint;
+
+public class ReferenceIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void loadsSavedIndex() throws IOException {
+        File file = directory.resolve("index.bin").toFile();
+        char[] longName = new char[70000];
+        Arrays.fill(longName, 'y');
+        String longPath = "/images/" + new String(longName) + ".png";
+
+        ReferenceIndex index = new ReferenceIndex();
+        index.put(new Fingerprint("/images/ä.png", 1000, 2048, 64, 32, 0x123456789ABCDEFL));
+        index.put(new Fingerprint(longPath, 2000, 10, 1, 1, -1));
+        index.save(file);
+
+        ReferenceIndex loaded = new ReferenceIndex();
+        assertTrue(loaded.load(file));
+        assertEquals(2, loaded.size());
+        Fingerprint fingerprint = loaded.get("/images/ä.png", 1000, 2048);
+        assertEquals("/images/ä.png", fingerprint.getPath());
+        assertEquals(64, fingerprint.getWidth());
+        assertEquals(32, fingerprint.getHeight());
+        assertEquals(0x123456789ABCDEFL, fingerprint.getHash());
+        assertEquals(-1, loaded.get(longPath, 2000, 10).getHash());
+    }
+
+    @Test
+    public void ignoresChangedFiles() {
+        ReferenceIndex index = new ReferenceIndex();
+        index.put(new Fingerprint("/images/a.png", 1000, 2048, 64, 32, 7));
+        assertNull(index.get("/images/a.png", 1001, 2048));
+        assertNull(index.get("/images/a.png", 1000, 2049));
+        assertNull(index.get("/images/b.png", 1000, 2048));
+        assertEquals(7, index.get("/images/a.png", 1000, 2048).getHash());
+    }
+
+    @Test
+    public void ignoresOtherFiles() throws IOException {
+        File file = directory.resolve("index.bin").toFile();
+        ReferenceIndex index = new ReferenceIndex();
+        assertFalse(index.load(file));
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.write("IMGI".getBytes(StandardCharsets.US_ASCII));
+            // An older version
+            out.writeInt(1);
+            out.writeInt(0);
+        }
+        assertFalse(index.load(file));
+    }
+
+    @Test
+    public void rejectsCorruptPaths() throws IOException {
+        final File file = directory.resolve("index.bin").toFile();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.write("IMGI".getBytes(StandardCharsets.US_ASCII));
+            out.writeInt(2);
+            out.writeInt(1);
+            out.writeInt(-5);
+        }
+        assertThrows(IOException.class, new Executable() {
+            @Override
+            public void execute() throws IOException {
+                new ReferenceIndex().load(file);
+            }
+        });
+    }
+
+}
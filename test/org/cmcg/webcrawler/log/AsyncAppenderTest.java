@@ -0,0 +1,137 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.log;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+public class AsyncAppenderTest {
+
+    @AfterEach
+    public void restoreLog() {
+        CrawlLog.setLevel(CrawlLog.INFO);
+        CrawlLog.setAppender(new AsyncAppender(AsyncAppender.DEFAULT_CAPACITY, AsyncAppender.DROP));
+    }
+
+    /**
+     * A message that counts how often it is built
+     */
+    private static Supplier<String> counted(final AtomicInteger built) {
+        return new Supplier<String>() {
+            @Override
+            public String get() {
+                built.incrementAndGet();
+                return "message";
+            }
+        };
+    }
+
+    /**
+     * A message that holds the writer thread until released
+     */
+    private static LogEntry blocking(final CountDownLatch writing, final CountDownLatch release) {
+        return new LogEntry(CrawlLog.INFO, new Supplier<String>() {
+            @Override
+            public String get() {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "blocking";
+            }
+        });
+    }
+
+    @Test
+    public void skipsMessagesBelowLevel() {
+        AtomicInteger built = new AtomicInteger();
+        CrawlLog.setAppender(new AsyncAppender(16, AsyncAppender.BLOCK));
+
+        CrawlLog.setLevel(CrawlLog.INFO);
+        CrawlLog.debug(counted(built));
+        CrawlLog.info(counted(built));
+        CrawlLog.flush();
+        assertEquals(1, built.get());
+
+        CrawlLog.setLevel(CrawlLog.OFF);
+        CrawlLog.info(counted(built));
+        CrawlLog.flush();
+        assertEquals(1, built.get());
+
+        CrawlLog.setLevel(CrawlLog.DEBUG);
+        assertTrue(CrawlLog.isDebugEnabled());
+        CrawlLog.debug(counted(built));
+        CrawlLog.flush();
+        assertEquals(2, built.get());
+    }
+
+    @Test
+    public void dropsMessagesWhileFull() throws InterruptedException {
+        AsyncAppender appender = new AsyncAppender(2, AsyncAppender.DROP);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger built = new AtomicInteger();
+
+        appender.append(blocking(writing, release));
+        assertTrue(writing.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            appender.append(new LogEntry(CrawlLog.INFO, counted(built)));
+        }
+        assertEquals(3, appender.getDropped());
+
+        release.countDown();
+        appender.flush(10000);
+        assertEquals(2, built.get());
+    }
+
+    @Test
+    public void waitsWhileFull() throws InterruptedException {
+        final AsyncAppender appender = new AsyncAppender(1, AsyncAppender.BLOCK);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger built = new AtomicInteger();
+
+        appender.append(blocking(writing, release));
+        assertTrue(writing.await(10, TimeUnit.SECONDS));
+        appender.append(new LogEntry(CrawlLog.INFO, counted(built)));
+        final CountDownLatch appended = new CountDownLatch(1);
+        Thread logger = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                appender.append(new LogEntry(CrawlLog.INFO, counted(built)));
+                appended.countDown();
+            }
+        });
+        logger.start();
+        // The queue is full, so the logging thread waits instead of dropping its message
+        assertFalse(appended.await(200, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        assertTimeoutPreemptively(Duration.ofSeconds(10), new Executable() {
+            @Override
+            public void execute() throws InterruptedException {
+                appended.await();
+            }
+        });
+        appender.flush(10000);
+        assertEquals(2, built.get());
+        assertEquals(0, appender.getDropped());
+    }
+
+}
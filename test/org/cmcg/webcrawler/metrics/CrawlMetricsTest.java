@@ -0,0 +1,132 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.nikm.webcrawler.PageReader;
+import org.nikm.webcrawler.TestServer;
+import org.nikm.webcrawler.search.XMLTagSearch;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+public class CrawlMetricsTest {
+
+    /**
+     * Takes a while on each tag
+     */
+    private static class SlowTagSearch extends XMLTagSearch {
+
+        SlowTagSearch() {
+            super("a");
+        }
+
+        @Override
+        public void onFoundTag(HashMap<String, String> attributes, String tagContents) {
+            try {
+                Thread.sleep(30);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+    }
+
+    private static class QuickTagSearch extends XMLTagSearch {
+
+        private int found;
+
+        QuickTagSearch() {
+            super("img");
+        }
+
+        @Override
+        public void onFoundTag(HashMap<String, String> attributes, String tagContents) {
+            found++;
+        }
+
+    }
+
+    @Test
+    public void createsMetricsOnce() {
+        CrawlMetrics metrics = new CrawlMetrics();
+        assertSame(metrics.counter("b"), metrics.counter("b"));
+        assertSame(metrics.histogram("h"), metrics.histogram("h"));
+        metrics.counter("b").add(3);
+        metrics.counter("a").increment();
+        metrics.setGauge("g", new Gauge() {
+            @Override
+            public long getValue() {
+                return 7;
+            }
+        });
+        assertEquals(Arrays.asList("a", "b"), Arrays.asList(metrics.getCounters().keySet().toArray()));
+        assertEquals(3L, (long) metrics.getCounters().get("b"));
+        assertEquals(7L, (long) metrics.getGauges().get("g"));
+        assertTrue(metrics.toString().contains("\nb 3"));
+        metrics.setGauge("g", null);
+        assertFalse(metrics.getGauges().containsKey("g"));
+    }
+
+    @Test
+    public void measuresElapsedTime() throws InterruptedException {
+        CrawlMetrics metrics = new CrawlMetrics();
+        assertEquals(0, metrics.getElapsedTime());
+        metrics.start();
+        Thread.sleep(20);
+        metrics.stop();
+        long elapsed = metrics.getElapsedTime();
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(20));
+        // Stopped crawls don't keep counting
+        Thread.sleep(5);
+        assertEquals(elapsed, metrics.getElapsedTime());
+    }
+
+    @Test
+    public void timesGroupedTagSearchesSeparately() throws IOException {
+        TestServer server = new TestServer();
+        try {
+            server.handle("/", new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    String html = "<html><a href=\"/1\">1</a><img src=\"/i.png\"><a href=\"/2\">2</a><img src=\"/j.png\"></html>";
+                    TestServer.respond(exchange, 200, "text/html", html.getBytes(StandardCharsets.UTF_8));
+                }
+            });
+            CrawlMetrics metrics = new CrawlMetrics();
+            PageReader reader = new PageReader(server.url("/"));
+            reader.setMetrics(metrics);
+            QuickTagSearch quick = new QuickTagSearch();
+            assertTrue(reader.searchPage(new SlowTagSearch(), quick));
+            assertEquals(2, quick.found);
+
+            Histogram slow = metrics.getHistograms().get(CrawlMetrics.SEARCH_TIME + "SlowTagSearch");
+            Histogram fast = metrics.getHistograms().get(CrawlMetrics.SEARCH_TIME + "QuickTagSearch");
+            Histogram tokenizer = metrics.getHistograms().get(CrawlMetrics.SEARCH_TIME + "HTMLTagTokenizer");
+            assertEquals(1, slow.getCount());
+            assertEquals(1, fast.getCount());
+            assertEquals(1, tokenizer.getCount());
+            assertTrue(slow.getSum() >= TimeUnit.MILLISECONDS.toNanos(60), slow.toString());
+            // The slow search's time isn't counted as tokenizing or as the other search's
+            assertTrue(fast.getSum() < TimeUnit.MILLISECONDS.toNanos(30), fast.toString());
+            assertTrue(tokenizer.getSum() < TimeUnit.MILLISECONDS.toNanos(30), tokenizer.toString());
+            assertTrue(reader.getSearchTime() >= slow.getSum());
+        } finally {
+            server.close();
+        }
+    }
+
+}
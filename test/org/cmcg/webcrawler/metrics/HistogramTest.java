@@ -0,0 +1,70 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void countsSmallValuesExactly() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for (int i = 0; i < 4; i++) {
+            histogram.record(i);
+        }
+        histogram.record(-5);
+        assertEquals(5, histogram.getCount());
+        assertEquals(6, histogram.getSum());
+        assertEquals(3, histogram.getMax());
+        assertEquals(1.2, histogram.getMean(), 1e-9);
+        assertEquals(0, histogram.getPercentile(40));
+        assertEquals(1, histogram.getPercentile(60));
+        assertEquals(3, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void bucketsAreWithinAQuarter() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            Histogram histogram = new Histogram();
+            histogram.record(value);
+            // A larger value keeps the percentile from being capped at the max
+            histogram.record(Long.MAX_VALUE);
+            long bound = histogram.getPercentile(50);
+            assertTrue(bound >= value && bound - value <= value / 4, value + " in a bucket up to " + bound);
+        }
+    }
+
+    @Test
+    public void capsPercentilesAtMax() {
+        Histogram histogram = new Histogram();
+        histogram.record(1000);
+        assertEquals(1000, histogram.getPercentile(99));
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+    }
+
+    @Test
+    public void findsPercentiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        long p50 = histogram.getPercentile(50);
+        long p99 = histogram.getPercentile(99);
+        assertTrue(p50 >= 500000 && p50 <= 625000, "p50 " + p50);
+        assertTrue(p99 >= 990000 && p99 <= 1000000, "p99 " + p99);
+        assertEquals(1000 * 1001 / 2 * 1000L, histogram.getSum());
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.politeness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+import org.nikm.webcrawler.frontier.FrontierEntry;
+
+public class HostSchedulerTest {
+
+    private static FrontierEntry entry(String host, int page) {
+        String url = "http://" + host + "/p" + page;
+        return new FrontierEntry(url, url, host, 1, 0);
+    }
+
+    private static HostScheduler scheduler(long requestDelay) {
+        PolitenessPolicy policy = new PolitenessPolicy();
+        policy.setRequestDelay(requestDelay);
+        policy.setBurst(1);
+        policy.setMaxConnectionsPerHost(1);
+        return new HostScheduler(policy);
+    }
+
+    @Test
+    public void waitsForRequestDelay() {
+        HostScheduler scheduler = scheduler(1000);
+        FrontierEntry first = entry("a.com", 1);
+        scheduler.add(first, 0);
+        scheduler.add(entry("a.com", 2), 0);
+        scheduler.add(entry("b.com", 1), 0);
+        assertEquals(2, scheduler.size("a.com"));
+
+        assertSame(first, scheduler.poll(0));
+        assertEquals("b.com", scheduler.poll(0).getHost());
+        // a.com has a request in progress
+        assertNull(scheduler.poll(0));
+        scheduler.release(first, 10);
+        assertNull(scheduler.poll(10));
+        assertEquals(1000, scheduler.getNextReadyTime());
+        assertEquals("a.com", scheduler.poll(1000).getHost());
+    }
+
+    @Test
+    public void forgetsIdleHosts() {
+        HostScheduler scheduler = scheduler(1000);
+        for (int i = 0; i < 10; i++) {
+            FrontierEntry page = entry("host" + i + ".com", 1);
+            scheduler.add(page, 0);
+            scheduler.release(scheduler.poll(0), 0);
+        }
+        assertEquals(0, scheduler.acquire("image.com", 0));
+        scheduler.add(entry("active.com", 1), 0);
+        assertEquals("active.com", scheduler.poll(0).getHost());
+        assertEquals(12, scheduler.getNumHosts());
+
+        // Two minutes later every bucket is full again, only active.com still has a request in progress
+        scheduler.add(entry("new.com", 1), 120000);
+        assertEquals(2, scheduler.getNumHosts());
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.politeness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.nikm.webcrawler.TestServer;
+import org.nikm.webcrawler.fetch.HttpClientFetcher;
+import org.nikm.webcrawler.fetch.PageFetcher;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+public class RobotsCacheTest {
+
+    private static final String ROBOTS = "User-agent: *\nDisallow: /private\n";
+
+    private TestServer server;
+    private PageFetcher fetcher;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = new TestServer();
+        fetcher = new HttpClientFetcher(2000, 2000);
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.close();
+    }
+
+    /**
+     * Serves robots.txt, answering 503 to the given amount of requests first
+     */
+    private void serveRobots(final int failures) {
+        final AtomicInteger requests = new AtomicInteger();
+        server.handle("/robots.txt", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (requests.incrementAndGet() <= failures) {
+                    TestServer.respond(exchange, 503, null, new byte[0]);
+                } else {
+                    TestServer.respond(exchange, 200, "text/plain", ROBOTS.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        });
+    }
+
+    private RobotsCache cache(int maxRetries, long retryDelay) {
+        PolitenessPolicy policy = new PolitenessPolicy();
+        policy.setRetries(maxRetries, retryDelay, retryDelay);
+        RobotsCache cache = new RobotsCache(fetcher, fetcher.getUserAgent());
+        cache.setRetryPolicy(policy);
+        return cache;
+    }
+
+    @Test
+    public void retriesAfterFailure() throws Exception {
+        serveRobots(1);
+        final RobotsCache cache = cache(3, 200);
+        final URL page = new URL(server.url("/page"));
+
+        RobotsUnavailableException e = assertThrows(RobotsUnavailableException.class, new Executable() {
+            @Override
+            public void execute() throws Throwable {
+                cache.getRules(page);
+            }
+        });
+        assertTrue(e.getRetryAfter() > 0 && e.getRetryAfter() <= 200);
+        // Not downloaded again before the delay
+        assertThrows(RobotsUnavailableException.class, new Executable() {
+            @Override
+            public void execute() throws Throwable {
+                cache.getRules(page);
+            }
+        });
+        assertEquals(1, server.getRequests("/robots.txt"));
+
+        Thread.sleep(250);
+        RobotsRules rules = cache.getRules(page);
+        assertTrue(rules.isAllowed("/page"));
+        assertFalse(rules.isAllowed("/private"));
+        assertEquals(2, server.getRequests("/robots.txt"));
+        cache.getRules(page);
+        assertEquals(2, server.getRequests("/robots.txt"));
+    }
+
+    @Test
+    public void disallowsAfterRepeatedFailures() throws Exception {
+        serveRobots(Integer.MAX_VALUE);
+        // Long enough that the first failure is still waiting when it is reported
+        final RobotsCache cache = cache(1, 100);
+        final URL page = new URL(server.url("/page"));
+
+        assertThrows(RobotsUnavailableException.class, new Executable() {
+            @Override
+            public void execute() throws Throwable {
+                cache.getRules(page);
+            }
+        });
+        Thread.sleep(150);
+        assertFalse(cache.getRules(page).isAllowed("/page"));
+        assertEquals(2, server.getRequests("/robots.txt"));
+    }
+
+    @Test
+    public void matchesGroupOfSentUserAgent() throws Exception {
+        final AtomicReference<String> sentAgent = new AtomicReference<String>();
+        server.handle("/robots.txt", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                sentAgent.set(exchange.getRequestHeaders().getFirst("User-Agent"));
+                String text = "User-agent: *\nDisallow: /\n\nUser-agent: TestBot\nDisallow: /private\n";
+                TestServer.respond(exchange, 200, "text/plain", text.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        fetcher.setUserAgent("TestBot/2.0 (+https://example.com/bot)");
+        RobotsRules rules = cache(3, 1).getRules(new URL(server.url("/page")));
+        assertEquals("TestBot/2.0 (+https://example.com/bot)", sentAgent.get());
+        assertTrue(rules.isAllowed("/page"));
+        assertFalse(rules.isAllowed("/private"));
+    }
+
+}
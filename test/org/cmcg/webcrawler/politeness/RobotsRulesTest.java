@@ -0,0 +1,99 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.politeness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+public class RobotsRulesTest {
+
+    private static RobotsRules disallow(String pattern) {
+        return RobotsRules.parse("User-agent: *\nDisallow: " + pattern + "\n", "OS-Web-Crawler");
+    }
+
+    @Test
+    public void matchesPrefixes() {
+        RobotsRules rules = disallow("/private");
+        assertFalse(rules.isAllowed("/private"));
+        assertFalse(rules.isAllowed("/private/page.html"));
+        assertTrue(rules.isAllowed("/public"));
+        assertTrue(rules.isAllowed("/priv"));
+    }
+
+    @Test
+    public void matchesWildcards() {
+        RobotsRules rules = disallow("/*.php");
+        assertFalse(rules.isAllowed("/index.php"));
+        assertFalse(rules.isAllowed("/a/b/index.php?x=1"));
+        assertTrue(rules.isAllowed("/index.html"));
+
+        rules = disallow("/a*b*c");
+        assertFalse(rules.isAllowed("/abc"));
+        assertFalse(rules.isAllowed("/axxbyycz"));
+        assertFalse(rules.isAllowed("/abbbc"));
+        assertTrue(rules.isAllowed("/acb"));
+        assertTrue(rules.isAllowed("/b/abc"));
+    }
+
+    @Test
+    public void matchesEndAnchor() {
+        RobotsRules rules = disallow("/*.gif$");
+        assertFalse(rules.isAllowed("/images/a.gif"));
+        assertTrue(rules.isAllowed("/images/a.gif?size=2"));
+
+        rules = disallow("/$");
+        assertFalse(rules.isAllowed("/"));
+        assertTrue(rules.isAllowed("/page"));
+
+        rules = disallow("/a*$");
+        assertFalse(rules.isAllowed("/a"));
+        assertFalse(rules.isAllowed("/anything"));
+    }
+
+    @Test
+    public void longestMatchWins() {
+        RobotsRules rules = RobotsRules.parse("User-agent: *\nDisallow: /docs\nAllow: /docs/public\n", "OS-Web-Crawler");
+        assertFalse(rules.isAllowed("/docs/private"));
+        assertTrue(rules.isAllowed("/docs/public/a"));
+    }
+
+    @Test
+    public void manyWildcardsMatchQuickly() {
+        final RobotsRules rules = disallow("/*a*a*a*a*a*a*a*a*a*a*a*a*a*a*a*a*b");
+        final StringBuilder path = new StringBuilder("/");
+        for (int i = 0; i < 5000; i++) {
+            path.append('a');
+        }
+        assertTimeoutPreemptively(Duration.ofSeconds(5), new Executable() {
+            @Override
+            public void execute() {
+                assertTrue(rules.isAllowed(path.toString()));
+                assertFalse(rules.isAllowed(path + "b"));
+            }
+        });
+    }
+
+    @Test
+    public void usesGroupOfProductToken() {
+        String text = "User-agent: *\nDisallow: /\n\n"
+                + "User-agent: OS-Web-Crawler\nDisallow: /private\n\n"
+                + "User-agent: github\nDisallow: /github\n";
+        RobotsRules rules = RobotsRules.parse(text, "OS-Web-Crawler (+https://github.com/nik-m2/Web-Crawler)");
+        assertTrue(rules.isAllowed("/page"));
+        assertTrue(rules.isAllowed("/github"));
+        assertFalse(rules.isAllowed("/private"));
+
+        assertEquals("OS-Web-Crawler", RobotsRules.getProductToken("OS-Web-Crawler/1.0 (+https://example.com)"));
+        assertEquals("OS-Web-Crawler", RobotsRules.getProductToken("OS-Web-Crawler"));
+    }
+
+}
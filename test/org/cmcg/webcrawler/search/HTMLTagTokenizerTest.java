@@ -0,0 +1,130 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+public class HTMLTagTokenizerTest {
+
+    /**
+     * Remembers each found tag as its sorted attributes, followed by its contents if it reads them
+     */
+    private static class Tags extends XMLTagSearch {
+
+        private List<String> found = new ArrayList<String>();
+
+        Tags(String tag, boolean readContents) {
+            super(tag, readContents);
+        }
+
+        @Override
+        public void onFoundTag(HashMap<String, String> attributes, String tagContents) {
+            found.add(new TreeMap<String, String>(attributes) + (isReadingContents() ? " " + tagContents : ""));
+        }
+
+    }
+
+    private static List<String> find(String tag, String document) {
+        Tags tags = new Tags(tag, false);
+        SearchUtil.executeSearch(document, tags);
+        return tags.found;
+    }
+
+    private static List<String> readContents(String tag, String document) {
+        Tags tags = new Tags(tag, true);
+        SearchUtil.executeSearch(document, tags);
+        return tags.found;
+    }
+
+    @Test
+    public void skipsComments() {
+        assertEquals(Arrays.asList("{href=y}", "{href=z}"),
+                find("a", "<!-- <a href=\"x\"> --><a href=\"y\"><!----><!-- -- ><a href=\"in\"> ---><a href=z>"));
+        // Declarations and closing tags have no attributes
+        assertEquals(Arrays.asList("{href=a}"), find("a", "<!DOCTYPE html></a href=\"b\"><?a href=\"c\"?><a href=\"a\">"));
+    }
+
+    @Test
+    public void keepsQuotedGreaterThan() {
+        // An unquoted value keeps a trailing slash, like in browsers
+        assertEquals(Arrays.asList("{href=c>d, title=a>b}", "{alt=, href=e/}"),
+                find("a", "<a title=\"a>b\" href='c>d'><a alt href=e/>"));
+    }
+
+    @Test
+    public void keepsFirstOfRepeatedAttributes() {
+        assertEquals(Arrays.asList("{href=1, id=x}"), find("A", "<a HREF=\"1\" href=\"2\" id=x ID=y>"));
+    }
+
+    @Test
+    public void readsCdataContents() {
+        assertEquals(Arrays.asList("{} ax &amp; &lt;y> ]b", "{} c"),
+                readContents("title", "<title>a<![CDATA[x & <y> ]]]>b</title><TITLE>c<!-- d --></title>"));
+        // A tag still reading its contents when the page ends
+        assertEquals(Arrays.asList("{lang=en} &lt;e>"), readContents("title", "<title lang=en><![CDATA[<e>"));
+    }
+
+    @Test
+    public void findsTagsAcrossChunks() {
+        String document = "<html><!-- <a href=\"x\"> --><a href=\"one\" title='a>b'>link</a>"
+                + "<title>t<![CDATA[1 < 2]]>s</title><a HREF=two href=three><!DOCTYPE a><a href=four>";
+        List<String> links = find("a", document);
+        List<String> titles = readContents("title", document);
+        assertEquals(Arrays.asList("{href=one, title=a>b}", "{href=two}", "{href=four}"), links);
+        assertEquals(Arrays.asList("{} t1 &lt; 2s"), titles);
+
+        char[] chars = document.toCharArray();
+        for (int split = 0; split <= chars.length; split++) {
+            for (boolean readContents : new boolean[] { false, true }) {
+                Tags tags = new Tags(readContents ? "title" : "a", readContents);
+                tags.initialize("");
+                tags.processChars(chars, 0, split);
+                tags.processChars(chars, split, chars.length - split);
+                tags.reset();
+                assertEquals(readContents ? titles : links, tags.found, "Split at " + split);
+            }
+        }
+
+        // One character at a time
+        Tags tags = new Tags("a", false);
+        tags.initialize("");
+        for (char c : chars) {
+            tags.processChar(c);
+        }
+        assertEquals(links, tags.found);
+    }
+
+    @Test
+    public void sharesTokenizer() {
+        Tags links = new Tags("a", false);
+        Tags moreLinks = new Tags("A", false);
+        Tags titles = new Tags("title", true);
+        SearchUtil.executeSearch("<title>t</title><a href=1><img src=2>", links, moreLinks, titles);
+        assertEquals(Arrays.asList("{href=1}"), links.found);
+        assertEquals(Arrays.asList("{href=1}"), moreLinks.found);
+        assertEquals(Arrays.asList("{} t"), titles.found);
+    }
+
+    @Test
+    public void rejectsEmptyTag() {
+        assertThrows(IllegalArgumentException.class, new Executable() {
+            @Override
+            public void execute() {
+                new Tags("", false);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+public class MultiTextSearchTest {
+
+    /**
+     * Remembers each match as its index and keyword
+     */
+    private static class Matches extends MultiTextSearch {
+
+        private ArrayList<String> found = new ArrayList<String>();
+
+        Matches(Collection<String> keywords, boolean caseSensitive) {
+            super(keywords, caseSensitive);
+        }
+
+        @Override
+        public void onFoundString(String keyword, int characterIndex) {
+            found.add(characterIndex + ":" + keyword);
+        }
+
+    }
+
+    private static List<String> find(boolean caseSensitive, String text, String... keywords) {
+        Matches search = new Matches(Arrays.asList(keywords), caseSensitive);
+        SearchUtil.executeSearch(text, search);
+        Collections.sort(search.found);
+        return search.found;
+    }
+
+    @Test
+    public void findsOverlappingKeywords() {
+        assertEquals(Arrays.asList("1:she", "2:he", "2:hers"), find(true, "ushers", "he", "she", "his", "hers"));
+        assertEquals(Arrays.asList("0:aa", "0:aaa", "1:aa"), find(true, "aaa", "aa", "aaa"));
+        assertEquals(Arrays.asList("0:abab", "1:ba", "2:abab", "3:ba"), find(true, "ababab", "abab", "ba"));
+    }
+
+    @Test
+    public void foldsCase() {
+        assertEquals(Arrays.asList("0:GitHub", "11:GitHub"), find(false, "github and GITHUB", "GitHub"));
+        assertEquals(Arrays.asList("11:GitHub"), find(true, "github and GitHub", "GitHub"));
+        assertEquals(Arrays.asList("0:ärger", "6:straße"), find(false, "ÄRGER STRAßE", "ärger", "straße"));
+        // The Kelvin sign folds to an ascii k
+        assertEquals(Arrays.asList("0:kilo"), find(false, "Kilo", "kilo"));
+        assertEquals(Arrays.asList(), find(true, "Kilo", "kilo"));
+    }
+
+    @Test
+    public void removesDuplicateKeywords() {
+        Matches search = new Matches(Arrays.asList("Crawler", "crawler", "CRAWLER", "web"), false);
+        assertEquals(2, search.getNumKeywords());
+        assertEquals(3, new Matches(Arrays.asList("Crawler", "crawler", "web"), true).getNumKeywords());
+    }
+
+    @Test
+    public void findsMatchesAcrossChunks() {
+        String text = "the web crawler crawls the webs of crawlers";
+        List<String> expected = find(false, text, "web", "crawl", "crawler", "s of");
+        for (int chunk = 1; chunk <= text.length(); chunk++) {
+            Matches search = new Matches(Arrays.asList("web", "crawl", "crawler", "s of"), false);
+            search.initialize("");
+            char[] chars = text.toCharArray();
+            for (int i = 0; i < chars.length; i += chunk) {
+                search.processChars(chars, i, Math.min(chunk, chars.length - i));
+            }
+            Collections.sort(search.found);
+            assertEquals(expected, search.found, "Chunks of " + chunk);
+        }
+        // processChar finds the same matches
+        Matches search = new Matches(Arrays.asList("web", "crawl", "crawler", "s of"), false);
+        search.initialize("");
+        for (char c : text.toCharArray()) {
+            search.processChar(c);
+        }
+        Collections.sort(search.found);
+        assertEquals(expected, search.found);
+    }
+
+    @Test
+    public void rejectsTooLargeTables() {
+        // 50001 states with 50001 columns don't fit in an array
+        StringBuilder keyword = new StringBuilder();
+        for (char c = 0x1000; c < 0x1000 + 50000; c++) {
+            keyword.append(c);
+        }
+        final List<String> keywords = Collections.singletonList(keyword.toString());
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, new Executable() {
+            @Override
+            public void execute() {
+                new Matches(keywords, true);
+            }
+        });
+        assertEquals(true, e.getMessage().startsWith("Keywords too large"));
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class TextSearchTest {
+
+    /**
+     * Remembers each match as its index and matched text
+     */
+    private static class Matches extends TextSearch {
+
+        private ArrayList<String> found = new ArrayList<String>();
+
+        Matches(String stringToFind, boolean caseSensitive) {
+            super(stringToFind, caseSensitive);
+        }
+
+        @Override
+        public void onFoundString(String matchedString, int characterIndex) {
+            found.add(characterIndex + ":" + matchedString);
+        }
+
+    }
+
+    private static List<String> find(String stringToFind, boolean caseSensitive, String text) {
+        Matches search = new Matches(stringToFind, caseSensitive);
+        SearchUtil.executeSearch(text, search);
+        return search.found;
+    }
+
+    @Test
+    public void findsOverlappingMatches() {
+        assertEquals(Arrays.asList("0:aa", "1:aa", "2:aa"), find("aa", true, "aaaa"));
+        assertEquals(Arrays.asList("0:abab", "2:abab"), find("abab", true, "ababab"));
+        assertEquals(Arrays.asList("3:aab"), find("aab", true, "aaaaab"));
+        assertEquals(Arrays.asList(), find("abc", true, "ababdabd"));
+    }
+
+    @Test
+    public void foldsCase() {
+        assertEquals(Arrays.asList("4:GitHub", "15:GITHUB"), find("github", false, "see GitHub and GITHUB"));
+        assertEquals(Arrays.asList("15:github"), find("github", true, "see GitHub and github"));
+        assertEquals(Arrays.asList("0:ÄRGER"), find("ärger", false, "ÄRGER"));
+    }
+
+    @Test
+    public void findsMatchesAcrossChunks() {
+        String text = "xxabcabxabcxabcabcab";
+        List<String> expected = find("abcab", false, text);
+        assertEquals(Arrays.asList("2:abcab", "12:abcab", "15:abcab"), expected);
+        for (int chunk = 1; chunk <= text.length(); chunk++) {
+            Matches search = new Matches("abcab", false);
+            search.initialize("");
+            char[] chars = text.toCharArray();
+            for (int i = 0; i < chars.length; i += chunk) {
+                search.processChars(chars, i, Math.min(chunk, chars.length - i));
+            }
+            assertEquals(expected, search.found, "Chunks of " + chunk);
+        }
+    }
+
+    @Test
+    public void findsMatchesAcrossSearchUtilChunks() {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 8190) {
+            text.append('x');
+        }
+        text.append("needle");
+        assertEquals(Arrays.asList("8190:needle"), find("needle", false, text.toString()));
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.sink;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nikm.webcrawler.TestServer;
+import org.nikm.webcrawler.WebCrawler;
+import org.nikm.webcrawler.search.HTMLImageSearch;
+import org.nikm.webcrawler.search.ImageLibrary;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+public class ResultSinkTest {
+
+    /**
+     * Keeps the written results
+     */
+    private static class ListWriter implements ResultWriter {
+        final List<SearchResult> results = Collections.synchronizedList(new ArrayList<SearchResult>());
+
+        @Override
+        public void write(List<SearchResult> batch) {
+            results.addAll(batch);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void dropsResultsEmittedAfterClose() {
+        ListWriter writer = new ListWriter();
+        ResultSink sink = new ResultSink(writer);
+        sink.emit(new SearchResult(SearchResult.TEXT, "http://example.com/", "a", 0, null));
+        sink.close();
+        sink.emit(new SearchResult(SearchResult.TEXT, "http://example.com/", "b", 1, null));
+        sink.emit(new SearchResult(SearchResult.TEXT, "http://example.com/", "c", 2, null));
+
+        assertEquals(1, writer.results.size());
+        assertEquals(1, sink.getWrittenResults());
+        assertEquals(2, sink.getDroppedResults());
+    }
+
+    @Test
+    public void writesMatchedImages(@TempDir Path directory) throws IOException {
+        BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(1, 2, 0xffff0000);
+        File reference = directory.resolve("reference.png").toFile();
+        ImageIO.write(image, "png", reference);
+        final byte[] png = Files.readAllBytes(reference.toPath());
+
+        TestServer server = new TestServer();
+        try {
+            server.handle("/robots.txt", new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    TestServer.respond(exchange, 404, null, new byte[0]);
+                }
+            });
+            server.handle("/", new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    byte[] html = "<html><img src=\"/img.png\"></html>".getBytes(StandardCharsets.UTF_8);
+                    TestServer.respond(exchange, 200, "text/html", html);
+                }
+            });
+            server.handle("/img.png", new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    TestServer.respond(exchange, 200, "image/png", png);
+                }
+            });
+
+            ListWriter writer = new ListWriter();
+            ResultSink sink = new ResultSink(writer);
+            ImageLibrary library = new ImageLibrary(true, false, null, reference.getPath());
+            HTMLImageSearch imageSearch = sink.imageSearch(server.url("/"), library);
+            new WebCrawler(server.url("/")).crawl(1, imageSearch);
+            library.shutdown();
+
+            // Written before the crawl returns
+            assertEquals(1, writer.results.size());
+            SearchResult result = writer.results.get(0);
+            assertEquals(SearchResult.IMAGE, result.getType());
+            assertEquals(server.url("/"), result.getPageUrl());
+            assertEquals(server.url("/img.png"), result.getValue());
+            assertEquals(reference.getPath(), result.getAttributes().get("original"));
+            sink.close();
+        } finally {
+            server.close();
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.sitemap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.nikm.webcrawler.PageReader;
+import org.nikm.webcrawler.TestServer;
+import org.nikm.webcrawler.search.SearchUtil;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+public class SitemapParserTest {
+
+    /**
+     * Remembers the urls in the order they were found, sitemaps prefixed with "sitemap "
+     */
+    private static class Urls implements SitemapListener {
+
+        private ArrayList<String> urls = new ArrayList<String>();
+        private ArrayList<Long> dates = new ArrayList<Long>();
+
+        @Override
+        public void onPage(String url, long lastModified) {
+            urls.add(url);
+            dates.add(lastModified);
+        }
+
+        @Override
+        public void onSitemap(String url, long lastModified) {
+            urls.add("sitemap " + url);
+            dates.add(lastModified);
+        }
+
+    }
+
+    private static Urls parse(String document) {
+        Urls urls = new Urls();
+        SearchUtil.executeSearch(document, new SitemapParser(urls).getSearches());
+        return urls;
+    }
+
+    @Test
+    public void readsUrlset() {
+        Urls urls = parse("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n"
+                + "<url><loc>https://example.com/a?x=1&amp;y=2</loc><lastmod>2024-01-31</lastmod></url>\n"
+                + "<url><loc> https://example.com/b </loc><lastmod>2024-01-31T10:00:00+01:00</lastmod></url>\n"
+                + "<url><loc>https://example.com/c</loc></url>\n"
+                + "</urlset>");
+        assertEquals(Arrays.asList("https://example.com/a?x=1&y=2", "https://example.com/b", "https://example.com/c"), urls.urls);
+        assertEquals(Arrays.asList(1706659200000L, 1706691600000L, 0L), urls.dates);
+    }
+
+    @Test
+    public void readsSitemapIndex() {
+        Urls urls = parse("<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+                + "<sitemap><loc>https://example.com/sitemap1.xml.gz</loc><lastmod>2024-01-31</lastmod></sitemap>"
+                + "<sitemap><loc>https://example.com/sitemap2.xml</loc></sitemap>"
+                + "</sitemapindex>");
+        assertEquals(Arrays.asList("sitemap https://example.com/sitemap1.xml.gz", "sitemap https://example.com/sitemap2.xml"),
+                urls.urls);
+    }
+
+    @Test
+    public void readsRssItems() {
+        Urls urls = parse("<rss version=\"2.0\" xmlns:atom=\"http://www.w3.org/2005/Atom\"><channel>"
+                + "<link>https://example.com/</link><atom:link href=\"https://example.com/feed\" rel=\"self\"/>"
+                + "<item><title>One</title><link>https://example.com/1</link>"
+                + "<pubDate>Wed, 31 Jan 2024 10:00:00 GMT</pubDate></item>"
+                + "<item><link/><link>https://example.com/2</link></item>"
+                + "</channel></rss>");
+        // The channel's own link is outside of any item
+        assertEquals(Arrays.asList("https://example.com/1", "https://example.com/2"), urls.urls);
+        assertEquals(1706695200000L, (long) urls.dates.get(0));
+    }
+
+    @Test
+    public void readsAtomEntries() {
+        Urls urls = parse("<feed xmlns=\"http://www.w3.org/2005/Atom\"><link href=\"https://example.com/\"/>"
+                + "<entry><link rel=\"edit\" href=\"https://example.com/edit/1\"/>"
+                + "<link rel=\"alternate\" href=\"https://example.com/1\"/><updated>2024-01-31T10:00:00Z</updated></entry>"
+                + "<entry><link href=\"https://example.com/2\"/><published>2024-01-31</published></entry>"
+                + "</feed>");
+        assertEquals(Arrays.asList("https://example.com/1", "https://example.com/2"), urls.urls);
+        assertEquals(Arrays.asList(1706695200000L, 1706659200000L), urls.dates);
+    }
+
+    @Test
+    public void readsCdata() {
+        Urls urls = parse("<rss><channel>"
+                + "<item><link><![CDATA[https://example.com/a?x=1&y=]]]></link></item>"
+                + "<item><link> <![CDATA[https://example.com/b]]> </link></item>"
+                + "<item><link><![CDATA[]]></link><link>https://example.com/c</link></item>"
+                + "</channel></rss>");
+        assertEquals(Arrays.asList("https://example.com/a?x=1&y=]", "https://example.com/b", "https://example.com/c"), urls.urls);
+    }
+
+    @Test
+    public void readsGzippedSitemap() throws IOException {
+        String document = "<urlset><url><loc>https://example.com/a</loc></url><url><loc>https://example.com/b</loc></url></urlset>";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(document.getBytes(StandardCharsets.UTF_8));
+        }
+        final byte[] gzipped = bytes.toByteArray();
+
+        TestServer server = new TestServer();
+        try {
+            // Sent without a Content-Encoding, like a static sitemap.xml.gz
+            server.handle("/sitemap.xml.gz", new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    TestServer.respond(exchange, 200, "application/x-gzip", gzipped);
+                }
+            });
+            Urls urls = new Urls();
+            PageReader reader = new PageReader(server.url("/sitemap.xml.gz"));
+            assertTrue(reader.searchPage(new SitemapParser(urls).getSearches()));
+            assertEquals(Arrays.asList("https://example.com/a", "https://example.com/b"), urls.urls);
+        } finally {
+            server.close();
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+* Nik M
+* https://github.com/nik-m2/Web-Crawler
+*/
+package org.nikm.webcrawler.url;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class HostScopeTest {
+
+    /**
+     * Canonical urls, whether they are on example.com and whether they are with its subdomains included
+     */
+    private static final Object[][] URLS = {
+        { "http://example.com/", true, true },
+        { "https://example.com/p", true, true },
+        { "http://www.example.com/", true, true },
+        { "http://example.com:8080/", true, true },
+        { "http://blog.example.com/", false, true },
+        { "http://www.blog.example.com/", false, true },
+        { "http://notexample.com/", false, false },
+        { "http://example.com.evil.org/", false, false },
+        { "http://example.org/", false, false },
+        { "http://com/", false, false },
+        { "example.com/", false, false },
+    };
+
+    @Test
+    public void matchesHosts() {
+        HostScope scope = new HostScope("http://WWW.Example.com/start");
+        assertEquals("example.com", scope.getHost());
+        for (Object[] url : URLS) {
+            assertEquals(url[1], scope.contains((String) url[0]), "Url: " + url[0]);
+        }
+    }
+
+    @Test
+    public void matchesSubdomains() {
+        HostScope scope = new HostScope("http://example.com/");
+        scope.setIncludeSubdomains(true);
+        for (Object[] url : URLS) {
+            assertEquals(url[2], scope.contains((String) url[0]), "Url: " + url[0]);
+        }
+    }
+
+    @Test
+    public void matchesIpv6Hosts() {
+        HostScope scope = new HostScope("http://[::1]:8080/");
+        assertTrue(scope.contains("http://[::1]:8080/p"));
+        assertTrue(scope.contains("http://[::1]/"));
+        assertFalse(scope.contains("http://[::2]/"));
+    }
+
+    @Test
+    public void addsSites() {
+        HostScope scope = new HostScope("http://example.com/");
+        assertTrue(scope.isSingleHost());
+        scope.addSite("https://www.other.org/page");
+        scope.addSite("http://other.org/");
+        scope.addSite("not a url");
+        assertFalse(scope.isSingleHost());
+        assertEquals("example.com", scope.getHost());
+        assertTrue(scope.contains("http://other.org/p"));
+        assertTrue(scope.contains("http://example.com/p"));
+        assertFalse(scope.contains("http://blog.other.org/"));
+
+        HostScope subdomains = new HostScope("http://example.com/");
+        subdomains.setIncludeSubdomains(true);
+        assertFalse(subdomains.isSingleHost());
+    }
+
+    @Test
+    public void rejectsInvalidRoot() {
+        HostScope scope = new HostScope("mailto:someone@example.com");
+        assertEquals("", scope.getHost());
+        assertFalse(scope.contains("http://example.com/"));
+    }
+
+}